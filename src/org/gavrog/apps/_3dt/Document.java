@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -427,8 +428,13 @@ public class Document extends DisplayList {
         try {
             return (Tiling) cache.get(TILING);
         } catch (CacheMissException ex) {
-            return (Tiling) cache.put(TILING, new Tiling(getEffectiveSymbol(),
-					given_cover));
+            final Tiling til;
+            if (given_cover == null) {
+                til = Tiling.shared(getEffectiveSymbol());
+            } else {
+                til = new Tiling(getEffectiveSymbol(), given_cover);
+            }
+            return (Tiling) cache.put(TILING, til);
         }
     }
 
@@ -532,6 +538,9 @@ public class Document extends DisplayList {
     private class EmbedderOutput {
         final private Map<DSPair<Integer>, Point> positions;
         final private CoordinateChange change;
+        final private double corners[];
+        final private boolean known[];
+        final private int dim;
         
         private EmbedderOutput(
                 final Map<DSPair<Integer>, Point> pos,
@@ -539,6 +548,42 @@ public class Document extends DisplayList {
         {
             this.positions = pos;
             this.change = change;
+            
+            // --- convert all corner positions to world coordinates at once
+            int maxD = 0;
+            for (final DSPair<Integer> key: pos.keySet()) {
+                maxD = Math.max(maxD, key.getElement());
+            }
+            final int d = change.getDimension();
+            this.dim = d;
+            this.corners = new double[(maxD + 1) * (d + 1) * d];
+            this.known = new boolean[(maxD + 1) * (d + 1)];
+            for (final Map.Entry<DSPair<Integer>, Point> e: pos.entrySet()) {
+                final int offset = cornerOffset(e.getKey().getIndex(),
+                        e.getKey().getElement());
+                this.known[cornerIndex(e.getKey().getIndex(),
+                        e.getKey().getElement())] = true;
+                final Point p = e.getValue();
+                for (int k = 0; k < d; ++k) {
+                    this.corners[offset + k] =
+                            ((Real) p.get(k)).doubleValue();
+                }
+            }
+            change.applyToPoints(this.corners, this.corners);
+        }
+        
+        private int cornerIndex(final int i, final int D) {
+            return D * (this.dim + 1) + i;
+        }
+        
+        private int cornerOffset(final int i, final int D) {
+            return cornerIndex(i, D) * this.dim;
+        }
+        
+        private boolean isKnown(final int i, final int D) {
+            final int k = cornerIndex(i, D);
+            return i >= 0 && i <= this.dim && k >= 0 && k < this.known.length
+                    && this.known[k];
         }
     }
     
@@ -587,9 +632,13 @@ public class Document extends DisplayList {
     }
     
     public double[] cornerPosition(final int i, final int D) {
-        final Point p0 = getPositions().get(new DSPair<Integer>(i, D));
-        final Point p = (Point) p0.times(getEmbedderToWorld());
-        return p.getCoordinates().asDoubleArray()[0];
+        final EmbedderOutput out = getEmbedderOutput();
+        if (!out.isKnown(i, D)) {
+            throw new IllegalArgumentException("no position for corner ("
+                    + i + ", " + D + ")");
+        }
+        final int offset = out.cornerOffset(i, D);
+        return Arrays.copyOfRange(out.corners, offset, offset + out.dim);
     }
     
     public double volume() {
@@ -656,18 +705,29 @@ public class Document extends DisplayList {
     
     private Vector shifted(final Point p0, final Vector s,
         final CoordinateChange c)
+    {
+        return shifted(p0, s, c, (CoordinateChange) c.inverse());
+    }
+    
+    private Vector shifted(final Point p0, final Vector s,
+        final CoordinateChange c, final CoordinateChange cInv)
     {
         final int dim = p0.getDimension();
-        final Point p = (Point) p0.plus(s).times(c);
-        final Real a[] = new Real[dim];
+        final double p[] = new double[dim];
         for (int i = 0; i < dim; ++i) {
-            a[i] = (Real) p.get(i).plus(0.001).mod(Whole.ONE);
+            p[i] = ((Real) p0.get(i)).doubleValue()
+                    + ((Real) s.get(i)).doubleValue();
         }
-        final Vector v = (Vector)
-            new Point(a).minus(p).times(c.inverse());
+        c.applyToPoints(p, p);
+        final double v[] = new double[dim];
+        for (int i = 0; i < dim; ++i) {
+            final double a = p[i] + 0.001;
+            v[i] = a - Math.floor(a) - p[i];
+        }
+        cInv.applyToVectors(v, v);
         final Whole b[] = new Whole[dim];
         for (int i = 0; i < dim; ++i) {
-            b[i] = (Whole) v.get(i).round();
+            b[i] = new Whole((long) Math.floor(v[i] + 0.5));
         }
         return (Vector) new Vector(b).plus(s);
     }
@@ -681,9 +741,11 @@ public class Document extends DisplayList {
     	  toStd = getFinder().getToStd();
     	}
     	
+    	final CoordinateChange fromStd = (CoordinateChange) toStd.inverse();
+    	
     	final List<Vector> result = new ArrayList<Vector>();
     	for (final Vector s : getCenteringVectors()) {
-    	    Vector v = shifted(p, s, toStd);
+    	    Vector v = shifted(p, s, toStd, fromStd);
     	    if (getUsePrimitiveCell()) {
   	            v = (Vector) v.plus(originShiftForPrimitive());
     	    }
@@ -810,7 +872,7 @@ public class Document extends DisplayList {
     		final int dim = getSymbol().dim();
     		final SpaceGroupFinder finder;
     		if (dim == 2) {
-    			finder = new SpaceGroupFinder(new Tiling(getSymbol())
+    			finder = new SpaceGroupFinder(Tiling.shared(getSymbol())
 						.getSpaceGroup());
     		} else {
     			finder = getFinder();
@@ -30,6 +30,7 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,7 +40,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.gavrog.box.collections.Iterators;
 import org.gavrog.box.collections.Pair;
@@ -47,6 +56,9 @@ import org.gavrog.box.gui.Config;
 import org.gavrog.box.simple.DataFormatException;
 import org.gavrog.box.simple.Misc;
 import org.gavrog.box.simple.Strings;
+import org.gavrog.box.simple.TaskController;
+import org.gavrog.box.simple.TaskStoppedException;
+import org.gavrog.jane.compounds.ModularSolver;
 import org.gavrog.jane.numbers.FloatingPoint;
 import org.gavrog.jane.numbers.IArithmetic;
 import org.gavrog.jane.numbers.Real;
@@ -61,6 +73,7 @@ import org.gavrog.joss.geometry.Vector;
 import org.gavrog.joss.pgraphs.basic.INode;
 import org.gavrog.joss.pgraphs.basic.Morphism;
 import org.gavrog.joss.pgraphs.basic.PeriodicGraph;
+import org.gavrog.joss.pgraphs.basic.PointSymbols;
 import org.gavrog.joss.pgraphs.embed.Embedder;
 import org.gavrog.joss.pgraphs.embed.ProcessedNet;
 import org.gavrog.joss.pgraphs.io.Archive;
@@ -96,19 +109,31 @@ public class SystreCmdline extends EventSource {
     private boolean relaxPositions = true;
     private int relaxPasses = 3;
     private int relaxSteps = 10000;
+    private boolean useGradientRelaxation = false;
+    private int relaxationStarts = 1;
     private boolean skipOutputTest = false;
     private boolean computePointSymbols = false;
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
     private boolean useBuiltinArchive = true;
     private boolean outputFullCell = false;
     private boolean outputSystreKey = false;
     private boolean duplicateIsError = false;
+    private boolean preferSecondOrigin = true;
+    private boolean preferHexagonal = true;
     private BufferedWriter outputArchive = null;
     
+    // --- milliseconds between checks for cancel requests during relaxation
+    final static long CANCEL_POLL_INTERVAL = 100;
+    
+    // --- a thread pool for concurrent relaxations
+    private ExecutorService relaxationPool = null;
+    private int relaxationPoolSize = 0;
+    
     // --- the last file that was opened for processing
     private String lastFileNameWithoutExtension;
     
     // --- signals a cancel request from outside
-    private boolean cancelled = false;
+    private volatile boolean cancelled = false;
 
     // --- text of the last status reported
 	private String lastStatus;
@@ -171,6 +196,7 @@ public class SystreCmdline extends EventSource {
     	
     	this.cancelled = false;
         setLastStructure(null);
+        ModularSolver.setNumberOfThreads(getNumberOfThreads());
         PeriodicGraph G = graph;
         final int d = G.getDimension();
         final String givenGroup = graph.getGivenGroup();
@@ -659,15 +685,27 @@ public class SystreCmdline extends EventSource {
      */
     private void showPointSymbols(final PeriodicGraph G,
             final Map<INode, String> node2name) {
-        out.println("   Wells point symbols:");
+        final List<INode> reps = new LinkedList<INode>();
         for (final Iterator<Set<INode>> orbits = G.nodeOrbits();
                 orbits.hasNext();)
         {
-            final Set<INode> orbit = orbits.next();
-            final INode v = orbit.iterator().next();
+            reps.add(orbits.next().iterator().next());
+        }
+        final Map<INode, PointSymbols.AngleCycles> cycles =
+                new PointSymbols(G).angleCycles(reps, getNumberOfThreads());
+
+        out.println("   Wells point symbols:");
+        for (final INode v: reps) {
             out.println("      Node "
                     + Strings.parsable(node2name.get(v), false)
-                    + ":   " + G.pointSymbol(v));
+                    + ":   " + cycles.get(v).pointSymbol());
+        }
+        out.println();
+        out.println("   Vertex symbols:");
+        for (final INode v: reps) {
+            out.println("      Node "
+                    + Strings.parsable(node2name.get(v), false)
+                    + ":   " + cycles.get(v).vertexSymbol());
         }
         out.println();
         out.flush();
@@ -729,131 +767,293 @@ public class SystreCmdline extends EventSource {
     	for (int pass = 0; pass <= 1; ++pass) {
         	status("Computing an embedding...");
         	
-            // --- relax the structure from the initial embedding
-            Embedder embedder =
-                    new Embedder(G, initialPlacement, checkPositions);
-            try {
-                embedder.setRelaxPositions(false);
-                embedder.setPasses(0);
-                embedder.go(500);
-                embedder.setRelaxPositions(relaxPositions && pass == 0);
-                embedder.setPasses(this.relaxPasses);
-                embedder.go(relaxSteps);
-            } catch (Exception ex) {
-                out.println("==================================================");
-                final String msg = "!!! WARNING (INTERNAL) - Could not relax - ";
-                out.println(msg + ex.getMessage());
-                out.println(Misc.stackTrace(ex));
-                out.println("==================================================");
-                embedder.reset();
+            // --- relax the structure from the initial embedding, possibly
+            // --- from several starting points at once
+            final boolean relax = relaxPositions && pass == 0;
+            final int starts = relax ? getRelaxationStarts() : 1;
+            final Embedder candidates[] = new Embedder[starts];
+            final Relaxation relaxations[] = new Relaxation[starts];
+            final List<Future<?>> jobs = new ArrayList<Future<?>>();
+            candidates[0] = new Embedder(G, initialPlacement, checkPositions);
+            for (int k = 1; k < starts; ++k) {
+                candidates[k] = new Embedder(candidates[0]);
             }
-            embedder.normalize();
-            
-            quitIfCancelled();
-            
-            // --- do some checking
-        	status("Verifying the embedding...");
-        	
-            final IArithmetic det = embedder.getGramMatrix().determinant();
-            if (det.isLessThan(new FloatingPoint(0.001))) {
-                out.println("==================================================");
-                final String msg = "!!! WARNING (INTERNAL) - "
-						+ "Unit cell degenerated in relaxation."
-                        + "Reverting to default unit cell.";
-                out.println(msg);
-                out.println("==================================================");
-                embedder.reset();
-                embedder.normalize();
+            for (int k = 0; k < starts; ++k) {
+                relaxations[k] =
+                        new Relaxation(candidates[k], relax, k, starts > 1);
+                if (starts > 1) {
+                    jobs.add(getRelaxationPool().submit(relaxations[k]));
+                }
             }
-            if (!embedder.positionsRelaxed() && checkPositions) {
-                final Map<INode, Point> pos = embedder.getPositions();
-                final Map<INode, Point> bari = G.barycentricPlacement();
-                int problems = 0;
-                for (final INode v: G.nodes()) {
-                    final Point p = pos.get(v);
-                    final Point q = bari.get(v);
-                    final Vector diff = (Vector) p.minus(q);
-                    final double err = ((Real) Vector.dot(diff, diff)).sqrt()
-                            .doubleValue();
-                    if (err > 1e-12) {
-                        out.println("\t\t@@@ " + v + " is at " + p
-                                + ", but should be " + q);
-                        ++problems;
+            
+            try {
+                for (int start = 0; start < starts; ++start) {
+                    final boolean last = start == starts - 1;
+                    if (embedAndVerify(G, name, node2name, finder,
+                            candidates[start], relaxations[start],
+                            starts > 1 ? jobs.get(start) : null,
+                            checkPositions, posType, pass == 1 && last,
+                            pass == 0 && last)) {
+                        return;
                     }
                 }
-                if (problems > 0) {
-                    final String msg = "Embedder misplaced " + problems
-                            + " points";
-                    throw new SystreException(SystreException.INTERNAL, msg);
+            } finally {
+                for (int k = 0; k < starts; ++k) {
+                    if (starts > 1) {
+                        jobs.get(k).cancel(false);
+                    }
+                    relaxations[k].stop();
                 }
             }
-            
-            quitIfCancelled();
-            
-            // --- write a Systre readable net description to a string buffer
-        	status("Preparing the output...");
-        	
-            final StringWriter cgdStringWriter = new StringWriter();
-            final PrintWriter cgd = new PrintWriter(cgdStringWriter);
-            final ProcessedNet net =
-                    new ProcessedNet(G, name, node2name, finder, embedder);
-            setLastStructure(net);
-            net.writeEmbedding(cgd, true, getOutputFullCell(), "");
-
-            final String cgdString = cgdStringWriter.toString();
-			boolean success = false;
-            try {
-                if (!this.skipOutputTest && G.isStable()) {
-                    status("Consistency test: reading output back in...");
-                    final PeriodicGraph test = NetParser.stringToNet(cgdString);
+        }
+    }
+    
+    /**
+     * Relaxes an embedding, either in place or by waiting for a job that does
+     * it, then verifies and writes the result if successful.
+     * 
+     * @return true if the embedding was verified and written.
+     */
+    private boolean embedAndVerify(
+            final PeriodicGraph G,
+            final String name,
+			final Map<INode, String> node2name,
+			final SpaceGroupFinder finder,
+			final Embedder embedder,
+			final Relaxation relaxation,
+			final Future<?> job,
+			final boolean checkPositions,
+			final String posType,
+			final boolean mustSucceed,
+			final boolean announceFallback) {
+        try {
+            if (job == null) {
+                relaxation.run();
+            } else {
+                awaitRelaxation(job);
+            }
+        } catch (TaskStoppedException ex) {
+            throw ex;
+        } catch (SystreException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            out.println("==================================================");
+            final String msg = "!!! WARNING (INTERNAL) - Could not relax - ";
+            out.println(msg + ex.getMessage());
+            out.println(Misc.stackTrace(ex));
+            out.println("==================================================");
+            embedder.reset();
+        }
+        embedder.normalize();
+        
+        quitIfCancelled();
+        
+        // --- do some checking
+    	status("Verifying the embedding...");
+    	
+        final IArithmetic det = embedder.getGramMatrix().determinant();
+        if (det.isLessThan(new FloatingPoint(0.001))) {
+            out.println("==================================================");
+            final String msg = "!!! WARNING (INTERNAL) - "
+						+ "Unit cell degenerated in relaxation."
+                    + "Reverting to default unit cell.";
+            out.println(msg);
+            out.println("==================================================");
+            embedder.reset();
+            embedder.normalize();
+        }
+        if (!embedder.positionsRelaxed() && checkPositions) {
+            final Map<INode, Point> pos = embedder.getPositions();
+            final Map<INode, Point> bari = G.barycentricPlacement();
+            int problems = 0;
+            for (final INode v: G.nodes()) {
+                final Point p = pos.get(v);
+                final Point q = bari.get(v);
+                final Vector diff = (Vector) p.minus(q);
+                final double err = ((Real) Vector.dot(diff, diff)).sqrt()
+                        .doubleValue();
+                if (err > 1e-12) {
+                    out.println("\t\t@@@ " + v + " is at " + p
+                            + ", but should be " + q);
+                    ++problems;
+                }
+            }
+            if (problems > 0) {
+                final String msg = "Embedder misplaced " + problems
+                        + " points";
+                throw new SystreException(SystreException.INTERNAL, msg);
+            }
+        }
+        
+        quitIfCancelled();
+        
+        // --- write a Systre readable net description to a string buffer
+    	status("Preparing the output...");
+    	
+        final StringWriter cgdStringWriter = new StringWriter();
+        final PrintWriter cgd = new PrintWriter(cgdStringWriter);
+        final ProcessedNet net =
+                new ProcessedNet(G, name, node2name, finder, embedder);
+        setLastStructure(net);
+        net.writeEmbedding(cgd, true, getOutputFullCell(), "");
 
-                    quitIfCancelled();
+        final String cgdString = cgdStringWriter.toString();
+			boolean success = false;
+        try {
+            if (!this.skipOutputTest && G.isStable()) {
+                status("Consistency test: reading output back in...");
+                final PeriodicGraph test = NetParser.stringToNet(cgdString);
 
-                    status("Consistency test: comparing with original net...");
-                    if (!test.minimalImage().equals(G)) {
-                        final String msg =
-                                "Output does not match original graph.";
-                        throw new RuntimeException(msg);
-                    }
-                }
-                out.println();
-                success = true;
-                
                 quitIfCancelled();
-                
-            } catch (Exception ex) {
-                if (DEBUG) {
-                    out.println("\t\t@@@ Failing output:");
-                    out.println(cgdString);
-                }
-                if (pass == 0) {
-                    if (relaxPositions) {
-                        out.println("   Falling back to "
-                                + posType + " positions.");
-                    }
-                } else {
-                    out.println("Could not verify output:");
-                    out.println(cgdString);
-                    throw new RuntimeException(ex);
+
+                status("Consistency test: comparing with original net...");
+                if (!test.minimalImage().equals(G)) {
+                    final String msg =
+                            "Output does not match original graph.";
+                    throw new RuntimeException(msg);
                 }
             }
+            out.println();
+            success = true;
             
             quitIfCancelled();
             
-            // --- now write the actual output
-            if (success) {
-            	status("Writing output...");
-                net.writeEmbedding(new PrintWriter(out), false,
-                        getOutputFullCell(),
-                        embedder.positionsRelaxed() ?
-                                "Relaxed" : Strings.capitalized(posType));
-                net.setVerified(true);
-                status("Done!");
-                break;
+        } catch (Exception ex) {
+            if (DEBUG) {
+                out.println("\t\t@@@ Failing output:");
+                out.println(cgdString);
+            }
+            if (!mustSucceed) {
+                if (announceFallback && relaxPositions) {
+                    out.println("   Falling back to "
+                            + posType + " positions.");
+                }
+            } else {
+                out.println("Could not verify output:");
+                out.println(cgdString);
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        quitIfCancelled();
+        
+        // --- now write the actual output
+        if (success) {
+        	status("Writing output...");
+            net.writeEmbedding(new PrintWriter(out), false,
+                    getOutputFullCell(),
+                    embedder.positionsRelaxed() ?
+                            "Relaxed" : Strings.capitalized(posType));
+            net.setVerified(true);
+            status("Done!");
+        }
+        return success;
+    }
+    
+    /**
+     * Waits for a pooled relaxation to finish, checking for cancel requests in
+     * between. A cancel request ends the wait with an exception, upon which
+     * the caller stops all pending relaxations.
+     * 
+     * @param job the job running the relaxation.
+     * @throws Exception if the relaxation failed.
+     */
+    private void awaitRelaxation(final Future<?> job) throws Exception {
+        final TaskController controller = TaskController.getInstance();
+        while (true) {
+            try {
+                job.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException ex) {
+                controller.bailOutIfCancelled();
+                quitIfCancelled();
+            } catch (ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                } else {
+                    throw (Error) cause;
+                }
             }
         }
     }
     
+    /**
+     * Relaxes an embedding, starting from a perturbed version of the initial
+     * positions unless this is the first start. When run in a thread pool, it
+     * can be stopped from another thread.
+     */
+    private class Relaxation implements Runnable {
+        final private Embedder embedder;
+        final private boolean relax;
+        final private int start;
+        final private boolean pooled;
+        private volatile TaskController controller = null;
+        private volatile boolean stopped = false;
+        
+        public Relaxation(final Embedder embedder, final boolean relax,
+                final int start, final boolean pooled) {
+            this.embedder = embedder;
+            this.relax = relax;
+            this.start = start;
+            this.pooled = pooled;
+        }
+        
+        public void run() {
+            if (this.pooled) {
+                final TaskController controller = TaskController.getInstance();
+                controller.reset();
+                this.controller = controller;
+                if (this.stopped) {
+                    throw new TaskStoppedException(Thread.currentThread());
+                }
+            }
+            final Embedder embedder = this.embedder;
+            embedder.setRelaxPositions(false);
+            embedder.setPasses(0);
+            embedder.go(500);
+            if (this.start > 0) {
+                embedder.perturbPositions(0.02 * this.start,
+                        new Random(this.start));
+            }
+            embedder.setRelaxPositions(this.relax);
+            embedder.setPasses(relaxPasses);
+            embedder.setUseGradient(useGradientRelaxation);
+            embedder.go(relaxSteps);
+        }
+        
+        public void stop() {
+            this.stopped = true;
+            final TaskController controller = this.controller;
+            if (controller != null) {
+                controller.cancel();
+            }
+        }
+    }
+    
+    /**
+     * Returns a thread pool for concurrent relaxations, creating a new one if
+     * the number of threads has changed.
+     */
+    private synchronized ExecutorService getRelaxationPool() {
+        if (this.relaxationPool == null
+                || this.relaxationPoolSize != getNumberOfThreads()) {
+            if (this.relaxationPool != null) {
+                this.relaxationPool.shutdown();
+            }
+            this.relaxationPoolSize = getNumberOfThreads();
+            this.relaxationPool = Executors.newFixedThreadPool(
+                    this.relaxationPoolSize, new ThreadFactory() {
+                        public Thread newThread(final Runnable r) {
+                            final Thread t = new Thread(r);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return this.relaxationPool;
+    }
+    
     /**
 	 * Analyzes all nets specified in a file and prints the results.
 	 * 
@@ -865,7 +1065,7 @@ public class SystreCmdline extends EventSource {
         Iterator<Net> inputs = null;
         int count = 0;
         try {
-            inputs = Net.iterator(filePath);
+            inputs = Net.iterator(filePath, getGroupPreferences());
         } catch (FileNotFoundException ex) {
             out.println("!!! ERROR (FILE) - Could not find file \"" + filePath
                     + "\".");
@@ -1053,10 +1253,10 @@ public class SystreCmdline extends EventSource {
                 setUseBuiltinArchive(false);
             } else if (s.equalsIgnoreCase("--firstOrigin")
                     || s.equalsIgnoreCase("-firstOrigin")) {
-                SpaceGroupCatalogue.setPreferSecondOrigin(false);
+                setPreferSecondOrigin(false);
             } else if (s.equalsIgnoreCase("--rhombohedral")
                     || s.equalsIgnoreCase("-rhombohedral")) {
-                SpaceGroupCatalogue.setPreferHexagonal(false);
+                setPreferHexagonal(false);
             } else if (s.equals("-e")
                     || s.equalsIgnoreCase("--equalEdges")
                     || s.equalsIgnoreCase("-equalEdges")) {
@@ -1075,9 +1275,44 @@ public class SystreCmdline extends EventSource {
                 } else {
                     this.relaxSteps = Integer.parseInt(args[++i]);
                 }
+            } else if (s.equalsIgnoreCase("--starts")
+                    || s.equalsIgnoreCase("-starts")) {
+                if (i == args.length - 1) {
+                    out.println("!!! WARNING (USAGE) - Argument missing for \""
+                            + s + "\".");
+                } else {
+                    setRelaxationStarts(Integer.parseInt(args[++i]));
+                }
+            } else if (s.equalsIgnoreCase("--gradient")
+                       || s.equalsIgnoreCase("-gradient")) {
+                setUseGradientRelaxation(true);
+            } else if (s.equalsIgnoreCase("--simplex")
+                       || s.equalsIgnoreCase("-simplex")) {
+                setUseGradientRelaxation(false);
             } else if (s.equalsIgnoreCase("--skipOutputTest")
                        || s.equalsIgnoreCase("-skipOutputTest")) {
                 setSkipOutputTest(true);
+            } else if (s.equalsIgnoreCase("--pointSymbols")
+                       || s.equalsIgnoreCase("-pointSymbols")) {
+                setComputePointSymbols(true);
+            } else if (s.equalsIgnoreCase("--noPointSymbols")
+                       || s.equalsIgnoreCase("-noPointSymbols")) {
+                setComputePointSymbols(false);
+            } else if (s.equals("-t")
+                    || s.equalsIgnoreCase("--threads")
+                    || s.equalsIgnoreCase("-threads")) {
+                if (i == args.length - 1) {
+                    out.println("!!! WARNING (USAGE) - Argument missing for \""
+                            + s + "\".");
+                } else {
+                    final String arg = args[++i];
+                    try {
+                        setNumberOfThreads(Integer.parseInt(arg));
+                    } catch (NumberFormatException ex) {
+                        out.println("!!! WARNING (USAGE) - Illegal argument \""
+                                + arg + "\" for \"" + s + "\".");
+                    }
+                }
             } else if (s.equalsIgnoreCase("--arcAsInput")
                     || s.equalsIgnoreCase("-arcAsInput")) {
                 archivesAsInput = true;
@@ -1285,6 +1520,22 @@ public class SystreCmdline extends EventSource {
 		this.relaxSteps = relaxSteps;
 	}
 
+	public int getRelaxationStarts() {
+		return this.relaxationStarts;
+	}
+
+	public void setRelaxationStarts(int relaxationStarts) {
+		this.relaxationStarts = Math.max(1, relaxationStarts);
+	}
+
+	public boolean getUseGradientRelaxation() {
+		return this.useGradientRelaxation;
+	}
+
+	public void setUseGradientRelaxation(boolean useGradient) {
+		this.useGradientRelaxation = useGradient;
+	}
+
     public boolean getSkipOutputTest() {
         return this.skipOutputTest;
     }
@@ -1301,6 +1552,14 @@ public class SystreCmdline extends EventSource {
         this.computePointSymbols = computePointSymbols;
     }
 
+    public int getNumberOfThreads() {
+        return this.numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
     public boolean getDuplicateIsError() {
 		return duplicateIsError;
 	}
@@ -1332,4 +1591,28 @@ public class SystreCmdline extends EventSource {
 	public void setOutputSystreKey(boolean outputSystreKey) {
 		this.outputSystreKey = outputSystreKey;
 	}
+
+	public boolean getPreferSecondOrigin() {
+		return this.preferSecondOrigin;
+	}
+
+	public void setPreferSecondOrigin(boolean preferSecondOrigin) {
+		this.preferSecondOrigin = preferSecondOrigin;
+	}
+
+	public boolean getPreferHexagonal() {
+		return this.preferHexagonal;
+	}
+
+	public void setPreferHexagonal(boolean preferHexagonal) {
+		this.preferHexagonal = preferHexagonal;
+	}
+
+	/**
+	 * @return the preferences to use for ambiguous space group names.
+	 */
+	public SpaceGroupCatalogue.Preferences getGroupPreferences() {
+		return new SpaceGroupCatalogue.Preferences(
+				this.preferSecondOrigin, this.preferHexagonal);
+	}
 }
@@ -48,7 +48,6 @@ import org.gavrog.box.simple.DataFormatException;
 import org.gavrog.box.simple.Misc;
 import org.gavrog.box.simple.TaskController;
 import org.gavrog.box.simple.TaskStoppedException;
-import org.gavrog.joss.geometry.SpaceGroupCatalogue;
 import org.gavrog.joss.pgraphs.embed.ProcessedNet;
 import org.gavrog.joss.pgraphs.io.Archive;
 import org.gavrog.joss.pgraphs.io.Net;
@@ -472,12 +471,12 @@ public class SystreGUI extends BFrame {
 			column.add(new BSeparator());
 			column.add(new OptionCheckBox(
 			        "Prefer Second Origin On Input",
-					SpaceGroupCatalogue.class, "preferSecondOrigin",
+					this.systre, "preferSecondOrigin",
 					"Tells Systre whether to use the first or second origin " +
 					"choice for space groups by default."));
 			column.add(new OptionCheckBox(
 			        "Prefer Hexagonal Setting On Input",
-					SpaceGroupCatalogue.class, "preferHexagonal",
+					this.systre, "preferHexagonal",
 					"Tells Systre whether to use the hexagonal or " +
 					"rhombohedral setting for rhombohedral space groups by " +
 					"default."));
@@ -513,6 +512,16 @@ public class SystreGUI extends BFrame {
 					this.systre, "relaxSteps",
 					"Use 10000 for most nets, higher values if Systre " +
 			        "reports bad angle or non-bonded distance values."));
+			column.add(new OptionInputBox(
+			        "Parallel Relaxation Starts",
+					this.systre, "relaxationStarts",
+					"Use 1 for most nets; higher values try perturbed " +
+					"starting points at once if relaxation fails."));
+            column.add(new OptionCheckBox(
+                    "Use Gradient-Based Relaxation",
+                    this.systre, "useGradientRelaxation",
+                    "Relaxes with analytic gradients instead of the simplex " +
+                    "method; usually much faster for large nets."));
             column.add(new OptionCheckBox(
                     "Skip output verification",
                     this.systre, "skipOutputTest",
@@ -734,7 +743,8 @@ public class SystreGUI extends BFrame {
         this.inputException = null;
 
         try {
-            this.netsToProcess = Net.iterator(filePath);
+            this.netsToProcess = Net.iterator(filePath,
+                    this.systre.getGroupPreferences());
         } catch (FileNotFoundException ex) {
             reportException(ex, "FILE", null, false);
             return false;
@@ -22,7 +22,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * 
+ * A cache holding its values through soft references. Lookups for values
+ * that were never stored or have since been reclaimed throw a
+ * {@link CacheMissException}. Instances may be used from several threads.
  */
 public class Cache<K, V> {
     final private Map<K, SoftReference<V>> content;
@@ -37,14 +39,14 @@ public class Cache<K, V> {
     /**
      * 
      */
-    public void clear() {
+    public synchronized void clear() {
         this.content.clear();
     }
 
     /**
      * @param key
      */
-    public V get(final K key) {
+    public synchronized V get(final K key) {
         final SoftReference<V> entry = content.get(key);
         if (entry != null) {
             final V result = entry.get();
@@ -59,7 +61,7 @@ public class Cache<K, V> {
      * @param key
      * @param value
      */
-    public V put(final K key, final V value) {
+    public synchronized V put(final K key, final V value) {
         this.content.put(key, new SoftReference<V>(value));
         return value;
     }
@@ -67,7 +69,7 @@ public class Cache<K, V> {
     /**
      * @param key
      */
-    public V remove(final K key) {
+    public synchronized V remove(final K key) {
         V value = null;
         try {
             value = this.get(key);
@@ -0,0 +1,153 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.box.collections;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive long keys to primitive int values, using open
+ * addressing with linear probing. Entries can not be removed individually, but
+ * the whole map can be cleared cheaply for reuse.
+ */
+public class LongIntHashMap {
+    final private int missing;
+    private long keys[];
+    private int values[];
+    private boolean used[];
+    private int size;
+    private int mask;
+
+    /**
+     * Constructs an instance.
+     *
+     * @param capacity the expected number of entries.
+     * @param missing the value returned for keys not in the map.
+     */
+    public LongIntHashMap(final int capacity, final int missing) {
+        this.missing = missing;
+        int n = 16;
+        while (n < 2 * capacity) {
+            n <<= 1;
+        }
+        allocate(n);
+    }
+
+    /**
+     * Constructs an instance which returns -1 for missing keys.
+     */
+    public LongIntHashMap() {
+        this(16, -1);
+    }
+
+    private void allocate(final int n) {
+        this.keys = new long[n];
+        this.values = new int[n];
+        this.used = new boolean[n];
+        this.mask = n - 1;
+        this.size = 0;
+    }
+
+    private int slot(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & this.mask;
+    }
+
+    /**
+     * Retrieves the value stored for a key.
+     *
+     * @param key the key.
+     * @return the value, or the designated missing value if none is stored.
+     */
+    public int get(final long key) {
+        int i = slot(key);
+        while (this.used[i]) {
+            if (this.keys[i] == key) {
+                return this.values[i];
+            }
+            i = (i + 1) & this.mask;
+        }
+        return this.missing;
+    }
+
+    /**
+     * Checks whether a value is stored for a key.
+     *
+     * @param key the key.
+     * @return true if the key is present.
+     */
+    public boolean containsKey(final long key) {
+        int i = slot(key);
+        while (this.used[i]) {
+            if (this.keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return false;
+    }
+
+    /**
+     * Stores a value for a key, replacing any previous value.
+     *
+     * @param key the key.
+     * @param value the new value.
+     */
+    public void put(final long key, final int value) {
+        if (2 * (this.size + 1) > this.keys.length) {
+            rehash();
+        }
+        int i = slot(key);
+        while (this.used[i]) {
+            if (this.keys[i] == key) {
+                this.values[i] = value;
+                return;
+            }
+            i = (i + 1) & this.mask;
+        }
+        this.used[i] = true;
+        this.keys[i] = key;
+        this.values[i] = value;
+        ++this.size;
+    }
+
+    private void rehash() {
+        final long oldKeys[] = this.keys;
+        final int oldValues[] = this.values;
+        final boolean oldUsed[] = this.used;
+        allocate(2 * oldKeys.length);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in this map.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all entries, keeping the allocated storage.
+     */
+    public void clear() {
+        Arrays.fill(this.used, false);
+        this.size = 0;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.box.collections;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe cache intended to be shared between clients. Values
+ * are held through soft references, so that the garbage collector can reclaim
+ * them when memory runs low, and at most a fixed number of entries are kept,
+ * evicting the least recently used ones first. Hits and misses are counted.
+ */
+public class SharedCache<K, V> {
+    final private int capacity;
+    final private Map<K, Entry<K, V>> content;
+    final private ReferenceQueue<V> cleared = new ReferenceQueue<V>();
+    private long hits = 0;
+    private long misses = 0;
+
+    private static class Entry<K, V> extends SoftReference<V> {
+        final private K key;
+
+        public Entry(final K key, final V value, final ReferenceQueue<V> q) {
+            super(value, q);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Constructs an instance.
+     *
+     * @param capacity the maximal number of entries kept.
+     */
+    @SuppressWarnings("serial")
+    public SharedCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.content = new LinkedHashMap<K, Entry<K, V>>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                    final Map.Entry<K, Entry<K, V>> eldest) {
+                return size() > SharedCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Removes the entries whose values have been reclaimed.
+     */
+    private void purge() {
+        Reference<? extends V> ref;
+        while ((ref = this.cleared.poll()) != null) {
+            final Entry<?, ?> entry = (Entry<?, ?>) ref;
+            if (this.content.get(entry.key) == entry) {
+                this.content.remove(entry.key);
+            }
+        }
+    }
+
+    /**
+     * @param key the key to look up.
+     * @return the value stored for the key.
+     * @throws CacheMissException if there is no value for the key.
+     */
+    public synchronized V get(final K key) {
+        purge();
+        final Entry<K, V> entry = this.content.get(key);
+        if (entry != null) {
+            final V result = entry.get();
+            if (result != null) {
+                ++this.hits;
+                return result;
+            }
+            this.content.remove(key);
+        }
+        ++this.misses;
+        throw new CacheMissException();
+    }
+
+    /**
+     * Stores a value unless the cache already holds one for the same key.
+     *
+     * @param key the key.
+     * @param value the value.
+     * @return the value now stored for the key.
+     */
+    public synchronized V put(final K key, final V value) {
+        purge();
+        final Entry<K, V> entry = this.content.get(key);
+        if (entry != null) {
+            final V old = entry.get();
+            if (old != null) {
+                return old;
+            }
+        }
+        this.content.put(key, new Entry<K, V>(key, value, this.cleared));
+        return value;
+    }
+
+    /**
+     * @param key the key of the entry to remove.
+     */
+    public synchronized void remove(final K key) {
+        purge();
+        this.content.remove(key);
+    }
+
+    /**
+     * Removes all entries and resets the statistics.
+     */
+    public synchronized void clear() {
+        purge();
+        this.content.clear();
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * @return the maximal number of entries kept.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return the current number of entries.
+     */
+    public synchronized int size() {
+        purge();
+        return this.content.size();
+    }
+
+    /**
+     * @return the number of successful lookups so far.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of failed lookups so far.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return the fraction of successful lookups, or 0 if there were none.
+     */
+    public synchronized double getHitRate() {
+        final long total = this.hits + this.misses;
+        return total == 0 ? 0.0 : (double) this.hits / total;
+    }
+
+    public synchronized String toString() {
+        return String.format("SharedCache(%d/%d entries, %d hits, %d misses)",
+                this.content.size(), this.capacity, this.hits, this.misses);
+    }
+}
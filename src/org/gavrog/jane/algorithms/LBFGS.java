@@ -0,0 +1,300 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.algorithms;
+
+/**
+ * Implements the limited memory BFGS method for multidimensional function
+ * minimization with a backtracking line search, as described in Nocedal and
+ * Wright, "Numerical Optimization". The function to minimize must provide its
+ * gradient.
+ */
+public class LBFGS {
+    final static double TINY = 1e-10;
+    final static double ARMIJO = 1e-4;
+    final static boolean DEBUG = false;
+
+    public static interface Function {
+        /**
+         * Evaluates the function and its gradient at the given point.
+         *
+         * @param p the point to evaluate the function at.
+         * @param gradient an array to store the gradient in.
+         * @return the function value.
+         */
+        public double evaluate(final double p[], final double gradient[]);
+        public int dim();
+    }
+
+    final private Function f;
+    private double tolerance;
+    private int maxSteps;
+    private int memory;
+
+    final private int dim;
+    int steps;
+
+    /**
+     * Constructs an instance, setting all the options.
+     *
+     * @param f the function to minimize.
+     * @param tolerance when to consider function values too close to continue.
+     * @param maxSteps maximal number of function evaluations.
+     * @param memory the number of correction pairs to keep.
+     */
+    public LBFGS(final Function f, final double tolerance, final int maxSteps,
+            final int memory) {
+        this.f = f;
+        this.tolerance = tolerance;
+        this.maxSteps = maxSteps;
+        this.memory = memory;
+
+        this.dim = f.dim();
+    }
+
+    /**
+     * Constructs an instance, using defaults for most options.
+     *
+     * @param f the function to minimize.
+     */
+    public LBFGS(final Function f) {
+        this(f, 1e-6, 1000, 8);
+    }
+
+    /**
+     * Performs the minimization. Only the first {@link Function#dim()}
+     * coordinates of the starting point are varied.
+     *
+     * @param p the starting point to evaluate function at.
+     * @return the point at which a minimum was found.
+     */
+    public double[] go(final double p[]) {
+        final int n = this.dim;
+        final int m = Math.max(1, this.memory);
+        final double S[][] = new double[m][n];
+        final double Y[][] = new double[m][n];
+        final double rho[] = new double[m];
+        final double alpha[] = new double[m];
+        int count = 0;
+        int head = 0;
+
+        double x[] = new double[n];
+        System.arraycopy(p, 0, x, 0, n);
+        double g[] = new double[n];
+        double x1[] = new double[n];
+        double g1[] = new double[n];
+        final double d[] = new double[n];
+
+        this.steps = 0;
+        double fx = eval(x, g);
+
+        while (this.steps < this.maxSteps) {
+            final double gnorm = Math.sqrt(dot(g, g));
+            if (gnorm < TINY * Math.max(1.0, Math.sqrt(dot(x, x)))) {
+                break;
+            }
+
+            // --- compute the search direction by the two-loop recursion
+            for (int i = 0; i < n; ++i) {
+                d[i] = -g[i];
+            }
+            for (int k = 0; k < count; ++k) {
+                final int j = (head - 1 - k + m) % m;
+                alpha[j] = rho[j] * dot(S[j], d);
+                axpy(-alpha[j], Y[j], d);
+            }
+            if (count > 0) {
+                final int j = (head - 1 + m) % m;
+                final double gamma = 1.0 / (rho[j] * dot(Y[j], Y[j]));
+                for (int i = 0; i < n; ++i) {
+                    d[i] *= gamma;
+                }
+            }
+            for (int k = count - 1; k >= 0; --k) {
+                final int j = (head - 1 - k + m) % m;
+                final double beta = rho[j] * dot(Y[j], d);
+                axpy(alpha[j] - beta, S[j], d);
+            }
+
+            double slope = dot(g, d);
+            if (!(slope < 0)) {
+                // --- not a descent direction; forget the history
+                count = 0;
+                for (int i = 0; i < n; ++i) {
+                    d[i] = -g[i];
+                }
+                slope = -gnorm * gnorm;
+            }
+
+            // --- backtracking line search
+            double step = count > 0 ? 1.0 : Math.min(1.0, 1.0 / gnorm);
+            double fx1 = Double.MAX_VALUE;
+            boolean found = false;
+            while (this.steps < this.maxSteps) {
+                for (int i = 0; i < n; ++i) {
+                    x1[i] = x[i] + step * d[i];
+                }
+                fx1 = eval(x1, g1);
+                if (fx1 <= fx + ARMIJO * step * slope) {
+                    found = true;
+                    break;
+                }
+                step *= 0.5;
+                if (step * gnorm < TINY) {
+                    break;
+                }
+            }
+
+            if (!found) {
+                if (count > 0 && this.steps < this.maxSteps) {
+                    if (DEBUG) {
+                        System.out.println("LBFGS: restarting at E = " + fx);
+                    }
+                    count = 0;
+                    continue;
+                }
+                break;
+            }
+
+            // --- update the correction pairs
+            double sy = 0.0;
+            double yy = 0.0;
+            for (int i = 0; i < n; ++i) {
+                final double yi = g1[i] - g[i];
+                sy += (x1[i] - x[i]) * yi;
+                yy += yi * yi;
+            }
+            if (sy > TINY * yy) {
+                final double sk[] = S[head];
+                final double yk[] = Y[head];
+                for (int i = 0; i < n; ++i) {
+                    sk[i] = x1[i] - x[i];
+                    yk[i] = g1[i] - g[i];
+                }
+                rho[head] = 1.0 / sy;
+                head = (head + 1) % m;
+                count = Math.min(count + 1, m);
+            }
+
+            // --- accept the new point
+            final double fold = fx;
+            double tmp[] = x;
+            x = x1;
+            x1 = tmp;
+            tmp = g;
+            g = g1;
+            g1 = tmp;
+            fx = fx1;
+            if (DEBUG) {
+                System.out.println("LBFGS: E = " + fx + " after " + this.steps
+                        + " evaluations");
+            }
+
+            if (2 * Math.abs(fold - fx) < this.tolerance
+                    * (Math.abs(fold) + Math.abs(fx) + TINY)) {
+                break;
+            }
+        }
+
+        final double result[] = p.clone();
+        System.arraycopy(x, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * Evaluates the function, mapping undefined values to the largest
+     * possible one.
+     */
+    private double eval(final double x[], final double g[]) {
+        ++this.steps;
+        final double val = this.f.evaluate(x, g);
+        if (Double.isNaN(val)) {
+            return Double.MAX_VALUE;
+        } else {
+            return val;
+        }
+    }
+
+    private static double dot(final double a[], final double b[]) {
+        double s = 0.0;
+        for (int i = 0; i < a.length; ++i) {
+            s += a[i] * b[i];
+        }
+        return s;
+    }
+
+    private static void axpy(final double a, final double x[],
+            final double y[]) {
+        for (int i = 0; i < x.length; ++i) {
+            y[i] += a * x[i];
+        }
+    }
+
+    /**
+     * @return the number of function evaluations in the last run.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the current value of maxSteps.
+     */
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Sets the value of maxSteps.
+     *
+     * @param maxSteps the new value of maxSteps.
+     */
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * @return the current value of memory.
+     */
+    public int getMemory() {
+        return memory;
+    }
+
+    /**
+     * Sets the value of memory.
+     *
+     * @param memory the new value of memory.
+     */
+    public void setMemory(int memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * @return the current value of tolerance.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the value of tolerance.
+     *
+     * @param tolerance the new value of tolerance.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+}
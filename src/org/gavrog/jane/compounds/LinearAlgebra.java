@@ -252,6 +252,14 @@ public class LinearAlgebra {
         final int m = A.numberOfColumns();
         final int k = b.numberOfColumns();
         
+        // --- larger integral systems are best solved by modular methods
+        if (!modZ) {
+            final Matrix fast = ModularSolver.solveIfIntegral(A, b);
+            if (fast != null) {
+                return fast;
+            }
+        }
+        
         // --- compute the Smith normal form
         final Matrix snf[] = smithNormalForm(A, modZ);
         final Matrix P = snf[0];
@@ -694,6 +694,12 @@ public class Matrix extends ArithmeticBase {
             throw new IllegalArgumentException("matrix shapes don't match");
         }
         
+        // --- larger integral systems are best solved by modular methods
+        final Matrix fast = ModularSolver.solveIfIntegral(A, b);
+        if (fast != null) {
+            return fast;
+        }
+        
         // --- get the matrix dimensions
         final int n = A.numberOfRows();
         final int m = A.numberOfColumns();
@@ -17,15 +17,57 @@
 package org.gavrog.jane.compounds;
 
 import java.lang.ArithmeticException;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.gavrog.box.simple.TaskController;
+import org.gavrog.jane.numbers.Fraction;
+import org.gavrog.jane.numbers.IArithmetic;
 import org.gavrog.jane.numbers.Rational;
 import org.gavrog.jane.numbers.Whole;
 
 
 public class ModularSolver {
 
+    // --- the primes to use, in order of preference
+    final static int PRIMES[] = {
+        0x7fffffff, 2147483629, 2147483587, 2147483579, 2147483563
+    };
+
+    // --- systems with fewer rows than this are always solved sequentially
+    final static int PARALLEL_THRESHOLD = 64;
+
+    // --- smaller systems are not worth passing to solveIfIntegral()
+    final static int INTEGRAL_THRESHOLD = 12;
+
+    private static volatile int numberOfThreads = 1;
+
+
+    /**
+     * @return the number of threads used by default.
+     */
+    public static int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+
+    /**
+     * Sets the number of threads to use by default for large systems.
+     *
+     * @param n the new value, at least 1.
+     */
+    public static void setNumberOfThreads(final int n) {
+        numberOfThreads = Math.max(1, n);
+    }
+
+
     public static int modularInverse(final int a, final int m) {
         int t = 0;
         int t1 = 1;
@@ -57,6 +99,13 @@ public class ModularSolver {
 
     public static void modularRowEchelonFormInPlace
         (final int[][] A, final int m)
+    {
+        modularRowEchelonFormInPlace(A, m, null);
+    }
+
+
+    public static void modularRowEchelonFormInPlace
+        (final int[][] A, final int m, final ExecutorService pool)
     {
         // --- used for answering external cancel request
         final TaskController controller = TaskController.getInstance();
@@ -87,18 +136,27 @@ public class ModularSolver {
             for (int j = col; j < ncols; ++j)
                 A[row][j] = (int) ((A[row][j] * f) % m);
 
-            for (int i = 0; i < nrows; ++i) {
-                if (i == row || A[i][col] == 0)
-                    continue;
-
-                final long g = A[i][col];
-                for (int j = col; j < ncols; ++j) {
-                    if (A[row][j] != 0) {
-                        A[i][j] = (int)
-                            ((m - (A[row][j] * g) % m + A[i][j]) % m);
+            final int pivotRow = row;
+            final int pivotCol = col;
+
+            forRange(pool, nrows, new RangeTask() {
+                public void run(final int from, final int to) {
+                    final int[] P = A[pivotRow];
+                    for (int i = from; i < to; ++i) {
+                        if (i == pivotRow || A[i][pivotCol] == 0)
+                            continue;
+
+                        final int[] Ai = A[i];
+                        final long g = Ai[pivotCol];
+                        for (int j = pivotCol; j < ncols; ++j) {
+                            if (P[j] != 0) {
+                                Ai[j] = (int)
+                                    ((m - (P[j] * g) % m + Ai[j]) % m);
+                            }
+                        }
                     }
                 }
-            }
+            });
 
             ++row;
         }
@@ -120,6 +178,13 @@ public class ModularSolver {
 
 
     public static int[][] modularMatrixInverse(final int[][] M, final int m) {
+        return modularMatrixInverse(M, m, null);
+    }
+
+
+    public static int[][] modularMatrixInverse(final int[][] M, final int m,
+                                               final ExecutorService pool)
+    {
         final int n = M.length;
 
         if (M[0].length != n)
@@ -128,12 +193,12 @@ public class ModularSolver {
         final int A[][] = new int[n][n+n];
         for (int i = 0; i < n; ++i) {
             for (int j = 0; j < n; ++j) {
-                A[i][j] = M[i][j];
+                A[i][j] = (int) (((long) M[i][j] % m + m) % m);
             }
             A[i][n + i] = 1;
         }
 
-        modularRowEchelonFormInPlace(A, m);
+        modularRowEchelonFormInPlace(A, m, pool);
 
         for (int i = 0; i < n; ++i)
             if (A[i][i] != 1)
@@ -264,98 +329,542 @@ public class ModularSolver {
     }
 
 
-    private static Rational toRational(final Whole s, final Whole h) {
-        Whole u0 = h;
-        Whole u1 = s;
-        Whole v0 = Whole.ZERO;
-        Whole v1 = Whole.ONE;
+    /**
+     * Computes a rational number x/y with x*y^(-1) = s modulo h and x^2 at
+     * most h. In strict mode, both x^2 and y^2 must be at most h/2.
+     *
+     * @return the numerator and denominator, or null if none exist.
+     */
+    private static BigInteger[] reconstruct(final BigInteger s,
+                                            final BigInteger h,
+                                            final boolean strict)
+    {
+        final BigInteger bound = strict ? h.shiftRight(1) : h;
+        BigInteger u0 = h;
+        BigInteger u1 = s;
+        BigInteger v0 = BigInteger.ZERO;
+        BigInteger v1 = BigInteger.ONE;
         int sign = 1;
 
-        while (u1.times(u1).compareTo(h) > 0) {
-            final Whole q = (Whole) u0.div(u1);
-            final Whole r = (Whole) u0.minus(q.times(u1));
-            final Whole t = (Whole) v0.plus(q.times(v1));
+        while (u1.multiply(u1).compareTo(bound) > 0) {
+            final BigInteger qr[] = u0.divideAndRemainder(u1);
+            final BigInteger t = v0.add(qr[0].multiply(v1));
 
             u0 = u1;
-            u1 = r;
+            u1 = qr[1];
             v0 = v1;
             v1 = t;
 
             sign = -sign;
         }
 
-        return (Rational) u1.times(sign).dividedBy(v1);
+        if (strict && v1.multiply(v1).compareTo(bound) > 0)
+            return null;
+
+        final BigInteger g = u1.gcd(v1);
+        if (!g.equals(BigInteger.ONE)) {
+            u1 = u1.divide(g);
+            v1 = v1.divide(g);
+        }
+        return new BigInteger[] { sign > 0 ? u1 : u1.negate(), v1 };
     }
 
 
-    public static Matrix
-        solve(final int[][] A, final int[][] b, final int p)
+    /**
+     * A piece of work that can be split into independent index ranges.
+     */
+    static interface RangeTask {
+        void run(int from, int to);
+    }
+
+
+    /**
+     * Runs a task over the index range from 0 to n-1, split into blocks which
+     * are processed in parallel if a thread pool is given.
+     */
+    static void forRange(final ExecutorService pool, final int n,
+                         final RangeTask task)
     {
-        final TaskController controller = TaskController.getInstance();
+        if (pool == null || n < 2) {
+            task.run(0, n);
+            return;
+        }
 
-        final int n = A.length;
-        final int m = b[0].length;
+        final int nrBlocks = Math.min(n, 4 * numberOfThreads(pool));
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int k = 0; k < nrBlocks; ++k) {
+            final int from = (int) ((long) n * k / nrBlocks);
+            final int to = (int) ((long) n * (k + 1) / nrBlocks);
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    task.run(from, to);
+                }
+            }));
+        }
 
-        if (A[0].length != n)
-            throw new ArithmeticException("matrix must be quadratic");
+        try {
+            for (final Future<?> f: futures)
+                f.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else
+                throw new RuntimeException(cause);
+        }
+    }
 
-        if (b.length != n)
-            throw new ArithmeticException("numbers of rows must be equal");
 
-        final int[][] C = modularMatrixInverse(A, p);
-        final int nrSteps = pAdicStepsNeeded(A, b, p);
+    private static int numberOfThreads(final ExecutorService pool) {
+        if (pool instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) pool).getMaximumPoolSize();
+        else
+            return 1;
+    }
 
-        Whole pi = Whole.ONE;
 
-        final int[][] bi = new int[n][m];
-        for (int i = 0; i < n; ++i)
-            for (int j = 0; j < m; ++j)
-                bi[i][j] = b[i][j];
+    /**
+     * Creates a thread pool for the given number of threads, or returns null
+     * if the work should be done in the calling thread.
+     */
+    static ExecutorService newPool(final int nrThreads, final int size) {
+        if (nrThreads > 1 && size >= PARALLEL_THRESHOLD)
+            return Executors.newFixedThreadPool(nrThreads);
+        else
+            return null;
+    }
+
+
+    /**
+     * The operations on a linear system A x = b needed for p-adic lifting.
+     */
+    static abstract class Lifter {
+        final int n;
+        final int p;
+
+        Lifter(final int n, final int p) {
+            this.n = n;
+            this.p = p;
+        }
+
+        /**
+         * Sets x to the solution of A x = r modulo p.
+         */
+        abstract void solveModular(long[][] r, int[][] x, ExecutorService pool);
+
+        /**
+         * Replaces r by (r - A x) / p, which must be exact.
+         */
+        abstract void reduce(long[][] r, int[][] x, ExecutorService pool);
+
+        /**
+         * Checks whether A X = D b holds exactly.
+         */
+        abstract boolean verify(BigInteger[][] X, BigInteger D, int[][] b,
+                                ExecutorService pool);
+    }
+
+
+    private static class DenseLifter extends Lifter {
+        final int[][] A;
+        final int[][] C;
+        final boolean smallEntries;
+
+        DenseLifter(final int[][] A, final int[][] C, final int p) {
+            super(A.length, p);
+            this.A = A;
+            this.C = C;
+
+            long maxRowSum = 0;
+            for (int i = 0; i < this.n; ++i) {
+                long s = 0;
+                for (int j = 0; j < this.n; ++j)
+                    s += Math.abs((long) A[i][j]);
+                maxRowSum = Math.max(maxRowSum, s);
+            }
+            this.smallEntries = maxRowSum <= Integer.MAX_VALUE;
+        }
+
+        void solveModular(final long[][] r, final int[][] x,
+                          final ExecutorService pool)
+        {
+            final int n = this.n;
+            final int m = r[0].length;
+            final int p = this.p;
+
+            final int[][] rp = new int[m][n];
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < m; ++j) {
+                    final long t = r[i][j] % p;
+                    rp[j][i] = (int) (t < 0 ? t + p : t);
+                }
+            }
+
+            forRange(pool, n, new RangeTask() {
+                public void run(final int from, final int to) {
+                    for (int i = from; i < to; ++i) {
+                        final int[] Ci = C[i];
+                        for (int j = 0; j < m; ++j) {
+                            final int[] rj = rp[j];
+                            long s = 0;
+                            for (int k = 0; k < n; ++k)
+                                s = (s + (long) Ci[k] * rj[k]) % p;
+                            x[i][j] = (int) s;
+                        }
+                    }
+                }
+            });
+        }
+
+        void reduce(final long[][] r, final int[][] x,
+                    final ExecutorService pool)
+        {
+            final int n = this.n;
+            final int m = r[0].length;
+            final long p = this.p;
+
+            forRange(pool, n, new RangeTask() {
+                public void run(final int from, final int to) {
+                    for (int i = from; i < to; ++i) {
+                        final int[] Ai = A[i];
+                        for (int j = 0; j < m; ++j) {
+                            if (smallEntries) {
+                                long s = r[i][j];
+                                for (int k = 0; k < n; ++k)
+                                    s -= (long) Ai[k] * x[k][j];
+                                r[i][j] = s / p;
+                            } else {
+                                BigInteger s = BigInteger.valueOf(r[i][j]);
+                                for (int k = 0; k < n; ++k)
+                                    s = s.subtract(BigInteger.valueOf(
+                                            (long) Ai[k] * x[k][j]));
+                                r[i][j] = s.divide(BigInteger.valueOf(p))
+                                    .longValue();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        boolean verify(final BigInteger[][] X, final BigInteger D,
+                       final int[][] b, final ExecutorService pool)
+        {
+            final int n = this.n;
+            final int m = b[0].length;
+            final boolean ok[] = new boolean[] { true };
+
+            forRange(pool, n, new RangeTask() {
+                public void run(final int from, final int to) {
+                    for (int i = from; i < to && ok[0]; ++i) {
+                        for (int j = 0; j < m; ++j) {
+                            BigInteger s = D.multiply(BigInteger.valueOf(b[i][j]));
+                            for (int k = 0; k < n; ++k) {
+                                if (A[i][k] != 0)
+                                    s = s.subtract(X[k][j].multiply(
+                                            BigInteger.valueOf(A[i][k])));
+                            }
+                            if (s.signum() != 0) {
+                                ok[0] = false;
+                                return;
+                            }
+                        }
+                    }
+                }
+            });
+            return ok[0];
+        }
+    }
 
-        final int[][] xi = new int[n][m];
-        final Whole[][] Axi = new Whole[n][m];
 
-        final Whole[][] si = new Whole[n][m];
+    /**
+     * Computes the solution of a linear system by p-adic lifting, stopping
+     * as soon as the rational reconstruction of the partial result solves
+     * the system.
+     *
+     * @param L the system to solve.
+     * @param b the right hand side.
+     * @param nrSteps the number of steps which guarantee a correct result.
+     * @param pool thread pool to use or null.
+     * @return the solution matrix.
+     */
+    static Matrix lift(final Lifter L, final int[][] b, final int nrSteps,
+                       final ExecutorService pool)
+    {
+        final TaskController controller = TaskController.getInstance();
+
+        final int n = L.n;
+        final int m = b[0].length;
+        final BigInteger p = BigInteger.valueOf(L.p);
+
+        final long[][] r = new long[n][m];
         for (int i = 0; i < n; ++i)
             for (int j = 0; j < m; ++j)
-                si[i][j] = Whole.ZERO;
+                r[i][j] = b[i][j];
+
+        final int[][] x = new int[n][m];
+        final int[][][] digits = new int[n][m][nrSteps];
+        int checkpoint = 1;
 
         for (int k = 0; k < nrSteps; ++k) {
-            modularMatrixProduct(C, bi, xi, p);
+            controller.bailOutIfCancelled();
 
+            L.solveModular(r, x, pool);
             for (int i = 0; i < n; ++i)
                 for (int j = 0; j < m; ++j)
-                    si[i][j] = (Whole) si[i][j].plus(pi.times(xi[i][j]));
+                    digits[i][j][k] = x[i][j];
+
+            if (k == nrSteps - 1 || k + 1 == checkpoint) {
+                final Matrix result =
+                    reconstructAndVerify(L, b, digits, k + 1, p, pool,
+                                         k == nrSteps - 1);
+                if (result != null)
+                    return result;
+                checkpoint *= 2;
+            }
+
+            L.reduce(r, x, pool);
+        }
 
-            pi = (Whole) pi.times(p);
+        throw new RuntimeException("internal error - please contact author");
+    }
+
+
+    private static Matrix
+        reconstructAndVerify(final Lifter L, final int[][] b,
+                             final int[][][] digits, final int nrDigits,
+                             final BigInteger p, final ExecutorService pool,
+                             final boolean last)
+    {
+        final int n = L.n;
+        final int m = b[0].length;
 
-            if (k < nrSteps - 1) {
-                integerMatrixProduct(A, xi, Axi);
+        final List<BigInteger> powers = new ArrayList<BigInteger>();
+        powers.add(BigInteger.ONE);
+        powers.add(p);
+        final BigInteger h = power(p, nrDigits, powers);
 
-                for (int i = 0; i < n; ++i) {
+        final BigInteger[][] num = new BigInteger[n][m];
+        final BigInteger[][] den = new BigInteger[n][m];
+        final boolean ok[] = new boolean[] { true };
+
+        forRange(pool, n, new RangeTask() {
+            public void run(final int from, final int to) {
+                for (int i = from; i < to && ok[0]; ++i) {
                     for (int j = 0; j < m; ++j) {
-                        final Whole t = new Whole(bi[i][j]);
-                        final Whole d = (Whole) t.minus(Axi[i][j]);
-                        bi[i][j] = ((Whole) d.div(p)).intValue();
+                        final BigInteger s =
+                            combine(digits[i][j], 0, nrDigits, p, powers);
+                        final BigInteger q[] = reconstruct(s, h, !last);
+                        if (q == null) {
+                            ok[0] = false;
+                            return;
+                        }
+                        num[i][j] = q[0];
+                        den[i][j] = q[1];
                     }
                 }
             }
+        });
+
+        if (!ok[0]) {
+            if (last)
+                throw new RuntimeException(
+                    "internal error - please contact author");
+            return null;
+        }
+
+        if (!last) {
+            BigInteger D = BigInteger.ONE;
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < m; ++j) {
+                    final BigInteger d = den[i][j];
+                    if (!D.mod(d).equals(BigInteger.ZERO))
+                        D = D.multiply(d).divide(D.gcd(d));
+                }
+            }
+
+            final BigInteger[][] X = new BigInteger[n][m];
+            for (int i = 0; i < n; ++i)
+                for (int j = 0; j < m; ++j)
+                    X[i][j] = num[i][j].multiply(D.divide(den[i][j]));
+
+            if (!L.verify(X, D, b, pool))
+                return null;
         }
 
         final Rational[][] R = new Rational[n][m];
         for (int i = 0; i < n; ++i) {
-            controller.bailOutIfCancelled();
-
-            for (int j = 0; j < m; ++j)
-                R[i][j] = toRational(si[i][j], pi);
+            for (int j = 0; j < m; ++j) {
+                final Whole a = new Whole(num[i][j]);
+                if (den[i][j].equals(BigInteger.ONE))
+                    R[i][j] = a;
+                else
+                    R[i][j] = new Fraction(a, new Whole(den[i][j]), false);
+            }
         }
 
         return new Matrix(R);
     }
 
 
+    private static BigInteger
+        power(final BigInteger p, final int k, final List<BigInteger> cache)
+    {
+        synchronized (cache) {
+            while (cache.size() <= k)
+                cache.add(null);
+            BigInteger result = cache.get(k);
+            if (result == null) {
+                result = p.pow(k);
+                cache.set(k, result);
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * Computes the sum of digits[k] * p^(k-lo) for lo <= k < hi by splitting
+     * the range in halves, which is much faster than Horner's rule for long
+     * digit sequences.
+     */
+    private static BigInteger combine(final int[] digits,
+                                      final int lo, final int hi,
+                                      final BigInteger p,
+                                      final List<BigInteger> powers)
+    {
+        if (hi - lo == 1)
+            return BigInteger.valueOf(digits[lo]);
+        else if (hi - lo == 2)
+            return BigInteger.valueOf(digits[lo + 1]).multiply(p)
+                .add(BigInteger.valueOf(digits[lo]));
+
+        final int mid = (lo + hi) / 2;
+        final BigInteger low = combine(digits, lo, mid, p, powers);
+        final BigInteger high = combine(digits, mid, hi, p, powers);
+        return high.multiply(power(p, mid - lo, powers)).add(low);
+    }
+
+
+    public static Matrix
+        solve(final int[][] A, final int[][] b, final int p, final int nrThreads)
+    {
+        final int n = A.length;
+
+        if (A[0].length != n)
+            throw new ArithmeticException("matrix must be quadratic");
+
+        if (b.length != n)
+            throw new ArithmeticException("numbers of rows must be equal");
+
+        final ExecutorService pool = newPool(nrThreads, n);
+        try {
+            final int[][] C = modularMatrixInverse(A, p, pool);
+            final int nrSteps = pAdicStepsNeeded(A, b, p);
+
+            return lift(new DenseLifter(A, C, p), b, nrSteps, pool);
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+    }
+
+
+    public static Matrix
+        solve(final int[][] A, final int[][] b, final int p)
+    {
+        return solve(A, b, p, getNumberOfThreads());
+    }
+
+
+    /**
+     * Solves the system A x = b exactly, trying several primes in turn if A
+     * is singular modulo some of them.
+     *
+     * @param A a nonsingular square integer matrix.
+     * @param b the right hand side.
+     * @return the rational solution matrix.
+     * @throws ArithmeticException if A is singular.
+     */
     public static Matrix solve(final int[][] A, final int[][] b)
     {
-        return solve(A, b, 0x7fffffff);
+        ArithmeticException failure = null;
+
+        for (final int p: PRIMES) {
+            try {
+                return solve(A, b, p);
+            } catch (ArithmeticException ex) {
+                if (A.length == 0 || A[0].length != A.length
+                    || b.length != A.length)
+                    throw ex;
+                failure = ex;
+            }
+        }
+
+        throw failure;
+    }
+
+
+    /**
+     * Converts a matrix with integral entries into an array of ints.
+     *
+     * @param M the input matrix.
+     * @return the array of entries, or null if some do not fit.
+     */
+    public static int[][] toIntArray(final Matrix M)
+    {
+        final int n = M.numberOfRows();
+        final int m = M.numberOfColumns();
+        final int[][] result = new int[n][m];
+        final Whole min = new Whole(Integer.MIN_VALUE);
+        final Whole max = new Whole(Integer.MAX_VALUE);
+
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < m; ++j) {
+                final IArithmetic x = M.get(i, j);
+                if (!(x instanceof Whole))
+                    return null;
+                final Whole v = (Whole) x;
+                if (v.compareTo(min) < 0 || v.compareTo(max) > 0)
+                    return null;
+                result[i][j] = v.intValue();
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Solves a linear system A x = b with a square integral matrix A and an
+     * integral right hand side, if A is large enough for this to pay off and
+     * nonsingular modulo the first prime.
+     *
+     * @param A the left side.
+     * @param b the right side.
+     * @return the solution, or null if this method is not applicable.
+     */
+    public static Matrix solveIfIntegral(final Matrix A, final Matrix b)
+    {
+        final int n = A.numberOfRows();
+        if (n < INTEGRAL_THRESHOLD || A.numberOfColumns() != n
+            || b.numberOfRows() != n || b.numberOfColumns() == 0)
+            return null;
+
+        final int[][] a = toIntArray(A);
+        if (a == null)
+            return null;
+        final int[][] c = toIntArray(b);
+        if (c == null)
+            return null;
+
+        try {
+            return solve(a, c, PRIMES[0]);
+        } catch (ArithmeticException ex) {
+            return null;
+        }
     }
 }
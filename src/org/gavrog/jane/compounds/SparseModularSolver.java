@@ -0,0 +1,551 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.compounds;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+
+import org.gavrog.box.simple.TaskController;
+
+/**
+ * Solves linear systems with sparse integer coefficient matrices exactly,
+ * using p-adic lifting on top of a sparse LU factorization modulo a prime.
+ *
+ * Rows are given as parallel arrays of column indices and values. The
+ * factorization uses a minimum degree ordering to limit fill, and pivots on
+ * the diagonal of the reordered matrix. If a pivot vanishes modulo the chosen
+ * prime, a different prime is tried. The static method
+ * {@link #solve(int[][], int[][], int[][])} falls back to the dense
+ * {@link ModularSolver} for small or dense inputs and if no prime works.
+ */
+public class SparseModularSolver {
+    // --- inputs with fewer rows than this are handed to the dense solver
+    final public static int SPARSE_THRESHOLD = 100;
+
+    final private int n;
+    final private int p;
+    final private int cols[][];
+    final private int vals[][];
+    final private boolean smallEntries;
+
+    // --- the factorization, in terms of reordered indices
+    final private int perm[];
+    final private int invPerm[];
+    final private int lCols[][];
+    final private int lVals[][];
+    final private int uCols[][];
+    final private int uVals[][];
+    final private int diagInv[];
+
+    /**
+     * Constructs an instance by factoring a matrix modulo a prime.
+     *
+     * @param cols for each row, the column indices of its nonzero entries.
+     * @param vals for each row, the values of its nonzero entries.
+     * @param p the prime to use.
+     * @throws ArithmeticException if the matrix is singular modulo p for the
+     *             chosen elimination order.
+     */
+    public SparseModularSolver(final int cols[][], final int vals[][],
+            final int p) {
+        this.n = cols.length;
+        this.p = p;
+        this.cols = cols;
+        this.vals = vals;
+
+        long maxRowSum = 0;
+        for (int i = 0; i < this.n; ++i) {
+            long s = 0;
+            for (final int a: vals[i]) {
+                s += Math.abs((long) a);
+            }
+            maxRowSum = Math.max(maxRowSum, s);
+        }
+        this.smallEntries = maxRowSum <= Integer.MAX_VALUE;
+
+        this.perm = minimumDegreeOrder(cols);
+        this.invPerm = new int[this.n];
+        for (int i = 0; i < this.n; ++i) {
+            this.invPerm[this.perm[i]] = i;
+        }
+
+        this.lCols = new int[this.n][];
+        this.lVals = new int[this.n][];
+        this.uCols = new int[this.n][];
+        this.uVals = new int[this.n][];
+        this.diagInv = new int[this.n];
+        factor();
+    }
+
+    /**
+     * Computes a minimum degree elimination order for the symmetrized
+     * sparsity pattern of a matrix.
+     *
+     * @param cols for each row, the column indices of its nonzero entries.
+     * @return the elimination order as a list of row indices.
+     */
+    public static int[] minimumDegreeOrder(final int cols[][]) {
+        final int n = cols.length;
+
+        final List<Set<Integer>> adj = new ArrayList<Set<Integer>>(n);
+        for (int i = 0; i < n; ++i) {
+            adj.add(new HashSet<Integer>());
+        }
+        for (int i = 0; i < n; ++i) {
+            for (final int j: cols[i]) {
+                if (i != j) {
+                    adj.get(i).add(j);
+                    adj.get(j).add(i);
+                }
+            }
+        }
+
+        final TreeSet<Long> byDegree = new TreeSet<Long>();
+        for (int i = 0; i < n; ++i) {
+            byDegree.add(key(adj.get(i).size(), i));
+        }
+
+        final int order[] = new int[n];
+        for (int k = 0; k < n; ++k) {
+            final int v = (int) (byDegree.pollFirst() & 0xffffffffL);
+            order[k] = v;
+
+            final Integer nbrs[] = adj.get(v).toArray(new Integer[0]);
+            for (final int u: nbrs) {
+                byDegree.remove(key(adj.get(u).size(), u));
+                adj.get(u).remove(v);
+            }
+            for (int a = 0; a < nbrs.length; ++a) {
+                for (int b = a + 1; b < nbrs.length; ++b) {
+                    adj.get(nbrs[a]).add(nbrs[b]);
+                    adj.get(nbrs[b]).add(nbrs[a]);
+                }
+            }
+            for (final int u: nbrs) {
+                byDegree.add(key(adj.get(u).size(), u));
+            }
+            adj.set(v, null);
+        }
+        return order;
+    }
+
+    private static long key(final int degree, final int node) {
+        return ((long) degree << 32) | node;
+    }
+
+    private int mod(final long x) {
+        final long r = x % this.p;
+        return (int) (r < 0 ? r + this.p : r);
+    }
+
+    /**
+     * Computes the LU factorization row by row, eliminating entries to the
+     * left of the diagonal in increasing order with the help of a heap.
+     */
+    private void factor() {
+        final TaskController controller = TaskController.getInstance();
+        final int n = this.n;
+        final long work[] = new long[n];
+        final boolean mark[] = new boolean[n];
+        final int heap[] = new int[n];
+        final int upper[] = new int[n];
+        final int lower[] = new int[n];
+        final int lowerVals[] = new int[n];
+
+        for (int i = 0; i < n; ++i) {
+            controller.bailOutIfCancelled();
+
+            int heapSize = 0;
+            int nUpper = 0;
+            int nLower = 0;
+
+            final int row = this.perm[i];
+            for (int k = 0; k < this.cols[row].length; ++k) {
+                final int j = this.invPerm[this.cols[row][k]];
+                if (!mark[j]) {
+                    mark[j] = true;
+                    work[j] = 0;
+                    if (j < i) {
+                        heapSize = heapPush(heap, heapSize, j);
+                    } else {
+                        upper[nUpper++] = j;
+                    }
+                }
+                work[j] = mod(work[j] + this.vals[row][k]);
+            }
+
+            while (heapSize > 0) {
+                final int k = heap[0];
+                heapSize = heapPop(heap, heapSize);
+                mark[k] = false;
+                if (work[k] == 0) {
+                    continue;
+                }
+                final int f = mod(work[k] * this.diagInv[k]);
+                lower[nLower] = k;
+                lowerVals[nLower] = f;
+                ++nLower;
+
+                final int uc[] = this.uCols[k];
+                final int uv[] = this.uVals[k];
+                for (int t = 1; t < uc.length; ++t) {
+                    final int j = uc[t];
+                    if (!mark[j]) {
+                        mark[j] = true;
+                        work[j] = 0;
+                        if (j < i) {
+                            heapSize = heapPush(heap, heapSize, j);
+                        } else {
+                            upper[nUpper++] = j;
+                        }
+                    }
+                    work[j] = mod(work[j] - (long) f * uv[t]);
+                }
+            }
+
+            this.lCols[i] = Arrays.copyOf(lower, nLower);
+            this.lVals[i] = Arrays.copyOf(lowerVals, nLower);
+
+            if (!mark[i] || work[i] == 0) {
+                for (int t = 0; t < nUpper; ++t) {
+                    mark[upper[t]] = false;
+                }
+                throw new ArithmeticException("zero pivot modulo " + this.p);
+            }
+
+            int count = 0;
+            for (int t = 0; t < nUpper; ++t) {
+                if (work[upper[t]] != 0) {
+                    ++count;
+                }
+            }
+            final int uc[] = new int[count];
+            final int uv[] = new int[count];
+            uc[0] = i;
+            uv[0] = (int) work[i];
+            int pos = 1;
+            for (int t = 0; t < nUpper; ++t) {
+                final int j = upper[t];
+                mark[j] = false;
+                if (j != i && work[j] != 0) {
+                    uc[pos] = j;
+                    uv[pos] = (int) work[j];
+                    ++pos;
+                }
+            }
+            this.uCols[i] = uc;
+            this.uVals[i] = uv;
+            this.diagInv[i] = ModularSolver.modularInverse(uv[0], this.p);
+        }
+    }
+
+    private static int heapPush(final int heap[], int size, final int x) {
+        int i = size++;
+        while (i > 0) {
+            final int parent = (i - 1) / 2;
+            if (heap[parent] <= x) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = x;
+        return size;
+    }
+
+    private static int heapPop(final int heap[], int size) {
+        final int x = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                ++child;
+            }
+            if (heap[child] >= x) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (size > 0) {
+            heap[i] = x;
+        }
+        return size;
+    }
+
+    /**
+     * Solves the system A x = b modulo the prime for this instance.
+     *
+     * @param b the right hand side, one column per system.
+     * @return the solution, with entries between 0 and p-1.
+     */
+    public int[][] solveModular(final long b[][]) {
+        final int n = this.n;
+        final int m = b[0].length;
+        final int x[][] = new int[n][m];
+        final long y[] = new long[n];
+
+        for (int c = 0; c < m; ++c) {
+            for (int i = 0; i < n; ++i) {
+                long s = mod(b[this.perm[i]][c]);
+                final int lc[] = this.lCols[i];
+                final int lv[] = this.lVals[i];
+                for (int t = 0; t < lc.length; ++t) {
+                    s = (s - (long) lv[t] * y[lc[t]]) % this.p;
+                }
+                y[i] = mod(s);
+            }
+            for (int i = n - 1; i >= 0; --i) {
+                long s = y[i];
+                final int uc[] = this.uCols[i];
+                final int uv[] = this.uVals[i];
+                for (int t = 1; t < uc.length; ++t) {
+                    s = (s - (long) uv[t] * y[uc[t]]) % this.p;
+                }
+                y[i] = mod(mod(s) * (long) this.diagInv[i]);
+            }
+            for (int i = 0; i < n; ++i) {
+                x[this.perm[i]][c] = (int) y[i];
+            }
+        }
+        return x;
+    }
+
+    private int pAdicStepsNeeded(final int b[][]) {
+        final int n = this.n;
+        final double colNorms[] = new double[n];
+        for (int i = 0; i < n; ++i) {
+            for (int k = 0; k < this.cols[i].length; ++k) {
+                final double a = this.vals[i][k];
+                colNorms[this.cols[i][k]] += a * a;
+            }
+        }
+        final double logNorms[] = new double[n];
+        for (int i = 0; i < n; ++i) {
+            logNorms[i] = 0.5 * Math.log(colNorms[i]);
+        }
+        Arrays.sort(logNorms);
+
+        for (int j = 0; j < b[0].length; ++j) {
+            double s = 0.0;
+            for (int i = 0; i < n; ++i) {
+                s += (double) b[i][j] * b[i][j];
+            }
+            logNorms[0] = Math.max(logNorms[0], 0.5 * Math.log(s));
+        }
+
+        double logDelta = 0.0;
+        for (int i = 0; i < n; ++i) {
+            logDelta += logNorms[i];
+        }
+
+        final double phi = (1 + Math.sqrt(5)) / 2;
+        return (int) Math.ceil(2 * (logDelta + Math.log(phi))
+                / Math.log(this.p));
+    }
+
+    /**
+     * Solves the system A x = b exactly by p-adic lifting.
+     *
+     * @param b the right hand side, one column per system.
+     * @return the rational solution matrix.
+     */
+    public Matrix solve(final int b[][]) {
+        return solve(b, ModularSolver.getNumberOfThreads());
+    }
+
+    /**
+     * Solves the system A x = b exactly by p-adic lifting.
+     *
+     * @param b the right hand side, one column per system.
+     * @param nrThreads the number of threads to use.
+     * @return the rational solution matrix.
+     */
+    public Matrix solve(final int b[][], final int nrThreads) {
+        final ExecutorService pool = ModularSolver.newPool(nrThreads, this.n);
+        try {
+            return ModularSolver.lift(new Lifter(), b, pAdicStepsNeeded(b),
+                    pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Connects the factorization to the generic lifting code.
+     */
+    private class Lifter extends ModularSolver.Lifter {
+        Lifter() {
+            super(SparseModularSolver.this.n, SparseModularSolver.this.p);
+        }
+
+        void solveModular(final long r[][], final int x[][],
+                final ExecutorService pool) {
+            final int res[][] = SparseModularSolver.this.solveModular(r);
+            for (int i = 0; i < this.n; ++i) {
+                System.arraycopy(res[i], 0, x[i], 0, res[i].length);
+            }
+        }
+
+        void reduce(final long r[][], final int x[][],
+                final ExecutorService pool) {
+            final int m = r[0].length;
+            final long p = this.p;
+            ModularSolver.forRange(pool, this.n, new ModularSolver.RangeTask() {
+                public void run(final int from, final int to) {
+                    for (int i = from; i < to; ++i) {
+                        final int c[] = cols[i];
+                        final int v[] = vals[i];
+                        for (int j = 0; j < m; ++j) {
+                            if (smallEntries) {
+                                long s = r[i][j];
+                                for (int t = 0; t < c.length; ++t) {
+                                    s -= (long) v[t] * x[c[t]][j];
+                                }
+                                r[i][j] = s / p;
+                            } else {
+                                BigInteger s = BigInteger.valueOf(r[i][j]);
+                                for (int t = 0; t < c.length; ++t) {
+                                    s = s.subtract(BigInteger.valueOf(
+                                            (long) v[t] * x[c[t]][j]));
+                                }
+                                r[i][j] = s.divide(BigInteger.valueOf(p))
+                                        .longValue();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        boolean verify(final BigInteger X[][], final BigInteger D,
+                final int b[][], final ExecutorService pool) {
+            final int m = b[0].length;
+            final boolean ok[] = new boolean[] { true };
+            ModularSolver.forRange(pool, this.n, new ModularSolver.RangeTask() {
+                public void run(final int from, final int to) {
+                    for (int i = from; i < to && ok[0]; ++i) {
+                        final int c[] = cols[i];
+                        final int v[] = vals[i];
+                        for (int j = 0; j < m; ++j) {
+                            BigInteger s =
+                                    D.multiply(BigInteger.valueOf(b[i][j]));
+                            for (int t = 0; t < c.length; ++t) {
+                                s = s.subtract(X[c[t]][j].multiply(
+                                        BigInteger.valueOf(v[t])));
+                            }
+                            if (s.signum() != 0) {
+                                ok[0] = false;
+                                return;
+                            }
+                        }
+                    }
+                }
+            });
+            return ok[0];
+        }
+    }
+
+    /**
+     * Solves a linear system with a sparse integer coefficient matrix
+     * exactly. Small or dense systems are passed on to the dense solver, as
+     * are those for which no suitable prime could be found.
+     *
+     * @param cols for each row, the column indices of its nonzero entries.
+     * @param vals for each row, the values of its nonzero entries.
+     * @param b the right hand side, one column per system.
+     * @return the rational solution matrix.
+     */
+    public static Matrix solve(final int cols[][], final int vals[][],
+            final int b[][]) {
+        final int n = cols.length;
+        long nnz = 0;
+        for (int i = 0; i < n; ++i) {
+            nnz += cols[i].length;
+        }
+
+        if (n >= SPARSE_THRESHOLD && nnz * 10 < (long) n * n) {
+            for (final int p: ModularSolver.PRIMES) {
+                final SparseModularSolver solver;
+                try {
+                    solver = new SparseModularSolver(cols, vals, p);
+                } catch (ArithmeticException ex) {
+                    continue;
+                }
+                return solver.solve(b);
+            }
+        }
+
+        return ModularSolver.solve(toDense(cols, vals), b);
+    }
+
+    /**
+     * Converts a sparse matrix given by rows into a dense one.
+     *
+     * @param cols for each row, the column indices of its nonzero entries.
+     * @param vals for each row, the values of its nonzero entries.
+     * @return the dense matrix.
+     */
+    public static int[][] toDense(final int cols[][], final int vals[][]) {
+        final int n = cols.length;
+        final int A[][] = new int[n][n];
+        for (int i = 0; i < n; ++i) {
+            for (int k = 0; k < cols[i].length; ++k) {
+                A[i][cols[i][k]] += vals[i][k];
+            }
+        }
+        return A;
+    }
+
+    /**
+     * Converts a dense square matrix into rows of nonzero entries.
+     *
+     * @param A the dense matrix.
+     * @return a pair of arrays holding the column indices and values.
+     */
+    public static int[][][] fromDense(final int A[][]) {
+        final int n = A.length;
+        final int cols[][] = new int[n][];
+        final int vals[][] = new int[n][];
+        for (int i = 0; i < n; ++i) {
+            final List<Integer> c = new ArrayList<Integer>();
+            for (int j = 0; j < A[i].length; ++j) {
+                if (A[i][j] != 0) {
+                    c.add(j);
+                }
+            }
+            cols[i] = new int[c.size()];
+            vals[i] = new int[c.size()];
+            for (int k = 0; k < c.size(); ++k) {
+                cols[i][k] = c.get(k);
+                vals[i][k] = A[i][c.get(k)];
+            }
+        }
+        return new int[][][] { cols, vals };
+    }
+}
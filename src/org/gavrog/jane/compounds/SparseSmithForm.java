@@ -0,0 +1,615 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.compounds;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gavrog.jane.numbers.Whole;
+
+/**
+ * Computes the invariant factors and an integral column null space basis of a
+ * sparse integer matrix.
+ *
+ * Rows are given as parallel arrays of column indices and values. Pivots of
+ * absolute value one are eliminated first, directly on the sparse rows and in
+ * long arithmetic, using a Markowitz cost to limit fill. The remaining core
+ * is reduced to column echelon form with BigInteger entries, which yields the
+ * null space and a nonzero maximal minor. That minor bounds the determinant
+ * of the row lattice, so that its Hermite form can be computed with all
+ * entries reduced modulo the bound before the final Smith form is taken.
+ */
+public class SparseSmithForm {
+    // --- entries beyond this end the sparse phase
+    final private static long LIMIT = Integer.MAX_VALUE;
+
+    final private int nrColumns;
+    final private int rank;
+    final private Whole invariants[];
+    final private Matrix nullSpace;
+
+    // --- the pivots eliminated in the sparse phase, in order
+    final private List<int[]> pivotCols = new ArrayList<int[]>();
+    final private List<long[]> pivotVals = new ArrayList<long[]>();
+    final private List<Integer> pivotColumn = new ArrayList<Integer>();
+
+    /**
+     * Constructs an instance by reducing a matrix.
+     *
+     * @param cols for each row, the column indices of its nonzero entries.
+     * @param vals for each row, the values of its nonzero entries.
+     * @param nrColumns the number of columns of the matrix.
+     */
+    public SparseSmithForm(final int cols[][], final int vals[][],
+            final int nrColumns) {
+        this.nrColumns = nrColumns;
+
+        // --- copy the rows into sorted long arrays
+        final int n = cols.length;
+        final int rc[][] = new int[n][];
+        final long rv[][] = new long[n][];
+        for (int i = 0; i < n; ++i) {
+            final int len = cols[i].length;
+            final long keys[] = new long[len];
+            for (int k = 0; k < len; ++k) {
+                final int j = cols[i][k];
+                if (j < 0 || j >= nrColumns) {
+                    throw new IllegalArgumentException("column out of range");
+                }
+                keys[k] = ((long) j << 32) | k;
+            }
+            Arrays.sort(keys);
+            final int tc[] = new int[len];
+            final long tv[] = new long[len];
+            int size = 0;
+            for (int t = 0; t < len;) {
+                final int j = (int) (keys[t] >>> 32);
+                long x = 0;
+                while (t < len && (int) (keys[t] >>> 32) == j) {
+                    x += vals[i][(int) (keys[t++] & 0xffffffffL)];
+                }
+                if (x != 0) {
+                    if (Math.abs(x) > LIMIT) {
+                        throw new IllegalArgumentException("entry too large");
+                    }
+                    tc[size] = j;
+                    tv[size++] = x;
+                }
+            }
+            rc[i] = Arrays.copyOf(tc, size);
+            rv[i] = Arrays.copyOf(tv, size);
+        }
+
+        final int ones = eliminateUnitPivots(rc, rv);
+
+        // --- collect the remaining rows and columns into a dense core
+        final boolean isPivot[] = new boolean[nrColumns];
+        for (final int c: this.pivotColumn) {
+            isPivot[c] = true;
+        }
+        final int colIndex[] = new int[nrColumns];
+        final int coreCols[] = new int[nrColumns - this.pivotColumn.size()];
+        int m = 0;
+        for (int j = 0; j < nrColumns; ++j) {
+            if (isPivot[j]) {
+                colIndex[j] = -1;
+            } else {
+                colIndex[j] = m;
+                coreCols[m++] = j;
+            }
+        }
+        final List<BigInteger[]> coreRows = new ArrayList<BigInteger[]>();
+        for (int i = 0; i < n; ++i) {
+            if (rc[i] != null && rc[i].length > 0) {
+                final BigInteger row[] = new BigInteger[m];
+                Arrays.fill(row, BigInteger.ZERO);
+                for (int k = 0; k < rc[i].length; ++k) {
+                    row[colIndex[rc[i][k]]] = BigInteger.valueOf(rv[i][k]);
+                }
+                coreRows.add(row);
+            }
+        }
+        final BigInteger B[][] = coreRows.toArray(new BigInteger[0][]);
+
+        // --- reduce the core and extract its null space
+        final BigInteger Q[][] = identity(m);
+        final int pivotRows[] = columnEchelon(B, Q);
+        final int r = pivotRows.length;
+
+        // --- compute the invariant factors
+        final BigInteger coreFactors[] = torsion(B, pivotRows);
+        this.rank = ones + r;
+        this.invariants = new Whole[this.rank];
+        for (int i = 0; i < ones; ++i) {
+            this.invariants[i] = Whole.ONE;
+        }
+        for (int i = 0; i < r; ++i) {
+            this.invariants[ones + i] = new Whole(coreFactors[i]);
+        }
+
+        // --- lift the null space of the core to the full matrix
+        final Matrix N = new Matrix(nrColumns, m - r);
+        for (int k = r; k < m; ++k) {
+            final BigInteger x[] = new BigInteger[nrColumns];
+            Arrays.fill(x, BigInteger.ZERO);
+            for (int j = 0; j < m; ++j) {
+                x[coreCols[j]] = Q[j][k];
+            }
+            backSubstitute(x);
+            for (int j = 0; j < nrColumns; ++j) {
+                N.set(j, k - r, new Whole(x[j]));
+            }
+        }
+        N.makeImmutable();
+        this.nullSpace = N;
+    }
+
+    /**
+     * @return the number of columns of the input matrix.
+     */
+    public int getNumberOfColumns() {
+        return this.nrColumns;
+    }
+
+    /**
+     * @return the rank of the input matrix.
+     */
+    public int getRank() {
+        return this.rank;
+    }
+
+    /**
+     * Returns the nonzero diagonal entries of the Smith normal form in
+     * ascending order, so that each one divides the next.
+     *
+     * @return the invariant factors.
+     */
+    public Whole[] getInvariantFactors() {
+        return this.invariants.clone();
+    }
+
+    /**
+     * Returns a matrix the columns of which form a basis for the lattice of
+     * integer column vectors v with M*v=0, where M is the input matrix.
+     *
+     * @return the null space basis.
+     */
+    public Matrix getColumnNullSpace() {
+        return this.nullSpace;
+    }
+
+    /**
+     * Eliminates pivots of absolute value one from the sparse rows. Rows
+     * used as pivots are recorded and set to null. Stops when no unit pivot
+     * is left or an entry has grown beyond {@link #LIMIT}.
+     *
+     * @return the number of pivots eliminated.
+     */
+    private int eliminateUnitPivots(final int rc[][], final long rv[][]) {
+        final int n = rc.length;
+        final int colCount[] = new int[this.nrColumns];
+        final int colRows[][] = new int[this.nrColumns][];
+        final int colRowsLen[] = new int[this.nrColumns];
+        for (int i = 0; i < n; ++i) {
+            for (final int j: rc[i]) {
+                ++colCount[j];
+                addTo(colRows, colRowsLen, j, i);
+            }
+        }
+        final int stamp[] = new int[n];
+        int step = 0;
+
+        while (true) {
+            // --- find the unit pivot with the smallest Markowitz cost
+            int bestRow = -1;
+            int bestPos = -1;
+            long bestCost = Long.MAX_VALUE;
+            for (int i = 0; i < n && bestCost > 0; ++i) {
+                if (rc[i] == null) {
+                    continue;
+                }
+                final int len = rc[i].length;
+                for (int k = 0; k < len; ++k) {
+                    if (Math.abs(rv[i][k]) == 1) {
+                        final long cost =
+                                (long) (len - 1) * (colCount[rc[i][k]] - 1);
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            bestRow = i;
+                            bestPos = k;
+                        }
+                    }
+                }
+            }
+            if (bestRow < 0) {
+                break;
+            }
+
+            // --- clear the pivot column in all other rows
+            final int pr = bestRow;
+            final int pc = rc[pr][bestPos];
+            final long pv = rv[pr][bestPos];
+            ++step;
+            stamp[pr] = step;
+            boolean large = false;
+            for (int t = 0; t < colRowsLen[pc]; ++t) {
+                final int i = colRows[pc][t];
+                if (rc[i] == null || stamp[i] == step) {
+                    continue;
+                }
+                stamp[i] = step;
+                final int pos = Arrays.binarySearch(rc[i], pc);
+                if (pos < 0) {
+                    continue;
+                }
+                large |= subtract(rc, rv, i, pr, rv[i][pos] * pv,
+                        colCount, colRows, colRowsLen);
+            }
+
+            // --- record and remove the pivot row
+            for (final int j: rc[pr]) {
+                --colCount[j];
+            }
+            this.pivotCols.add(rc[pr]);
+            this.pivotVals.add(rv[pr]);
+            this.pivotColumn.add(pc);
+            rc[pr] = null;
+            rv[pr] = null;
+            colRows[pc] = null;
+            colRowsLen[pc] = 0;
+
+            if (large) {
+                break;
+            }
+        }
+
+        return this.pivotColumn.size();
+    }
+
+    /**
+     * Subtracts a multiple of one sparse row from another.
+     *
+     * @return true if an entry of the result exceeds {@link #LIMIT}.
+     */
+    private static boolean subtract(final int rc[][], final long rv[][],
+            final int i, final int r, final long f, final int colCount[],
+            final int colRows[][], final int colRowsLen[]) {
+        final int ac[] = rc[i];
+        final long av[] = rv[i];
+        final int bc[] = rc[r];
+        final long bv[] = rv[r];
+        final int resC[] = new int[ac.length + bc.length];
+        final long resV[] = new long[ac.length + bc.length];
+        boolean large = false;
+        int a = 0;
+        int b = 0;
+        int k = 0;
+        while (a < ac.length || b < bc.length) {
+            if (b >= bc.length || (a < ac.length && ac[a] < bc[b])) {
+                resC[k] = ac[a];
+                resV[k++] = av[a++];
+            } else if (a >= ac.length || bc[b] < ac[a]) {
+                final int j = bc[b];
+                resC[k] = j;
+                resV[k] = -f * bv[b++];
+                large |= Math.abs(resV[k++]) > LIMIT;
+                ++colCount[j];
+                addTo(colRows, colRowsLen, j, i);
+            } else {
+                final long x = av[a++] - f * bv[b++];
+                if (x != 0) {
+                    resC[k] = ac[a - 1];
+                    resV[k++] = x;
+                    large |= Math.abs(x) > LIMIT;
+                } else {
+                    --colCount[ac[a - 1]];
+                }
+            }
+        }
+        rc[i] = Arrays.copyOf(resC, k);
+        rv[i] = Arrays.copyOf(resV, k);
+        return large;
+    }
+
+    private static void addTo(final int lists[][], final int lengths[],
+            final int j, final int i) {
+        if (lists[j] == null) {
+            lists[j] = new int[4];
+        } else if (lengths[j] == lists[j].length) {
+            lists[j] = Arrays.copyOf(lists[j], 2 * lengths[j]);
+        }
+        lists[j][lengths[j]++] = i;
+    }
+
+    /**
+     * Extends a vector in the null space of the core to one in the null space
+     * of the full matrix by solving for the pivot columns in reverse order.
+     */
+    private void backSubstitute(final BigInteger x[]) {
+        for (int k = this.pivotColumn.size() - 1; k >= 0; --k) {
+            final int c = this.pivotColumn.get(k);
+            final int pc[] = this.pivotCols.get(k);
+            final long pv[] = this.pivotVals.get(k);
+            BigInteger s = BigInteger.ZERO;
+            long p = 0;
+            for (int t = 0; t < pc.length; ++t) {
+                if (pc[t] == c) {
+                    p = pv[t];
+                } else {
+                    s = s.add(x[pc[t]].multiply(BigInteger.valueOf(pv[t])));
+                }
+            }
+            x[c] = p > 0 ? s.negate() : s;
+        }
+    }
+
+    private static BigInteger[][] identity(final int m) {
+        final BigInteger Q[][] = new BigInteger[m][m];
+        for (int i = 0; i < m; ++i) {
+            Arrays.fill(Q[i], BigInteger.ZERO);
+            Q[i][i] = BigInteger.ONE;
+        }
+        return Q;
+    }
+
+    /**
+     * Brings a dense matrix into column echelon form by unimodular column
+     * operations, which are also applied to a second matrix. Afterwards, the
+     * first r columns of the matrix have positive pivots in increasing rows
+     * and all other columns are zero.
+     *
+     * @return the rows containing the pivots, one for each nonzero column.
+     */
+    private static int[] columnEchelon(final BigInteger B[][],
+            final BigInteger Q[][]) {
+        final int n = B.length;
+        final int m = Q.length;
+        final int pivotRows[] = new int[Math.min(n, m)];
+        int t = 0;
+
+        for (int i = 0; i < n && t < m; ++i) {
+            final BigInteger row[] = B[i];
+            while (true) {
+                int best = -1;
+                for (int j = t; j < m; ++j) {
+                    if (row[j].signum() != 0 && (best < 0
+                            || row[j].abs().compareTo(row[best].abs()) < 0)) {
+                        best = j;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                swapColumns(B, i, t, best);
+                swapColumns(Q, 0, t, best);
+                boolean done = true;
+                for (int j = t + 1; j < m; ++j) {
+                    if (row[j].signum() != 0) {
+                        final BigInteger q = row[j].divide(row[t]);
+                        addColumn(B, i, j, t, q.negate());
+                        addColumn(Q, 0, j, t, q.negate());
+                        done &= row[j].signum() == 0;
+                    }
+                }
+                if (done) {
+                    if (row[t].signum() < 0) {
+                        negateColumn(B, i, t);
+                        negateColumn(Q, 0, t);
+                    }
+                    pivotRows[t++] = i;
+                    break;
+                }
+            }
+        }
+
+        return Arrays.copyOf(pivotRows, t);
+    }
+
+    private static void swapColumns(final BigInteger A[][], final int from,
+            final int j, final int k) {
+        if (j != k) {
+            for (int i = from; i < A.length; ++i) {
+                final BigInteger tmp = A[i][j];
+                A[i][j] = A[i][k];
+                A[i][k] = tmp;
+            }
+        }
+    }
+
+    private static void addColumn(final BigInteger A[][], final int from,
+            final int j, final int k, final BigInteger f) {
+        for (int i = from; i < A.length; ++i) {
+            if (A[i][k].signum() != 0) {
+                A[i][j] = A[i][j].add(A[i][k].multiply(f));
+            }
+        }
+    }
+
+    private static void negateColumn(final BigInteger A[][], final int from,
+            final int j) {
+        for (int i = from; i < A.length; ++i) {
+            A[i][j] = A[i][j].negate();
+        }
+    }
+
+    /**
+     * Computes the invariant factors of the lattice spanned by the rows of
+     * the first r columns of a matrix in column echelon form.
+     */
+    private static BigInteger[] torsion(final BigInteger B[][],
+            final int pivotRows[]) {
+        final int r = pivotRows.length;
+
+        // --- the pivots span a sublattice, so their product is a bound
+        BigInteger D = BigInteger.ONE;
+        for (int t = 0; t < r; ++t) {
+            D = D.multiply(B[pivotRows[t]][t]);
+        }
+
+        final BigInteger result[] = new BigInteger[r];
+        if (D.equals(BigInteger.ONE)) {
+            Arrays.fill(result, BigInteger.ONE);
+            return result;
+        } else if (D.compareTo(BigInteger.valueOf(LIMIT)) <= 0) {
+            return smithDiagonal(hermiteModulo(B, r, D.longValue()));
+        } else {
+            final BigInteger A[][] = new BigInteger[B.length][];
+            for (int i = 0; i < B.length; ++i) {
+                A[i] = Arrays.copyOf(B[i], r);
+            }
+            return smithDiagonal(A);
+        }
+    }
+
+    /**
+     * Computes a triangular basis for the lattice spanned by the rows of the
+     * first r columns of a matrix, given a multiple D of its determinant. All
+     * entries are kept reduced modulo D, which is allowed because the lattice
+     * contains D times each unit vector.
+     */
+    private static BigInteger[][] hermiteModulo(final BigInteger B[][],
+            final int r, final long D) {
+        final List<long[]> rows = new ArrayList<long[]>();
+        for (final BigInteger row[]: B) {
+            final long v[] = new long[r];
+            boolean zero = true;
+            for (int j = 0; j < r; ++j) {
+                v[j] = row[j].mod(BigInteger.valueOf(D)).longValue();
+                zero &= v[j] == 0;
+            }
+            if (!zero) {
+                rows.add(v);
+            }
+        }
+
+        final BigInteger T[][] = new BigInteger[r][r];
+        for (int j = 0; j < r; ++j) {
+            final long unit[] = new long[r];
+            unit[j] = D;
+            rows.add(unit);
+
+            while (true) {
+                int best = -1;
+                for (int i = 0; i < rows.size(); ++i) {
+                    final long x = rows.get(i)[j];
+                    if (x != 0 && (best < 0
+                            || Math.abs(x) < Math.abs(rows.get(best)[j]))) {
+                        best = i;
+                    }
+                }
+                final long piv[] = rows.get(best);
+                boolean done = true;
+                for (int i = 0; i < rows.size(); ++i) {
+                    final long v[] = rows.get(i);
+                    if (i != best && v[j] != 0) {
+                        final long q = v[j] / piv[j];
+                        v[j] -= q * piv[j];
+                        for (int k = j + 1; k < r; ++k) {
+                            v[k] = (v[k] - (q * piv[k]) % D) % D;
+                        }
+                        done &= v[j] == 0;
+                    }
+                }
+                if (done) {
+                    rows.remove(best);
+                    for (int k = 0; k < r; ++k) {
+                        T[j][k] = BigInteger.valueOf(piv[j] < 0 ? -piv[k] : piv[k]);
+                    }
+                    break;
+                }
+            }
+        }
+
+        return T;
+    }
+
+    /**
+     * Computes the nonzero diagonal entries of the Smith normal form of a
+     * dense matrix of full column rank by row and column operations.
+     */
+    private static BigInteger[] smithDiagonal(final BigInteger A[][]) {
+        final int n = A.length;
+        final int m = n > 0 ? A[0].length : 0;
+        final BigInteger result[] = new BigInteger[m];
+
+        for (int t = 0; t < m; ++t) {
+            while (true) {
+                // --- move the smallest remaining entry into the corner
+                int bi = -1;
+                int bj = -1;
+                for (int i = t; i < n; ++i) {
+                    for (int j = t; j < m; ++j) {
+                        if (A[i][j].signum() != 0 && (bi < 0
+                                || A[i][j].abs().compareTo(A[bi][bj].abs()) < 0))
+                        {
+                            bi = i;
+                            bj = j;
+                        }
+                    }
+                }
+                final BigInteger tmp[] = A[t];
+                A[t] = A[bi];
+                A[bi] = tmp;
+                swapColumns(A, 0, t, bj);
+                final BigInteger p = A[t][t];
+
+                // --- clear its row and column, remembering any remainders
+                boolean done = true;
+                for (int i = t + 1; i < n; ++i) {
+                    if (A[i][t].signum() != 0) {
+                        final BigInteger q = A[i][t].divide(p);
+                        for (int j = t; j < m; ++j) {
+                            A[i][j] = A[i][j].subtract(q.multiply(A[t][j]));
+                        }
+                        done &= A[i][t].signum() == 0;
+                    }
+                }
+                for (int j = t + 1; j < m; ++j) {
+                    if (A[t][j].signum() != 0) {
+                        addColumn(A, t, j, t, A[t][j].divide(p).negate());
+                        done &= A[t][j].signum() == 0;
+                    }
+                }
+                if (!done) {
+                    continue;
+                }
+
+                // --- make sure the pivot divides all remaining entries
+                int bad = -1;
+                for (int i = t + 1; i < n && bad < 0; ++i) {
+                    for (int j = t + 1; j < m; ++j) {
+                        if (A[i][j].mod(p.abs()).signum() != 0) {
+                            bad = i;
+                            break;
+                        }
+                    }
+                }
+                if (bad < 0) {
+                    result[t] = p.abs();
+                    break;
+                }
+                for (int j = t; j < m; ++j) {
+                    A[t][j] = A[t][j].add(A[bad][j]);
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.compounds.SparseSmithForm;
 import org.gavrog.jane.numbers.Whole;
 
 
@@ -243,57 +244,67 @@ public class FpGroup<E> {
     }
     
     /**
-     * Returns the abelian invariants of this group as a sorted list of
-     * {@link Whole}s.
-     * 
-     * @return the sorted abelian invariants.
+     * Computes the Smith normal form of the relator matrix from its sparse
+     * representation.
+     *
+     * @return the Smith form of the relator matrix.
      */
-    public List<Whole> abelianInvariants() {
+    public SparseSmithForm relatorSmithForm() {
         final int ngens = this.getGenerators().size();
         final List<FreeWord<E>> rels = this.getRelators();
         final int nrels = rels.size();
-        final int n = Math.min(nrels, ngens);
-        final List<Whole> res = new LinkedList<Whole>();
-        
-        if (nrels > 0) {
-            // --- compute and diagonalize the relator matrix
-        	final Whole M[][] = relatorMatrixAsArray();
-            diagonalize(M);
+        final int cols[][] = new int[nrels][];
+        final int vals[][] = new int[nrels][];
 
-            // --- collect the diagonal elements
-            final Whole divs[] = new Whole[n];
-            for (int i = 0; i < n; ++i) {
-                divs[i] = M[i][i];
+        for (int i = 0; i < nrels; ++i) {
+            final FreeWord<E> r = rels.get(i);
+            cols[i] = new int[r.length()];
+            vals[i] = new int[r.length()];
+            for (int j = 0; j < r.length(); ++j) {
+                cols[i][j] = r.getLetter(j) - 1;
+                vals[i][j] = r.getSign(j);
             }
+        }
 
-            // --- convert to reflect the actual abelian factors
-            for (int i = 0; i < n - 1; ++i) {
-                for (int j = i + 1; i < n; ++i) {
-                    final Whole a = divs[i];
-                    final Whole b = divs[j];
-                    if (!(a.equals(ZERO) || b.mod(a).equals(ZERO))) {
-                        final Whole gcd = a.gcd(b);
-                        divs[j] = (Whole) b.dividedBy(gcd).times(a);
-                        divs[i] = gcd;
-                    }
-                }
-            }
+        return new SparseSmithForm(cols, vals, ngens);
+    }
 
-            // --- collect the results
-            for (int i = 0; i < n; ++i) {
-                if (!(divs[i].equals(ONE))) {
-                    res.add(divs[i]);
-                }
+    /**
+     * Returns a matrix the columns of which form a basis for the integral
+     * null space of the relator matrix.
+     *
+     * @return the null space of the relator matrix.
+     */
+    public Matrix relatorNullSpace() {
+        return relatorSmithForm().getColumnNullSpace();
+    }
+
+    /**
+     * Returns the abelian invariants of this group as a sorted list of
+     * {@link Whole}s. Each free factor contributes a zero, and the torsion
+     * factors are the invariant factors of the relator matrix other than one.
+     *
+     * @return the sorted abelian invariants.
+     */
+    public List<Whole> abelianInvariants() {
+        final int ngens = this.getGenerators().size();
+        final SparseSmithForm snf = relatorSmithForm();
+        final List<Whole> res = new LinkedList<Whole>();
+
+        // --- collect the torsion factors
+        for (final Whole d: snf.getInvariantFactors()) {
+            if (!d.isOne()) {
+                res.add(d);
             }
         }
-        
+
         // --- add the non-torsion factors
-        for (int i = 0; i < ngens - n; ++i) {
+        for (int i = snf.getRank(); i < ngens; ++i) {
             res.add(ZERO);
         }
-        
+
         Collections.sort(res);
-        
+
         // --- return the result
         return res;
     }
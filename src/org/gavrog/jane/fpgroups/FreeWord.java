@@ -16,24 +16,35 @@
 
 package org.gavrog.jane.fpgroups;
 
+import java.util.Arrays;
+
 /**
  * Represents a reduced free word of finite length over some alphabet. A reduced
  * free word is a string of signed letters - a negative sign denoting a formal
  * inverse - in which no pair of consecutive entries are just inverses of each
  * other.
+ * 
+ * Instances are immutable. Subwords, copies and inverses share their letters
+ * with the words they were derived from where possible, and the hash code is
+ * computed only once. Words that are built up letter by letter are best
+ * assembled with a {@link FreeWordBuilder}.
  * @author Olaf Delgado
  * @version $Id: FreeWord.java,v 1.1.1.1 2005/07/15 21:58:38 odf Exp $
  */
 public class FreeWord<E> implements Comparable<FreeWord<E>> {
 
 	final private Alphabet<E> alphabet;
-	final private int[] data;
+	final int[] data;
+	final int offset;
+	final int length;
+	private int hash = 0;
+	private FreeWord<E> inverse = null;
 	
 	/**
 	 * Makes an identical copy of a free word.
 	 */
 	public FreeWord(final FreeWord<? extends E> word) {
-	    this(word.getAlphabet(), word.data, false);
+	    this(word.getAlphabet(), word.data, word.offset, word.length);
 	}
 	
 	/**
@@ -41,7 +52,8 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	 * @param A the alphabet.
 	 */
 	public FreeWord(final Alphabet<? extends E> A, final FreeWord<?> word) {
-	    this(A, word.data, true);
+	    this(A, Arrays.copyOfRange(word.data, word.offset,
+	            word.offset + word.length), true);
 	}
 	
 	/**
@@ -95,6 +107,7 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	    @SuppressWarnings("unchecked")
         final Alphabet<E> a = (Alphabet<E>) alphabet;
 		this.alphabet = a;
+		this.offset = 0;
 		if (data == null) {
 			this.data = new int[0];
 		} else if (check) {
@@ -113,16 +126,30 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 				}
 			}
 			++k;
-			this.data = new int[k];
-			for (int i = 0; i < k; ++i) {
-				this.data[i] = tmp[i];
-			}
+			this.data = k == tmp.length ? tmp : Arrays.copyOf(tmp, k);
 		} else {
-			this.data = new int[data.length];
-			for (int i = 0; i < data.length; ++i) {
-				this.data[i] = data[i];
-			}
+			this.data = data.clone();
 		}
+		this.length = this.data.length;
+	}
+
+	/**
+	 * Constructs a FreeWord instance from a range within an array of letters,
+	 * which is used directly and so must not be modified afterwards. No
+	 * checks are performed.
+	 * @param alphabet the underlying alphabet.
+	 * @param data an array of integers containing the word.
+	 * @param offset the position of the first letter.
+	 * @param length the number of letters.
+	 */
+	<X extends E> FreeWord(final Alphabet<X> alphabet, final int[] data,
+	                       final int offset, final int length) {
+	    @SuppressWarnings("unchecked")
+        final Alphabet<E> a = (Alphabet<E>) alphabet;
+	    this.alphabet = a;
+	    this.data = data;
+	    this.offset = offset;
+	    this.length = length;
 	}
 
 	/**
@@ -289,7 +316,7 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
      * @return the number of letters.
      */
     public int size() {
-        return data.length;
+        return this.length;
     }
     
 	/**
@@ -305,7 +332,7 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	 * @return the number of letters in this word.
 	 */
 	public int length() {
-		return data.length;
+		return this.length;
 	}
 	
 	/**
@@ -314,7 +341,7 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	 * @return the ith letter.
 	 */
 	public int getLetter(final int i) {
-		return Math.abs(data[i]);
+		return Math.abs(signedLetter(i));
 	}
 
 	/**
@@ -323,7 +350,7 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	 * @return the ith letter.
 	 */
 	public Object getLetterName(final int i) {
-		return alphabet.letterToName(Math.abs(data[i]));
+		return alphabet.letterToName(getLetter(i));
 	}
 
 	/**
@@ -332,12 +359,24 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	 * @return the sign of the ith letter.
 	 */
 	public int getSign(final int i) {
-		if (data[i] < 0) {
+		if (signedLetter(i) < 0) {
 			return -1;
 		} else {
 			return 1;
 		}
 	}
+
+	/**
+	 * Retrieves the letter at a specific position together with its sign.
+	 * @param i the position.
+	 * @return the ith letter, negated if it appears inverted.
+	 */
+	int signedLetter(final int i) {
+	    if (i < 0 || i >= this.length) {
+	        throw new ArrayIndexOutOfBoundsException(i);
+	    }
+	    return this.data[this.offset + i];
+	}
 	
 	/**
 	 * Extracts a subword.
@@ -354,13 +393,11 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	    }
 	    if (end == start) {
 	        return new FreeWord<E>(getAlphabet());
+	    } else if (start == 0 && end == this.length) {
+	        return this;
 	    } else {
-	        final int len = end - start;
-	        final int tmp[] = new int[len];
-	        for (int i = 0; i < len; ++i) {
-	            tmp[i] = this.data[i+start];
-	        }
-	        return new FreeWord<E>(getAlphabet(), tmp, false);
+	        return new FreeWord<E>(getAlphabet(), this.data,
+	                this.offset + start, end - start);
 	    }
 	}
 	
@@ -375,21 +412,25 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 		if (!this.getAlphabet().equals(other.getAlphabet())) {
 			throw new IllegalArgumentException("must have equal alphabets");
 		}
-		final int n1 = this.data.length;
-		final int n2 = other.data.length;
+		final int n1 = this.length;
+		final int n2 = other.length;
+		if (n2 == 0) {
+		    return this;
+		} else if (n1 == 0) {
+		    return new FreeWord<E>(other);
+		}
+		final int a[] = this.data;
+		final int b[] = other.data;
+		final int last = this.offset + n1 - 1;
 		final int m = Math.min(n1, n2);
 		int k = 0;
-		while (k < m && other.data[k] == -this.data[n1 - 1 - k]) {
+		while (k < m && b[other.offset + k] == -a[last - k]) {
 			++k;
 		}
 		final int out[] = new int[n1 + n2 - 2 * k];
-		for (int i = 0; i < n1 - k; ++i) {
-			out[i] = this.data[i];
-		}
-		for (int i = 0; i < n2 - k; ++i) {
-			out[n1 - k + i] = other.data[k + i];
-		}
-		return new FreeWord<E>(this.getAlphabet(), out, false);
+		System.arraycopy(a, this.offset, out, 0, n1 - k);
+		System.arraycopy(b, other.offset + k, out, n1 - k, n2 - k);
+		return new FreeWord<E>(this.getAlphabet(), out, 0, out.length);
 	}
 	
 	/**
@@ -397,12 +438,18 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	 * @return the inverse.
 	 */
 	public FreeWord<E> inverse() {
-	    final int n = length();
-	    final int out[] = new int[n];
-	    for (int i = 0; i < n; ++i) {
-	        out[i] = -data[n-1-i];
+	    if (this.inverse == null) {
+	        final int n = this.length;
+	        final int last = this.offset + n - 1;
+	        final int out[] = new int[n];
+	        for (int i = 0; i < n; ++i) {
+	            out[i] = -this.data[last - i];
+	        }
+	        final FreeWord<E> inv = new FreeWord<E>(getAlphabet(), out, 0, n);
+	        inv.inverse = this;
+	        this.inverse = inv;
 	    }
-	    return new FreeWord<E>(getAlphabet(), out, false);
+	    return this.inverse;
 	}
 	
     /**
@@ -415,31 +462,31 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
         final int m = size();
         
         if (n == 0 || m == 0) {
-            out = null;
+            return new FreeWord<E>(getAlphabet());
         } else if (n == 1) {
-            out = (int[]) data.clone();
+            return this;
         } else if (n == -1) {
             return inverse();
         } else if (n < 0) {
             return inverse().raisedTo(-n);
         } else {
+            final int data[] = this.data;
+            final int first = this.offset;
+            final int last = first + m - 1;
     		int k = 0;
-    		while (k < m && data[k] == -data[m - 1 - k]) {
+    		while (k < m && data[first + k] == -data[last - k]) {
     			++k;
     		}
     		final int len = n * m - 2 * (n-1) * k;
     		out = new int[len];
-    		for (int i = 0; i < k; ++i) {
-    		    out[i] = data[i];
-    		    out[len - 1 - i] = data[m - 1 - i];
-    		}
+    		System.arraycopy(data, first, out, 0, k);
+    		System.arraycopy(data, last + 1 - k, out, len - k, k);
     		for (int j = 0; j < n; ++j) {
-    		    for (int i = k; i < m - k; ++i) {
-    		        out[j * (m - 2 * k) + i] = data[i];
-    		    }
+    		    System.arraycopy(data, first + k, out, j * (m - 2 * k) + k,
+    		            m - 2 * k);
     		}
         }
-        return new FreeWord<E>(this.getAlphabet(), out, false);
+        return new FreeWord<E>(this.getAlphabet(), out, 0, out.length);
     }
 
 	/*
@@ -447,10 +494,10 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
 	 */
 	public String toString() {
 		final StringBuffer buf = new StringBuffer(100);
-		if (data.length == 0) {
+		if (this.length == 0) {
 			buf.append("*");
 		} else {
-			for (int i = 0; i < data.length; ++i) {
+			for (int i = 0; i < this.length; ++i) {
 				if (i > 0) {
 					buf.append("*");
 				}
@@ -469,18 +516,19 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
      * considered larger), then by index.
      */
     public int compareTo(final FreeWord<E> w) {
-        final int n = Math.min(this.length(), w.length());
+        final int n = Math.min(this.length, w.length);
         for (int i = 0; i < n; ++i) {
-            int d = w.getSign(i) - this.getSign(i);
-            if (d != 0) {
-                return d;
-            }
-            d = this.getLetter(i) - w.getLetter(i);
-            if (d != 0) {
-                return d;
+            final int a = this.data[this.offset + i];
+            final int b = w.data[w.offset + i];
+            if (a != b) {
+                if ((a < 0) != (b < 0)) {
+                    return a < 0 ? 1 : -1;
+                } else {
+                    return Math.abs(a) - Math.abs(b);
+                }
             }
         }
-        return this.length() - w.length();
+        return this.length - w.length;
     }
 
     /**
@@ -490,8 +538,19 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
         if (other instanceof FreeWord) {
             @SuppressWarnings("unchecked")
             final FreeWord<E> w = (FreeWord<E>) other;
-            return this.getAlphabet().equals(w.getAlphabet())
-                    && this.compareTo(w) == 0;
+            if (this == w) {
+                return true;
+            } else if (this.length != w.length
+                    || (this.hash != 0 && w.hash != 0 && this.hash != w.hash)
+                    || !this.getAlphabet().equals(w.getAlphabet())) {
+                return false;
+            }
+            for (int i = 0; i < this.length; ++i) {
+                if (this.data[this.offset + i] != w.data[w.offset + i]) {
+                    return false;
+                }
+            }
+            return true;
         } else {
             return false;
         }
@@ -501,10 +560,13 @@ public class FreeWord<E> implements Comparable<FreeWord<E>> {
      * Overrides {@link Object#hashCode()}.
      */
     public int hashCode() {
-        int code = getAlphabet().hashCode();
-        for (int i =0; i < length(); ++i) {
-            code = code * 37 + data[i];
+        if (this.hash == 0) {
+            int code = getAlphabet().hashCode();
+            for (int i = 0; i < this.length; ++i) {
+                code = code * 37 + this.data[this.offset + i];
+            }
+            this.hash = code;
         }
-        return code;
+        return this.hash;
     }
 }
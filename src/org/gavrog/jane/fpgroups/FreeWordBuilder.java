@@ -0,0 +1,177 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.fpgroups;
+
+import java.util.Arrays;
+
+/**
+ * A mutable free word which is kept reduced while letters and words are
+ * appended to it. Use this in place of repeated calls to
+ * {@link FreeWord#times(FreeWord)} when a word is assembled from many pieces.
+ */
+public class FreeWordBuilder<E> {
+    final private Alphabet<E> alphabet;
+    private int data[];
+    private int size;
+
+    /**
+     * Constructs an instance representing the empty word.
+     *
+     * @param alphabet the underlying alphabet.
+     */
+    public FreeWordBuilder(final Alphabet<E> alphabet) {
+        this.alphabet = alphabet;
+        this.data = new int[16];
+        this.size = 0;
+    }
+
+    /**
+     * Constructs an instance representing the given word.
+     *
+     * @param word the initial word.
+     */
+    public FreeWordBuilder(final FreeWord<E> word) {
+        this(word.getAlphabet());
+        append(word);
+    }
+
+    /**
+     * @return the underlying alphabet.
+     */
+    public Alphabet<E> getAlphabet() {
+        return this.alphabet;
+    }
+
+    /**
+     * @return the current number of letters.
+     */
+    public int length() {
+        return this.size;
+    }
+
+    /**
+     * Resets this instance to the empty word.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    private void ensureCapacity(final int n) {
+        if (n > this.data.length) {
+            this.data = Arrays.copyOf(this.data,
+                    Math.max(n, 2 * this.data.length));
+        }
+    }
+
+    private void push(final int letter) {
+        if (this.size > 0 && this.data[this.size - 1] == -letter) {
+            --this.size;
+        } else {
+            this.data[this.size++] = letter;
+        }
+    }
+
+    /**
+     * Appends a single letter, cancelling it against the last one if
+     * appropriate.
+     *
+     * @param letter the letter, negated to denote its inverse.
+     * @return this instance.
+     */
+    public FreeWordBuilder<E> append(final int letter) {
+        if (letter == 0 || this.alphabet.letterToName(Math.abs(letter)) == null) {
+            throw new IllegalArgumentException("illegal entry " + letter);
+        }
+        ensureCapacity(this.size + 1);
+        push(letter);
+        return this;
+    }
+
+    /**
+     * Appends a word.
+     *
+     * @param word the word to append.
+     * @return this instance.
+     */
+    public FreeWordBuilder<E> append(final FreeWord<? extends E> word) {
+        return append(word, 0, word.length());
+    }
+
+    /**
+     * Appends a subword of a word.
+     *
+     * @param word the word to take letters from.
+     * @param start the smallest index in the subword.
+     * @param end the smallest index after the end of the subword.
+     * @return this instance.
+     */
+    public FreeWordBuilder<E> append(final FreeWord<? extends E> word,
+            final int start, final int end) {
+        checkAlphabet(word);
+        if (start < 0 || end < start || end > word.length()) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        ensureCapacity(this.size + end - start);
+        final int src[] = word.data;
+        final int offset = word.offset;
+        int i = start;
+        while (i < end && this.size > 0
+                && this.data[this.size - 1] == -src[offset + i]) {
+            --this.size;
+            ++i;
+        }
+        System.arraycopy(src, offset + i, this.data, this.size, end - i);
+        this.size += end - i;
+        return this;
+    }
+
+    /**
+     * Appends the inverse of a word.
+     *
+     * @param word the word to append the inverse of.
+     * @return this instance.
+     */
+    public FreeWordBuilder<E> appendInverse(final FreeWord<? extends E> word) {
+        checkAlphabet(word);
+        final int n = word.length();
+        ensureCapacity(this.size + n);
+        final int src[] = word.data;
+        final int last = word.offset + n - 1;
+        for (int i = 0; i < n; ++i) {
+            push(-src[last - i]);
+        }
+        return this;
+    }
+
+    private void checkAlphabet(final FreeWord<? extends E> word) {
+        if (!this.alphabet.equals(word.getAlphabet())) {
+            throw new IllegalArgumentException("must have equal alphabets");
+        }
+    }
+
+    /**
+     * @return the current word as an immutable {@link FreeWord}.
+     */
+    public FreeWord<E> toFreeWord() {
+        return new FreeWord<E>(this.alphabet,
+                Arrays.copyOf(this.data, this.size), 0, this.size);
+    }
+
+    public String toString() {
+        return toFreeWord().toString();
+    }
+}
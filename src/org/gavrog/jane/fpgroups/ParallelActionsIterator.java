@@ -0,0 +1,232 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.fpgroups;
+
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gavrog.box.collections.IteratorAdapter;
+
+/**
+ * Enumerates the same actions as {@link SmallActionsIterator}, in the same
+ * order, but explores the search tree on several threads. The tree is split
+ * at a fixed shallow depth and the resulting subtrees are handed to a thread
+ * pool. Each subtree passes its actions back through a bounded queue, which
+ * the consumer drains in the order of the subtrees.
+ *
+ * The choice limit applies to the total number of choices made by all
+ * threads. The worker threads are daemon threads. An instance that is not
+ * run to completion should be stopped by calling {@link #cancel()}.
+ */
+public class ParallelActionsIterator<E>
+extends IteratorAdapter<GroupAction<E, Integer>> {
+    // --- the choice depth at which the search tree is split
+    final static int SPLIT_DEPTH = 4;
+
+    // --- the maximal number of actions buffered per subtree
+    final static int QUEUE_CAPACITY = 64;
+
+    // --- marks the end of the output for a subtree
+    final private static Object END = new Object();
+
+    final private SmallActionsIterator<E> splitter;
+    final private int nrThreads;
+    final private AtomicLong choices = new AtomicLong();
+    final private LinkedList<Part> parts = new LinkedList<Part>();
+    private ExecutorService pool = null;
+    private boolean splitterDone = false;
+
+    // --- time limit for this iterator
+    final private long startTime;
+
+    /**
+     * A portion of the output, either a single action found above the split
+     * depth or the output of a subtree.
+     */
+    private class Part {
+        final private GroupAction<E, Integer> action;
+        final private BlockingQueue<Object> queue;
+
+        public Part(final GroupAction<E, Integer> action) {
+            this.action = action;
+            this.queue = null;
+        }
+
+        public Part(final SmallActionsIterator<E> subtree) {
+            this.action = null;
+            this.queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        try {
+                            while (subtree.hasNext()) {
+                                queue.put(subtree.next());
+                            }
+                            queue.put(END);
+                        } catch (RuntimeException ex) {
+                            queue.put(ex);
+                        }
+                    } catch (InterruptedException ex) {
+                        // --- the iterator was cancelled
+                    }
+                }
+            });
+        }
+
+        /**
+         * Retrieves the next action for this part, waiting for it if
+         * necessary.
+         *
+         * @return the next action or null if the part is exhausted.
+         */
+        @SuppressWarnings("unchecked")
+        public GroupAction<E, Integer> take() {
+            if (this.queue == null) {
+                return this.action;
+            }
+            final Object item;
+            try {
+                item = this.queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+            if (item == END) {
+                return null;
+            } else if (item instanceof RuntimeException) {
+                throw (RuntimeException) item;
+            } else {
+                return (GroupAction<E, Integer>) item;
+            }
+        }
+    }
+
+    /**
+     * Constructs and initializes a new instance.
+     *
+     * @param group the group to construct actions of.
+     * @param maxSize the maximal size of the set on which to act.
+     * @param normalOnly if true, require that each set element has the same
+     *            stabilizer. The stabilizer is then a normal subgroup.
+     * @param nrThreads the number of threads to use.
+     */
+    public ParallelActionsIterator(final FpGroup<E> group, final int maxSize,
+            final boolean normalOnly, final int nrThreads) {
+        this.splitter = new SmallActionsIterator<E>(group, maxSize, normalOnly);
+        this.splitter.setSplitDepth(SPLIT_DEPTH);
+        this.splitter.shareChoiceCounter(this.choices);
+        this.nrThreads = Math.max(1, nrThreads);
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Sets the maximum total number of choices all threads may make. Must be
+     * called before the first action is requested.
+     *
+     * @param choiceLimit the new limit.
+     */
+    public void setMaximalNumberOfChoices(final long choiceLimit) {
+        this.splitter.setMaximalNumberOfChoices(choiceLimit);
+    }
+
+    protected GroupAction<E, Integer> findNext() throws NoSuchElementException {
+        if (this.pool == null) {
+            this.pool = Executors.newFixedThreadPool(this.nrThreads,
+                    new ThreadFactory() {
+                        public Thread newThread(final Runnable r) {
+                            final Thread t = new Thread(r);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        try {
+            while (true) {
+                fillParts();
+                if (this.parts.isEmpty()) {
+                    cancel();
+                    throw new NoSuchElementException("At end.");
+                }
+                final Part part = this.parts.getFirst();
+                final GroupAction<E, Integer> action = part.take();
+                if (action == null || part.queue == null) {
+                    this.parts.removeFirst();
+                }
+                if (action != null) {
+                    return action;
+                }
+            }
+        } catch (RuntimeException ex) {
+            if (!(ex instanceof NoSuchElementException)) {
+                cancel();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Advances the splitter until enough parts are queued to keep all threads
+     * busy or the search tree is exhausted.
+     */
+    private void fillParts() {
+        while (!this.splitterDone && this.parts.size() < 4 * this.nrThreads) {
+            try {
+                if (this.splitter.advance()) {
+                    this.parts.addLast(
+                            new Part(this.splitter.constructAction()));
+                } else {
+                    this.parts.addLast(new Part(this.splitter.splitSubtree()));
+                }
+            } catch (NoSuchElementException ex) {
+                this.splitterDone = true;
+            }
+        }
+    }
+
+    /**
+     * Stops all worker threads. No further actions will be produced.
+     */
+    public void cancel() {
+        this.splitterDone = true;
+        this.parts.clear();
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the total number of choices made so far by all threads.
+     * @return the current number of choices.
+     */
+    public long getChoicesSoFar() {
+        return this.choices.get();
+    }
+
+    /**
+     * Returns the time elapsed since this instance was created.
+     * @return the elapsed time in milliseconds.
+     */
+    public long getTimeElapsed() {
+        return System.currentTimeMillis() - this.startTime;
+    }
+}
@@ -0,0 +1,669 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.fpgroups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A string rewriting system for a finitely presented group, which can be
+ * completed via the Knuth-Bendix procedure with respect to the shortlex
+ * ordering. Generators come first in the ordering, each followed by its
+ * inverse.
+ *
+ * Once the system is confluent, the irreducible words are exactly the
+ * shortlex-minimal representatives of the group elements. This gives normal
+ * forms and a solution to the word problem without constructing coset
+ * tables, as well as growth counts and the group order via an automaton
+ * recognizing the irreducible words. Completion does not terminate for many
+ * groups and is therefore bounded by a maximal number of rules and a time
+ * limit.
+ */
+public class RewritingSystem<E> {
+    // --- default limits for the completion
+    final public static int DEFAULT_RULE_LIMIT = 10000;
+    final public static long DEFAULT_TIME_LIMIT = 60000;
+
+    final private FpGroup<E> group;
+    final private int nletters;
+
+    // --- the rules, removed ones are set to null
+    final private List<int[]> lhs = new ArrayList<int[]>();
+    final private List<int[]> rhs = new ArrayList<int[]>();
+    private int nrRules = 0;
+
+    // --- a trie of the reversed left hand sides for rewriting
+    private int children[];
+    private int ruleAt[];
+    private int nrNodes;
+
+    // --- pending equations and completion state
+    final private LinkedList<int[][]> pending = new LinkedList<int[][]>();
+    private int nextRule = 0;
+    private boolean confluent = false;
+    private int ruleLimit = DEFAULT_RULE_LIMIT;
+    private long timeLimit = DEFAULT_TIME_LIMIT;
+
+    /**
+     * Constructs a rewriting system for the given group, with rules
+     * cancelling each generator against its inverse and one rule for each
+     * relator.
+     *
+     * @param group the group to construct a rewriting system for.
+     */
+    public RewritingSystem(final FpGroup<E> group) {
+        this.group = group;
+        this.nletters = 2 * group.getGenerators().size();
+        this.children = new int[64 * this.nletters];
+        this.ruleAt = new int[64];
+        this.nrNodes = 0;
+        newNode();
+
+        for (int x = 0; x < this.nletters; ++x) {
+            addRule(new int[] { x, x ^ 1 }, new int[0]);
+        }
+        for (final FreeWord<E> r: group.getRelators()) {
+            this.pending.addLast(new int[][] { translate(r), new int[0] });
+        }
+        this.confluent = false;
+    }
+
+    /**
+     * Sets the maximal number of rules the completion may create.
+     *
+     * @param n the new limit.
+     */
+    public void setMaximalNumberOfRules(final int n) {
+        this.ruleLimit = n;
+    }
+
+    /**
+     * Sets the maximal time a single call to {@link #complete()} may take.
+     *
+     * @param millis the new limit in milliseconds.
+     */
+    public void setTimeLimit(final long millis) {
+        this.timeLimit = millis;
+    }
+
+    /**
+     * @return the group this rewriting system represents.
+     */
+    public FpGroup<E> getGroup() {
+        return this.group;
+    }
+
+    /**
+     * @return the current number of rules.
+     */
+    public int numberOfRules() {
+        return this.nrRules;
+    }
+
+    /**
+     * @return true if the system is known to be confluent.
+     */
+    public boolean isConfluent() {
+        return this.confluent;
+    }
+
+    /**
+     * Runs the Knuth-Bendix completion procedure until either the system is
+     * confluent or one of the limits is reached. A later call resumes the
+     * completion where the previous one stopped.
+     *
+     * @return true if the system is now confluent.
+     */
+    public boolean complete() {
+        final long start = System.currentTimeMillis();
+        int count = 0;
+
+        while (true) {
+            while (!this.pending.isEmpty()) {
+                if (this.nrRules > this.ruleLimit) {
+                    return false;
+                }
+                if (++count % 64 == 0
+                        && System.currentTimeMillis() - start > this.timeLimit) {
+                    return false;
+                }
+                final int eq[][] = this.pending.removeFirst();
+                addEquation(eq[0], eq[1]);
+            }
+            // --- find the overlaps of the oldest rule not yet examined
+            final int i = this.nextRule;
+            if (i >= this.lhs.size()) {
+                break;
+            }
+            for (int j = 0; j <= i && this.lhs.get(i) != null; ++j) {
+                if (this.lhs.get(j) != null) {
+                    addOverlaps(i, j);
+                    if (j != i) {
+                        addOverlaps(j, i);
+                    }
+                }
+            }
+            ++this.nextRule;
+        }
+
+        this.confluent = true;
+        return true;
+    }
+
+    /**
+     * Reduces an equation, orients it and adds the resulting rule, if any.
+     */
+    private void addEquation(final int u[], final int v[]) {
+        final int a[] = reduce(u);
+        final int b[] = reduce(v);
+        final int d = compare(a, b);
+        if (d > 0) {
+            addRule(a, b);
+        } else if (d < 0) {
+            addRule(b, a);
+        }
+    }
+
+    /**
+     * Adds a rule, removing all rules whose left hand sides become reducible
+     * and reducing all right hand sides.
+     */
+    private void addRule(final int left[], final int right[]) {
+        this.confluent = false;
+        for (int i = 0; i < this.lhs.size(); ++i) {
+            final int l[] = this.lhs.get(i);
+            if (l == null) {
+                continue;
+            }
+            if (indexOf(l, left) >= 0) {
+                this.pending.addLast(new int[][] { l, this.rhs.get(i) });
+                removeRule(i);
+            }
+        }
+        final int id = this.lhs.size();
+        this.lhs.add(left);
+        this.rhs.add(right);
+        ++this.nrRules;
+        insert(left, id);
+        for (int i = 0; i < this.lhs.size(); ++i) {
+            if (this.lhs.get(i) != null && indexOf(this.rhs.get(i), left) >= 0) {
+                this.rhs.set(i, reduce(this.rhs.get(i)));
+            }
+        }
+    }
+
+    private void removeRule(final int id) {
+        final int l[] = this.lhs.get(id);
+        int node = 0;
+        for (int i = l.length - 1; i >= 0; --i) {
+            node = this.children[node * this.nletters + l[i]];
+        }
+        this.ruleAt[node] = -1;
+        this.lhs.set(id, null);
+        this.rhs.set(id, null);
+        --this.nrRules;
+    }
+
+    /**
+     * Adds the equations resulting from proper overlaps of a suffix of the
+     * first rule's left hand side with a prefix of the second one's.
+     */
+    private void addOverlaps(final int i, final int j) {
+        final int l1[] = this.lhs.get(i);
+        final int r1[] = this.rhs.get(i);
+        final int l2[] = this.lhs.get(j);
+        final int r2[] = this.rhs.get(j);
+        final int n1 = l1.length;
+        final int n2 = l2.length;
+        for (int k = 1; k < Math.min(n1, n2); ++k) {
+            boolean match = true;
+            for (int m = 0; m < k; ++m) {
+                if (l1[n1 - k + m] != l2[m]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                // --- the word l1 + l2[k..] rewrites in two ways
+                final int u[] = concat(r1, 0, r1.length, l2, k, n2);
+                final int v[] = concat(l1, 0, n1 - k, r2, 0, r2.length);
+                this.pending.addLast(new int[][] { u, v });
+            }
+        }
+    }
+
+    /**
+     * Reduces a word in internal form with respect to the current rules.
+     */
+    private int[] reduce(final int w[]) {
+        int input[] = new int[w.length + 16];
+        int nin = 0;
+        for (int i = w.length - 1; i >= 0; --i) {
+            input[nin++] = w[i];
+        }
+        int out[] = new int[w.length + 16];
+        int nout = 0;
+
+        while (nin > 0) {
+            final int x = input[--nin];
+            if (nout >= out.length) {
+                out = Arrays.copyOf(out, 2 * out.length);
+            }
+            out[nout++] = x;
+
+            int node = 0;
+            int rule = -1;
+            int p = nout - 1;
+            while (p >= 0) {
+                node = this.children[node * this.nletters + out[p]];
+                if (node <= 0) {
+                    break;
+                }
+                if (this.ruleAt[node] >= 0) {
+                    rule = this.ruleAt[node];
+                    break;
+                }
+                --p;
+            }
+            if (rule >= 0) {
+                nout = p;
+                final int r[] = this.rhs.get(rule);
+                if (nin + r.length > input.length) {
+                    input = Arrays.copyOf(input,
+                            Math.max(nin + r.length, 2 * input.length));
+                }
+                for (int i = r.length - 1; i >= 0; --i) {
+                    input[nin++] = r[i];
+                }
+            }
+        }
+        return Arrays.copyOf(out, nout);
+    }
+
+    private int newNode() {
+        if (this.nrNodes >= this.ruleAt.length) {
+            this.ruleAt = Arrays.copyOf(this.ruleAt, 2 * this.nrNodes);
+            this.children = Arrays.copyOf(this.children,
+                    2 * this.nrNodes * this.nletters);
+        }
+        this.ruleAt[this.nrNodes] = -1;
+        return this.nrNodes++;
+    }
+
+    private void insert(final int left[], final int id) {
+        int node = 0;
+        for (int i = left.length - 1; i >= 0; --i) {
+            final int k = node * this.nletters + left[i];
+            if (this.children[k] == 0) {
+                final int next = newNode();
+                this.children[k] = next;
+            }
+            node = this.children[k];
+        }
+        this.ruleAt[node] = id;
+    }
+
+    /**
+     * Computes the normal form of a word, which is the shortlex-smallest
+     * equivalent word if the system is confluent.
+     *
+     * @param w the input word.
+     * @return the reduced word.
+     */
+    public FreeWord<E> normalForm(final FreeWord<E> w) {
+        final int r[] = reduce(translate(w));
+        final int data[] = new int[r.length];
+        for (int i = 0; i < r.length; ++i) {
+            final int g = (r[i] >> 1) + 1;
+            data[i] = (r[i] & 1) == 0 ? g : -g;
+        }
+        return new FreeWord<E>(this.group.getAlphabet(), data, 0, data.length);
+    }
+
+    /**
+     * Checks whether a word represents the identity. If the word does not
+     * reduce to the empty word and the system is not confluent, the question
+     * cannot be decided.
+     *
+     * @param w the word to check.
+     * @return true if w represents the identity.
+     * @throws IllegalStateException if the answer is unknown.
+     */
+    public boolean isTrivial(final FreeWord<E> w) {
+        if (reduce(translate(w)).length == 0) {
+            return true;
+        } else if (this.confluent) {
+            return false;
+        } else {
+            throw new IllegalStateException(
+                    "rewriting system is not confluent");
+        }
+    }
+
+    /**
+     * Checks whether two words represent the same group element.
+     *
+     * @param u the first word.
+     * @param v the second word.
+     * @return true if u and v are equal in the group.
+     * @throws IllegalStateException if the answer is unknown.
+     */
+    public boolean areEqual(final FreeWord<E> u, final FreeWord<E> v) {
+        return isTrivial(u.times(v.inverse()));
+    }
+
+    /**
+     * Counts the group elements of each length up to the given one with
+     * respect to the generators and their inverses. The system must be
+     * confluent.
+     *
+     * @param maxLength the maximal length to count elements for.
+     * @return the counts indexed by length.
+     * @throws IllegalStateException if the system is not confluent.
+     */
+    public long[] growthSeries(final int maxLength) {
+        final Automaton A = new Automaton();
+        long counts[] = new long[A.size];
+        counts[0] = 1;
+        final long result[] = new long[maxLength + 1];
+        for (int len = 0; len <= maxLength; ++len) {
+            long total = 0;
+            for (int s = 0; s < A.size; ++s) {
+                total = checkedSum(total, counts[s]);
+            }
+            result[len] = total;
+            if (len < maxLength) {
+                counts = A.step(counts);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines whether the group is finite. The system must be confluent.
+     *
+     * @return true if the group is finite.
+     * @throws IllegalStateException if the system is not confluent.
+     */
+    public boolean isFinite() {
+        return new Automaton().isAcyclic();
+    }
+
+    /**
+     * Computes the order of the group. The system must be confluent.
+     *
+     * @return the number of group elements.
+     * @throws IllegalStateException if the system is not confluent or the
+     *             group is infinite.
+     */
+    public long order() {
+        final Automaton A = new Automaton();
+        if (!A.isAcyclic()) {
+            throw new IllegalStateException("group is infinite");
+        }
+        long counts[] = new long[A.size];
+        counts[0] = 1;
+        long total = 0;
+        for (int len = 0; len <= A.size; ++len) {
+            for (int s = 0; s < A.size; ++s) {
+                total = checkedSum(total, counts[s]);
+            }
+            counts = A.step(counts);
+        }
+        return total;
+    }
+
+    /**
+     * A finite automaton accepting exactly the irreducible words, built from
+     * the left hand sides of the rules via the Aho-Corasick construction.
+     * Only states for irreducible prefixes are kept.
+     */
+    private class Automaton {
+        final int size;
+        final int next[];
+
+        public Automaton() {
+            if (!confluent) {
+                throw new IllegalStateException(
+                        "rewriting system is not confluent");
+            }
+            final int n = nletters;
+
+            // --- build a trie of the left hand sides
+            int goTo[] = new int[64 * n];
+            boolean dead[] = new boolean[64];
+            Arrays.fill(goTo, -1);
+            int nodes = 1;
+            for (final int l[]: lhs) {
+                if (l == null) {
+                    continue;
+                }
+                int node = 0;
+                for (final int x: l) {
+                    if (goTo[node * n + x] < 0) {
+                        if (nodes >= dead.length) {
+                            dead = Arrays.copyOf(dead, 2 * nodes);
+                            goTo = Arrays.copyOf(goTo, 2 * nodes * n);
+                            Arrays.fill(goTo, nodes * n, goTo.length, -1);
+                        }
+                        goTo[node * n + x] = nodes++;
+                    }
+                    node = goTo[node * n + x];
+                }
+                dead[node] = true;
+            }
+
+            // --- add failure transitions in breadth first order
+            final int fail[] = new int[nodes];
+            final int queue[] = new int[nodes];
+            int head = 0;
+            int tail = 0;
+            for (int x = 0; x < n; ++x) {
+                if (goTo[x] < 0) {
+                    goTo[x] = 0;
+                } else {
+                    fail[goTo[x]] = 0;
+                    queue[tail++] = goTo[x];
+                }
+            }
+            while (head < tail) {
+                final int s = queue[head++];
+                dead[s] |= dead[fail[s]];
+                for (int x = 0; x < n; ++x) {
+                    final int t = goTo[s * n + x];
+                    if (t < 0) {
+                        goTo[s * n + x] = goTo[fail[s] * n + x];
+                    } else {
+                        fail[t] = goTo[fail[s] * n + x];
+                        queue[tail++] = t;
+                    }
+                }
+            }
+
+            // --- renumber the live states, keeping the start state first
+            final int index[] = new int[nodes];
+            int m = 0;
+            for (int s = 0; s < nodes; ++s) {
+                index[s] = dead[s] ? -1 : m++;
+            }
+            this.size = m;
+            this.next = new int[m * n];
+            for (int s = 0; s < nodes; ++s) {
+                if (!dead[s]) {
+                    for (int x = 0; x < n; ++x) {
+                        this.next[index[s] * n + x] = index[goTo[s * n + x]];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Advances path counts by one letter.
+         */
+        public long[] step(final long counts[]) {
+            final int n = nletters;
+            final long result[] = new long[this.size];
+            for (int s = 0; s < this.size; ++s) {
+                if (counts[s] != 0) {
+                    for (int x = 0; x < n; ++x) {
+                        final int t = this.next[s * n + x];
+                        if (t >= 0) {
+                            result[t] = checkedSum(result[t], counts[s]);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Checks whether there is a cycle through states reachable from the
+         * start state.
+         */
+        public boolean isAcyclic() {
+            final int n = nletters;
+            final int color[] = new int[this.size];
+            final int stack[] = new int[this.size + 1];
+            final int edge[] = new int[this.size + 1];
+            int top = 0;
+            stack[0] = 0;
+            edge[0] = 0;
+            color[0] = 1;
+            while (top >= 0) {
+                final int s = stack[top];
+                if (edge[top] >= n) {
+                    color[s] = 2;
+                    --top;
+                    continue;
+                }
+                final int t = this.next[s * n + edge[top]++];
+                if (t < 0 || color[t] == 2) {
+                    continue;
+                } else if (color[t] == 1) {
+                    return false;
+                } else {
+                    color[t] = 1;
+                    stack[++top] = t;
+                    edge[top] = 0;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static long checkedSum(final long a, final long b) {
+        final long s = a + b;
+        if (s < 0) {
+            throw new ArithmeticException("count too large");
+        }
+        return s;
+    }
+
+    /**
+     * @return the current rules as pairs of words.
+     */
+    public List<FreeWord<E>[]> getRules() {
+        final List<FreeWord<E>[]> result = new ArrayList<FreeWord<E>[]>();
+        for (int i = 0; i < this.lhs.size(); ++i) {
+            if (this.lhs.get(i) != null) {
+                result.add(pair(toWord(this.lhs.get(i)),
+                        toWord(this.rhs.get(i))));
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> FreeWord<E>[] pair(final FreeWord<E> left,
+            final FreeWord<E> right) {
+        return (FreeWord<E>[]) new FreeWord<?>[] { left, right };
+    }
+
+    public String toString() {
+        final StringBuffer buf = new StringBuffer(500);
+        for (final FreeWord<E> rule[]: getRules()) {
+            buf.append(rule[0]);
+            buf.append(" -> ");
+            buf.append(rule[1]);
+            buf.append("\n");
+        }
+        return buf.toString();
+    }
+
+    private FreeWord<E> toWord(final int w[]) {
+        final int data[] = new int[w.length];
+        for (int i = 0; i < w.length; ++i) {
+            final int g = (w[i] >> 1) + 1;
+            data[i] = (w[i] & 1) == 0 ? g : -g;
+        }
+        return new FreeWord<E>(this.group.getAlphabet(), data, 0, data.length);
+    }
+
+    private int[] translate(final FreeWord<E> w) {
+        if (!this.group.getAlphabet().equals(w.getAlphabet())) {
+            throw new IllegalArgumentException("must have equal alphabets");
+        }
+        final int result[] = new int[w.length()];
+        for (int i = 0; i < w.length(); ++i) {
+            final int x = w.signedLetter(i);
+            result[i] = x > 0 ? 2 * (x - 1) : 2 * (-x - 1) + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Compares two words in internal form in the shortlex ordering.
+     */
+    private static int compare(final int a[], final int b[]) {
+        if (a.length != b.length) {
+            return a.length - b.length;
+        }
+        for (int i = 0; i < a.length; ++i) {
+            if (a[i] != b[i]) {
+                return a[i] - b[i];
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(final int w[], final int u[]) {
+        final int n = w.length - u.length;
+        for (int i = 0; i <= n; ++i) {
+            boolean match = true;
+            for (int j = 0; j < u.length; ++j) {
+                if (w[i + j] != u[j]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] concat(final int a[], final int a0, final int a1,
+            final int b[], final int b0, final int b1) {
+        final int result[] = new int[a1 - a0 + b1 - b0];
+        System.arraycopy(a, a0, result, 0, a1 - a0);
+        System.arraycopy(b, b0, result, a1 - a0, b1 - b0);
+        return result;
+    }
+}
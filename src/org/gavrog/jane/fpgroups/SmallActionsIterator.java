@@ -16,14 +16,14 @@
 
 package org.gavrog.jane.fpgroups;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.gavrog.box.collections.IteratorAdapter;
 import org.gavrog.box.collections.Iterators;
@@ -33,12 +33,25 @@ import org.gavrog.box.collections.Iterators;
  * Enumerates all non-isomorphic transitive actions of a given group on small
  * sets up to a a given size. By computing the stabilizers of the resulting
  * actions, one obtains all conjugacy classes of subgroups of the group.
+ *
+ * The enumeration is a depth-first search over partial action tables. The
+ * relators are compiled into lists of their distinct cyclic conjugates,
+ * indexed by the first generator, so that setting a table entry only scans
+ * the relators passing through it. Deductions are entered into the table as
+ * soon as they are found, partial tables not in canonical form are discarded
+ * right away, and all moves are recorded on a flat integer trail, so that the
+ * search itself does not allocate.
  */
 public class SmallActionsIterator<E>
 extends IteratorAdapter<GroupAction<E, Integer>> {
     // --- set to true to enable logging
     final private static boolean LOGGING = false;
 
+    // --- layout and flags for trail entries
+    final private static int MOVE_SIZE = 4;
+    final private static int STARTS_ROW = 1;
+    final private static int IS_CHOICE = 2;
+
     // --- input parameters
     final private FpGroup<E> group;
     final private int maxSize;
@@ -48,14 +61,28 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
     final private int ngens;
     final private Map<FreeWord<E>, Integer> gen2idx;
     final private int[] idx2invidx;
-    final private List<Set<int[]>> relatorsByStartGen;
+    final private int[][][] relatorsByStartGen;
     
-    // --- the action table and trial stack
+    // --- the action table, the trail of moves and the deduction queue
     final private int[][] table;
-    final private LinkedList<Move> stack;
+    private int[] trail;
+    private int trailSize;
+    final private int[] queue;
+    private int queueSize;
+
+    // --- scratch space for canonicity tests
+    final private int[] old2new;
+    final private int[] new2old;
     
     // --- info on the current state
     private int currentNumberOfRows;
+    private int depth;
+
+    // --- the search is confined to trail entries from this position on
+    final private int floor;
+
+    // --- choice depth at which the search tree is to be split
+    private int splitDepth = Integer.MAX_VALUE;
     
     // --- time limit for this iterator
     private long startTime;
@@ -63,32 +90,7 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
     // --- choices made so far and choice limit
     private long choicesSoFar = 0;
     private long choiceLimit = Long.MAX_VALUE;
-    
-    /**
-     * The instances of this class represent individual moves of setting
-     * table entries. These become the entries of the trial stack.
-     */
-    private class Move {
-        final public int row;
-        final public int column;
-        final public int value;
-        final public boolean startsRow;
-        final public boolean isChoice;
-        
-        public Move(final int row, final int column, final int value,
-                final boolean newRow, final boolean isChoice) {
-            this.row = row;
-            this.column = column;
-            this.value = value;
-            this.startsRow = newRow;
-            this.isChoice = isChoice;
-        }
-        
-        public String toString() {
-            return "Move(" + row + ", " + column + ", " + value + ", "
-                   + startsRow + ", " + isChoice + ")";
-        }
-    }
+    private AtomicLong sharedChoices = null;
     
     /**
      * Constructs and initializes a new instance.
@@ -124,36 +126,106 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
         }
 
         // --- translate relators
-        this.relatorsByStartGen = new LinkedList<Set<int[]>>();
-        for (int k = 0; k <= this.ngens; ++k) {
-            this.relatorsByStartGen.add(new HashSet<int[]>());
-        }
-        for (final FreeWord<E> rel: groupRelators) {
-            for (int exp = -1; exp <= 1; exp += 2) {
-                final FreeWord<E> r = rel.raisedTo(exp);
-                final int n = r.length();
-                for (int i = 0; i < n; ++i) {
-                    final FreeWord<E> w = r.subword(i, n).times(r.subword(0, i));
-                    final FreeWord<E> g = w.subword(0, 1);
-                    final int k = this.gen2idx.get(g);
-                    this.relatorsByStartGen.get(k).add(translateWord(w));
-                }
-            }
-        }
+        this.relatorsByStartGen = compileRelators(groupRelators);
         
-        // --- initialize the action table and trial stack
+        // --- initialize the action table, trail and queue
         this.table = new int[maxSize+1][ngens];
-        this.stack = new LinkedList<Move>();
+        this.trail = new int[16 * MOVE_SIZE];
+        this.trailSize = 0;
+        this.queue = new int[(maxSize + 1) * ngens + 2];
+        this.old2new = new int[maxSize + 1];
+        this.new2old = new int[maxSize + 1];
         this.currentNumberOfRows = 1;
+        this.depth = 0;
+        this.floor = 0;
         
         // --- push a dummy move (see documentation for findNext() below)
-        this.stack.addLast(new Move(1, 0, 0, false, true));
+        push(1, 0, 0, IS_CHOICE);
         
         // --- initialize counts and timers
         this.startTime = System.currentTimeMillis();
         this.choicesSoFar = 0;
     }
 
+    /**
+     * Constructs an instance which enumerates the subtree of the search tree
+     * that starts at the current state of the given instance. The new
+     * instance shares all immutable data as well as the choice limit and
+     * shared choice counter with the original one.
+     * 
+     * @param base the instance to copy the current state of.
+     */
+    private SmallActionsIterator(final SmallActionsIterator<E> base) {
+        this.group = base.group;
+        this.maxSize = base.maxSize;
+        this.normalOnly = base.normalOnly;
+        this.ngens = base.ngens;
+        this.gen2idx = base.gen2idx;
+        this.idx2invidx = base.idx2invidx;
+        this.relatorsByStartGen = base.relatorsByStartGen;
+
+        this.table = new int[base.table.length][];
+        for (int i = 0; i < this.table.length; ++i) {
+            this.table[i] = base.table[i].clone();
+        }
+        this.trail = base.trail.clone();
+        this.trailSize = base.trailSize;
+        this.queue = new int[base.queue.length];
+        this.old2new = new int[base.old2new.length];
+        this.new2old = new int[base.new2old.length];
+        this.currentNumberOfRows = base.currentNumberOfRows;
+        this.depth = base.depth;
+        this.floor = base.trailSize - MOVE_SIZE;
+
+        this.startTime = System.currentTimeMillis();
+        this.choicesSoFar = 0;
+        this.choiceLimit = base.choiceLimit;
+        this.sharedChoices = base.sharedChoices;
+    }
+
+    /**
+     * Translates the given relators and their inverses into internal form
+     * and collects all their distinct cyclic conjugates, grouped by their
+     * first letter.
+     * 
+     * @param relators the relators to compile.
+     * @return the translated relators indexed by first letter.
+     */
+    private int[][][] compileRelators(final List<FreeWord<E>> relators) {
+        final List<List<int[]>> tmp = new ArrayList<List<int[]>>();
+        for (int k = 0; k < this.ngens; ++k) {
+            tmp.add(new ArrayList<int[]>());
+        }
+        for (final FreeWord<E> rel: relators) {
+            for (int exp = -1; exp <= 1; exp += 2) {
+                final int r[] = translateWord(rel.raisedTo(exp));
+                final int n = r.length;
+                for (int i = 0; i < n; ++i) {
+                    final int w[] = new int[n];
+                    for (int j = 0; j < n; ++j) {
+                        w[j] = r[(i + j) % n];
+                    }
+                    final List<int[]> list = tmp.get(w[0]);
+                    boolean isNew = true;
+                    for (final int v[]: list) {
+                        if (Arrays.equals(v, w)) {
+                            isNew = false;
+                            break;
+                        }
+                    }
+                    if (isNew) {
+                        list.add(w);
+                    }
+                }
+            }
+        }
+        final int result[][][] = new int[this.ngens][][];
+        for (int k = 0; k < this.ngens; ++k) {
+            result[k] = tmp.get(k).toArray(new int[0][]);
+        }
+        return result;
+    }
+
     /**
      * Sets the maximum number of calls to performMove() this instance may make.
      * @param choiceLimit the new limit.
@@ -161,6 +233,41 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
     public void setMaximalNumberOfChoices(final long choiceLimit) {
         this.choiceLimit = choiceLimit;
     }
+
+    /**
+     * Makes this instance and all subtree instances derived from it count
+     * their choices in the given counter and apply the choice limit to the
+     * total.
+     * 
+     * @param counter the shared counter.
+     */
+    void shareChoiceCounter(final AtomicLong counter) {
+        this.sharedChoices = counter;
+    }
+
+    /**
+     * Sets the number of choices after which the search tree is split. When a
+     * node at this depth is reached, {@link #advance()} stops and the subtree
+     * at that node can be split off via {@link #splitSubtree()}.
+     * 
+     * @param depth the new split depth.
+     */
+    void setSplitDepth(final int depth) {
+        this.splitDepth = depth;
+    }
+
+    /**
+     * Creates an instance for the subtree at the node reached by the last
+     * call to {@link #advance()} and skips that subtree in this instance.
+     * 
+     * @return the instance enumerating the subtree.
+     */
+    SmallActionsIterator<E> splitSubtree() {
+        final SmallActionsIterator<E> result =
+            new SmallActionsIterator<E>(this);
+        this.trailSize -= MOVE_SIZE;
+        return result;
+    }
     
     /**
      * Repeatedly finds the next legal choice in the enumeration tree and
@@ -173,51 +280,68 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
      * latest choice is not in canonical form.
      * 
      * To simplify the code, the algorithm makes use of "dummy moves", which are
-     * put on the stack as fallback entries but do not have any effect on the
-     * table. A dummy move is of the form
-     * <code>Move(row, column, 0, false, false)</code> and effectively
+     * put on the trail as fallback entries but do not have any effect on the
+     * table. A dummy move is a choice with the target row 0 and effectively
      * indicates that the next entry to be set is at the given row and column.
      * 
      * @return the next action, if any.
      */
     protected GroupAction<E, Integer> findNext() throws NoSuchElementException {
+        advance();
+        return constructAction();
+    }
+
+    /**
+     * Runs the search until either a complete action is found or a node at
+     * the split depth is reached.
+     * 
+     * @return true if a complete action was found.
+     * @throws NoSuchElementException if the search is exhausted.
+     */
+    boolean advance() throws NoSuchElementException {
         if (LOGGING) {
-            System.out.println("findNext(): stack size = " + this.stack.size());
+            System.out.println("findNext(): trail size = " + this.trailSize);
         }
         while (true) {
-            final Move choice = undoLastChoice();
+            final int k = undoLastChoice();
+            if (k < 0) {
+                throw new NoSuchElementException("At end.");
+            }
+            final int row = this.trail[k];
+            final int column = this.trail[k + 1];
+            final int value = this.trail[k + 2];
+            final boolean startsRow = (this.trail[k + 3] & STARTS_ROW) != 0;
             if (LOGGING) {
-                System.out.println("  last choice was " + choice);
+                System.out.println("  last choice was " + dumpMove(k));
                 System.out.println("  table after undo:");
                 dumpTable();
             }
-            if (choice == null) {
-                throw new NoSuchElementException("At end.");
-            }
-            final int invCol = this.idx2invidx[choice.column];
+            final int invCol = this.idx2invidx[column];
             final int nrows = this.currentNumberOfRows;
-            int nextValue = choice.value + 1;
+            int nextValue = value + 1;
             while (nextValue <= nrows && this.table[nextValue][invCol] != 0) {
                 ++nextValue;
             }
             if (nextValue > nrows) {
-                if (choice.startsRow || nextValue > this.maxSize) {
+                if (startsRow || nextValue > this.maxSize) {
                     continue;
                 }
             }
             if (LOGGING) {
                 System.out.println("  found free value " + nextValue);
             }
-            if (performMove(choice.row, choice.column, nextValue)) {
+            if (performMove(row, column, nextValue)) {
                 if (LOGGING) {
                     System.out.println("  new table after move:");
                     dumpTable();
                 }
                 if (tableIsCanonical()) {
-                    if (!findNextChoice(choice.row, choice.column)) {
+                    if (!findNextChoice(row, column)) {
                         if (!this.normalOnly || isNormal()) {
-                            return constructAction();
+                            return true;
                         }
+                    } else if (this.depth >= this.splitDepth) {
+                        return false;
                     }
                 }
             }
@@ -226,7 +350,7 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
     
     /**
      * Performs a move with all its implications. This includes setting the
-     * table entries described by the move, pushing the move on the stack
+     * table entries described by the move, pushing the move on the trail
      * and as well performing all the deduced moves as dictated by the
      * relations of the underlying group.
      * 
@@ -236,65 +360,74 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
      * @return true if the move did not lead to a contradiction.
      */
     private boolean performMove(int row, int column, int value) {
-        if (++this.choicesSoFar >= this.choiceLimit) {
+        ++this.choicesSoFar;
+        final long total = this.sharedChoices == null ? this.choicesSoFar
+                : this.sharedChoices.incrementAndGet();
+        if (total >= this.choiceLimit) {
             throw new ChoiceLimitExceededException("too many choices made");
         }
 
+        ++this.depth;
+        this.queueSize = 0;
         final boolean startsRow = value > this.currentNumberOfRows;
-        final LinkedList<Move> queue = new LinkedList<Move>();
-        queue.addLast(new Move(row, column, value, startsRow, true));
+        setEntry(row, column, value, startsRow ? IS_CHOICE | STARTS_ROW
+                : IS_CHOICE);
         
-        while (queue.size() > 0) {
-            final Move move = (Move) queue.removeFirst();
-            this.stack.addLast(move);
-            this.table[move.row][move.column] = move.value;
-            this.table[move.value][this.idx2invidx[move.column]] = move.row;
-            if (move.startsRow) {
-                ++this.currentNumberOfRows;
-            }
-            
-            final Set<int[]> rels = this.relatorsByStartGen.get(move.column);
-            for (final int relator[]: rels) {
-                final Move next = scanRelation(relator, move.row);
-                if (next == null) {
-                    // --- nothing to do
-                } else if (next.isChoice) {
-                    // --- a contraction was found
+        for (int next = 0; next < this.queueSize; next += 2) {
+            final int start = this.queue[next];
+            final int rels[][] = this.relatorsByStartGen[this.queue[next + 1]];
+            for (int i = 0; i < rels.length; ++i) {
+                if (!scanRelation(rels[i], start)) {
                     if (LOGGING) {
-                        System.out.println("  found contraction " + next
-                                + " by relation " + dumpRelation(relator)
-                                + " on table:");
+                        System.out.println("  found contradiction by relation "
+                                + dumpRelation(rels[i]) + " on table:");
                         dumpTable();
                     }
                     return false;
-                } else {
-                    // --- a valid deduction was found
-                    if (LOGGING) {
-                        System.out.println("  found deduction " + next
-                                + " by relation " + dumpRelation(relator)
-                                + " on table:");
-                        dumpTable();
-                    }
-                    queue.addLast(next);
                 }
             }
         }
         return true;
     }
 
+    /**
+     * Sets a table entry and the corresponding inverse entry, records the
+     * move on the trail and queues the entry for scanning.
+     * 
+     * @param row the row of the table entry to set.
+     * @param column the column of the table entry to set.
+     * @param value the new target row.
+     * @param flags the flags to record with the move.
+     * @return false if the inverse entry was already set.
+     */
+    private boolean setEntry(final int row, final int column, final int value,
+            final int flags) {
+        final int inv = this.idx2invidx[column];
+        if (this.table[value][inv] != 0) {
+            return false;
+        }
+        this.table[row][column] = value;
+        this.table[value][inv] = row;
+        if ((flags & STARTS_ROW) != 0) {
+            ++this.currentNumberOfRows;
+        }
+        push(row, column, value, flags);
+        this.queue[this.queueSize++] = row;
+        this.queue[this.queueSize++] = column;
+        return true;
+    }
+
     /**
      * Scans a given relation to make deductions about table entries. If a
-     * reduction is found, a {@link SmallActionsIterator.Move}object encoding
-     * it is returned. As a special case, a {@link SmallActionsIterator.Move}
-     * object tagged as a choice is returned to indicate that a contradiction
-     * was found during scanning.
+     * deduction is found, it is entered into the table immediately.
      * 
      * @param rel the relation to scan for (in internal form).
      * @param start the start row to scan from.
      * 
-     * @return a move object encoding the deduction found if any
+     * @return false if a contradiction was found.
      */
-    private Move scanRelation(final int rel[], final int start) {
+    private boolean scanRelation(final int rel[], final int start) {
+        final int table[][] = this.table;
         int head = start;
         int headPos;
         
@@ -324,13 +457,14 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
         // --- evaluate the results
         if (tailPos == headPos) {
             // --- we can make a deduction
-            return new Move(head, rel[headPos], tail, false, false);
-        } else if (tailPos < headPos && head != tail) {
-            // --- signal a contradiction
-            return new Move(head, 0, tail, false, true);
+            if (LOGGING) {
+                System.out.println("  deduced (" + head + ", " + rel[headPos]
+                        + ", " + tail + ") by relation " + dumpRelation(rel));
+            }
+            return setEntry(head, rel[headPos], tail, 0);
         } else {
-            // --- no conclusions
-            return null;
+            // --- a completed relation must be closed
+            return tailPos > headPos || head == tail;
         }
     }
     
@@ -389,16 +523,22 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
      */
     private int compareStart(final int start) {
         final int n = this.currentNumberOfRows;
-        final int old2new[] = new int[n + 1];
-        final int new2old[] = new int[n + 1];
+        final int old2new[] = this.old2new;
+        final int new2old[] = this.new2old;
+        Arrays.fill(old2new, 0, n + 1, 0);
         int rowsSeen = 1;
         old2new[start] = 1;
         new2old[1] = start;
         for (int row = 1; row <= n; ++row) {
-            assert row <= rowsSeen : "the current action is not transitive";
+            if (row > rowsSeen) {
+                // --- the renumbered row is undefined, but ours is not
+                return 1;
+            }
+            final int oldRow[] = this.table[row];
+            final int newRow[] = this.table[new2old[row]];
             for (int col = 0; col < this.ngens; ++col) {
-                final int oldVal = this.table[row][col];
-                int newVal = this.table[new2old[row]][col];
+                final int oldVal = oldRow[col];
+                int newVal = newRow[col];
                 if (newVal != 0 && old2new[newVal] == 0) {
                     old2new[newVal] = ++rowsSeen;
                     new2old[rowsSeen] = newVal;
@@ -422,7 +562,7 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
     /**
      * Finds the next empty slot in the table, starting from the given row and
      * column and proceeding row by row. If an empty slot is found, a dummy move
-     * (see {@link #findNext()}above) is generated and placed on the stack.
+     * (see {@link #findNext()}above) is generated and placed on the trail.
      * 
      * @param row the row to start searching at.
      * @param column the column to start searching at.
@@ -441,33 +581,62 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
             }
         } while (this.table[newRow][newCol] != 0);
         
-        this.stack.addLast(new Move(newRow, newCol, 0, false, true));
+        push(newRow, newCol, 0, IS_CHOICE);
         return true;
     }
 
+    /**
+     * Records a move on the trail.
+     * 
+     * @param row the row of the table entry set.
+     * @param column the column of the table entry set.
+     * @param value the target row.
+     * @param flags the flags for the move.
+     */
+    private void push(final int row, final int column, final int value,
+            final int flags) {
+        if (this.trailSize + MOVE_SIZE > this.trail.length) {
+            this.trail = Arrays.copyOf(this.trail, 2 * this.trail.length);
+        }
+        final int k = this.trailSize;
+        this.trail[k] = row;
+        this.trail[k + 1] = column;
+        this.trail[k + 2] = value;
+        this.trail[k + 3] = flags;
+        this.trailSize += MOVE_SIZE;
+    }
+
     /**
      * Undoes the last choice and all its implications by popping moves from the
-     * stack until one is found which is a choice. The corresponding table
-     * entries are cleared and the last choice is returned. If there was no
-     * choice left on the stack, a <code>null</code> result is returned.
+     * trail until one is found which is a choice. The corresponding table
+     * entries are cleared and the position of the last choice is returned. Its
+     * data remains in place until the next move is recorded. If there was no
+     * choice left on the trail, a negative result is returned.
      * 
-     * @return the last choice or null.
+     * @return the trail position of the last choice or -1.
      */
-    private Move undoLastChoice() {
-        Move last;
+    private int undoLastChoice() {
+        int k;
+        int flags;
         do {
-            if (stack.size() == 0) {
-                return null;
+            if (this.trailSize == this.floor) {
+                return -1;
             }
-            last = (Move) this.stack.removeLast();
-            this.table[last.row][last.column] = 0;
-            this.table[last.value][this.idx2invidx[last.column]] = 0;
-            if (last.startsRow) {
+            this.trailSize -= MOVE_SIZE;
+            k = this.trailSize;
+            final int column = this.trail[k + 1];
+            flags = this.trail[k + 3];
+            this.table[this.trail[k]][column] = 0;
+            this.table[this.trail[k + 2]][this.idx2invidx[column]] = 0;
+            if ((flags & STARTS_ROW) != 0) {
                 --this.currentNumberOfRows;
             }
-        } while (!last.isChoice);
+            if ((flags & IS_CHOICE) != 0 && this.trail[k + 2] != 0) {
+                --this.depth;
+            }
+        } while ((flags & IS_CHOICE) == 0);
 
-        return last;
+        return k;
     }
     
     /**
@@ -493,7 +662,7 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
      * 
      * @return the constructed instance.
      */
-    private GroupAction<E, Integer> constructAction() {
+    GroupAction<E, Integer> constructAction() {
         final int size = this.currentNumberOfRows;
         final int[][] table = new int[size+1][this.ngens];
         for (int i = 0; i <= size; ++i) {
@@ -553,6 +722,19 @@ extends IteratorAdapter<GroupAction<E, Integer>> {
         System.out.println(buf);
     }
 
+    /**
+     * Returns a string representation of a move on the trail. Used for
+     * logging.
+     * @param k the trail position of the move.
+     * @return the string representation.
+     */
+    private String dumpMove(final int k) {
+        final int t[] = this.trail;
+        return "Move(" + t[k] + ", " + t[k + 1] + ", " + t[k + 2] + ", "
+               + ((t[k + 3] & STARTS_ROW) != 0) + ", "
+               + ((t[k + 3] & IS_CHOICE) != 0) + ")";
+    }
+
     /**
      * Returns a string representation of an int array. Used for logging.
      * @param rel the int array.
@@ -324,20 +324,22 @@ public class Stabilizer<E, D> {
 	 * @return the resulting word.
 	 */
 	private FreeWord<String> traceWord(D x, FreeWord<E> r) {
-		FreeWord<String> res = null;
+		FreeWordBuilder<String> res = null;
 		D y = x;
 		for (int i = 0; i < r.length(); ++i) {
 			final FreeWord<E> g = r.subword(i, i+1);
 			final Pair<D, FreeWord<E>> edge = new Pair<D, FreeWord<E>>(y, g);
 			final FreeWord<String> w = this.edgeLabelling.get(edge);
-			if (res == null) {
-				res = w;
-			} else if (w != null){
-				res = res.times(w);
+			if (w != null) {
+				if (res == null) {
+					res = new FreeWordBuilder<String>(w);
+				} else {
+					res.append(w);
+				}
 			}
 			y = this.action.apply(y, g);
 		}
-		return res;
+		return res == null ? null : res.toFreeWord();
 	}
 
 	/**
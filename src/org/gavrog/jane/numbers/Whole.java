@@ -60,6 +60,10 @@ public class Whole extends Rational {
         return this.val.longValue();
     }
 
+    public BigInteger bigIntegerValue() {
+        return this.val;
+    }
+
     public int intValue() {
         return this.val.intValue();
     }
@@ -20,17 +20,21 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.gavrog.box.collections.CacheMissException;
 import org.gavrog.box.collections.IteratorAdapter;
 import org.gavrog.box.collections.Pair;
+import org.gavrog.box.collections.SharedCache;
 import org.gavrog.jane.fpgroups.Coset;
 import org.gavrog.jane.fpgroups.CosetAction;
 import org.gavrog.jane.fpgroups.FpGroup;
 import org.gavrog.jane.fpgroups.FreeWord;
 import org.gavrog.jane.fpgroups.GroupAction;
 import org.gavrog.jane.fpgroups.GroupActions;
+import org.gavrog.jane.fpgroups.ParallelActionsIterator;
 import org.gavrog.jane.fpgroups.SmallActionsIterator;
 import org.gavrog.jane.fpgroups.Stabilizer;
 import org.gavrog.jane.numbers.Whole;
@@ -43,6 +47,51 @@ import org.gavrog.joss.dsyms.basic.IndexList;
  * Utility methods for constructing Delaney symbol covers.
  */
 public class Covers {
+    // --- groups of smaller order are always enumerated sequentially
+    final static int PARALLEL_THRESHOLD = 48;
+
+    private static volatile int numberOfThreads = 1;
+
+    // --- the maximal number of pseudo-toroidal covers kept in the cache
+    final static int COVER_CACHE_SIZE = 64;
+
+    /**
+     * A cached pseudo-toroidal cover, stored as a flat symbol together with
+     * the canonical name of the base element its first element maps onto. A
+     * null cover records that there is none.
+     */
+    private static class CachedCover {
+        final private DSymbol cover;
+        final private int imageOf1;
+
+        public CachedCover(final DSymbol cover, final int imageOf1) {
+            this.cover = cover;
+            this.imageOf1 = imageOf1;
+        }
+    }
+
+    // --- pseudo-toroidal covers by symbol invariant
+    final private static SharedCache<List<Integer>, CachedCover> coverCache =
+            new SharedCache<List<Integer>, CachedCover>(COVER_CACHE_SIZE);
+
+    /**
+     * @return the number of threads used for enumerating covers.
+     */
+    public static int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * Sets the number of threads to use for enumerating the covers of
+     * symbols with large fundamental groups. The covers are produced in the
+     * same order either way.
+     *
+     * @param n the new value, at least 1.
+     */
+    public static void setNumberOfThreads(final int n) {
+        numberOfThreads = Math.max(1, n);
+    }
+
     /**
      * Returns the universal cover of a Delaney symbol.
      * 
@@ -100,8 +149,14 @@ public class Covers {
             final int sz = ds.sphericalGroupSize2D();
             assert sz == n : "group size is " + n + ", but should be " + sz;
         }
-        final Iterator<GroupAction<String, Integer>> actions =
-                new SmallActionsIterator<String>(G, n, false);
+        final int nrThreads = getNumberOfThreads();
+        final Iterator<GroupAction<String, Integer>> actions;
+        if (nrThreads > 1 && n >= PARALLEL_THRESHOLD) {
+            actions = new ParallelActionsIterator<String>(G, n, false,
+                    nrThreads);
+        } else {
+            actions = new SmallActionsIterator<String>(G, n, false);
+        }
         
         return new IteratorAdapter<DSCover<T>>() {
             protected DSCover<T> findNext() throws NoSuchElementException {
@@ -165,6 +220,13 @@ public class Covers {
      * can be reconstructed as the on which maps the first element of the cover
      * onto the first element of the base symbol.
      * 
+     * Results are cached by the invariant of the input symbol. An isomorphic
+     * symbol receives the previously computed cover, renumbered if necessary
+     * so that the above still holds. A cover not found in the cache is still
+     * obtained by a low index subgroup search in the fundamental group; it is
+     * not derived from the point group, which is only known once the cover
+     * exists.
+     * 
      * @param ds a 3-dimensional Delaney symbol.
      * @return the pseudo-toroidal cover or null.
      */
@@ -175,6 +237,81 @@ public class Covers {
             final String s = "symbol must be 3-dimensional";
             throw new UnsupportedOperationException(s);
         }
+        if (!ds.isConnected()) {
+            return computePseudoToroidalCover3D(ds);
+        }
+
+        // --- isomorphic symbols have the same cover up to renumbering
+        final List<Integer> key = ds.invariant();
+        final Map<T, Integer> toCanonical = ds.getMapToCanonical();
+        CachedCover cached = null;
+        try {
+            cached = coverCache.get(key);
+        } catch (CacheMissException ex) {
+        }
+        if (cached != null) {
+            if (cached.cover == null) {
+                return null;
+            }
+            final T D0 = ds.elements().next();
+            for (final T D: ds.elements()) {
+                if (toCanonical.get(D) == cached.imageOf1) {
+                    final DSCover<T> cov =
+                            new DSCover<T>(cached.cover, ds, D);
+                    if (D.equals(D0)) {
+                        return cov;
+                    }
+                    for (final int E: cov.elements()) {
+                        if (cov.image(E).equals(D0)) {
+                            return new DSCover<T>(
+                                    swapWithFirst(cached.cover, E), ds, D0);
+                        }
+                    }
+                }
+            }
+        }
+
+        final DSCover<T> result = computePseudoToroidalCover3D(ds);
+        cached = new CachedCover(result == null ? null : new DSymbol(result),
+                toCanonical.get(ds.elements().next()));
+        coverCache.put(key, cached);
+        return result;
+    }
+
+    /**
+     * Renumbers a symbol by exchanging the given element with the first one.
+     * 
+     * @param ds the original symbol.
+     * @param E the element to become the first one.
+     * @return the renumbered symbol.
+     */
+    private static DSymbol swapWithFirst(final DSymbol ds, final int E) {
+        final int dim = ds.dim();
+        final int n = ds.size();
+        final int op[][] = new int[dim + 1][n + 1];
+        final int v[][] = new int[dim][n + 1];
+        for (int D = 1; D <= n; ++D) {
+            final int D1 = D == 1 ? E : D == E ? 1 : D;
+            for (int i = 0; i <= dim; ++i) {
+                final int Di = ds.op(i, D);
+                op[i][D1] = Di == 1 ? E : Di == E ? 1 : Di;
+            }
+            for (int i = 0; i < dim; ++i) {
+                v[i][D1] = ds.v(i, i + 1, D);
+            }
+        }
+        return new DSymbol(op, v);
+    }
+
+    /**
+     * Computes a smallest pseudo-toroidal cover without consulting the cache.
+     * 
+     * @param ds a 3-dimensional Delaney symbol.
+     * @return the pseudo-toroidal cover or null.
+     */
+    private static <T> DSCover<T> computePseudoToroidalCover3D(
+            final DelaneySymbol<T> ds)
+    {
         if (!ds.isLocallyEuclidean3D()) {
             final String s = "symbol must be locally euclidean";
             throw new UnsupportedOperationException(s);
@@ -26,7 +26,6 @@ import org.gavrog.joss.dsyms.basic.DSMorphism;
 import org.gavrog.joss.dsyms.basic.DSPair;
 import org.gavrog.joss.dsyms.basic.DSymbol;
 import org.gavrog.joss.dsyms.basic.DelaneySymbol;
-import org.gavrog.joss.dsyms.basic.IndexList;
 
 /**
  */
@@ -130,32 +129,69 @@ public class DSCover<T> extends DSymbol {
 
         final int op[][] = new int[dim + 1][nNew + 1];
         final int v[][] = new int[dim][nNew + 1];
+
+        // --- tabulate the generators and their inverses as permutations
+        final List<FreeWord<String>> gens =
+                action.getGroup().getGenerators();
+        final int perms[][] = new int[2 * gens.size()][nLayers];
+        for (final FreeWord<String> g: gens) {
+            final int h = 2 * (g.getLetter(0) - 1);
+            for (int k = 0; k < nLayers; ++k) {
+                final int l = flatAction.apply(k, g);
+                perms[h][k] = l;
+                perms[h + 1][l] = k;
+            }
+        }
     
         // --- generate the neighbor definitions
+        final int layer[] = new int[nLayers];
         for (int i = 0; i <= dim; ++i) {
             for (int D = 1; D <= nOld; ++D) {
                 final int Di = ds.op(i, D);
                 final FreeWord<String> g =
                 		edge2word.get(new DSPair<Integer>(i, D));
                 for (int k = 0; k < nLayers; ++k) {
-                    op[i][D + nOld * k] = Di + nOld * flatAction.apply(k, g);
+                    layer[k] = k;
+                }
+                for (int j = 0; j < g.length(); ++j) {
+                    final int p[] = perms[2 * (g.getLetter(j) - 1)
+                            + (g.getSign(j) > 0 ? 0 : 1)];
+                    for (int k = 0; k < nLayers; ++k) {
+                        layer[k] = p[layer[k]];
+                    }
+                }
+                for (int k = 0; k < nLayers; ++k) {
+                    op[i][D + nOld * k] = Di + nOld * layer[k];
                 }
             }
         }
 
-        // --- make a temporary symbol in which to compute r-values
-        final DSymbol tmp = new DSymbol(op, v);
-
-        // --- generate the v-values for the final symbol
+        // --- generate the v-values from the r-values of the new symbol
+        final int seen[] = new int[nNew + 1];
+        final int orbit[] = new int[nNew];
         for (int i = 0; i < dim; ++i) {
-            final List<Integer> idcs = new IndexList(i, i + 1);
-            for (final int D: tmp.orbitReps(idcs)) {
-                final int E = (D - 1) % nOld + 1;
-                final int m = ds.m(i, i + 1, E);
-                final int r = tmp.r(i, i + 1, D);
-                final int b = m / r;
-                for (final int C: tmp.orbit(idcs, D)) {
-                    v[i][C] = b;
+            final int opi[] = op[i];
+            final int opj[] = op[i + 1];
+            for (int D = 1; D <= nNew; ++D) {
+                if (seen[D] == i + 1) {
+                    continue;
+                }
+                int size = 0;
+                int r = 0;
+                int E = D;
+                do {
+                    ++r;
+                    for (final int F: new int[] { E, opi[E] }) {
+                        if (seen[F] != i + 1) {
+                            seen[F] = i + 1;
+                            orbit[size++] = F;
+                        }
+                    }
+                    E = opj[opi[E]];
+                } while (E != D);
+                final int b = ds.m(i, i + 1, (D - 1) % nOld + 1) / r;
+                for (int t = 0; t < size; ++t) {
+                    v[i][orbit[t]] = b;
                 }
             }
         }
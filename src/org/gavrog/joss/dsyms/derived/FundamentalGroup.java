@@ -28,6 +28,7 @@ import org.gavrog.jane.fpgroups.Alphabet;
 import org.gavrog.jane.fpgroups.FiniteAlphabet;
 import org.gavrog.jane.fpgroups.FpGroup;
 import org.gavrog.jane.fpgroups.FreeWord;
+import org.gavrog.jane.fpgroups.FreeWordBuilder;
 import org.gavrog.jane.fpgroups.PrefixAlphabet;
 import org.gavrog.joss.dsyms.basic.DSPair;
 import org.gavrog.joss.dsyms.basic.DelaneySymbol;
@@ -183,7 +184,7 @@ public class FundamentalGroup<T> {
     		final Face<T> f,
     		final Map<DSPair<T>, FreeWord<String>> edgeToWord)
     {
-        FreeWord<String> w = null;
+        FreeWordBuilder<String> w = null;
         final int i = f.getFirstIndex();
         final int j = f.getSecondIndex();
         final T D = f.getElement();
@@ -194,18 +195,16 @@ public class FundamentalGroup<T> {
             final T Ek = ds.op(k, E);
             final FreeWord<String> u = edgeToWord.get(new DSPair<T>(k, E));
             final FreeWord<String> uinv = edgeToWord.get(new DSPair<T>(k, Ek));
-            final FreeWord<String> factor;
-            if (u != null) {
-                factor = u;
-            } else if (uinv != null) {
-                factor = uinv.inverse();
-            } else {
-                factor = null;
-            }
-            if (w == null) {
-                w = factor;
-            } else if (factor != null) {
-                w = w.times(factor);
+            if (u != null || uinv != null) {
+                if (w == null) {
+                    final FreeWord<String> any = u != null ? u : uinv;
+                    w = new FreeWordBuilder<String>(any.getAlphabet());
+                }
+                if (u != null) {
+                    w.append(u);
+                } else {
+                    w.appendInverse(uinv);
+                }
             }
             E = ds.op(k, E);
             k = i + j - k;
@@ -213,7 +212,7 @@ public class FundamentalGroup<T> {
                 break;
             }
         }
-        return w;
+        return w == null ? null : w.toFreeWord();
     }
 
     /**
@@ -296,6 +296,7 @@ public class TileKTransitive extends ResumableGenerator<DSymbol> {
 			+ "  -e        skip euclidicity test\n"
 			+ "  -i N      interval in seconds between writing checkpoints\n"
 			+ "  -r A-B-C  resume generation at a checkpoint\n"
+			+ "  -t N      number of threads used for enumerating covers\n"
 			+ "  -v        run in verbose mode\n"
 			);
 		System.exit(1);
@@ -306,6 +307,7 @@ public class TileKTransitive extends ResumableGenerator<DSymbol> {
 			boolean verbose = false;
 			boolean check = true;
 			int checkpointInterval = 3600;
+			int nrThreads = Runtime.getRuntime().availableProcessors();
 			String outfile = null;
 			String resume = null;
 
@@ -321,11 +323,14 @@ public class TileKTransitive extends ResumableGenerator<DSymbol> {
 					checkpointInterval = Integer.parseInt(args[++i]);
 				} else if (args[i].equals("-r")) {
 					resume = args[++i];
+				} else if (args[i].equals("-t")) {
+					nrThreads = Integer.parseInt(args[++i]);
 				} else {
 					usage();
 				}
 				++i;
 			}
+			Covers.setNumberOfThreads(nrThreads);
 
 			if (args.length < i + 2) {
 				usage();
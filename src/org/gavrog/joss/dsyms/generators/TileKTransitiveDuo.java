@@ -365,6 +365,7 @@ public class TileKTransitiveDuo extends ResumableGenerator<DSymbol> {
 			+ "  -i N      interval in seconds between writing checkpoints\n"
 			+ "  -r A-B-C  resume generation at a checkpoint\n"
 			+ "  -s        generate only simple tilings\n"
+			+ "  -t N      number of threads used for enumerating covers\n"
 			+ "  -v        run in verbose mode\n"
 			);
 		System.exit(1);
@@ -376,6 +377,7 @@ public class TileKTransitiveDuo extends ResumableGenerator<DSymbol> {
 			boolean check = true;
 			boolean simple = false;
 			int checkpointInterval = 3600;
+			int nrThreads = Runtime.getRuntime().availableProcessors();
 			String resume = null;
 
 			int i = 0;
@@ -390,11 +392,14 @@ public class TileKTransitiveDuo extends ResumableGenerator<DSymbol> {
 					checkpointInterval = Integer.parseInt(args[++i]);
 				} else if (args[i].equals("-r")) {
 					resume = args[++i];
+				} else if (args[i].equals("-t")) {
+					nrThreads = Integer.parseInt(args[++i]);
 				} else {
 					usage();
 				}
 				++i;
 			}
+			Covers.setNumberOfThreads(nrThreads);
 
 			if (args.length < i + 4) {
 				usage();
@@ -57,11 +57,11 @@ public class CellCorrection {
 			final Vector to[];
 
 			if (system == CrystalSystem.TRICLINIC) {
-				to = Lattices.reducedLatticeBasis(from, gram);
+				to = Lattices.reducedLatticeBasis(from, gram, true);
 			} else { // Monoclinic case
 				// --- find the smallest vectors orthogonal to b
 				final Vector old[] = new Vector[] { a, c };
-				final Vector nu[] = Lattices.reducedLatticeBasis(old, gram);
+				final Vector nu[] = Lattices.reducedLatticeBasis(old, gram, true);
 				to = new Vector[] { nu[0], b, nu[1] };
 				if (Vector.dot(to[0], to[2], gram).isPositive()) {
 					to[2] = (Vector) to[2].negative();
@@ -22,7 +22,9 @@ import java.util.List;
 
 import org.gavrog.jane.compounds.Matrix;
 import org.gavrog.jane.numbers.ArithmeticBase;
+import org.gavrog.jane.numbers.FloatingPoint;
 import org.gavrog.jane.numbers.IArithmetic;
+import org.gavrog.jane.numbers.Real;
 import org.gavrog.jane.numbers.Whole;
 
 /**
@@ -38,6 +40,9 @@ public class CoordinateChange extends ArithmeticBase implements IArithmetic {
     final Matrix right;
     final int dimension;
     
+    // --- the matrix right in double precision, by rows, computed on demand
+    private volatile double kernel[];
+    
     /**
      * Creates a new instance. The input consists of a matrix, the rows of which
      * represent the new basis vectors, and a point specifying the new origin.
@@ -306,4 +311,112 @@ public class CoordinateChange extends ArithmeticBase implements IArithmetic {
         }
         return tmp;
     }
+    
+    /**
+     * Returns the double precision version of the matrix that acts on points
+     * and vectors, computing it on first use.
+     */
+    private double[] kernel() {
+        double k[] = this.kernel;
+        if (k == null) {
+            final int n = this.dimension + 1;
+            k = new double[n * n];
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < n; ++j) {
+                    k[i * n + j] = ((Real) this.right.get(i, j)).doubleValue();
+                }
+            }
+            this.kernel = k;
+        }
+        return k;
+    }
+    
+    /**
+     * Performs a basis change on points given by packed double coordinates,
+     * with d consecutive entries per point. For exact coordinate changes, the
+     * results are the same as those obtained by applying this coordinate
+     * change to the individual points with floating point coordinates.
+     * 
+     * @param src the input coordinates.
+     * @param dst the array to hold the output; may be the same as src.
+     */
+    public void applyToPoints(final double src[], final double dst[]) {
+        apply(src, dst, true);
+    }
+    
+    /**
+     * Performs a basis change on vectors given by packed double coordinates,
+     * with d consecutive entries per vector. For exact coordinate changes,
+     * the results are the same as those obtained by applying this coordinate
+     * change to the individual vectors with floating point coordinates.
+     * 
+     * @param src the input coordinates.
+     * @param dst the array to hold the output; may be the same as src.
+     */
+    public void applyToVectors(final double src[], final double dst[]) {
+        apply(src, dst, false);
+    }
+    
+    private void apply(final double src[], final double dst[],
+            final boolean points) {
+        final int d = this.dimension;
+        final int n = d + 1;
+        if (src.length % d != 0 || dst.length < src.length) {
+            throw new IllegalArgumentException("bad array length");
+        }
+        final double k[] = kernel();
+        final double img[] = new double[n];
+        for (int offset = 0; offset < src.length; offset += d) {
+            // --- same order of operations as in Matrix.times()
+            for (int j = 0; j < n; ++j) {
+                double s = src[offset] * k[j];
+                for (int i = 1; i < d; ++i) {
+                    s += src[offset + i] * k[i * n + j];
+                }
+                img[j] = points ? s + k[d * n + j] : s + 0.0;
+            }
+            for (int j = 0; j < d; ++j) {
+                dst[offset + j] = points ? img[j] / img[d] : img[j];
+            }
+        }
+    }
+    
+    /**
+     * Performs a basis change on a list of points. Points with floating
+     * point coordinates are transformed in bulk, all others individually.
+     * 
+     * @param points the points to convert to the new basis.
+     * @return the list of converted points.
+     */
+    public List<Point> applyToPoints(final List<Point> points) {
+        final int d = this.dimension;
+        final int n = points.size();
+        final double coords[] = new double[n * d];
+        final boolean inexact[] = new boolean[n];
+        for (int i = 0; i < n; ++i) {
+            final Point p = points.get(i);
+            inexact[i] = true;
+            for (int j = 0; j < d; ++j) {
+                final IArithmetic x = p.get(j);
+                if (x instanceof FloatingPoint) {
+                    coords[i * d + j] = ((Real) x).doubleValue();
+                } else {
+                    inexact[i] = false;
+                }
+            }
+        }
+        applyToPoints(coords, coords);
+        
+        final List<Point> result = new ArrayList<Point>();
+        final double buffer[] = new double[d];
+        for (int i = 0; i < n; ++i) {
+            if (inexact[i]) {
+                System.arraycopy(coords, i * d, buffer, 0, d);
+                result.add(new Point(buffer));
+            } else {
+                result.add((Point) points.get(i).times(this));
+            }
+        }
+        return result;
+    }
 }
@@ -26,11 +26,17 @@ import org.gavrog.jane.numbers.FloatingPoint;
 import org.gavrog.jane.numbers.Fraction;
 import org.gavrog.jane.numbers.IArithmetic;
 import org.gavrog.jane.numbers.Real;
+import org.gavrog.jane.numbers.Whole;
 
 /**
  * Various methods related to lattices and lattice bases.
  */
 public class Lattices {
+    /**
+     * The threshold used in the reduction algorithms to decide whether a
+     * vector is shorter or an angle is obtuse.
+     */
+    final private static double EPSILON = 1e-12;
 
 	/**
 	 * Determines if the given vectors form a basis.
@@ -49,6 +55,23 @@ public class Lattices {
 	 * @return reduced vectors spanning the same lattice.
 	 */
 	public static Vector[] gaussReduced(Vector[] v, Matrix M) {
+	    return gaussReduced(v, M, false);
+	}
+
+	/**
+	 * Performs a gauss elimination on a pair of independent vectors.
+	 * 
+	 * If requested, the reduction is done in double precision, falling back to
+	 * exact arithmetic wherever a comparison is too close to call. The result
+	 * is the same either way.
+	 * 
+	 * @param v the input vectors.
+	 * @param M the quadratic form determining the metric.
+	 * @param fast if true, use double precision where possible.
+	 * @return reduced vectors spanning the same lattice.
+	 */
+	public static Vector[] gaussReduced(Vector[] v, Matrix M,
+			final boolean fast) {
 	    if (v.length != 2) {
 	        final String msg = "first argument must contain 2 vectors";
 	        throw new IllegalArgumentException(msg);
@@ -58,7 +81,17 @@ public class Lattices {
 	        throw new IllegalArgumentException(msg);
 	    }
 	    
-	    final Real eps = new FloatingPoint(1e-12);
+	    if (fast) {
+	        final FastGram gram = FastGram.make(v, M);
+	        final long c[][] = gram == null ? null : gram.gaussReduced();
+	        if (c != null) {
+	            v[0] = gram.vector(c[0]);
+	            v[1] = gram.vector(c[1]);
+	            return v;
+	        }
+	    }
+	    
+	    final Real eps = new FloatingPoint(EPSILON);
 	    IArithmetic sl[] = new IArithmetic[] { Vector.dot(v[0], v[0], M),
 				Vector.dot(v[1], v[1], M) };
 	    while (true) {
@@ -87,7 +120,7 @@ public class Lattices {
 	 * @return true if there was a change.
 	 */
 	private static boolean sellingStep(final Vector v[], final Matrix M) {
-	    final Real eps = new FloatingPoint(1e-12);
+	    final Real eps = new FloatingPoint(EPSILON);
 	    for (int i = 0; i < 3; ++i) {
 	        for (int j = i+1; j < 4; ++j) {
 	            if (Vector.dot(v[i], v[j], M).isGreaterThan(eps)) {
@@ -113,6 +146,23 @@ public class Lattices {
 	 * @return reduced vectors spanning the same lattice.
 	 */
 	public static Vector[] sellingReduced(final Vector[] v, final Matrix M) {
+	    return sellingReduced(v, M, false);
+	}
+
+	/**
+	 * Performs a Selling reduction on a set of 3 independent vectors.
+	 * 
+	 * If requested, the reduction is done in double precision, falling back to
+	 * exact arithmetic wherever a comparison is too close to call. The result
+	 * is the same either way.
+	 * 
+	 * @param v the input vectors.
+	 * @param M the quadratic form determining the metric.
+	 * @param fast if true, use double precision where possible.
+	 * @return reduced vectors spanning the same lattice.
+	 */
+	public static Vector[] sellingReduced(final Vector[] v, final Matrix M,
+			final boolean fast) {
 	    if (v.length != 3) {
 	        final String msg = "first argument must contain 3 vectors";
 	        throw new IllegalArgumentException(msg);
@@ -122,6 +172,15 @@ public class Lattices {
 	        throw new IllegalArgumentException(msg);
 	    }
 	    
+	    if (fast) {
+	        final FastGram gram = FastGram.make(v, M);
+	        final long c[][] = gram == null ? null : gram.sellingReduced();
+	        if (c != null) {
+	            return new Vector[] { gram.vector(c[0]), gram.vector(c[1]),
+	                    gram.vector(c[2]) };
+	        }
+	    }
+	    
 	    final Vector[] w = new Vector[] { v[0], v[1], v[2],
 	            (Vector) v[0].plus(v[1]).plus(v[2]).negative() };
 	    
@@ -140,6 +199,24 @@ public class Lattices {
 	 * @return the normal vectors to the faces of the Dirichlet domain.
 	 */
 	public static Vector[] dirichletVectors(final Vector[] b, final Matrix M) {
+	    return dirichletVectors(b, M, false);
+	}
+
+	/**
+	 * Computes the Dirichlet domain for a given vector lattice and returns the
+	 * set of normal vectors for the pairs of parallel planes that bound it.
+	 * 
+	 * If requested, the underlying reduction is done in double precision,
+	 * falling back to exact arithmetic wherever a comparison is too close to
+	 * call. The result is the same either way.
+	 * 
+	 * @param b vectors forming a lattice basis.
+	 * @param M the quadratic form determining the metric.
+	 * @param fast if true, use double precision where possible.
+	 * @return the normal vectors to the faces of the Dirichlet domain.
+	 */
+	public static Vector[] dirichletVectors(final Vector[] b, final Matrix M,
+			final boolean fast) {
 	    final int dim = b.length;
 	    if (!M.equals(M.transposed())) {
 	        final String msg = "second argument must be symmetric, but was " + M;
@@ -153,10 +230,10 @@ public class Lattices {
 	    case 1:
 	        return new Vector[] { b[0] };
 	    case 2:
-	        t = gaussReduced(b, M);
+	        t = gaussReduced(b, M, fast);
 	        return new Vector[] { t[0], t[1], (Vector) t[0].plus(t[1]) };
 	    case 3:
-	        t = sellingReduced(b, M);
+	        t = sellingReduced(b, M, fast);
 	        return new Vector[] { t[0], t[1], t[2], (Vector) t[0].plus(t[1]),
 	                (Vector) t[0].plus(t[2]), (Vector) t[1].plus(t[2]),
 	                (Vector) t[0].plus(t[1]).plus(t[2]) };
@@ -173,6 +250,31 @@ public class Lattices {
      * @return the reduced basis.
      */
 	public static Vector[] reducedLatticeBasis(final Vector[] v, final Matrix M) {
+	    return reducedLatticeBasis(v, M, false);
+	}
+
+	/**
+     * Returns a lattice basis of shortest Dirichlet vectors.
+     * 
+	 * If requested, the computation is done in double precision, falling back
+	 * to exact arithmetic wherever a comparison is too close to call. The
+	 * result is the same either way.
+	 * 
+     * @param v original basis.
+     * @param M the quadratic form determining the metric.
+	 * @param fast if true, use double precision where possible.
+     * @return the reduced basis.
+     */
+	public static Vector[] reducedLatticeBasis(final Vector[] v,
+			final Matrix M, final boolean fast) {
+	    if (fast && (v.length == 2 || v.length == 3)) {
+	        final FastGram gram = FastGram.make(v, M);
+	        final Vector w[] = gram == null ? null : gram.reducedBasis(v);
+	        if (w != null) {
+	            return w;
+	        }
+	    }
+	    
 	    final Vector tmp[] = dirichletVectors(v, M);
 	    Arrays.sort(tmp, new Comparator<Vector>() {
 	        public int compare(final Vector v1, final Vector v2) {
@@ -306,4 +408,472 @@ public class Lattices {
 	    shifts.toArray(results);
 	    return results;
 	}
+
+	/**
+	 * Double precision data for a lattice basis and quadratic form, used to
+	 * run the reduction algorithms on integral coefficient vectors with
+	 * respect to that basis. Every comparison comes with an error bound, and
+	 * those that are too close to call are decided by evaluating the same
+	 * expression as the exact version does, so that both produce the same
+	 * results.
+	 */
+	private static class FastGram {
+	    // --- relative error allowed for dot products, with a generous margin
+	    final private static double TOLERANCE = 1e-12;
+	    // --- bound on coefficients, so that minors can be computed in longs
+	    final private static long LIMIT = 1L << 16;
+
+	    final private Vector basis[];
+	    final private Matrix M;
+	    final private int n;
+	    final private double gram[];
+	    final private double bound[];
+
+	    private FastGram(final Vector basis[], final Matrix M,
+	            final double gram[], final double bound[]) {
+	        this.basis = basis.clone();
+	        this.M = M;
+	        this.n = basis.length;
+	        this.gram = gram;
+	        this.bound = bound;
+	    }
+
+	    /**
+	     * Prepares the data for a basis, provided the basis vectors have exact
+	     * coordinates and their Gram matrix is reasonably well conditioned.
+	     * 
+	     * @param b the lattice basis.
+	     * @param M the quadratic form determining the metric.
+	     * @return the new instance, or null if the basis is unsuitable.
+	     */
+	    public static FastGram make(final Vector b[], final Matrix M) {
+	        final int n = b.length;
+	        if (n < 2 || n > 3 || M.numberOfRows() != n
+	                || M.numberOfColumns() != n) {
+	            return null;
+	        }
+	        final double m[] = new double[n * n];
+	        for (int k = 0; k < n; ++k) {
+	            for (int l = 0; l < n; ++l) {
+	                final IArithmetic x = M.get(k, l);
+	                if (!(x instanceof Real)) {
+	                    return null;
+	                }
+	                m[k * n + l] = ((Real) x).doubleValue();
+	            }
+	        }
+	        for (int k = 0; k < n; ++k) {
+	            for (int l = 0; l < k; ++l) {
+	                if (!M.get(k, l).equals(M.get(l, k))) {
+	                    return null;
+	                }
+	            }
+	        }
+	        final double c[] = new double[n * n];
+	        for (int i = 0; i < n; ++i) {
+	            if (b[i].getDimension() != n) {
+	                return null;
+	            }
+	            for (int k = 0; k < n; ++k) {
+	                final IArithmetic x = b[i].get(k);
+	                if (!x.isExact() || !(x instanceof Real)) {
+	                    return null;
+	                }
+	                c[i * n + k] = ((Real) x).doubleValue();
+	            }
+	        }
+
+	        final double gram[] = new double[n * n];
+	        final double bound[] = new double[n * n];
+	        for (int i = 0; i < n; ++i) {
+	            for (int j = 0; j < n; ++j) {
+	                double g = 0;
+	                double a = 0;
+	                for (int k = 0; k < n; ++k) {
+	                    for (int l = 0; l < n; ++l) {
+	                        final double t = c[i * n + k] * m[k * n + l]
+	                                * c[j * n + l];
+	                        g += t;
+	                        a += Math.abs(t);
+	                    }
+	                }
+	                gram[i * n + j] = g;
+	                bound[i * n + j] = a;
+	            }
+	        }
+
+	        // --- require the basis to be independent with some margin
+	        final double det;
+	        double diag = 1;
+	        for (int i = 0; i < n; ++i) {
+	            diag *= gram[i * n + i];
+	        }
+	        if (n == 2) {
+	            det = gram[0] * gram[3] - gram[1] * gram[2];
+	        } else {
+	            det = gram[0] * (gram[4] * gram[8] - gram[5] * gram[7])
+	                    - gram[1] * (gram[3] * gram[8] - gram[5] * gram[6])
+	                    + gram[2] * (gram[3] * gram[7] - gram[4] * gram[6]);
+	        }
+	        if (!(diag > 0) || !(det > 1e-6 * diag)) {
+	            return null;
+	        }
+	        return new FastGram(b, M, gram, bound);
+	    }
+
+	    /**
+	     * @return the unit coefficient vectors for the basis.
+	     */
+	    private long[][] units() {
+	        final long e[][] = new long[this.n][this.n];
+	        for (int i = 0; i < this.n; ++i) {
+	            e[i][i] = 1;
+	        }
+	        return e;
+	    }
+
+	    /**
+	     * @param a a coefficient vector.
+	     * @return the corresponding lattice vector in exact arithmetic.
+	     */
+	    public Vector vector(final long a[]) {
+	        Vector result = Vector.zero(this.basis[0].getDimension());
+	        for (int i = 0; i < this.n; ++i) {
+	            if (a[i] != 0) {
+	                result = (Vector) result.plus(
+	                        this.basis[i].times(new Whole(a[i])));
+	            }
+	        }
+	        return result;
+	    }
+
+	    private IArithmetic exactDot(final long a[], final long b[]) {
+	        return Vector.dot(vector(a), vector(b), this.M);
+	    }
+
+	    private double dot(final long a[], final long b[]) {
+	        double sum = 0;
+	        for (int i = 0; i < this.n; ++i) {
+	            if (a[i] != 0) {
+	                for (int j = 0; j < this.n; ++j) {
+	                    sum += a[i] * this.gram[i * this.n + j] * b[j];
+	                }
+	            }
+	        }
+	        return sum;
+	    }
+
+	    private double error(final long a[], final long b[]) {
+	        double sum = 0;
+	        for (int i = 0; i < this.n; ++i) {
+	            if (a[i] != 0) {
+	                for (int j = 0; j < this.n; ++j) {
+	                    sum += Math.abs(a[i]) * this.bound[i * this.n + j]
+	                            * Math.abs(b[j]);
+	                }
+	            }
+	        }
+	        return TOLERANCE * sum;
+	    }
+
+	    /**
+	     * Decides Vector.dot(a, b, M).isGreaterThan(x) for coefficient vectors.
+	     */
+	    private boolean dotGreaterThan(final long a[], final long b[],
+	            final double x) {
+	        final double d = dot(a, b) - x;
+	        final double e = error(a, b);
+	        if (d > e) {
+	            return true;
+	        } else if (d < -e) {
+	            return false;
+	        } else {
+	            return exactDot(a, b).isGreaterThan(new FloatingPoint(x));
+	        }
+	    }
+
+	    /**
+	     * Compares the norms of two coefficient vectors as the exact version
+	     * would.
+	     */
+	    private int compareNorms(final long a[], final long b[]) {
+	        final double d = dot(a, a) - dot(b, b);
+	        final double e = error(a, a) + error(b, b);
+	        if (d > e) {
+	            return 1;
+	        } else if (d < -e) {
+	            return -1;
+	        } else {
+	            return exactDot(a, a).compareTo(exactDot(b, b));
+	        }
+	    }
+
+	    private static boolean fits(final long a[]) {
+	        for (int i = 0; i < a.length; ++i) {
+	            if (Math.abs(a[i]) > LIMIT) {
+	                return false;
+	            }
+	        }
+	        return true;
+	    }
+
+	    /**
+	     * Performs the Gauss reduction on coefficient vectors.
+	     * 
+	     * @return the coefficients of the reduced vectors, or null if they
+	     *         get too large.
+	     */
+	    public long[][] gaussReduced() {
+	        final long v[][] = units();
+	        while (true) {
+	            final int i = compareNorms(v[0], v[1]) < 0 ? 0 : 1;
+	            final int j = 1 - i;
+	            final long t = roundedQuotient(v[i], v[j]);
+	            for (int k = 0; k < 2; ++k) {
+	                v[j][k] -= t * v[i][k];
+	            }
+	            if (!fits(v[j])) {
+	                return null;
+	            }
+	            if (normAtLeast(v[j], v[i])) {
+	                break;
+	            }
+	        }
+	        if (dotGreaterThan(v[0], v[1], 0)) {
+	            v[1][0] = -v[1][0];
+	            v[1][1] = -v[1][1];
+	        }
+	        return v;
+	    }
+
+	    /**
+	     * Decides dot(a, b).dividedBy(dot(a, a)).round() as the exact version
+	     * would.
+	     */
+	    private long roundedQuotient(final long a[], final long b[]) {
+	        final double s = dot(a, a);
+	        final double es = error(a, a);
+	        if (s - es > 0) {
+	            final double q = dot(a, b) / s;
+	            final double eq = 2 * (error(a, b) + Math.abs(q) * es)
+	                    / (s - es);
+	            final double f = q - Math.floor(q);
+	            if (Math.abs(q) < LIMIT && Math.abs(f - 0.5) > eq) {
+	                return (long) Math.floor(q + 0.5);
+	            }
+	        }
+	        final IArithmetic t = exactDot(a, b).dividedBy(exactDot(a, a))
+	                .round();
+	        return ((Real) t).longValue();
+	    }
+
+	    /**
+	     * Decides dot(a, a).isGreaterOrEqual(dot(b, b).minus(eps)) as the
+	     * exact version would.
+	     */
+	    private boolean normAtLeast(final long a[], final long b[]) {
+	        final double d = dot(a, a) - dot(b, b) + EPSILON;
+	        final double e = error(a, a) + error(b, b);
+	        if (d > e) {
+	            return true;
+	        } else if (d < -e) {
+	            return false;
+	        } else {
+	            final Real eps = new FloatingPoint(EPSILON);
+	            return exactDot(a, a).isGreaterOrEqual(
+	                    exactDot(b, b).minus(eps));
+	        }
+	    }
+
+	    /**
+	     * Performs the Selling reduction on coefficient vectors.
+	     * 
+	     * @return the coefficients of the reduced vectors, or null if they
+	     *         get too large.
+	     */
+	    public long[][] sellingReduced() {
+	        final long e[][] = units();
+	        final long w[][] = new long[][] { e[0], e[1], e[2],
+	                new long[] { -1, -1, -1 } };
+	        boolean changed = true;
+	        while (changed) {
+	            changed = false;
+	            for (int i = 0; i < 3 && !changed; ++i) {
+	                for (int j = i + 1; j < 4 && !changed; ++j) {
+	                    if (dotGreaterThan(w[i], w[j], EPSILON)) {
+	                        for (int k = 0; k < 4; ++k) {
+	                            if (k != i && k != j) {
+	                                for (int l = 0; l < 3; ++l) {
+	                                    w[k][l] += w[i][l];
+	                                }
+	                                if (!fits(w[k])) {
+	                                    return null;
+	                                }
+	                            }
+	                        }
+	                        for (int l = 0; l < 3; ++l) {
+	                            w[i][l] = -w[i][l];
+	                        }
+	                        changed = true;
+	                    }
+	                }
+	            }
+	        }
+	        return new long[][] { w[0], w[1], w[2] };
+	    }
+
+	    /**
+	     * Computes the coefficients of the Dirichlet vectors.
+	     * 
+	     * @param b the basis, which is updated as by the exact version.
+	     * @return the coefficient vectors, or null if they get too large.
+	     */
+	    private long[][] dirichletVectors(final Vector b[]) {
+	        if (this.n == 2) {
+	            final long t[][] = gaussReduced();
+	            if (t == null) {
+	                return null;
+	            }
+	            b[0] = vector(t[0]);
+	            b[1] = vector(t[1]);
+	            return new long[][] { t[0], t[1], sum(t[0], t[1]) };
+	        } else {
+	            final long t[][] = sellingReduced();
+	            if (t == null) {
+	                return null;
+	            }
+	            return new long[][] { t[0], t[1], t[2], sum(t[0], t[1]),
+	                    sum(t[0], t[2]), sum(t[1], t[2]),
+	                    sum(sum(t[0], t[1]), t[2]) };
+	        }
+	    }
+
+	    private static long[] sum(final long a[], final long b[]) {
+	        final long c[] = new long[a.length];
+	        for (int i = 0; i < a.length; ++i) {
+	            c[i] = a[i] + b[i];
+	        }
+	        return c;
+	    }
+
+	    /**
+	     * Computes a lattice basis of shortest Dirichlet vectors.
+	     * 
+	     * @param b the basis, which is updated as by the exact version.
+	     * @return the reduced basis, or null if coefficients get too large.
+	     */
+	    public Vector[] reducedBasis(final Vector b[]) {
+	        final long c[][] = dirichletVectors(b);
+	        if (c == null) {
+	            return null;
+	        }
+	        final int m = c.length;
+	        final Vector vectors[] = new Vector[m];
+	        final IArithmetic exactNorms[] = new IArithmetic[m];
+	        final double norms[] = new double[m];
+	        final double errors[] = new double[m];
+	        final Integer order[] = new Integer[m];
+	        for (int k = 0; k < m; ++k) {
+	            norms[k] = dot(c[k], c[k]);
+	            errors[k] = error(c[k], c[k]);
+	            order[k] = k;
+	        }
+	        Arrays.sort(order, new Comparator<Integer>() {
+	            public int compare(final Integer k1, final Integer k2) {
+	                final double diff = norms[k1] - norms[k2];
+	                final double e = errors[k1] + errors[k2];
+	                final int d;
+	                if (diff > e) {
+	                    d = 1;
+	                } else if (diff < -e) {
+	                    d = -1;
+	                } else {
+	                    for (final int k: new int[] { k1, k2 }) {
+	                        if (exactNorms[k] == null) {
+	                            final Vector v = candidate(vectors, c, k);
+	                            exactNorms[k] = Vector.dot(v, v, M);
+	                        }
+	                    }
+	                    d = exactNorms[k1].compareTo(exactNorms[k2]);
+	                }
+	                if (d == 0) {
+	                    return candidate(vectors, c, k2).abs().compareTo(
+	                            candidate(vectors, c, k1).abs());
+	                } else {
+	                    return d;
+	                }
+	            }
+	        });
+
+	        final Vector w[] = new Vector[this.n];
+	        final long a[][] = new long[this.n][];
+	        int k = 0;
+	        for (int i = 0; i < this.n; ++i) {
+	            while (k < m) {
+	                w[i] = candidate(vectors, c, order[k]);
+	                a[i] = c[order[k]].clone();
+	                if (w[i].isNegative()) {
+	                    w[i] = (Vector) w[i].negative();
+	                    negate(a[i]);
+	                }
+	                if (i > 0 && dotGreaterThan(a[0], a[i], 0)) {
+	                    w[i] = (Vector) w[i].negative();
+	                    negate(a[i]);
+	                }
+	                if (independent(a, i + 1)) {
+	                    break;
+	                }
+	                ++k;
+	            }
+	        }
+	        return w;
+	    }
+
+	    /**
+	     * Retrieves a candidate vector, computing it on first use.
+	     */
+	    private Vector candidate(final Vector vectors[], final long c[][],
+	            final int k) {
+	        if (vectors[k] == null) {
+	            vectors[k] = vector(c[k]);
+	        }
+	        return vectors[k];
+	    }
+
+	    private static void negate(final long a[]) {
+	        for (int i = 0; i < a.length; ++i) {
+	            a[i] = -a[i];
+	        }
+	    }
+
+	    /**
+	     * Checks if the first few coefficient vectors are linearly
+	     * independent. Since the basis is, this is the case exactly when the
+	     * corresponding lattice vectors are.
+	     */
+	    private boolean independent(final long a[][], final int count) {
+	        if (count == 1) {
+	            for (int j = 0; j < this.n; ++j) {
+	                if (a[0][j] != 0) {
+	                    return true;
+	                }
+	            }
+	            return false;
+	        } else if (count == 2) {
+	            for (int j = 0; j < this.n; ++j) {
+	                for (int l = j + 1; l < this.n; ++l) {
+	                    if (a[0][j] * a[1][l] != a[0][l] * a[1][j]) {
+	                        return true;
+	                    }
+	                }
+	            }
+	            return false;
+	        } else {
+	            return a[0][0] * (a[1][1] * a[2][2] - a[1][2] * a[2][1])
+	                    - a[0][1] * (a[1][0] * a[2][2] - a[1][2] * a[2][0])
+	                    + a[0][2] * (a[1][0] * a[2][1] - a[1][1] * a[2][0])
+	                    != 0;
+	        }
+	    }
+	}
 }
@@ -0,0 +1,262 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import org.gavrog.jane.numbers.IArithmetic;
+import org.gavrog.jane.numbers.Whole;
+
+/**
+ * An exact affine operator on 2-dimensional space with small rational
+ * entries, stored as long numerators over a common positive denominator. This
+ * is the 2-dimensional counterpart of {@link Operator3}.
+ */
+public final class Operator2 implements SmallOperator<Operator2>,
+        Comparable<Operator2> {
+    final long a00, a01;
+    final long a10, a11;
+    final long t0, t1;
+    final long den;
+    final private boolean small;
+
+    final public static Operator2 IDENTITY =
+        new Operator2(1, 0, 0, 1, 0, 0, 1);
+
+    /**
+     * Constructs an instance from numerators and a common denominator.
+     *
+     * @param a the linear part, by rows.
+     * @param t the translational part.
+     * @param den the common denominator.
+     */
+    public Operator2(final long a[][], final long t[], final long den) {
+        this(a[0][0], a[0][1], a[1][0], a[1][1], t[0], t[1], den);
+    }
+
+    /**
+     * Converts a general affine operator with rational entries.
+     *
+     * @param op the operator to convert.
+     */
+    public Operator2(final Operator op) {
+        this(entries(op));
+    }
+
+    private Operator2(final long e[]) {
+        this(e[0], e[1], e[2], e[3], e[4], e[5], e[6]);
+    }
+
+    private Operator2(long a00, long a01, long a10, long a11, long t0,
+            long t1, long den) {
+        if (den == 0) {
+            throw new ArithmeticException("zero denominator");
+        }
+        long g = den;
+        g = SmallRationals.gcd(g, a00);
+        g = SmallRationals.gcd(g, a01);
+        g = SmallRationals.gcd(g, a10);
+        g = SmallRationals.gcd(g, a11);
+        g = SmallRationals.gcd(g, t0);
+        g = SmallRationals.gcd(g, t1);
+        if (den < 0) {
+            g = -g;
+        }
+        this.a00 = a00 / g; this.a01 = a01 / g;
+        this.a10 = a10 / g; this.a11 = a11 / g;
+        this.t0 = t0 / g; this.t1 = t1 / g;
+        this.den = den / g;
+        this.small = (Math.abs(this.a00) | Math.abs(this.a01)
+                | Math.abs(this.a10) | Math.abs(this.a11) | Math.abs(this.t0)
+                | Math.abs(this.t1) | this.den) < SmallRationals.PRODUCT_LIMIT;
+    }
+
+    private static long[] entries(final Operator op) {
+        if (op.getDimension() != 2) {
+            throw new IllegalArgumentException("dimension must be 2");
+        }
+        for (int i = 0; i < 2; ++i) {
+            if (!op.get(i, 2).isZero()) {
+                throw new IllegalArgumentException("operator must be affine");
+            }
+        }
+        final IArithmetic a[] = new IArithmetic[6];
+        for (int i = 0; i < 3; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                a[2 * i + j] = op.get(i, j);
+            }
+        }
+        return SmallRationals.commonDenominator(a);
+    }
+
+    /**
+     * @return this operator as a general {@link Operator}.
+     */
+    public Operator toOperator() {
+        final IArithmetic M[][] = new IArithmetic[3][3];
+        final long a[] = { a00, a01, a10, a11, t0, t1 };
+        for (int i = 0; i < 3; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                M[i][j] = SmallRationals.rational(a[2 * i + j], this.den);
+            }
+            M[i][2] = i < 2 ? Whole.ZERO : Whole.ONE;
+        }
+        return new Operator(M);
+    }
+
+    /**
+     * Retrieves the numerator of an entry of the matrix representation.
+     *
+     * @param i the row index; row 2 holds the translational part.
+     * @param j the column index, which must be less than 2.
+     * @return the numerator of the entry.
+     */
+    public long numerator(final int i, final int j) {
+        if (i < 0 || i > 2 || j < 0 || j > 1) {
+            throw new IllegalArgumentException("index out of range");
+        }
+        final long a[] = { a00, a01, a10, a11, t0, t1 };
+        return a[2 * i + j];
+    }
+
+    /**
+     * @return the common denominator of all entries.
+     */
+    public long denominator() {
+        return this.den;
+    }
+
+    /**
+     * Checks whether all entries are small enough for exact long arithmetic.
+     */
+    boolean isSmall() {
+        return this.small;
+    }
+
+    public boolean isOne() {
+        return a00 == 1 && a11 == 1 && den == 1 && a01 == 0 && a10 == 0
+                && t0 == 0 && t1 == 0;
+    }
+
+    /**
+     * @return the operator without the translational part.
+     */
+    public Operator2 linearPart() {
+        return new Operator2(a00, a01, a10, a11, 0, 0, den);
+    }
+
+    /**
+     * @return the translational part of this operator.
+     */
+    public Vector2 translationalPart() {
+        return new Vector2(t0, t1, den);
+    }
+
+    public Operator2 times(final Operator2 b) {
+        if (!this.small || !b.small) {
+            return new Operator2((Operator) toOperator().times(b.toOperator()));
+        }
+        final long d = this.den;
+        return new Operator2(
+                a00 * b.a00 + a01 * b.a10,
+                a00 * b.a01 + a01 * b.a11,
+                a10 * b.a00 + a11 * b.a10,
+                a10 * b.a01 + a11 * b.a11,
+                t0 * b.a00 + t1 * b.a10 + b.t0 * d,
+                t0 * b.a01 + t1 * b.a11 + b.t1 * d,
+                d * b.den);
+    }
+
+    public Operator2 inverse() {
+        if (!this.small) {
+            return new Operator2((Operator) toOperator().inverse());
+        }
+        final long det = a00 * a11 - a01 * a10;
+        if (det == 0) {
+            throw new ArithmeticException("operator is not invertible");
+        }
+        final long d = this.den;
+        return new Operator2(
+                d * a11, -d * a01,
+                -d * a10, d * a00,
+                -(t0 * a11 - t1 * a10),
+                -(t1 * a00 - t0 * a01),
+                det);
+    }
+
+    public Operator2 modZ() {
+        final long d = this.den;
+        return new Operator2(a00, a01, a10, a11,
+                SmallRationals.floorMod(t0, d),
+                SmallRationals.floorMod(t1, d), d);
+    }
+
+    /**
+     * @return the integral parts of the translational coordinates.
+     */
+    public Vector2 floorZ() {
+        final long d = this.den;
+        return new Vector2(SmallRationals.floorDiv(t0, d),
+                SmallRationals.floorDiv(t1, d));
+    }
+
+    /**
+     * Applies this operator to a point.
+     *
+     * @param p the coordinates of the point.
+     * @return the coordinates of the image.
+     */
+    public Vector2 applyToPoint(final Vector2 p) {
+        return p.times(this).plus(translationalPart());
+    }
+
+    /**
+     * Compares entries in the same order as {@link Operator#compareTo(Object)}.
+     */
+    public int compareTo(final Operator2 b) {
+        final long a[] = { a00, a01, a10, a11, t0, t1 };
+        final long c[] = { b.a00, b.a01, b.a10, b.a11, b.t0, b.t1 };
+        for (int i = 0; i < 6; ++i) {
+            final int d = SmallRationals.compare(a[i], this.den, c[i], b.den);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    public boolean equals(final Object other) {
+        if (other instanceof Operator2) {
+            final Operator2 b = (Operator2) other;
+            return den == b.den && t0 == b.t0 && t1 == b.t1
+                    && a00 == b.a00 && a01 == b.a01
+                    && a10 == b.a10 && a11 == b.a11;
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        long h = den;
+        h = h * 31 + a00; h = h * 31 + a01;
+        h = h * 31 + a10; h = h * 31 + a11;
+        h = h * 31 + t0; h = h * 31 + t1;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public String toString() {
+        return "Operator2" + toOperator().toString().substring(8);
+    }
+}
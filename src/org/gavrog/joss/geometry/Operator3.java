@@ -0,0 +1,315 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import org.gavrog.jane.numbers.IArithmetic;
+import org.gavrog.jane.numbers.Whole;
+
+/**
+ * An exact affine operator on 3-dimensional space with small rational
+ * entries, stored as long numerators over a common positive denominator. This
+ * is a light-weight alternative to {@link Operator} for symmetry
+ * computations. As with {@link Operator}, the matrix
+ *
+ * <pre>
+ *   A 0
+ *   t 1
+ * </pre>
+ *
+ * acts on row vectors from the right. Instances are immutable. Computations
+ * whose entries would get too large for long arithmetic are transparently
+ * done via {@link Operator}.
+ */
+public final class Operator3 implements SmallOperator<Operator3>,
+        Comparable<Operator3> {
+    final long a00, a01, a02;
+    final long a10, a11, a12;
+    final long a20, a21, a22;
+    final long t0, t1, t2;
+    final long den;
+    final private boolean small;
+
+    final public static Operator3 IDENTITY =
+        new Operator3(1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1);
+
+    /**
+     * Constructs an instance from numerators and a common denominator.
+     *
+     * @param a the linear part, by rows.
+     * @param t the translational part.
+     * @param den the common denominator.
+     */
+    public Operator3(final long a[][], final long t[], final long den) {
+        this(a[0][0], a[0][1], a[0][2], a[1][0], a[1][1], a[1][2],
+                a[2][0], a[2][1], a[2][2], t[0], t[1], t[2], den);
+    }
+
+    /**
+     * Converts a general affine operator with rational entries.
+     *
+     * @param op the operator to convert.
+     */
+    public Operator3(final Operator op) {
+        this(entries(op));
+    }
+
+    private Operator3(final long e[]) {
+        this(e[0], e[1], e[2], e[3], e[4], e[5], e[6], e[7], e[8],
+                e[9], e[10], e[11], e[12]);
+    }
+
+    private Operator3(long a00, long a01, long a02, long a10, long a11,
+            long a12, long a20, long a21, long a22, long t0, long t1,
+            long t2, long den) {
+        if (den == 0) {
+            throw new ArithmeticException("zero denominator");
+        }
+        long g = den;
+        g = SmallRationals.gcd(g, a00);
+        g = SmallRationals.gcd(g, a01);
+        g = SmallRationals.gcd(g, a02);
+        g = SmallRationals.gcd(g, a10);
+        g = SmallRationals.gcd(g, a11);
+        g = SmallRationals.gcd(g, a12);
+        g = SmallRationals.gcd(g, a20);
+        g = SmallRationals.gcd(g, a21);
+        g = SmallRationals.gcd(g, a22);
+        g = SmallRationals.gcd(g, t0);
+        g = SmallRationals.gcd(g, t1);
+        g = SmallRationals.gcd(g, t2);
+        if (den < 0) {
+            g = -g;
+        }
+        this.a00 = a00 / g; this.a01 = a01 / g; this.a02 = a02 / g;
+        this.a10 = a10 / g; this.a11 = a11 / g; this.a12 = a12 / g;
+        this.a20 = a20 / g; this.a21 = a21 / g; this.a22 = a22 / g;
+        this.t0 = t0 / g; this.t1 = t1 / g; this.t2 = t2 / g;
+        this.den = den / g;
+        this.small = (Math.abs(this.a00) | Math.abs(this.a01)
+                | Math.abs(this.a02) | Math.abs(this.a10) | Math.abs(this.a11)
+                | Math.abs(this.a12) | Math.abs(this.a20) | Math.abs(this.a21)
+                | Math.abs(this.a22) | Math.abs(this.t0) | Math.abs(this.t1)
+                | Math.abs(this.t2) | this.den) < SmallRationals.PRODUCT_LIMIT;
+    }
+
+    private static long[] entries(final Operator op) {
+        if (op.getDimension() != 3) {
+            throw new IllegalArgumentException("dimension must be 3");
+        }
+        for (int i = 0; i < 3; ++i) {
+            if (!op.get(i, 3).isZero()) {
+                throw new IllegalArgumentException("operator must be affine");
+            }
+        }
+        final IArithmetic a[] = new IArithmetic[12];
+        for (int i = 0; i < 4; ++i) {
+            for (int j = 0; j < 3; ++j) {
+                a[3 * i + j] = op.get(i, j);
+            }
+        }
+        return SmallRationals.commonDenominator(a);
+    }
+
+    /**
+     * @return this operator as a general {@link Operator}.
+     */
+    public Operator toOperator() {
+        final IArithmetic M[][] = new IArithmetic[4][4];
+        final long a[] = { a00, a01, a02, a10, a11, a12, a20, a21, a22,
+                t0, t1, t2 };
+        for (int i = 0; i < 4; ++i) {
+            for (int j = 0; j < 3; ++j) {
+                M[i][j] = SmallRationals.rational(a[3 * i + j], this.den);
+            }
+            M[i][3] = i < 3 ? Whole.ZERO : Whole.ONE;
+        }
+        return new Operator(M);
+    }
+
+    /**
+     * Retrieves the numerator of an entry of the matrix representation.
+     *
+     * @param i the row index; row 3 holds the translational part.
+     * @param j the column index, which must be less than 3.
+     * @return the numerator of the entry.
+     */
+    public long numerator(final int i, final int j) {
+        if (i < 0 || i > 3 || j < 0 || j > 2) {
+            throw new IllegalArgumentException("index out of range");
+        }
+        final long a[] = { a00, a01, a02, a10, a11, a12, a20, a21, a22,
+                t0, t1, t2 };
+        return a[3 * i + j];
+    }
+
+    /**
+     * @return the common denominator of all entries.
+     */
+    public long denominator() {
+        return this.den;
+    }
+
+    /**
+     * Checks whether all entries are small enough for exact long arithmetic.
+     */
+    boolean isSmall() {
+        return this.small;
+    }
+
+    public boolean isOne() {
+        return a00 == 1 && a11 == 1 && a22 == 1 && den == 1
+                && a01 == 0 && a02 == 0 && a10 == 0 && a12 == 0 && a20 == 0
+                && a21 == 0 && t0 == 0 && t1 == 0 && t2 == 0;
+    }
+
+    /**
+     * @return the operator without the translational part.
+     */
+    public Operator3 linearPart() {
+        return new Operator3(a00, a01, a02, a10, a11, a12, a20, a21, a22,
+                0, 0, 0, den);
+    }
+
+    /**
+     * @return the translational part of this operator.
+     */
+    public Vector3 translationalPart() {
+        return new Vector3(t0, t1, t2, den);
+    }
+
+    public Operator3 times(final Operator3 b) {
+        if (!this.small || !b.small) {
+            return new Operator3((Operator) toOperator().times(b.toOperator()));
+        }
+        final long d = this.den;
+        return new Operator3(
+                a00 * b.a00 + a01 * b.a10 + a02 * b.a20,
+                a00 * b.a01 + a01 * b.a11 + a02 * b.a21,
+                a00 * b.a02 + a01 * b.a12 + a02 * b.a22,
+                a10 * b.a00 + a11 * b.a10 + a12 * b.a20,
+                a10 * b.a01 + a11 * b.a11 + a12 * b.a21,
+                a10 * b.a02 + a11 * b.a12 + a12 * b.a22,
+                a20 * b.a00 + a21 * b.a10 + a22 * b.a20,
+                a20 * b.a01 + a21 * b.a11 + a22 * b.a21,
+                a20 * b.a02 + a21 * b.a12 + a22 * b.a22,
+                t0 * b.a00 + t1 * b.a10 + t2 * b.a20 + b.t0 * d,
+                t0 * b.a01 + t1 * b.a11 + t2 * b.a21 + b.t1 * d,
+                t0 * b.a02 + t1 * b.a12 + t2 * b.a22 + b.t2 * d,
+                d * b.den);
+    }
+
+    public Operator3 inverse() {
+        final long lim = SmallRationals.INVERSE_LIMIT;
+        if (!SmallRationals.fits(new long[] { a00, a01, a02, a10, a11, a12,
+                a20, a21, a22, t0, t1, t2, den }, lim)) {
+            return new Operator3((Operator) toOperator().inverse());
+        }
+        // --- adjugate of the linear numerators
+        final long c00 = a11 * a22 - a12 * a21;
+        final long c01 = a02 * a21 - a01 * a22;
+        final long c02 = a01 * a12 - a02 * a11;
+        final long c10 = a12 * a20 - a10 * a22;
+        final long c11 = a00 * a22 - a02 * a20;
+        final long c12 = a02 * a10 - a00 * a12;
+        final long c20 = a10 * a21 - a11 * a20;
+        final long c21 = a01 * a20 - a00 * a21;
+        final long c22 = a00 * a11 - a01 * a10;
+        final long det = a00 * c00 + a01 * c10 + a02 * c20;
+        if (det == 0) {
+            throw new ArithmeticException("operator is not invertible");
+        }
+        final long d = this.den;
+        return new Operator3(
+                d * c00, d * c01, d * c02,
+                d * c10, d * c11, d * c12,
+                d * c20, d * c21, d * c22,
+                -(t0 * c00 + t1 * c10 + t2 * c20),
+                -(t0 * c01 + t1 * c11 + t2 * c21),
+                -(t0 * c02 + t1 * c12 + t2 * c22),
+                det);
+    }
+
+    public Operator3 modZ() {
+        final long d = this.den;
+        return new Operator3(a00, a01, a02, a10, a11, a12, a20, a21, a22,
+                SmallRationals.floorMod(t0, d),
+                SmallRationals.floorMod(t1, d),
+                SmallRationals.floorMod(t2, d), d);
+    }
+
+    /**
+     * @return the integral parts of the translational coordinates.
+     */
+    public Vector3 floorZ() {
+        final long d = this.den;
+        return new Vector3(SmallRationals.floorDiv(t0, d),
+                SmallRationals.floorDiv(t1, d),
+                SmallRationals.floorDiv(t2, d));
+    }
+
+    /**
+     * Applies this operator to a point.
+     *
+     * @param p the coordinates of the point.
+     * @return the coordinates of the image.
+     */
+    public Vector3 applyToPoint(final Vector3 p) {
+        return p.times(this).plus(translationalPart());
+    }
+
+    /**
+     * Compares entries in the same order as {@link Operator#compareTo(Object)}.
+     */
+    public int compareTo(final Operator3 b) {
+        final long a[] = { a00, a01, a02, a10, a11, a12, a20, a21, a22,
+                t0, t1, t2 };
+        final long c[] = { b.a00, b.a01, b.a02, b.a10, b.a11, b.a12,
+                b.a20, b.a21, b.a22, b.t0, b.t1, b.t2 };
+        for (int i = 0; i < 12; ++i) {
+            final int d = SmallRationals.compare(a[i], this.den, c[i], b.den);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    public boolean equals(final Object other) {
+        if (other instanceof Operator3) {
+            final Operator3 b = (Operator3) other;
+            return den == b.den && t0 == b.t0 && t1 == b.t1 && t2 == b.t2
+                    && a00 == b.a00 && a01 == b.a01 && a02 == b.a02
+                    && a10 == b.a10 && a11 == b.a11 && a12 == b.a12
+                    && a20 == b.a20 && a21 == b.a21 && a22 == b.a22;
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        long h = den;
+        h = h * 31 + a00; h = h * 31 + a01; h = h * 31 + a02;
+        h = h * 31 + a10; h = h * 31 + a11; h = h * 31 + a12;
+        h = h * 31 + a20; h = h * 31 + a21; h = h * 31 + a22;
+        h = h * 31 + t0; h = h * 31 + t1; h = h * 31 + t2;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public String toString() {
+        return "Operator3" + toOperator().toString().substring(8);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns operators modulo unit translations, so that each distinct operator
+ * is represented by a small integer id. Products and inverses of interned
+ * operators are cached in tables, so that group computations on the ids
+ * perform each operator multiplication at most once.
+ *
+ * Instances are not thread-safe.
+ */
+class OperatorTable<T extends SmallOperator<T>> {
+    final private List<T> operators = new ArrayList<T>();
+    final private Map<T, Integer> ids = new HashMap<T, Integer>();
+    private int products[][] = new int[16][];
+    private int inverses[] = new int[16];
+
+    /**
+     * Retrieves the id of an operator, adding it to the table if necessary.
+     *
+     * @param op the operator, which will be reduced modulo unit translations.
+     * @return the id for the operator.
+     */
+    public int intern(final T op) {
+        return internNormalized(op.modZ());
+    }
+
+    private int internNormalized(final T op) {
+        final Integer id = this.ids.get(op);
+        if (id != null) {
+            return id;
+        }
+        final int n = this.operators.size();
+        if (n >= this.inverses.length) {
+            this.inverses = Arrays.copyOf(this.inverses, 2 * n);
+            this.products = Arrays.copyOf(this.products, 2 * n);
+        }
+        this.inverses[n] = -1;
+        this.operators.add(op);
+        this.ids.put(op, n);
+        return n;
+    }
+
+    /**
+     * @param id an operator id.
+     * @return the normalized operator with that id.
+     */
+    public T get(final int id) {
+        return this.operators.get(id);
+    }
+
+    /**
+     * @return the number of operators interned so far.
+     */
+    public int size() {
+        return this.operators.size();
+    }
+
+    /**
+     * Looks up the id of the product of two interned operators modulo unit
+     * translations, computing it on first use.
+     *
+     * @param a the id of the operator to apply first.
+     * @param b the id of the operator to apply second.
+     * @return the id of the product.
+     */
+    public int product(final int a, final int b) {
+        int row[] = this.products[a];
+        if (row == null || b >= row.length) {
+            final int m = Math.max(b + 1, this.operators.size());
+            final int old = row == null ? 0 : row.length;
+            row = row == null ? new int[m] : Arrays.copyOf(row, m);
+            Arrays.fill(row, old, m, -1);
+            this.products[a] = row;
+        }
+        if (row[b] < 0) {
+            row[b] = intern(get(a).times(get(b)));
+        }
+        return row[b];
+    }
+
+    /**
+     * Looks up the id of the inverse of an interned operator modulo unit
+     * translations, computing it on first use.
+     *
+     * @param a the operator id.
+     * @return the id of the inverse.
+     */
+    public int inverse(final int a) {
+        if (this.inverses[a] < 0) {
+            final int b = intern(get(a).inverse());
+            this.inverses[a] = b;
+            this.inverses[b] = a;
+        }
+        return this.inverses[a];
+    }
+
+    /**
+     * Computes the group generated by a set of operators modulo unit
+     * translations. Ids are listed in the order they were found in.
+     *
+     * @param gens the generator ids.
+     * @return the ids of all the group elements.
+     */
+    public int[] closure(final int gens[]) {
+        final IdSet seen = new IdSet();
+        final int queue[] = new int[Math.max(16, gens.length)];
+        int result[] = queue;
+        int n = 0;
+        for (int i = 0; i < gens.length; ++i) {
+            final int a = gens[i];
+            for (int j = 0; j < gens.length; ++j) {
+                final int ab = product(a, gens[j]);
+                if (seen.add(ab)) {
+                    if (n >= result.length) {
+                        result = Arrays.copyOf(result, 2 * n);
+                    }
+                    result[n++] = ab;
+                }
+            }
+        }
+        for (int k = 0; k < n; ++k) {
+            final int a = result[k];
+            for (int j = 0; j < gens.length; ++j) {
+                final int ab = product(a, gens[j]);
+                if (seen.add(ab)) {
+                    if (n >= result.length) {
+                        result = Arrays.copyOf(result, 2 * n);
+                    }
+                    result[n++] = ab;
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Checks whether a set of operators is closed under products and inverses
+     * modulo unit translations.
+     *
+     * @param elements the ids of the operators to check.
+     * @return true if the operators form a group.
+     */
+    public boolean isGroup(final int elements[]) {
+        final IdSet members = new IdSet();
+        for (final int a: elements) {
+            members.add(a);
+        }
+        for (final int b: elements) {
+            final int b_ = inverse(b);
+            for (final int a: elements) {
+                if (!members.contains(product(a, b_))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A growable set of non-negative ids.
+     */
+    private static class IdSet {
+        private boolean flags[] = new boolean[64];
+
+        public boolean add(final int id) {
+            if (id >= this.flags.length) {
+                this.flags = Arrays.copyOf(this.flags,
+                        Math.max(id + 1, 2 * this.flags.length));
+            }
+            if (this.flags[id]) {
+                return false;
+            } else {
+                this.flags[id] = true;
+                return true;
+            }
+        }
+
+        public boolean contains(final int id) {
+            return id < this.flags.length && this.flags[id];
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.numbers.Real;
+
+/**
+ * A cell list for finding close pairs among the translates of a finite set
+ * of points under the unit lattice. Point coordinates are taken with respect
+ * to the unit lattice and distances are measured via a Gram matrix.
+ *
+ * Internally, the lattice is first reduced via
+ * {@link Lattices#reducedLatticeBasis(Vector[], Matrix)}, so that the cells
+ * of the grid are as close to cubical as the metric allows. Points are then
+ * sorted into grid cells whose widths are at least a given cutoff, so that
+ * all close pairs are found by looking at adjacent cells only. For a fixed
+ * cutoff, this takes time roughly linear in the number of points.
+ */
+public class PeriodicCellList {
+    /**
+     * Receives the pairs found by a query.
+     */
+    public static interface Visitor {
+        /**
+         * Called once for each pair found.
+         *
+         * @param i the index of the first point or -1 for a query point.
+         * @param j the index of the second point.
+         * @param shift the lattice vector by which the second point is
+         *            shifted, in the original coordinates.
+         * @param dist2 the squared distance between the two points.
+         */
+        public void visit(int i, int j, int shift[], double dist2);
+    }
+
+    final private int dim;
+    final private int size;
+    final private int basis[];
+    final private int inverseBasis[];
+    final private double metric[];
+    final private double heights[];
+    final private double coords[];
+    final private int wraps[];
+
+    private double gridCutoff = -1;
+    private int gridSize[];
+    private int reach[];
+    private int cellOf[];
+    private int cellStart[];
+    private int cellContents[];
+
+    /**
+     * Constructs an instance.
+     *
+     * @param positions the point positions as rows of coordinates.
+     * @param gram the Gram matrix defining the metric.
+     */
+    public PeriodicCellList(final double positions[][], final Matrix gram) {
+        final int d = gram.numberOfRows();
+        final int n = positions.length;
+        this.dim = d;
+        this.size = n;
+
+        // --- reduce the lattice basis
+        final Vector reduced[] = Lattices.reducedLatticeBasis(
+                Vector.rowVectors(Matrix.one(d)), gram, true);
+        final Matrix B = Vector.toMatrix(reduced);
+        final Matrix Binv = (Matrix) B.inverse();
+        final Matrix G = (Matrix) B.times(gram).times(B.transposed());
+        final Matrix Ginv = (Matrix) G.inverse();
+
+        this.basis = new int[d * d];
+        this.inverseBasis = new int[d * d];
+        this.metric = new double[d * d];
+        this.heights = new double[d];
+        for (int i = 0; i < d; ++i) {
+            for (int j = 0; j < d; ++j) {
+                this.basis[i * d + j] = (int) Math.round(
+                        ((Real) B.get(i, j)).doubleValue());
+                this.inverseBasis[i * d + j] = (int) Math.round(
+                        ((Real) Binv.get(i, j)).doubleValue());
+                this.metric[i * d + j] = ((Real) G.get(i, j)).doubleValue();
+            }
+            this.heights[i] =
+                1.0 / Math.sqrt(((Real) Ginv.get(i, i)).doubleValue());
+        }
+
+        // --- convert to reduced coordinates and wrap into the unit cell
+        this.coords = new double[n * d];
+        this.wraps = new int[n * d];
+        for (int k = 0; k < n; ++k) {
+            for (int j = 0; j < d; ++j) {
+                double y = 0.0;
+                for (int i = 0; i < d; ++i) {
+                    y += positions[k][i] * this.inverseBasis[i * d + j];
+                }
+                final double w = Math.floor(y);
+                this.wraps[k * d + j] = (int) w;
+                this.coords[k * d + j] = y - w;
+            }
+        }
+    }
+
+    /**
+     * @return the number of points.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Visits all pairs of points within the given cutoff distance of each
+     * other, including pairs formed by translates of the same point. Each
+     * pair is visited once for either order of its points.
+     *
+     * @param cutoff the largest distance to consider.
+     * @param visitor receives the pairs found.
+     */
+    public void pairsWithin(final double cutoff, final Visitor visitor) {
+        prepareGrid(cutoff);
+        final int d = this.dim;
+        final double p[] = new double[d];
+        final int w[] = new int[d];
+        for (int i = 0; i < this.size; ++i) {
+            for (int k = 0; k < d; ++k) {
+                p[k] = this.coords[i * d + k];
+                w[k] = this.wraps[i * d + k];
+            }
+            search(i, p, w, cell(p), cutoff, visitor);
+        }
+    }
+
+    /**
+     * Visits all points within the given cutoff distance of a query point.
+     * The first index passed to the visitor is always -1.
+     *
+     * @param position the coordinates of the query point.
+     * @param cutoff the largest distance to consider.
+     * @param visitor receives the pairs found.
+     */
+    public void pointsNear(final double position[], final double cutoff,
+            final Visitor visitor) {
+        prepareGrid(cutoff);
+        final int d = this.dim;
+        final double p[] = new double[d];
+        final int w[] = new int[d];
+        for (int j = 0; j < d; ++j) {
+            double y = 0.0;
+            for (int i = 0; i < d; ++i) {
+                y += position[i] * this.inverseBasis[i * d + j];
+            }
+            final double f = Math.floor(y);
+            w[j] = (int) f;
+            p[j] = y - f;
+        }
+        search(-1, p, w, cell(p), cutoff, visitor);
+    }
+
+    /**
+     * Sets up the grid for the given cutoff, unless already present. The
+     * number of grid cells is limited to a small multiple of the number of
+     * points.
+     */
+    private void prepareGrid(final double cutoff) {
+        if (cutoff == this.gridCutoff) {
+            return;
+        }
+        final int d = this.dim;
+        final int n = this.size;
+        final long limit = Math.max(8, 2 * n);
+
+        this.gridSize = new int[d];
+        long total = 1;
+        for (int k = 0; k < d; ++k) {
+            final double m = Math.floor(this.heights[k] / cutoff);
+            this.gridSize[k] = (int) Math.max(1, Math.min(m, limit));
+            total *= this.gridSize[k];
+        }
+        while (total > limit) {
+            int largest = 0;
+            for (int k = 1; k < d; ++k) {
+                if (this.gridSize[k] > this.gridSize[largest]) {
+                    largest = k;
+                }
+            }
+            total /= this.gridSize[largest];
+            this.gridSize[largest] = (this.gridSize[largest] + 1) / 2;
+            total *= this.gridSize[largest];
+        }
+
+        this.reach = new int[d];
+        for (int k = 0; k < d; ++k) {
+            this.reach[k] = 1 + (int) Math.floor(
+                    cutoff * this.gridSize[k] / this.heights[k]);
+        }
+
+        // --- sort points into cells by counting
+        this.cellOf = new int[n];
+        this.cellStart = new int[(int) total + 1];
+        this.cellContents = new int[n];
+        final double p[] = new double[d];
+        for (int i = 0; i < n; ++i) {
+            for (int k = 0; k < d; ++k) {
+                p[k] = this.coords[i * d + k];
+            }
+            this.cellOf[i] = cell(p);
+            ++this.cellStart[this.cellOf[i] + 1];
+        }
+        for (int c = 0; c < total; ++c) {
+            this.cellStart[c + 1] += this.cellStart[c];
+        }
+        final int next[] = new int[(int) total];
+        for (int i = 0; i < n; ++i) {
+            final int c = this.cellOf[i];
+            this.cellContents[this.cellStart[c] + next[c]++] = i;
+        }
+
+        this.gridCutoff = cutoff;
+    }
+
+    /**
+     * Computes the grid cell for wrapped reduced coordinates.
+     */
+    private int cell(final double p[]) {
+        int c = 0;
+        for (int k = 0; k < this.dim; ++k) {
+            final int m = this.gridSize[k];
+            c = c * m + Math.min(m - 1, (int) (p[k] * m));
+        }
+        return c;
+    }
+
+    /**
+     * Visits all points close to a given one by looking at the surrounding
+     * grid cells.
+     */
+    private void search(final int i, final double p[], final int w[],
+            final int c, final double cutoff, final Visitor visitor) {
+        final int d = this.dim;
+        final double limit = cutoff * cutoff;
+        final int home[] = new int[d];
+        int rest = c;
+        for (int k = d - 1; k >= 0; --k) {
+            home[k] = rest % this.gridSize[k];
+            rest /= this.gridSize[k];
+        }
+
+        final int offset[] = new int[d];
+        final int cellShift[] = new int[d];
+        final double diff[] = new double[d];
+        for (int k = 0; k < d; ++k) {
+            offset[k] = -this.reach[k];
+        }
+
+        while (true) {
+            // --- locate the cell at the current offset
+            int target = 0;
+            for (int k = 0; k < d; ++k) {
+                final int m = this.gridSize[k];
+                final int t = home[k] + offset[k];
+                final int s = (int) Math.floor((double) t / m);
+                cellShift[k] = s;
+                target = target * m + t - s * m;
+            }
+
+            // --- check the points it contains
+            for (int pos = this.cellStart[target];
+                    pos < this.cellStart[target + 1]; ++pos) {
+                final int j = this.cellContents[pos];
+                boolean trivial = i == j;
+                for (int k = 0; k < d; ++k) {
+                    diff[k] = this.coords[j * d + k] + cellShift[k] - p[k];
+                    if (cellShift[k] != 0) {
+                        trivial = false;
+                    }
+                }
+                if (trivial) {
+                    continue;
+                }
+                double dist2 = 0.0;
+                for (int k = 0; k < d; ++k) {
+                    double s = 0.0;
+                    for (int m = 0; m < d; ++m) {
+                        s += this.metric[k * d + m] * diff[m];
+                    }
+                    dist2 += diff[k] * s;
+                }
+                if (dist2 <= limit) {
+                    visitor.visit(i, j, shift(j, cellShift, w), dist2);
+                }
+            }
+
+            // --- advance to the next offset
+            int k = d - 1;
+            while (k >= 0 && offset[k] == this.reach[k]) {
+                offset[k] = -this.reach[k];
+                --k;
+            }
+            if (k < 0) {
+                break;
+            }
+            ++offset[k];
+        }
+    }
+
+    /**
+     * Converts a shift between wrapped points in reduced coordinates into
+     * one between the original points in original coordinates.
+     */
+    private int[] shift(final int j, final int cellShift[], final int w[]) {
+        final int d = this.dim;
+        final int result[] = new int[d];
+        for (int k = 0; k < d; ++k) {
+            final int t = cellShift[k] - this.wraps[j * d + k] + w[k];
+            if (t != 0) {
+                for (int m = 0; m < d; ++m) {
+                    result[m] += t * this.basis[k * d + m];
+                }
+            }
+        }
+        return result;
+    }
+}
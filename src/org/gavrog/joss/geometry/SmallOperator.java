@@ -0,0 +1,45 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+/**
+ * The operations common to the fixed-dimension exact operator types
+ * {@link Operator2} and {@link Operator3}, so that group computations can be
+ * written once for both.
+ */
+interface SmallOperator<T extends SmallOperator<T>> {
+    /**
+     * @param other the operator to apply after this one.
+     * @return the product of this operator and the given one.
+     */
+    public T times(T other);
+
+    /**
+     * @return the inverse of this operator.
+     */
+    public T inverse();
+
+    /**
+     * @return a copy with the translational part reduced modulo one.
+     */
+    public T modZ();
+
+    /**
+     * @return this operator as a general {@link Operator}.
+     */
+    public Operator toOperator();
+}
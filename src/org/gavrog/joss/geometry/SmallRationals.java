@@ -0,0 +1,166 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import java.math.BigInteger;
+
+import org.gavrog.jane.numbers.IArithmetic;
+import org.gavrog.jane.numbers.Rational;
+import org.gavrog.jane.numbers.Whole;
+
+/**
+ * Helpers for the fixed-dimension exact types {@link Operator2},
+ * {@link Operator3}, {@link Vector2} and {@link Vector3}, which store rational
+ * entries as long numerators over a common positive denominator.
+ */
+final class SmallRationals {
+    /**
+     * Entries of at most this size can be multiplied and summed in threes
+     * without overflow.
+     */
+    final static long PRODUCT_LIMIT = 1L << 30;
+
+    /**
+     * Entries of at most this size can safely go into a 3x3 adjugate.
+     */
+    final static long INVERSE_LIMIT = 1L << 16;
+
+    private SmallRationals() {
+    }
+
+    static long gcd(long a, long b) {
+        a = Math.abs(a);
+        b = Math.abs(b);
+        while (b != 0) {
+            final long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    static long floorDiv(final long a, final long b) {
+        final long q = a / b;
+        return (a % b != 0 && ((a < 0) != (b < 0))) ? q - 1 : q;
+    }
+
+    static long floorMod(final long a, final long b) {
+        return a - floorDiv(a, b) * b;
+    }
+
+    /**
+     * Divides the given numerators and the denominator, which is always the
+     * last entry, by their greatest common divisor in place and makes the
+     * denominator positive.
+     */
+    static void normalize(final long a[]) {
+        final int n = a.length - 1;
+        if (a[n] == 0) {
+            throw new ArithmeticException("zero denominator");
+        }
+        long g = a[n];
+        for (int i = 0; i < n && g != 1 && g != -1; ++i) {
+            g = gcd(g, a[i]);
+        }
+        g = Math.abs(g);
+        if (a[n] < 0) {
+            g = -g;
+        }
+        if (g != 1) {
+            for (int i = 0; i <= n; ++i) {
+                a[i] /= g;
+            }
+        }
+    }
+
+    /**
+     * Checks that the largest absolute value in an array does not exceed a
+     * given limit.
+     */
+    static boolean fits(final long a[], final long limit) {
+        for (int i = 0; i < a.length; ++i) {
+            if (a[i] > limit || a[i] < -limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a list of exact numbers into numerators over a common
+     * denominator, which is stored as the last entry of the result.
+     */
+    static long[] commonDenominator(final IArithmetic values[]) {
+        final int n = values.length;
+        final long result[] = new long[n + 1];
+        final long nums[] = new long[n];
+        final long dens[] = new long[n];
+        long den = 1;
+        for (int i = 0; i < n; ++i) {
+            if (!(values[i] instanceof Rational)) {
+                throw new IllegalArgumentException("entries must be rational");
+            }
+            final Rational r = (Rational) values[i];
+            nums[i] = asLong(r.numerator());
+            dens[i] = asLong(r.denominator());
+            final long f = den / gcd(den, dens[i]);
+            if (f > Long.MAX_VALUE / dens[i]) {
+                throw new ArithmeticException("denominators too large");
+            }
+            den = f * dens[i];
+        }
+        for (int i = 0; i < n; ++i) {
+            final long f = den / dens[i];
+            if (Math.abs(nums[i]) > Long.MAX_VALUE / f) {
+                throw new ArithmeticException("entry too large");
+            }
+            result[i] = nums[i] * f;
+        }
+        result[n] = den;
+        return result;
+    }
+
+    private static long asLong(final Whole w) {
+        if (w.bigIntegerValue().bitLength() > 62) {
+            throw new ArithmeticException("entry too large");
+        }
+        return w.longValue();
+    }
+
+    static Rational rational(final long num, final long den) {
+        return Rational.make(new Whole(num), new Whole(den));
+    }
+
+    /**
+     * Compares num1/den1 and num2/den2, where both denominators are positive.
+     */
+    static int compare(final long num1, final long den1,
+            final long num2, final long den2) {
+        if (den1 == den2) {
+            return num1 < num2 ? -1 : (num1 > num2 ? 1 : 0);
+        } else if (Math.abs(num1) < PRODUCT_LIMIT && den1 < PRODUCT_LIMIT
+                && Math.abs(num2) < PRODUCT_LIMIT && den2 < PRODUCT_LIMIT) {
+            final long x = num1 * den2;
+            final long y = num2 * den1;
+            return x < y ? -1 : (x > y ? 1 : 0);
+        } else {
+            return BigInteger.valueOf(num1).multiply(BigInteger.valueOf(den2))
+                    .compareTo(BigInteger.valueOf(num2).multiply(
+                            BigInteger.valueOf(den1)));
+        }
+    }
+}
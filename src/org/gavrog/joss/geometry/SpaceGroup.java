@@ -19,7 +19,9 @@ package org.gavrog.joss.geometry;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -127,45 +129,154 @@ public class SpaceGroup {
         }
         
         // --- copy operators and normalize their translational parts
-        final Set<Operator> ops = new HashSet<Operator>();
+        Set<Operator> ops = new HashSet<Operator>();
         for (final Operator op: operators) {
             ops.add(op.modZ());
         }
         
         // --- generate a full set of operators, if required
         if (generate) {
-            final Set<Operator> gens = new HashSet<Operator>(ops);
-            ops.clear();
-            final LinkedList<Operator> queue = new LinkedList<Operator>(gens);
-            
-            while (queue.size() > 0) {
-                final Operator A = (Operator) queue.removeFirst();
-                for (final Operator B: gens) {
-                    final Operator AB = ((Operator) A.times(B)).modZ();
-                    if (!ops.contains(AB)) {
-                        ops.add(AB);
-                        queue.addLast(AB);
-                    }
-                }
-            }
+            ops = generated(d, ops);
         }
         
         // --- check products and inverses, if required
-        if (check) {
-            for (final Operator A: ops) {
-                for (final Operator B: ops) {
-                    final Operator AB_ = (Operator) A.times(B.inverse());
-                    if (!ops.contains(AB_.modZ())) {
-                        throw new IllegalArgumentException("operators form no group");
-                    }
-                }
-            }
+        if (check && !isClosed(d, ops)) {
+            throw new IllegalArgumentException("operators form no group");
         }
         
         // --- initialize the operator list
         this.operators = Collections.unmodifiableSet(ops);
     }
     
+    /**
+     * Computes the closure of a set of operators modulo unit translations.
+     * Where possible, fixed-dimension exact arithmetic is used.
+     * 
+     * @param d the dimension.
+     * @param generators the generators, normalized via modZ().
+     * @return the set of all normalized operators generated.
+     */
+    private static Set<Operator> generated(final int d,
+            final Set<Operator> generators) {
+        final Set<Operator> gens = new HashSet<Operator>(generators);
+        try {
+            if (d == 3) {
+                return asOperators(closure(asOperator3s(gens)));
+            } else if (d == 2) {
+                return asOperators(closure(asOperator2s(gens)));
+            }
+        } catch (ArithmeticException ex) {
+            // --- entries too large, so fall through to the general version
+        }
+        
+        final Set<Operator> ops = new HashSet<Operator>();
+        final LinkedList<Operator> queue = new LinkedList<Operator>(gens);
+        
+        while (queue.size() > 0) {
+            final Operator A = (Operator) queue.removeFirst();
+            for (final Operator B: gens) {
+                final Operator AB = ((Operator) A.times(B)).modZ();
+                if (!ops.contains(AB)) {
+                    ops.add(AB);
+                    queue.addLast(AB);
+                }
+            }
+        }
+        return ops;
+    }
+    
+    /**
+     * Checks whether a set of normalized operators is closed under products
+     * and inverses modulo unit translations. Where possible, fixed-dimension
+     * exact arithmetic is used.
+     */
+    private static boolean isClosed(final int d, final Set<Operator> ops) {
+        try {
+            if (d == 3) {
+                return isClosed(asOperator3s(ops));
+            } else if (d == 2) {
+                return isClosed(asOperator2s(ops));
+            }
+        } catch (ArithmeticException ex) {
+            // --- entries too large, so fall through to the general version
+        }
+        
+        for (final Operator A: ops) {
+            for (final Operator B: ops) {
+                final Operator AB_ = (Operator) A.times(B.inverse());
+                if (!ops.contains(AB_.modZ())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Computes the closure of a set of operators modulo unit translations,
+     * using fixed-dimension exact arithmetic on interned operators. Operators
+     * are kept in the order they were found in, so that the final operator
+     * set iterates in the same order as with the general version.
+     * 
+     * @param gens the generators, which must be normalized via modZ().
+     * @return the set of all normalized operators generated.
+     */
+    private static <T extends SmallOperator<T>> Set<T> closure(
+            final Set<T> gens) {
+        final OperatorTable<T> table = new OperatorTable<T>();
+        final int closure[] = table.closure(intern(table, gens));
+        final Set<T> ops = new LinkedHashSet<T>();
+        for (final int id: closure) {
+            ops.add(table.get(id));
+        }
+        return ops;
+    }
+    
+    /**
+     * Checks whether a set of normalized operators is closed under products
+     * and inverses modulo unit translations.
+     */
+    private static <T extends SmallOperator<T>> boolean isClosed(
+            final Set<T> ops) {
+        final OperatorTable<T> table = new OperatorTable<T>();
+        return table.isGroup(intern(table, ops));
+    }
+    
+    private static <T extends SmallOperator<T>> int[] intern(
+            final OperatorTable<T> table, final Set<T> ops) {
+        final int ids[] = new int[ops.size()];
+        int i = 0;
+        for (final T op: ops) {
+            ids[i++] = table.intern(op);
+        }
+        return ids;
+    }
+    
+    private static Set<Operator3> asOperator3s(final Set<Operator> ops) {
+        final Set<Operator3> result = new LinkedHashSet<Operator3>();
+        for (final Operator op: ops) {
+            result.add(new Operator3(op));
+        }
+        return result;
+    }
+    
+    private static Set<Operator2> asOperator2s(final Set<Operator> ops) {
+        final Set<Operator2> result = new LinkedHashSet<Operator2>();
+        for (final Operator op: ops) {
+            result.add(new Operator2(op));
+        }
+        return result;
+    }
+    
+    private static <T extends SmallOperator<T>> Set<Operator> asOperators(
+            final Set<T> ops) {
+        final Set<Operator> result = new HashSet<Operator>();
+        for (final T op: ops) {
+            result.add(op.toOperator());
+        }
+        return result;
+    }
+    
     /**
      * Constructs a space group corresponding to a Hermann-Mauguin symbol.
      * 
@@ -282,6 +393,26 @@ public class SpaceGroup {
         final Set<Operator> result = new HashSet<Operator>();
         final Operator T_1 = transformationToPrimitive();
         final Operator T = (Operator) T_1.inverse();
+        final int d = getDimension();
+        
+        try {
+            if (d == 3) {
+                for (final Operator3 op: primitive(new Operator3(T),
+                        new Operator3(T_1), asOperator3s(getOperators()))) {
+                    result.add(op.toOperator());
+                }
+                return result;
+            } else if (d == 2) {
+                for (final Operator2 op: primitive(new Operator2(T),
+                        new Operator2(T_1), asOperator2s(getOperators()))) {
+                    result.add(op.toOperator());
+                }
+                return result;
+            }
+        } catch (ArithmeticException ex) {
+            // --- entries too large, so fall through to the general version
+            result.clear();
+        }
         
         for (Operator op: getOperators()) {
             final Operator tmp = ((Operator) T.times(op).times(T_1)).modZ();
@@ -292,6 +423,35 @@ public class SpaceGroup {
         return result;
     }
 
+    /**
+     * Reduces operators modulo the lattice spanned by a primitive cell, using
+     * fixed-dimension exact arithmetic on interned operators, so that each
+     * distinct conjugate is reduced and mapped back only once.
+     * 
+     * @param fromPrimitive the transformation from primitive coordinates.
+     * @param toPrimitive the transformation to primitive coordinates.
+     * @param ops the operators to reduce.
+     * @return the reduced operators in original coordinates.
+     */
+    private static <T extends SmallOperator<T>> List<T> primitive(
+            final T fromPrimitive, final T toPrimitive, final Set<T> ops) {
+        final OperatorTable<T> table = new OperatorTable<T>();
+        final Map<Integer, T> cache = new HashMap<Integer, T>();
+        final List<T> result = new ArrayList<T>();
+        for (final T op: ops) {
+            final int id = table.intern(
+                    fromPrimitive.times(op).times(toPrimitive));
+            T out = cache.get(id);
+            if (out == null) {
+                out = toPrimitive.times(table.get(id)).times(fromPrimitive)
+                        .modZ();
+                cache.put(id, out);
+            }
+            result.add(out);
+        }
+        return result;
+    }
+
     /**
      * Constructs a sorted list of operators which is full with respect to a primitive
      * cell for the group, but still expressed in the coordinate system defined by the
@@ -21,9 +21,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -31,40 +31,98 @@ import org.gavrog.box.simple.DataFormatException;
 import org.gavrog.box.simple.Strings;
 
 /**
- * This class handles catalogues of known space groups. For the time being, everything
- * here is static and the input files are hardwired.
+ * This class handles catalogues of known space groups. The catalogue is read
+ * from a hardwired input file on first use and never changes afterwards, so
+ * it can be shared freely between threads. Preferences for ambiguous names
+ * are passed along with each lookup.
  * 
  * @author Olaf Delgado
  * @version $Id: SpaceGroupCatalogue.java,v 1.19 2006/09/13 21:55:43 odf Exp $
  */
 public class SpaceGroupCatalogue {
-	private static boolean preferSecondOrigin = true;
-	private static boolean preferHexagonal = true;
-	
     /**
      * Making the constructor private prevents instantiation (I hope).
      */
     private SpaceGroupCatalogue() {
     }
     
+    /**
+     * Determines which setting to use when a group name does not specify
+     * the origin choice or the rhombohedral versus hexagonal setting.
+     */
+    public static class Preferences {
+        /**
+         * The defaults: second origin and hexagonal setting.
+         */
+        final public static Preferences DEFAULT = new Preferences(true, true);
+        
+        final private boolean preferSecondOrigin;
+        final private boolean preferHexagonal;
+        
+        public Preferences(final boolean preferSecondOrigin,
+                final boolean preferHexagonal) {
+            this.preferSecondOrigin = preferSecondOrigin;
+            this.preferHexagonal = preferHexagonal;
+        }
+        
+        public boolean getPreferSecondOrigin() {
+            return this.preferSecondOrigin;
+        }
+        
+        public boolean getPreferHexagonal() {
+            return this.preferHexagonal;
+        }
+    }
+    
+    /**
+     * Represents a single group setting. The operators and transformation
+     * are only parsed when first needed.
+     */
+    private static class Setting {
+        final public String name;
+        final private String transformSpec;
+        final private String operatorSpecs[];
+        private volatile CoordinateChange transform;
+        private volatile List<Operator> ops;
+        
+        public Setting(final String name, final String transformSpec,
+                final List<String> operatorSpecs) {
+            this.name = name;
+            this.transformSpec = transformSpec;
+            this.operatorSpecs =
+                operatorSpecs.toArray(new String[operatorSpecs.size()]);
+        }
+        
+        public CoordinateChange getTransform() {
+            if (this.transform == null) {
+                this.transform =
+                    new CoordinateChange(new Operator(this.transformSpec));
+            }
+            return this.transform;
+        }
+        
+        public List<Operator> getOperators() {
+            if (this.ops == null) {
+                final List<Operator> tmp = new ArrayList<Operator>();
+                for (final String spec: this.operatorSpecs) {
+                    tmp.add(new Operator(spec).modZ());
+                }
+                this.ops = Collections.unmodifiableList(tmp);
+            }
+            return this.ops;
+        }
+    }
+    
     /**
      * This class is used to represent a table of space group settings of a
      * given dimension.
      */
     private static class Table {
-        final public Map<String, List<Operator>> nameToOps =
-        	new HashMap<String, List<Operator>>();
-        final public Map<String, CoordinateChange> nameToTransform =
-        	new HashMap<String, CoordinateChange>();
+        final public Map<String, Setting> nameToSetting =
+        	new HashMap<String, Setting>();
         final public List<String> namesInOrder = new ArrayList<String>();
-        
-        public Table(final int dimension) {
-        }
     }
     
-    private static Table groupTables[] = new Table[5];
-    private static Map<String, String> aliases = new HashMap<String, String>();
-    
     /**
      * Represents lookup information for groups, as used by {@link SpaceGroupFinder}.
      */
@@ -83,29 +141,33 @@ public class SpaceGroupCatalogue {
         }
     }
     
-    private static Map<String, Lookup> lookup = new HashMap<String, Lookup>();
+    /**
+     * Holds the complete contents of the catalogue.
+     */
+    private static class Catalogue {
+        final public Table groupTables[] = new Table[5];
+        final public Map<String, String> aliases =
+            new HashMap<String, String>();
+        final public Map<String, Lookup> lookup =
+            new HashMap<String, Lookup>();
+    }
     
     /**
-     * Represents the result of a table lookup.
+     * The catalogue is created when this class is first used, which the class
+     * loader guarantees to happen exactly once.
      */
-    private static class Entry {
-    	final public String key;
-    	final public List<Operator> ops;
-    	final public CoordinateChange transform;
-    	
-    	public Entry(final String key, final List<Operator> ops,
-    			final CoordinateChange transform) {
-    		this.key = key;
-    		this.ops = ops;
-    		this.transform = transform;
-    	}
+    private static class Holder {
+        final public static Catalogue catalogue = parseGroups(tablePath);
+
+        public static void init() {
+        }
     }
     
     /**
-     * Parses space group settings from a file and stores them statically. Each setting is
-     * identified by a name and the transformation used to derive it from the canonical
-     * setting of the group, both given in the first input line. The following lines list
-     * the operators for the group.
+     * Parses space group settings from a file. Each setting is identified by
+     * a name and the transformation used to derive it from the canonical
+     * setting of the group, both given in the first input line. The following
+     * lines list the operators for the group.
      * 
      * CAVEAT: currently, due to the way the constructors are implemented, a full list of
      * operators must be given. Just a set of generators is not sufficient.
@@ -113,13 +175,17 @@ public class SpaceGroupCatalogue {
      * TODO make this accept generator lists
      * 
      * @param filename
+     * @return the catalogue read.
      */
-    private static void parseGroups(final String filename) {
+    private static Catalogue parseGroups(final String filename) {
         final InputStream inStream = ClassLoader.getSystemResourceAsStream(filename);
         final BufferedReader reader = new BufferedReader(new InputStreamReader(inStream));
     
+        final Catalogue result = new Catalogue();
         Table table = null;
         String currentName = null;
+        String currentTransform = null;
+        List<String> currentOps = null;
         
         while (true) {
             final String line;
@@ -138,7 +204,7 @@ public class SpaceGroupCatalogue {
             if (i > 0) {
                 final String fields[] = line.trim().split("\\s+");
                 if (fields[0].equalsIgnoreCase("alias")) {
-                    aliases.put(fields[1], fields[2]);
+                    result.aliases.put(fields[1], fields[2]);
                 } else if (fields[0].equalsIgnoreCase("lookup")) {
                     final String name = fields[1];
                     final char centering = fields[3].charAt(0);
@@ -172,26 +238,34 @@ public class SpaceGroupCatalogue {
                     } else {
                         throw new RuntimeException(fields[2] + " system unknown");
                     }
-                    lookup.put(name, new Lookup(name, system, centering, fromStd));
+                    result.lookup.put(name,
+                            new Lookup(name, system, centering, fromStd));
                 } else {
+                    if (currentName != null) {
+                        table.nameToSetting.put(currentName, new Setting(
+                                currentName, currentTransform, currentOps));
+                    }
                     currentName = fields[0];
-                    final Operator T = new Operator(line.substring(i + 1));
-                    final int d = T.getDimension();
-                    if (groupTables[d] == null) {
-                        groupTables[d] = new Table(d);
+                    currentTransform = line.substring(i + 1);
+                    currentOps = new ArrayList<String>();
+                    final int d = currentTransform.split(",").length;
+                    if (result.groupTables[d] == null) {
+                        result.groupTables[d] = new Table();
                     }
-                    table = groupTables[d];
-                    table.nameToOps.put(currentName, new LinkedList<Operator>());
-                    table.nameToTransform.put(currentName, new CoordinateChange(T));
+                    table = result.groupTables[d];
                     table.namesInOrder.add(currentName);
                 }
             } else if (currentName != null) {
-                final Operator op = new Operator(line).modZ();
-                table.nameToOps.get(currentName).add(op);
+                currentOps.add(line);
             } else {
                 throw new DataFormatException("error in space group table file");
             }
         }
+        if (currentName != null) {
+            table.nameToSetting.put(currentName,
+                    new Setting(currentName, currentTransform, currentOps));
+        }
+        return result;
 	}
 
     /**
@@ -212,11 +286,9 @@ public class SpaceGroupCatalogue {
      * @return an iterator over the names of space group settings.
      */
     public static Iterator<String> allKnownSettings(final int dimension) {
-        if (groupTables[3] == null) {
-            load();
-        }
-    
-        return groupTables[dimension].namesInOrder.iterator();
+        return Collections.unmodifiableList(
+                Holder.catalogue.groupTables[dimension].namesInOrder)
+                .iterator();
     }
 
     /**
@@ -226,6 +298,7 @@ public class SpaceGroupCatalogue {
      * @return the normalized name.
      */
     public static String normalizedName(final String name) {
+        final Map<String, String> aliases = Holder.catalogue.aliases;
         final String base = name.split(":")[0];
         if (aliases.containsKey(base)) {
             return (String) aliases.get(base);
@@ -242,13 +315,12 @@ public class SpaceGroupCatalogue {
 	 * 
 	 * @param dim the dimension of the group.
 	 * @param name the name of the group setting to retrieve.
+	 * @param prefs determines the setting used for ambiguous names.
 	 * @return the data for the given space group setting.
 	 */
-    private static Entry retrieve(int dim, final String name) {
-        if (groupTables[3] == null) {
-            load();
-        }
-        final Table table = groupTables[dim];
+    private static Setting retrieve(int dim, final String name,
+            final Preferences prefs) {
+        final Table table = Holder.catalogue.groupTables[dim];
 
         final String parts[] = name.split(":");
         final String base = normalizedName(name);
@@ -260,7 +332,7 @@ public class SpaceGroupCatalogue {
                 candidates = new String[] { base + ":R" };
             } else if (ext.equals("H")) {
                 candidates = new String[] { base + ":H" };
-            } else if (getPreferHexagonal()){
+            } else if (prefs.getPreferHexagonal()){
                 candidates = new String[] { base + ":H", base + ":R" };
             } else {
                 candidates = new String[] { base + ":R", base + ":H" };
@@ -269,17 +341,16 @@ public class SpaceGroupCatalogue {
             candidates = new String[] { base + ":1", base };
         } else if (ext.equals("2")) {
             candidates = new String[] { base + ":2", base };
-        } else if (getPreferSecondOrigin()){
+        } else if (prefs.getPreferSecondOrigin()){
             candidates = new String[] { base, base + ":2", base + ":1" };
         } else {
             candidates = new String[] { base, base + ":1", base + ":2" };
         }
         
         for (int i = 0; i < candidates.length; ++i) {
-            final String key = candidates[i];
-            if (table.nameToOps.containsKey(key)) {
-                return new Entry(key, table.nameToOps.get(key),
-                		table.nameToTransform.get(key));
+            final Setting setting = table.nameToSetting.get(candidates[i]);
+            if (setting != null) {
+                return setting;
             }
         }
         
@@ -291,55 +362,100 @@ public class SpaceGroupCatalogue {
 	 * 
 	 * @param dim the dimension of the group.
 	 * @param name the name of the group setting.
+	 * @param prefs determines the setting used for ambiguous names.
 	 * @return the listed.
 	 */
-    public static String listedName(final int dim, final String name) {
-    	final Entry result = retrieve(dim, name);
+    public static String listedName(final int dim, final String name,
+            final Preferences prefs) {
+    	final Setting result = retrieve(dim, name, prefs);
     	if (result == null) {
     		return null;
     	} else {
-    		return result.key;
+    		return result.name;
     	}
     }
 
+    /**
+	 * Retrieves the name under which a space group setting is listed, using
+	 * the default preferences.
+	 * 
+	 * @param dim the dimension of the group.
+	 * @param name the name of the group setting.
+	 * @return the listed.
+	 */
+    public static String listedName(final int dim, final String name) {
+        return listedName(dim, name, Preferences.DEFAULT);
+    }
+
     /**
 	 * Retrieves the list of operators for a given space group setting.
 	 * 
 	 * @param dim the dimension of the group.
 	 * @param name the name of the group setting.
+	 * @param prefs determines the setting used for ambiguous names.
 	 * @return the list of operators.
 	 */
-    public static List<Operator> operators(final int dim, final String name) {
-    	final Entry result = retrieve(dim, name);
+    public static List<Operator> operators(final int dim, final String name,
+            final Preferences prefs) {
+    	final Setting result = retrieve(dim, name, prefs);
     	if (result == null) {
     		return null;
     	} else {
-    		return result.ops;
+    		return result.getOperators();
     	}
     }
 
+    /**
+	 * Retrieves the list of operators for a given space group setting, using
+	 * the default preferences.
+	 * 
+	 * @param dim the dimension of the group.
+	 * @param name the name of the group setting.
+	 * @return the list of operators.
+	 */
+    public static List<Operator> operators(final int dim, final String name) {
+        return operators(dim, name, Preferences.DEFAULT);
+    }
+
     /**
      * Retrieves a transformation to obtain a space group setting from the canonical setting
      * for that group.
      * 
      * @param dim the dimension of the group.
      * @param name the name of the group setting.
+	 * @param prefs determines the setting used for ambiguous names.
      * @return the transformation operator.
      */
-    public static CoordinateChange transform(final int dim, final String name) {
-    	final Entry result = retrieve(dim, name);
+    public static CoordinateChange transform(final int dim, final String name,
+            final Preferences prefs) {
+    	final Setting result = retrieve(dim, name, prefs);
     	if (result == null) {
     		return null;
     	} else {
-    		return result.transform;
+    		return result.getTransform();
     	}
     }
 
     /**
-     * Load the catalogue from the specification file.
+     * Retrieves a transformation to obtain a space group setting from the
+     * canonical setting for that group, using the default preferences.
+     * 
+     * @param dim the dimension of the group.
+     * @param name the name of the group setting.
+     * @return the transformation operator.
+     */
+    public static CoordinateChange transform(final int dim, final String name) {
+        return transform(dim, name, Preferences.DEFAULT);
+    }
+
+    /**
+     * Makes sure the catalogue is loaded from the specification file. This
+     * only forces the initialization of the holder class, which the class
+     * loader performs exactly once. Calling this is never necessary, but can
+     * be used to avoid a delay later on.
      */
     public static void load() {
-    	parseGroups(tablePath);
+        Holder.init();
     }
     
     /**
@@ -348,25 +464,7 @@ public class SpaceGroupCatalogue {
      * @return an iterator over the values in the lookup table.
      */
     public static Iterator<Lookup> lookupInfo() {
-        if (groupTables[3] == null) {
-            load();
-        }
-        return lookup.values().iterator();
+        return Collections.unmodifiableCollection(
+                Holder.catalogue.lookup.values()).iterator();
     }
-
-	public static boolean getPreferHexagonal() {
-		return preferHexagonal;
-	}
-
-	public static void setPreferHexagonal(boolean preferHexagonal) {
-		SpaceGroupCatalogue.preferHexagonal = preferHexagonal;
-	}
-
-	public static boolean getPreferSecondOrigin() {
-		return preferSecondOrigin;
-	}
-
-	public static void setPreferSecondOrigin(boolean preferSecondOrigin) {
-		SpaceGroupCatalogue.preferSecondOrigin = preferSecondOrigin;
-	}
 }
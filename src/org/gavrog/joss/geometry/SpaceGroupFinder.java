@@ -16,9 +16,11 @@ limitations under the License.
 
 package org.gavrog.joss.geometry;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -492,7 +494,8 @@ public class SpaceGroupFinder {
     	int d = this.dimension;
     	
         // --- compute a lattice basis of smallest Dirichlet vectors
-        final Vector reduced[] = Lattices.reducedLatticeBasis(lattice, Matrix.one(d));
+        final Vector reduced[] = Lattices.reducedLatticeBasis(lattice,
+        		Matrix.one(d), true);
         final Object res[];
         
         // --- call the appropriate method for the group's crystal system
@@ -1005,6 +1008,267 @@ public class SpaceGroupFinder {
         return new Object[] { b, new Character('P') };
     }
 
+    /**
+     * Holds the operators of a catalogued group setting, transformed into the
+     * normalized basis and sorted, as needed for matching.
+     */
+    private static class Reference {
+        final public Lookup info;
+        final public List<Operator> ops;
+        final public int linearParts[];
+        final public int generators[];
+
+        public Reference(final int dim, final Lookup info) {
+            final SpaceGroup H = new SpaceGroup(dim, info.name);
+            this.info = info;
+            final List<Operator> ops =
+                info.fromStd.applyTo(H.primitiveOperatorsSorted());
+            sortOps(ops);
+            this.ops = Collections.unmodifiableList(ops);
+            this.linearParts = linearPartIds(ops);
+            this.generators = generatorPositions(ops, this.linearParts);
+        }
+    }
+
+    /**
+     * Interns the linear parts of operators for each dimension in which
+     * fixed-dimension exact arithmetic is available, so that linear parts can
+     * be compared via their ids. Guarded by synchronizing on the table.
+     */
+    final private static OperatorTable<Operator2> linearParts2 =
+        new OperatorTable<Operator2>();
+    final private static OperatorTable<Operator3> linearParts3 =
+        new OperatorTable<Operator3>();
+
+    /**
+     * Determines ids for the linear parts of a list of operators that are
+     * equal exactly when the linear parts are.
+     * 
+     * @param ops the operators.
+     * @return the list of ids, or null if none could be determined.
+     */
+    private static int[] linearPartIds(final List<Operator> ops) {
+        final int n = ops.size();
+        if (n == 0) {
+            return null;
+        }
+        final int d = ops.get(0).getDimension();
+        final int result[] = new int[n];
+        try {
+            if (d == 3) {
+                synchronized (linearParts3) {
+                    for (int i = 0; i < n; ++i) {
+                        result[i] = linearParts3.intern(
+                                new Operator3(ops.get(i).linearPart()));
+                    }
+                }
+                return result;
+            } else if (d == 2) {
+                synchronized (linearParts2) {
+                    for (int i = 0; i < n; ++i) {
+                        result[i] = linearParts2.intern(
+                                new Operator2(ops.get(i).linearPart()));
+                    }
+                }
+                return result;
+            }
+        } catch (ArithmeticException ex) {
+            // --- entries too large, so linear parts must be compared directly
+        }
+        return null;
+    }
+
+    /**
+     * Picks positions in an operator list such that the linear parts of the
+     * operators at these positions generate all linear parts. An origin shift
+     * that makes the operators at these positions coincide with those in
+     * another list with the same linear parts does so for all.
+     * 
+     * @param ops a sorted list of operators.
+     * @param linearParts the linear part ids for the operators, or null.
+     * @return the generator positions.
+     */
+    private static int[] generatorPositions(final List<Operator> ops,
+            final int linearParts[]) {
+        if (linearParts != null && ops.get(0).getDimension() == 3) {
+            return generatorPositions(linearParts, linearParts3);
+        } else if (linearParts != null) {
+            return generatorPositions(linearParts, linearParts2);
+        }
+        final Operator one = Operator.identity(ops.get(0).getDimension());
+        final Set<Operator> generated = new HashSet<Operator>();
+        generated.add(one);
+        final List<Operator> gens = new ArrayList<Operator>();
+        final List<Integer> positions = new ArrayList<Integer>();
+        for (int j = 0; j < ops.size(); ++j) {
+            final Operator L = ops.get(j).linearPart();
+            if (generated.contains(L)) {
+                continue;
+            }
+            positions.add(j);
+            gens.add(L);
+
+            // --- recompute the generated group
+            final List<Operator> queue = new ArrayList<Operator>();
+            queue.add(one);
+            for (int k = 0; k < queue.size(); ++k) {
+                for (final Operator g: gens) {
+                    final Operator M = (Operator) queue.get(k).times(g);
+                    if (generated.add(M)) {
+                        queue.add(M);
+                    }
+                }
+            }
+        }
+        final int result[] = new int[positions.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = positions.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Picks generator positions as above, working on interned linear parts.
+     * 
+     * @param linearParts the linear part ids.
+     * @param table the table the ids are from.
+     * @return the generator positions.
+     */
+    private static <T extends SmallOperator<T>> int[] generatorPositions(
+            final int linearParts[], final OperatorTable<T> table) {
+        final Set<Integer> generated = new HashSet<Integer>();
+        final List<Integer> gens = new ArrayList<Integer>();
+        final List<Integer> positions = new ArrayList<Integer>();
+        synchronized (table) {
+            for (int j = 0; j < linearParts.length; ++j) {
+                final int L = linearParts[j];
+                if (table.get(L).toOperator().isOne()
+                        || generated.contains(L)) {
+                    continue;
+                }
+                positions.add(j);
+                gens.add(L);
+
+                // --- recompute the generated group
+                final int ids[] = new int[gens.size()];
+                for (int i = 0; i < ids.length; ++i) {
+                    ids[i] = gens.get(i);
+                }
+                for (final int M: table.closure(ids)) {
+                    generated.add(M);
+                }
+            }
+        }
+        final int result[] = new int[positions.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = positions.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Caches the references for each combination of dimension, crystal system
+     * and centering, indexed by their operator type counts.
+     */
+    final private static Map<List<Object>, Map<String, List<Reference>>>
+        references = new HashMap<List<Object>, Map<String, List<Reference>>>();
+
+    /**
+     * Retrieves the references for all catalogued group settings with the
+     * given dimension, crystal system and centering, indexed by their
+     * operator type counts. Within each index entry, the references are in
+     * the order that {@link SpaceGroupCatalogue#lookupInfo()} produces.
+     * 
+     * @param dim the dimension.
+     * @param system the crystal system.
+     * @param centering the centering.
+     * @return the indexed references.
+     */
+    private static Map<String, List<Reference>> references(final int dim,
+            final CrystalSystem system, final char centering) {
+        final List<Object> key = Arrays.asList(new Object[] {
+                Integer.valueOf(dim), system, Character.valueOf(centering) });
+        synchronized (references) {
+            Map<String, List<Reference>> result = references.get(key);
+            if (result == null) {
+                result = new HashMap<String, List<Reference>>();
+                for (final Iterator<Lookup> iter =
+                        SpaceGroupCatalogue.lookupInfo(); iter.hasNext();) {
+                    final Lookup info = iter.next();
+                    if (info.centering != centering || info.system != system
+                            || info.fromStd.getDimension() != dim) {
+                        continue;
+                    }
+                    final Reference ref = new Reference(dim, info);
+                    final String counts = typeCounts(ref.ops);
+                    if (!result.containsKey(counts)) {
+                        result.put(counts, new ArrayList<Reference>());
+                    }
+                    result.get(counts).add(ref);
+                }
+                references.put(key, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts the operators in a list by orientation behavior and order of
+     * their linear parts. The result does not change under coordinate
+     * changes, so lists that can be matched have the same counts.
+     * 
+     * @param ops a list of operators.
+     * @return the encoded counts.
+     */
+    private static String typeCounts(final List<Operator> ops) {
+        final int counts[] = new int[14];
+        for (final Operator op: ops) {
+            final OperatorType type = new OperatorType(op);
+            counts[(type.isOrientationPreserving() ? 7 : 0)
+                   + type.getOrder()]++;
+        }
+        return Arrays.toString(counts);
+    }
+
+    /**
+     * Solves for an origin shift that makes two operator lists with the same
+     * sequence of linear parts coincide modulo the lattice.
+     * 
+     * @param probes the operators to shift.
+     * @param opsToMatch the operators to match.
+     * @param toPrimitive changes coordinates to primitive basis.
+     * @param positions the positions to consider, or null for all.
+     * @return the origin shift in primitive coordinates or null, if none.
+     */
+    private static Matrix originShift(
+            final List<Operator> probes,
+            final List<Operator> opsToMatch,
+            final CoordinateChange toPrimitive,
+            final int positions[]) {
+        final int d = toPrimitive.getDimension();
+        final Matrix I = Matrix.one(d);
+        final int n = positions == null ? probes.size() : positions.length;
+        final Matrix A = new Matrix(d, d * n);
+        final Matrix b = new Matrix(1, d * n);
+        for (int j = 0; j < n; ++j) {
+            final int k = positions == null ? j : positions[j];
+            final Operator tmp1 = (Operator) probes.get(k);
+            final Operator op1 = (Operator) tmp1.times(toPrimitive);
+            final Operator tmp2 = (Operator) opsToMatch.get(k);
+            final Operator op2 = (Operator) tmp2.times(toPrimitive);
+            final Matrix L = op1.getCoordinates().getSubMatrix(0, 0, d, d);
+            final Matrix s1 = op1.translationalPart().getCoordinates();
+            final Matrix s2 = op2.translationalPart().getCoordinates();
+            
+            A.setSubMatrix(0, d * j, (Matrix) L.minus(I));
+            b.setSubMatrix(0, d * j, (Matrix) s2.minus(s1));
+        }
+        if (DEBUG > 0) {
+            System.err.println("    solving p * " + A + " = " + b);
+        }
+        return LinearAlgebra.solutionInRows(A, b, true);
+    }
+
     /**
      * Matches a list of group operators to the catalogued space groups.
      * @param ops a primitive set of normalized ops for the group.
@@ -1028,45 +1292,44 @@ public class SpaceGroupFinder {
         final Matrix I = Matrix.one(d);
         final int n = ops.size();
 
-        // --- iterate through the group catalogue
-        for (final Iterator<Lookup> iter = SpaceGroupCatalogue.lookupInfo();
-        		iter.hasNext();) {
-            // --- retrieve the lookup info for the next group
-            final Lookup info = iter.next();
-
-            // --- skip if centering or system are different
-            if (info.centering != centering || info.system != this.crystalSystem) {
-                continue;
+        // --- look up the candidate settings with matching invariants
+        final List<Reference> candidates =
+            references(d, this.crystalSystem, centering).get(typeCounts(ops));
+        if (candidates == null) {
+            if (DEBUG > 0) {
+                System.err.println("no candidates with matching invariants");
             }
+            return null;
+        }
+
+        // --- convert the operators to each coordinate system variation
+        final List<List<Operator>> variants = new ArrayList<List<Operator>>();
+        final int probeLinearParts[][] = new int[variations.length][];
+        for (int i = 0; i < variations.length; ++i) {
+            final List<Operator> probes = variations[i].applyTo(ops);
+            sortOps(probes);
+            variants.add(probes);
+            probeLinearParts[i] = linearPartIds(probes);
+        }
+
+        // --- iterate through the candidates
+        for (final Reference ref: candidates) {
+            final Lookup info = ref.info;
+            final List<Operator> opsToMatch = ref.ops;
 
             if (DEBUG > 0) {
                 System.err.println("  comparing with group " + info.name);
             }
             
-            // --- get the list of operators to match
-            final SpaceGroup H = new SpaceGroup(d, info.name);
-            final List<Operator> primitive = H.primitiveOperatorsSorted();
-            final List<Operator> opsToMatch = info.fromStd.applyTo(primitive);
-            sortOps(opsToMatch);
-            
-            // --- both operator lists must have the same length
-            if (opsToMatch.size() != n) {
-                if (DEBUG > 0) {
-                    System.err.println("    operator lists have different sizes: " + n
-                            + " <-> " + opsToMatch.size());
-                }
-                continue;
-            }
-            
             // --- loop through the necessary coordinate system variations for this group
             for (int i = 0; i < variations.length; ++i) {
-                // --- convert the operators to this coordinate system and sort
-                final List<Operator> probes = variations[i].applyTo(ops);
-                sortOps(probes);
+                final List<Operator> probes = variants.get(i);
 
                 // --- check if linear parts are still equal
                 boolean good = true;
-                for (int j = 0; j < n; ++j) {
+                if (ref.linearParts != null && probeLinearParts[i] != null) {
+                    good = Arrays.equals(probeLinearParts[i], ref.linearParts);
+                } else for (int j = 0; j < n; ++j) {
                     final Operator op1 = (Operator) probes.get(j);
                     final Operator op2 = (Operator) opsToMatch.get(j);
                     if (!op1.linearPart().equals(op2.linearPart())) {
@@ -1088,25 +1351,15 @@ public class SpaceGroupFinder {
                     continue;
                 }
                 
-                // --- find an origin shift that makes the lists coincide
-                final Matrix A = new Matrix(d, d * n);
-                final Matrix b = new Matrix(1, d * n);
-                for (int j = 0; j < n; ++j) {
-                    final Operator tmp1 = (Operator) probes.get(j);
-                    final Operator op1 = (Operator) tmp1.times(toPrimitive);
-                    final Operator tmp2 = (Operator) opsToMatch.get(j);
-                    final Operator op2 = (Operator) tmp2.times(toPrimitive);
-                    final Matrix L = op1.getCoordinates().getSubMatrix(0, 0, d, d);
-                    final Matrix s1 = op1.translationalPart().getCoordinates();
-                    final Matrix s2 = op2.translationalPart().getCoordinates();
-                    
-                    A.setSubMatrix(0, d * j, (Matrix) L.minus(I));
-                    b.setSubMatrix(0, d * j, (Matrix) s2.minus(s1));
-                }
-                if (DEBUG > 0) {
-                    System.err.println("    solving p * " + A + " = " + b);
+                // --- rule out most mismatches quickly using generators only
+                if (ref.generators.length > 0 && originShift(probes,
+                        opsToMatch, toPrimitive, ref.generators) == null) {
+                    continue;
                 }
-                final Matrix S = LinearAlgebra.solutionInRows(A, b, true);
+
+                // --- find an origin shift that makes the lists coincide
+                final Matrix S = originShift(probes, opsToMatch, toPrimitive,
+                        null);
                 if (S == null) {
                     continue;
                 } else {
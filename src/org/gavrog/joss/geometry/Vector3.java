@@ -0,0 +1,234 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.numbers.IArithmetic;
+
+/**
+ * An exact 3-dimensional vector with small rational coordinates, stored as
+ * long numerators over a common positive denominator. This is a light-weight
+ * alternative to {@link Vector} for symmetry computations. Instances are
+ * immutable and can also be used to hold the coordinates of points.
+ */
+public final class Vector3 implements Comparable<Vector3> {
+    final long x;
+    final long y;
+    final long z;
+    final long den;
+
+    final public static Vector3 ZERO = new Vector3(0, 0, 0);
+
+    /**
+     * Constructs an instance with integral coordinates.
+     */
+    public Vector3(final long x, final long y, final long z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.den = 1;
+    }
+
+    /**
+     * Constructs the instance (x/den, y/den, z/den).
+     */
+    public Vector3(long x, long y, long z, long den) {
+        if (den == 0) {
+            throw new ArithmeticException("zero denominator");
+        }
+        long g = SmallRationals.gcd(SmallRationals.gcd(x, y),
+                SmallRationals.gcd(z, den));
+        if (den < 0) {
+            g = -g;
+        }
+        this.x = x / g;
+        this.y = y / g;
+        this.z = z / g;
+        this.den = den / g;
+    }
+
+    /**
+     * Converts a general vector with rational entries.
+     *
+     * @param v the vector to convert.
+     */
+    public Vector3(final Vector v) {
+        this(entries(v.getDimension(), v.getCoordinates()));
+    }
+
+    /**
+     * Converts a general point with rational entries.
+     *
+     * @param p the point to convert.
+     */
+    public Vector3(final Point p) {
+        this(entries(p.getDimension(), p.getCoordinates()));
+    }
+
+    private Vector3(final long a[]) {
+        this(a[0], a[1], a[2], a[3]);
+    }
+
+    private static long[] entries(final int dim, final Matrix coords) {
+        if (dim != 3) {
+            throw new IllegalArgumentException("dimension must be 3");
+        }
+        return SmallRationals.commonDenominator(new IArithmetic[] {
+                coords.get(0, 0), coords.get(0, 1), coords.get(0, 2) });
+    }
+
+    /**
+     * @return this vector as a general {@link Vector}.
+     */
+    public Vector toVector() {
+        return new Vector(SmallRationals.rational(this.x, this.den),
+                SmallRationals.rational(this.y, this.den),
+                SmallRationals.rational(this.z, this.den));
+    }
+
+    /**
+     * @return the point with the coordinates of this vector.
+     */
+    public Point toPoint() {
+        return new Point(new IArithmetic[] {
+                SmallRationals.rational(this.x, this.den),
+                SmallRationals.rational(this.y, this.den),
+                SmallRationals.rational(this.z, this.den) });
+    }
+
+    /**
+     * @param i the coordinate index.
+     * @return the numerator of the i-th coordinate.
+     */
+    public long numerator(final int i) {
+        switch (i) {
+        case 0: return this.x;
+        case 1: return this.y;
+        case 2: return this.z;
+        default: throw new IllegalArgumentException("index out of range");
+        }
+    }
+
+    /**
+     * @return the common denominator of all coordinates.
+     */
+    public long denominator() {
+        return this.den;
+    }
+
+    public boolean isZero() {
+        return this.x == 0 && this.y == 0 && this.z == 0;
+    }
+
+    public boolean isIntegral() {
+        return this.den == 1;
+    }
+
+    /**
+     * Checks whether all entries are small enough for exact long arithmetic.
+     */
+    boolean isSmall() {
+        return (Math.abs(this.x) | Math.abs(this.y) | Math.abs(this.z)
+                | this.den) < SmallRationals.PRODUCT_LIMIT;
+    }
+
+    public Vector3 plus(final Vector3 v) {
+        if (!isSmall() || !v.isSmall()) {
+            return new Vector3((Vector) toVector().plus(v.toVector()));
+        } else if (this.den == v.den) {
+            return new Vector3(this.x + v.x, this.y + v.y, this.z + v.z,
+                    this.den);
+        } else {
+            return new Vector3(this.x * v.den + v.x * this.den,
+                    this.y * v.den + v.y * this.den,
+                    this.z * v.den + v.z * this.den,
+                    this.den * v.den);
+        }
+    }
+
+    public Vector3 negative() {
+        return new Vector3(-this.x, -this.y, -this.z, this.den);
+    }
+
+    public Vector3 minus(final Vector3 v) {
+        return plus(v.negative());
+    }
+
+    /**
+     * Applies the linear part of an operator to this vector.
+     *
+     * @param op the operator to apply.
+     * @return the resulting vector.
+     */
+    public Vector3 times(final Operator3 op) {
+        if (!isSmall() || !op.isSmall()) {
+            return new Vector3((Vector) toVector().times(op.toOperator()));
+        }
+        return new Vector3(
+                this.x * op.a00 + this.y * op.a10 + this.z * op.a20,
+                this.x * op.a01 + this.y * op.a11 + this.z * op.a21,
+                this.x * op.a02 + this.y * op.a12 + this.z * op.a22,
+                this.den * op.den);
+    }
+
+    /**
+     * Reduces all coordinates modulo one.
+     *
+     * @return the reduced vector.
+     */
+    public Vector3 modZ() {
+        if (this.den == 1) {
+            return ZERO;
+        }
+        return new Vector3(SmallRationals.floorMod(this.x, this.den),
+                SmallRationals.floorMod(this.y, this.den),
+                SmallRationals.floorMod(this.z, this.den), this.den);
+    }
+
+    public int compareTo(final Vector3 v) {
+        int d = SmallRationals.compare(this.x, this.den, v.x, v.den);
+        if (d == 0) {
+            d = SmallRationals.compare(this.y, this.den, v.y, v.den);
+        }
+        if (d == 0) {
+            d = SmallRationals.compare(this.z, this.den, v.z, v.den);
+        }
+        return d;
+    }
+
+    public boolean equals(final Object other) {
+        if (other instanceof Vector3) {
+            final Vector3 v = (Vector3) other;
+            return this.x == v.x && this.y == v.y && this.z == v.z
+                    && this.den == v.den;
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        long h = this.den;
+        h = h * 31 + this.x;
+        h = h * 31 + this.y;
+        h = h * 31 + this.z;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public String toString() {
+        return "Vector3" + toVector().toString().substring(6);
+    }
+}
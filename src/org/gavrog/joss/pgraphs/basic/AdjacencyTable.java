@@ -0,0 +1,172 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.pgraphs.basic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gavrog.jane.numbers.Whole;
+import org.gavrog.joss.geometry.Vector;
+
+/**
+ * An immutable snapshot of the incidence structure of a periodic graph in
+ * primitive arrays. Nodes are numbered consecutively in the order produced by
+ * {@link PeriodicGraph#nodes()}, and the directed edges leaving node i are
+ * stored at positions first(i) to first(i+1)-1, in the order produced by
+ * {@link PeriodicGraph#allIncidences(INode)}. Loops thus appear once in each
+ * direction.
+ *
+ * Instances are safe to share between threads.
+ */
+public class AdjacencyTable {
+    final private int dimension;
+    final private INode nodes[];
+    final private Map<INode, Integer> nodeToIndex;
+    final private IEdge edges[];
+    final private int offsets[];
+    final private int targets[];
+    final private int shifts[];
+
+    /**
+     * Constructs an instance.
+     *
+     * @param G the periodic graph to encode.
+     */
+    public AdjacencyTable(final PeriodicGraph G) {
+        final int d = this.dimension = G.getDimension();
+        final int n = G.numberOfNodes();
+
+        this.nodes = new INode[n];
+        this.nodeToIndex = new HashMap<INode, Integer>();
+        int i = 0;
+        for (final INode v: G.nodes()) {
+            this.nodes[i] = v;
+            this.nodeToIndex.put(v, i);
+            ++i;
+        }
+
+        int m = 0;
+        this.offsets = new int[n + 1];
+        final List<List<IEdge>> incidences = new ArrayList<List<IEdge>>(n);
+        for (i = 0; i < n; ++i) {
+            incidences.add(G.allIncidences(this.nodes[i]));
+            this.offsets[i] = m;
+            m += incidences.get(i).size();
+        }
+        this.offsets[n] = m;
+
+        this.edges = new IEdge[m];
+        this.targets = new int[m];
+        this.shifts = new int[m * d];
+        for (i = 0; i < n; ++i) {
+            int k = this.offsets[i];
+            for (final IEdge e: incidences.get(i)) {
+                final Vector s = G.getShift(e);
+                this.edges[k] = e;
+                this.targets[k] = this.nodeToIndex.get(e.target());
+                for (int j = 0; j < d; ++j) {
+                    this.shifts[k * d + j] = ((Whole) s.get(j)).intValue();
+                }
+                ++k;
+            }
+        }
+    }
+
+    /**
+     * @return the dimension of periodicity.
+     */
+    public int getDimension() {
+        return this.dimension;
+    }
+
+    /**
+     * @return the number of nodes.
+     */
+    public int numberOfNodes() {
+        return this.nodes.length;
+    }
+
+    /**
+     * @return the number of directed edges, i.e., twice the number of edges.
+     */
+    public int numberOfDirectedEdges() {
+        return this.targets.length;
+    }
+
+    /**
+     * @param i a node index.
+     * @return the node with that index.
+     */
+    public INode getNode(final int i) {
+        return this.nodes[i];
+    }
+
+    /**
+     * @param v a node of the encoded graph.
+     * @return the index of that node.
+     */
+    public int indexOf(final INode v) {
+        final Integer i = this.nodeToIndex.get(v);
+        if (i == null) {
+            throw new IllegalArgumentException("no such node");
+        }
+        return i;
+    }
+
+    /**
+     * @param i a node index.
+     * @return the position of the first directed edge leaving that node.
+     */
+    public int first(final int i) {
+        return this.offsets[i];
+    }
+
+    /**
+     * @param i a node index.
+     * @return the number of directed edges leaving that node.
+     */
+    public int degree(final int i) {
+        return this.offsets[i + 1] - this.offsets[i];
+    }
+
+    /**
+     * @param k a directed edge position.
+     * @return the oriented edge at that position.
+     */
+    public IEdge getEdge(final int k) {
+        return this.edges[k];
+    }
+
+    /**
+     * @param k a directed edge position.
+     * @return the index of the target node of that edge.
+     */
+    public int target(final int k) {
+        return this.targets[k];
+    }
+
+    /**
+     * @param k a directed edge position.
+     * @param j a coordinate index.
+     * @return the j-th coordinate of the shift vector of that edge.
+     */
+    public int shift(final int k, final int j) {
+        return this.shifts[k * this.dimension + j];
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gavrog.joss.pgraphs.basic;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,13 +24,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import org.gavrog.box.collections.Cache;
 import org.gavrog.box.collections.CacheMissException;
@@ -43,8 +43,9 @@ import org.gavrog.box.simple.Tag;
 import org.gavrog.box.simple.TaskController;
 import org.gavrog.jane.compounds.LinearAlgebra;
 import org.gavrog.jane.compounds.Matrix;
-import org.gavrog.jane.compounds.ModularSolver;
+import org.gavrog.jane.compounds.SparseModularSolver;
 import org.gavrog.jane.numbers.Fraction;
+import org.gavrog.jane.numbers.Rational;
 import org.gavrog.jane.numbers.Real;
 import org.gavrog.jane.numbers.Whole;
 import org.gavrog.joss.geometry.CoordinateChange;
@@ -70,6 +71,7 @@ public class PeriodicGraph extends UndirectedGraph {
     final protected static Tag IS_LOCALLY_STABLE = new Tag();
     final protected static Tag IS_LADDER = new Tag();
     final protected static Tag CHARACTERISTIC_BASES = new Tag();
+    final protected static Tag CHARACTERISTIC_BASE_INDICES = new Tag();
     final protected static Tag SYMMETRIES = new Tag();
     final protected static Tag INVARIANT = new Tag();
     final protected static Tag CONVENTIONAL_CELL = new Tag();
@@ -77,6 +79,7 @@ public class PeriodicGraph extends UndirectedGraph {
     final protected static Tag TRANSLATIONAL_EQUIVALENCES = new Tag();
     final protected static Tag MINIMAL_IMAGE_MAP = new Tag();
     final protected static Tag HAS_SECOND_ORDER_COLLISIONS = new Tag();
+    final protected static Tag ADJACENCY_TABLE = new Tag();
 
     // --- cache for this instance
     final protected Cache<Tag, Object> cache = new Cache<Tag, Object>();
@@ -547,11 +550,110 @@ public class PeriodicGraph extends UndirectedGraph {
         cache.clear();
         return super.newNode();
     }
-    
+
+    /**
+     * Creates a number of new nodes in one step. Intended for subclasses
+     * which build a graph in bulk.
+     *
+     * @param n the number of nodes to create.
+     * @return the newly created nodes.
+     */
+    protected INode[] newNodes(final int n) {
+        cache.clear();
+        final INode result[] = new INode[n];
+        for (int i = 0; i < n; ++i) {
+            result[i] = super.newNode();
+        }
+        return result;
+    }
+
+    /**
+     * Creates a number of new edges in one step. The shift vector for the
+     * k-th edge is given by the entries k*d to k*d+d-1 of the shifts array,
+     * where d is the dimension of periodicity. Intended for subclasses which
+     * build a graph in bulk.
+     *
+     * @param sources the source nodes.
+     * @param targets the target nodes.
+     * @param shifts the shift vector coordinates.
+     * @param checkSimple if true, trivial loops and duplicates are forbidden.
+     * @return the newly created edges.
+     */
+    protected IEdge[] newEdges(final INode sources[], final INode targets[],
+            final int shifts[], final boolean checkSimple) {
+        final int d = this.dimension;
+        final int m = sources.length;
+        if (targets.length != m || shifts.length != m * d) {
+            throw new IllegalArgumentException("array sizes do not match");
+        }
+        for (int k = 0; k < m; ++k) {
+            if (!hasNode(sources[k]) || !hasNode(targets[k])) {
+                throw new IllegalArgumentException("node does not exist");
+            }
+        }
+
+        if (checkSimple) {
+            final boolean hadEdges = numberOfEdges() > 0;
+            final Set<List<Long>> seen = new HashSet<List<Long>>();
+            for (int k = 0; k < m; ++k) {
+                final int s[] = new int[d];
+                System.arraycopy(shifts, k * d, s, 0, d);
+                final Vector shift = new Vector(s);
+                final INode v = sources[k];
+                final INode w = targets[k];
+                if (v.equals(w) && shift.equals(shift.zero())) {
+                    throw new IllegalArgumentException("trivial loop");
+                }
+                if (hadEdges && getEdge(v, w, shift) != null) {
+                    throw new IllegalArgumentException("duplicate edge");
+                }
+                if (!seen.add(edgeKey(v.id(), w.id(), s))) {
+                    throw new IllegalArgumentException("duplicate edge");
+                }
+            }
+        }
+
+        cache.clear();
+        final IEdge result[] = new IEdge[m];
+        for (int k = 0; k < m; ++k) {
+            final int s[] = new int[d];
+            System.arraycopy(shifts, k * d, s, 0, d);
+            result[k] = super.newEdge(sources[k], targets[k]);
+            edgeIdToShift.put(result[k].id(), new Vector(s));
+        }
+        return result;
+    }
+
+    /**
+     * Encodes an edge in a way that does not depend on its orientation.
+     */
+    private static List<Long> edgeKey(final long v, final long w,
+            final int shift[]) {
+        int sign = 1;
+        if (v > w) {
+            sign = -1;
+        } else if (v == w) {
+            for (int i = 0; i < shift.length; ++i) {
+                if (shift[i] != 0) {
+                    sign = shift[i] > 0 ? 1 : -1;
+                    break;
+                }
+            }
+        }
+        final List<Long> key = new ArrayList<Long>();
+        key.add(Math.min(v, w));
+        key.add(Math.max(v, w));
+        for (int i = 0; i < shift.length; ++i) {
+            key.add((long) sign * shift[i]);
+        }
+        return key;
+    }
+
     /* (non-Javadoc)
      * @see javaPGraphs.IGraph#delete(javaPGraphs.IGraphElement)
      */
     public void delete(final IEdge e) {
+        cache.clear();
         edgeIdToShift.remove(e.id());
         super.delete(e);
     }
@@ -585,6 +687,7 @@ public class PeriodicGraph extends UndirectedGraph {
                 edgeIdToShift.put(id, (Vector) edgeIdToShift.get(id).plus(amount));
             }
         }
+        cache.remove(ADJACENCY_TABLE);
             
         // --- adjust barycentric placement, if any
         try {
@@ -761,42 +864,15 @@ public class PeriodicGraph extends UndirectedGraph {
      * cycles of length A, b angles with shortest cycles of length B,
      * etc., where A < B, < … and a + b +.. = n(n-1)/2.
      * 
+     * The computation is done by {@link PointSymbols}, which shares a single
+     * search between all angles with a common first leg.
+     * 
      * @param node the node.
-     * @param limit the maximum number of nodes to be explored at each angle.
+     * @param limit the maximum number of nodes to be explored per search.
      * @return the point symbol as a string.
      */
     public String pointSymbol(final INode node, final int limit) {
-        final CoverNode v = new CoverNode(node);
-        final SortedMap<Integer, Integer> counts =
-                new TreeMap<Integer, Integer>();
-        final List<CoverEdge> edges = new ArrayList<CoverEdge>();
-        Iterators.addAll(edges, v.incidences());
-        
-        for (int i = 0; i < edges.size(); ++i) {
-            final CoverNode u = (CoverNode) edges.get(i).target();
-            for (int j = i + 1; j < edges.size(); ++j) {
-                final CoverNode w = (CoverNode) edges.get(j).target();
-                final int n = shortestCycleAtAngle(u, v, w, limit).size();
-                if (counts.containsKey(n)) {
-                    counts.put(n, counts.get(n) + 1);
-                } else {
-                    counts.put(n, 1);
-                }
-            }
-        }
-        StringBuffer tmp = new StringBuffer();
-        for (int n: counts.keySet()) {
-            int m = counts.get(n);
-            if (tmp.length() > 0)
-                tmp.append('.');
-            tmp.append(n);
-            if (m > 1) {
-                tmp.append('^');
-                tmp.append(m);
-            }
-        }
-        
-        return tmp.toString();
+        return new PointSymbols(this, limit).pointSymbol(node);
     }
     
     /**
@@ -809,6 +885,33 @@ public class PeriodicGraph extends UndirectedGraph {
         return pointSymbol(v, 1000000);
     }
     
+    /**
+     * Returns the vertex symbol at a given node. For each angle at the node,
+     * this lists the length of the shortest cycles through that angle and,
+     * if there are several, their number in parentheses.
+     * 
+     * @param v the node.
+     * @return the vertex symbol as a string.
+     */
+    public String vertexSymbol(final INode v) {
+        return new PointSymbols(this).vertexSymbol(v);
+    }
+    
+    /**
+     * Returns a snapshot of the incidence structure of this graph in primitive
+     * arrays.
+     * 
+     * @return the adjacency table.
+     */
+    public AdjacencyTable adjacencyTable() {
+        try {
+            return (AdjacencyTable) this.cache.get(ADJACENCY_TABLE);
+        } catch (CacheMissException ex) {
+            return (AdjacencyTable) this.cache.put(ADJACENCY_TABLE,
+                    new AdjacencyTable(this));
+        }
+    }
+    
     /**
      * Determines the connected components of the periodic graph.
      * @return the list of components.
@@ -956,14 +1059,19 @@ public class PeriodicGraph extends UndirectedGraph {
             indexToNode.add(v);
         }
         
-        // --- set up a system of equations
+        // --- set up a sparse system of equations, one row per node
         final int n = indexToNode.size(); // the number of nodes
-        final int[][] M = new int[n][n];
+        final int[][] cols = new int[n][];
+        final int[][] vals = new int[n][];
         final int[][] t = new int[n][this.dimension];
-        M[0][0] = 1;
+        cols[0] = new int[] { 0 };
+        vals[0] = new int[] { 1 };
 
+        final Map<Integer, Integer> row = new LinkedHashMap<Integer, Integer>();
         for (int i = 1; i < n; ++i) {
             final INode v = (INode) indexToNode.get(i);
+            row.clear();
+            row.put(i, 0);
             for (final IEdge e: v.incidences()) {
                 final INode w = e.target();
                 if (v.equals(w)) {
@@ -973,16 +1081,25 @@ public class PeriodicGraph extends UndirectedGraph {
                 }
                 final Vector s = getShift(e);
                 final int j = nodeToIndex.get(w);
-                --M[i][j];
-                ++M[i][i];
+                final Integer a = row.get(j);
+                row.put(j, (a == null ? 0 : a) - 1);
+                row.put(i, row.get(i) + 1);
 
                 for (int k = 0; k < this.dimension; ++k)
                     t[i][k] += ((Whole) s.get(k)).intValue();
             }
+            cols[i] = new int[row.size()];
+            vals[i] = new int[row.size()];
+            int k = 0;
+            for (final Map.Entry<Integer, Integer> entry: row.entrySet()) {
+                cols[i][k] = entry.getKey();
+                vals[i][k] = entry.getValue();
+                ++k;
+            }
         }
         
         // --- solve the system
-        final Matrix P = ModularSolver.solve(M, t);
+        final Matrix P = SparseModularSolver.solve(cols, vals, t);
 
         // --- extract the positions found
         final Map<INode, Point> tmp = new HashMap<INode, Point>();
@@ -1208,15 +1325,16 @@ public class PeriodicGraph extends UndirectedGraph {
             final INode start = orb.iterator().next();
             final Point pos0 = pos.get(start);
 
-            final Operator I = Operator.identity(getDimension());
+            final TranslationFinder finder = new TranslationFinder();
 
             for (final Vector b: extendedTranslationBasis()) {
                 for (INode v: orb) {
                     final Point p = (Point) pos.get(v).plus(b);
                     if (((Vector) p.minus(pos0)).modZ().isZero()) {
-                        final Morphism iso = new Morphism(start, v, I);
+                        final Map<INode, INode> image =
+                                finder.translationMap(start, v);
                         for (final INode w: nodes()) {
-                            P.unite(w, (INode) iso.get(w));
+                            P.unite(w, image.get(w));
                         }
                         break;
                     }
@@ -1320,22 +1438,18 @@ public class PeriodicGraph extends UndirectedGraph {
         } catch (CacheMissException ex) {
         }
         
-        final Operator I = Operator.identity(getDimension());
         final Partition<INode> P = new Partition<INode>();
-        final Iterator<INode> iter = nodes();
-        final INode start = iter.next();
+        final TranslationFinder finder = new TranslationFinder();
+        final INode start = nodes().next();
 
-        while (iter.hasNext()) {
-            final INode v = iter.next();
-            if (!P.areEquivalent(start, v)) {
-                final Morphism iso;
-                try {
-                    iso = new Morphism(start, v, I);
-                } catch (Morphism.NoSuchMorphismException ex1) {
-                    continue;
-                }
+        for (final INode v: nodes()) {
+            if (v.equals(start) || P.areEquivalent(start, v)) {
+                continue;
+            }
+            final Map<INode, INode> image = finder.translationMap(start, v);
+            if (image != null) {
                 for (final INode w: nodes()) {
-                    P.unite(w, (INode) iso.get(w));
+                    P.unite(w, image.get(w));
                 }
             }
         }
@@ -1343,6 +1457,79 @@ public class PeriodicGraph extends UndirectedGraph {
         return P;
     }
     
+    /**
+     * Finds translational automorphisms, i.e., automorphisms that induce the
+     * identity on the linear part of the barycentric placement.
+     * 
+     * A translation preserves the difference vectors at each node, so only
+     * nodes with matching sets of those are considered as images of each
+     * other. If the graph is stable, the node map for a candidate translation
+     * is read off directly from the barycentric positions, so that no
+     * morphism needs to be constructed.
+     */
+    private class TranslationFinder {
+        final private Map<INode, Point> pos = barycentricPlacement();
+        final private Map<INode, Integer> signature =
+                new HashMap<INode, Integer>();
+        final private boolean stable = isStable();
+        final private Map<Point, INode> nodeAt = new HashMap<Point, INode>();
+
+        public TranslationFinder() {
+            final Map<List<Vector>, Integer> sigToId =
+                    new HashMap<List<Vector>, Integer>();
+            for (final INode v: nodes()) {
+                final List<Vector> sig = new ArrayList<Vector>(
+                        Morphism.neighborVectors(v).keySet());
+                Integer id = sigToId.get(sig);
+                if (id == null) {
+                    id = sigToId.size();
+                    sigToId.put(sig, id);
+                }
+                this.signature.put(v, id);
+                if (this.stable) {
+                    this.nodeAt.put(this.pos.get(v).modZ(), v);
+                }
+            }
+        }
+
+        /**
+         * Computes the translational automorphism taking one node to another.
+         * 
+         * @param v the source node.
+         * @param w the image node.
+         * @return the node map, or null if no such automorphism exists.
+         */
+        public Map<INode, INode> translationMap(final INode v, final INode w) {
+            if (!this.signature.get(v).equals(this.signature.get(w))) {
+                return null;
+            }
+            final Map<INode, INode> image = new HashMap<INode, INode>();
+            if (this.stable) {
+                final Vector t = (Vector) pos.get(w).minus(pos.get(v));
+                for (final INode u: nodes()) {
+                    final INode x = this.nodeAt.get(
+                            ((Point) this.pos.get(u).plus(t)).modZ());
+                    if (x == null || !this.signature.get(x).equals(
+                            this.signature.get(u))) {
+                        return null;
+                    }
+                    image.put(u, x);
+                }
+            } else {
+                final Morphism iso;
+                try {
+                    iso = new Morphism(v, w, Operator.identity(getDimension()));
+                } catch (Morphism.NoSuchMorphismException ex) {
+                    return null;
+                }
+                for (final INode u: nodes()) {
+                    image.put(u, iso.getImage(u));
+                }
+            }
+            return image;
+        }
+    }
+    
     /**
      * Checks if this graph is minimal. A periodic graph is minimal if its
      * translation group can not be extended.
@@ -1505,63 +1692,90 @@ public class PeriodicGraph extends UndirectedGraph {
         } catch (CacheMissException ex) {
         }
         
-        final List<List<IEdge>> result = new LinkedList<List<IEdge>>();
-        final Map<INode, Point> pos = barycentricPlacement();
+        final AdjacencyTable table = adjacencyTable();
+        final int bases[] = characteristicBaseIndices();
+        final int d = getDimension();
+
+        final List<List<IEdge>> result = new ArrayList<List<IEdge>>();
+        for (int i = 0; i < bases.length; i += d) {
+            final List<IEdge> basis = new ArrayList<IEdge>(d);
+            for (int j = 0; j < d; ++j) {
+                basis.add(table.getEdge(bases[i + j]));
+            }
+            result.add(basis);
+        }
+        
+        final List<List<IEdge>> out = Collections.unmodifiableList(result);
+        cache.put(CHARACTERISTIC_BASES, out);
+        return out;
+    }
+
+    /**
+     * Computes the characteristic bases of this graph in compact form. The
+     * result holds the bases in the order produced by
+     * {@link #characteristicBases()}, each given by d consecutive positions of
+     * directed edges in {@link #adjacencyTable()}, where d is the dimension
+     * of periodicity.
+     * 
+     * @return the concatenated bases as edge positions.
+     */
+    public int[] characteristicBaseIndices() {
+        try {
+            return ((int[]) this.cache.get(CHARACTERISTIC_BASE_INDICES)).clone();
+        } catch (CacheMissException ex) {
+        }
+        
+        final AdjacencyTable table = adjacencyTable();
+        final IndependenceTest test = new IndependenceTest(table);
         final int d = getDimension();
+        final int n = table.numberOfNodes();
+        final IntList result = new IntList();
 
         // --- look for edge lists with a common source
-        for (final INode v: nodes()) {
-            final List<IEdge> edges = allIncidences(v);
-            for (final List<IEdge> good: goodCombinations(edges, pos)) {
-                result.add(good);
+        for (int v = 0; v < n; ++v) {
+            final int edges[] = new int[table.degree(v)];
+            for (int i = 0; i < edges.length; ++i) {
+                edges[i] = table.first(v) + i;
             }
+            addGoodCombinations(edges, test, result);
         }
 
-        if (result.size() == 0) {
+        if (result.size() == 0 && d > 0) {
             // --- no results, now look for edge lists that form chains
-            for (final INode v0: nodes()) {
-                // --- initialize objects used in the subsequent search
-                final LinkedList<Iterator<IEdge>> iterators =
-                        new LinkedList<Iterator<IEdge>>();
-                final LinkedList<IEdge> edges = new LinkedList<IEdge>();
-                final Matrix M = Matrix.zero(d, d).mutableClone();
-                iterators.addLast(allIncidences(v0).iterator());
-                edges.addLast(null);
+            final int chain[] = new int[d];
+            final int next[] = new int[d];
+            for (int v0 = 0; v0 < n; ++v0) {
+                int k = 0;
+                next[0] = table.first(v0);
+                int end = table.first(v0 + 1);
                 
                 // --- do a depth first search for usable chains
-                while (iterators.size() > 0) {
-                    final int k = iterators.size();
-                    final Iterator<IEdge> current = iterators.getLast();
-                    if (current.hasNext()) {
-                        // -- get next edge and data related to it
-                        final IEdge e = current.next();
-                        final INode v = e.source();
-                        final INode w = e.target();
-                        final Point pv = pos.get(v);
-                        final Point pw = pos.get(w);
-                        final Vector diff =
-                                (Vector) pw.minus(pv).plus(getShift(e));
-                        
-                        // --- see if so far edge vectors are independent
-                        M.setRow(k-1, diff.getCoordinates());
-                        if (M.rank() == k) {
-                            // --- they are
-                            edges.removeLast();
-                            edges.addLast(e.oriented());
-                            if (k == d) {
+                while (k >= 0) {
+                    if (next[k] < end) {
+                        final int e = next[k]++;
+                        if (test.push(e)) {
+                            chain[k] = e;
+                            if (k == d - 1) {
                                 // --- found a result here
-                                result.add(new LinkedList<IEdge>(edges));
+                                result.addAll(chain);
+                                test.pop();
                             } else {
                                 // --- have to extend the chain
-                                iterators.addLast(allIncidences(w).iterator());
-                                edges.addLast(null);
+                                final int w = table.target(e);
+                                ++k;
+                                next[k] = table.first(w);
+                                end = table.first(w + 1);
                             }
                         }
                     } else {
                         // --- backtracking
-                        iterators.removeLast();
-                        edges.removeLast();
-                        M.setRow(k-1, Matrix.zero(1, d));
+                        --k;
+                        if (k >= 0) {
+                            test.pop();
+                            final int w = k > 0 ?
+                                    table.target(chain[k - 1]) : v0;
+                            end = table.first(w + 1);
+                        }
                     }
                 }
             }
@@ -1569,15 +1783,334 @@ public class PeriodicGraph extends UndirectedGraph {
         
         if (result.size() == 0) {
             // --- still nothing, so use general edge lists
-            final List<IEdge> edges = allDirectedEdges();
-            for (final List<IEdge> good: goodCombinations(edges, pos)) {
-                result.add(good);
+            final Map<IEdge, Integer> index = new HashMap<IEdge, Integer>();
+            for (int k = 0; k < table.numberOfDirectedEdges(); ++k) {
+                index.put(table.getEdge(k), k);
             }
+            final List<IEdge> all = allDirectedEdges();
+            final int edges[] = new int[all.size()];
+            for (int i = 0; i < edges.length; ++i) {
+                edges[i] = index.get(all.get(i));
+            }
+            addGoodCombinations(edges, test, result);
         }
         
-        final List<List<IEdge>> out = Collections.unmodifiableList(result);
-        cache.put(CHARACTERISTIC_BASES, out);
-        return out;
+        final int out[] = result.toArray();
+        cache.put(CHARACTERISTIC_BASE_INDICES, out);
+        return out.clone();
+    }
+
+    /**
+     * Appends all ordered selections of d edges from the given list whose
+     * difference vectors are linearly independent, in the same order as
+     * {@link #goodCombinations(List, Map)}.
+     */
+    private void addGoodCombinations(final int edges[],
+            final IndependenceTest test, final IntList result) {
+        final int d = getDimension();
+        if (edges.length < d || d == 0) {
+            return;
+        }
+        addGoodCombinations(edges, 0, new int[d], 0, test, result);
+    }
+
+    private void addGoodCombinations(final int edges[], final int start,
+            final int picks[], final int level, final IndependenceTest test,
+            final IntList result) {
+        final int d = picks.length;
+        for (int i = start; i <= edges.length - (d - level); ++i) {
+            if (test.push(edges[i])) {
+                picks[level] = edges[i];
+                if (level == d - 1) {
+                    addPermutations(picks, result);
+                } else {
+                    addGoodCombinations(edges, i + 1, picks, level + 1, test,
+                            result);
+                }
+                test.pop();
+            }
+        }
+    }
+
+    /**
+     * Appends all permutations of the given array in lexicographic order of
+     * positions, as produced by {@link Iterators#permutations(Object[])}.
+     */
+    private static void addPermutations(final int things[],
+            final IntList result) {
+        final int n = things.length;
+        final int a[] = new int[n];
+        for (int i = 0; i < n; ++i) {
+            a[i] = i;
+        }
+        while (true) {
+            for (int i = 0; i < n; ++i) {
+                result.add(things[a[i]]);
+            }
+            int i, j, t;
+            for (i = n-2; i >= 0 && a[i] >= a[i+1]; --i) {}
+            if (i < 0) {
+                return;
+            }
+            for (j = n-1; a[j] <= a[i]; --j) {}
+            t = a[i]; a[i] = a[j]; a[j] = t;
+            for (++i, j = n-1; i < j; ++i, --j) {
+                t = a[i]; a[i] = a[j]; a[j] = t;
+            }
+        }
+    }
+
+    /**
+     * A growable list of primitive ints.
+     */
+    private static class IntList {
+        private int items[] = new int[16];
+        private int size = 0;
+
+        public void add(final int x) {
+            if (this.size == this.items.length) {
+                this.items = Arrays.copyOf(this.items, 2 * this.size);
+            }
+            this.items[this.size++] = x;
+        }
+
+        public void addAll(final int xs[]) {
+            for (final int x: xs) {
+                add(x);
+            }
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(this.items, this.size);
+        }
+    }
+
+    /**
+     * Tests incrementally whether the difference vectors of a growing list of
+     * directed edges are linearly independent. The barycentric positions are
+     * scaled to a common denominator, so that each difference vector can be
+     * precomputed once as a primitive integer vector along the same line. New
+     * vectors are reduced against the previous ones by fraction-free
+     * elimination, using longs where possible and big integers otherwise.
+     */
+    private class IndependenceTest {
+        final private int d;
+        final private long vectors[][];
+        final private BigInteger wideVectors[][];
+        final private long rows[][];
+        final private BigInteger wideRows[][];
+        final private int pivots[];
+        private int depth = 0;
+        private int wideFrom;
+
+        public IndependenceTest(final AdjacencyTable table) {
+            final int d = this.d = table.getDimension();
+            final int n = table.numberOfNodes();
+            final int m = table.numberOfDirectedEdges();
+            this.rows = new long[d][d];
+            this.wideRows = new BigInteger[d][d];
+            this.pivots = new int[d];
+
+            // --- scale all positions to a common denominator
+            final Map<INode, Point> pos = barycentricPlacement();
+            BigInteger den = BigInteger.ONE;
+            for (final Point p: pos.values()) {
+                for (int j = 0; j < d; ++j) {
+                    final BigInteger q = ((Rational) p.get(j)).denominator()
+                            .bigIntegerValue();
+                    den = den.multiply(q.divide(den.gcd(q)));
+                }
+            }
+            final BigInteger coords[][] = new BigInteger[n][d];
+            for (int i = 0; i < n; ++i) {
+                final Point p = pos.get(table.getNode(i));
+                for (int j = 0; j < d; ++j) {
+                    final Rational x = (Rational) p.get(j);
+                    coords[i][j] = x.numerator().bigIntegerValue().multiply(
+                            den.divide(x.denominator().bigIntegerValue()));
+                }
+            }
+
+            // --- compute primitive integer difference vectors
+            final BigInteger wide[][] = new BigInteger[m][d];
+            final BigInteger limit = BigInteger.valueOf(Integer.MAX_VALUE);
+            boolean small = true;
+            for (int i = 0; i < n; ++i) {
+                for (int k = table.first(i); k < table.first(i + 1); ++k) {
+                    final BigInteger v[] = wide[k];
+                    BigInteger g = BigInteger.ZERO;
+                    for (int j = 0; j < d; ++j) {
+                        v[j] = coords[table.target(k)][j]
+                                .subtract(coords[i][j])
+                                .add(den.multiply(BigInteger.valueOf(
+                                        table.shift(k, j))));
+                        g = g.gcd(v[j]);
+                    }
+                    for (int j = 0; j < d; ++j) {
+                        if (g.signum() > 0) {
+                            v[j] = v[j].divide(g);
+                        }
+                        small &= v[j].abs().compareTo(limit) <= 0;
+                    }
+                }
+            }
+
+            if (small) {
+                this.vectors = new long[m][d];
+                for (int k = 0; k < m; ++k) {
+                    for (int j = 0; j < d; ++j) {
+                        this.vectors[k][j] = wide[k][j].longValue();
+                    }
+                }
+                this.wideVectors = null;
+                this.wideFrom = d;
+            } else {
+                this.vectors = null;
+                this.wideVectors = wide;
+                this.wideFrom = 0;
+            }
+        }
+
+        /**
+         * Adds an edge to the list if its difference vector is independent
+         * of those already present.
+         * 
+         * @param e the position of the new edge in the adjacency table.
+         * @return true if the edge was added.
+         */
+        public boolean push(final int e) {
+            final int i = this.depth;
+            if (i < this.wideFrom) {
+                try {
+                    if (reduce(e, i)) {
+                        ++this.depth;
+                        return true;
+                    } else {
+                        return false;
+                    }
+                } catch (ArithmeticException ex) {
+                    // --- switch to big integers from this level on
+                    this.wideFrom = i;
+                    for (int k = 0; k < i; ++k) {
+                        for (int j = 0; j < this.d; ++j) {
+                            this.wideRows[k][j] =
+                                    BigInteger.valueOf(this.rows[k][j]);
+                        }
+                    }
+                }
+            }
+
+            if (reduceWide(e, i)) {
+                ++this.depth;
+                return true;
+            } else {
+                if (this.wideFrom == i && this.wideVectors == null) {
+                    this.wideFrom = this.d;
+                }
+                return false;
+            }
+        }
+
+        /**
+         * Removes the last edge added.
+         */
+        public void pop() {
+            --this.depth;
+            if (this.depth <= this.wideFrom && this.wideVectors == null) {
+                this.wideFrom = this.d;
+            }
+        }
+
+        private boolean reduce(final int e, final int i) {
+            final int d = this.d;
+            final long r[] = this.rows[i];
+            System.arraycopy(this.vectors[e], 0, r, 0, d);
+
+            for (int k = 0; k < i; ++k) {
+                final int c = this.pivots[k];
+                final long a = r[c];
+                if (a != 0) {
+                    final long b = this.rows[k][c];
+                    long g = 0;
+                    for (int j = 0; j < d; ++j) {
+                        r[j] = Math.subtractExact(Math.multiplyExact(b, r[j]),
+                                Math.multiplyExact(a, this.rows[k][j]));
+                        g = gcd(g, r[j]);
+                    }
+                    if (g > 1) {
+                        for (int j = 0; j < d; ++j) {
+                            r[j] /= g;
+                        }
+                    }
+                }
+            }
+
+            return setPivot(i, r);
+        }
+
+        private boolean reduceWide(final int e, final int i) {
+            final int d = this.d;
+            final BigInteger r[] = this.wideRows[i];
+            for (int j = 0; j < d; ++j) {
+                if (this.wideVectors != null) {
+                    r[j] = this.wideVectors[e][j];
+                } else {
+                    r[j] = BigInteger.valueOf(this.vectors[e][j]);
+                }
+            }
+
+            for (int k = 0; k < i; ++k) {
+                final int c = this.pivots[k];
+                final BigInteger a = r[c];
+                if (a.signum() != 0) {
+                    final BigInteger b = this.wideRows[k][c];
+                    BigInteger g = BigInteger.ZERO;
+                    for (int j = 0; j < d; ++j) {
+                        r[j] = b.multiply(r[j]).subtract(
+                                a.multiply(this.wideRows[k][j]));
+                        g = g.gcd(r[j]);
+                    }
+                    if (g.compareTo(BigInteger.ONE) > 0) {
+                        for (int j = 0; j < d; ++j) {
+                            r[j] = r[j].divide(g);
+                        }
+                    }
+                }
+            }
+
+            for (int j = 0; j < d; ++j) {
+                if (r[j].signum() != 0) {
+                    this.pivots[i] = j;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean setPivot(final int i, final long r[]) {
+            for (int j = 0; j < this.d; ++j) {
+                if (r[j] != 0) {
+                    this.pivots[i] = j;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static long gcd(long a, long b) {
+        a = Math.abs(a);
+        b = Math.abs(b);
+        while (b != 0) {
+            final long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
     }
 
     /**
@@ -0,0 +1,427 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.pgraphs.basic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gavrog.box.collections.LongIntHashMap;
+
+/**
+ * Computes shortest cycles at all the angles of a node in a periodic graph,
+ * and from these Wells point symbols and vertex symbols.
+ *
+ * For an angle (u, v, w), the shortest cycles through it are formed by the
+ * shortest paths from u to w in the covering graph with v removed. Instead of
+ * doing a separate search for each angle, a single breadth first search is
+ * started at each neighbor u of v, which then serves all the angles having u
+ * as their first leg. The search counts shortest paths on the fly and stops
+ * as soon as all the remaining neighbors of v have been reached. Nodes of the
+ * covering graph are encoded as primitive longs, so that no CoverNode or
+ * Vector objects are created.
+ *
+ * Instances only read an immutable snapshot of the graph, so that nodes can be
+ * processed in parallel.
+ */
+public class PointSymbols {
+    final private AdjacencyTable adj;
+    final private int limit;
+    final private int dim;
+    final private int nodeBits;
+    final private int coordBits;
+    final private int offset;
+
+    /**
+     * Represents the shortest cycles found at the angles of a single node.
+     * Angles are listed in the order (0,1), (0,2), ..., (1,2), ... of the
+     * incidences of the node.
+     */
+    public static class AngleCycles {
+        final private int sizes[];
+        final private long counts[];
+
+        private AngleCycles(final int sizes[], final long counts[]) {
+            this.sizes = sizes;
+            this.counts = counts;
+        }
+
+        /**
+         * @return the number of angles.
+         */
+        public int numberOfAngles() {
+            return this.sizes.length;
+        }
+
+        /**
+         * @param i the index of an angle.
+         * @return the length of a shortest cycle, or 0 if none was found.
+         */
+        public int getSize(final int i) {
+            return this.sizes[i];
+        }
+
+        /**
+         * @param i the index of an angle.
+         * @return the number of shortest cycles, or 0 if none was found.
+         */
+        public long getCount(final int i) {
+            return this.counts[i];
+        }
+
+        /**
+         * Formats a Wells point symbol of the form A^a.B^b... where a is the
+         * number of angles with shortest cycles of length A, and so on. Angles
+         * for which no cycle was found within the search limit are shown as
+         * '*'.
+         *
+         * @return the point symbol.
+         */
+        public String pointSymbol() {
+            final SortedMap<Integer, Integer> freq =
+                    new TreeMap<Integer, Integer>();
+            int unresolved = 0;
+            for (final int n: this.sizes) {
+                if (n == 0) {
+                    ++unresolved;
+                } else if (freq.containsKey(n)) {
+                    freq.put(n, freq.get(n) + 1);
+                } else {
+                    freq.put(n, 1);
+                }
+            }
+            final StringBuffer buf = new StringBuffer();
+            for (final int n: freq.keySet()) {
+                append(buf, String.valueOf(n), freq.get(n));
+            }
+            if (unresolved > 0) {
+                append(buf, "*", unresolved);
+            }
+            return buf.toString();
+        }
+
+        private static void append(final StringBuffer buf, final String item,
+                final int m) {
+            if (buf.length() > 0) {
+                buf.append('.');
+            }
+            buf.append(item);
+            if (m > 1) {
+                buf.append('^');
+                buf.append(m);
+            }
+        }
+
+        /**
+         * Formats a vertex symbol listing, for each angle, the length of the
+         * shortest cycles through it, followed by their number in parentheses
+         * if there is more than one. Entries are sorted by length first and
+         * count second.
+         *
+         * @return the vertex symbol.
+         */
+        public String vertexSymbol() {
+            final int n = this.sizes.length;
+            final long keys[] = new long[n];
+            for (int i = 0; i < n; ++i) {
+                final long size = this.sizes[i] == 0 ? Integer.MAX_VALUE
+                        : this.sizes[i];
+                keys[i] = (size << 31) | Math.min(this.counts[i],
+                        Integer.MAX_VALUE);
+            }
+            Arrays.sort(keys);
+
+            final StringBuffer buf = new StringBuffer();
+            for (int i = 0; i < n; ++i) {
+                final long size = keys[i] >>> 31;
+                final long count = keys[i] & Integer.MAX_VALUE;
+                if (i > 0) {
+                    buf.append('.');
+                }
+                if (size == Integer.MAX_VALUE) {
+                    buf.append('*');
+                } else {
+                    buf.append(size);
+                    if (count > 1) {
+                        buf.append('(');
+                        buf.append(count);
+                        buf.append(')');
+                    }
+                }
+            }
+            return buf.toString();
+        }
+    }
+
+    /**
+     * Constructs an instance.
+     *
+     * @param G the periodic graph.
+     * @param limit the maximal number of nodes to explore in each search.
+     */
+    public PointSymbols(final PeriodicGraph G, final int limit) {
+        this.adj = G.adjacencyTable();
+        this.limit = limit;
+        this.dim = Math.max(1, this.adj.getDimension());
+
+        final int n = Math.max(2, this.adj.numberOfNodes());
+        this.nodeBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+        this.coordBits = Math.min(20, (63 - this.nodeBits) / this.dim);
+        this.offset = 1 << (this.coordBits - 1);
+    }
+
+    /**
+     * Constructs an instance with the default limit used by
+     * {@link PeriodicGraph#pointSymbol(INode)}.
+     *
+     * @param G the periodic graph.
+     */
+    public PointSymbols(final PeriodicGraph G) {
+        this(G, 1000000);
+    }
+
+    /**
+     * Encodes a node of the covering graph as a long, or returns -1 if the
+     * shift is too long to be encoded.
+     */
+    private long encode(final int v, final int shift[], final int from) {
+        long key = 0;
+        for (int j = 0; j < this.dim; ++j) {
+            final int x = shift[from + j] + this.offset;
+            if (x < 0 || x >= 2 * this.offset) {
+                return -1;
+            }
+            key = (key << this.coordBits) | x;
+        }
+        return (key << this.nodeBits) | v;
+    }
+
+    /**
+     * Computes the shortest cycles at all angles of a node.
+     *
+     * @param v the node.
+     * @return the cycle statistics.
+     */
+    public AngleCycles angleCycles(final INode v) {
+        final AdjacencyTable adj = this.adj;
+        final int d = adj.getDimension();
+        final int i0 = adj.indexOf(v);
+        final int k0 = adj.first(i0);
+        final int deg = adj.degree(i0);
+
+        final int zero[] = new int[this.dim];
+        final long apex = encode(i0, zero, 0);
+
+        // --- the neighbors of v in the cover, as lifted nodes
+        final int legNode[] = new int[deg];
+        final int legShift[] = new int[deg * this.dim];
+        final long legKey[] = new long[deg];
+        for (int a = 0; a < deg; ++a) {
+            legNode[a] = adj.target(k0 + a);
+            for (int j = 0; j < d; ++j) {
+                legShift[a * this.dim + j] = adj.shift(k0 + a, j);
+            }
+            legKey[a] = encode(legNode[a], legShift, a * this.dim);
+        }
+
+        final int nrAngles = deg * (deg - 1) / 2;
+        final int sizes[] = new int[nrAngles];
+        final long counts[] = new long[nrAngles];
+
+        final Search search = new Search();
+        int angle = 0;
+        for (int a = 0; a < deg - 1; ++a) {
+            final LongIntHashMap targets =
+                    new LongIntHashMap(deg, -1);
+            for (int b = a + 1; b < deg; ++b) {
+                targets.put(legKey[b], b);
+            }
+            search.run(apex, legNode[a], legShift, a * this.dim, targets,
+                    deg - a - 1);
+            for (int b = a + 1; b < deg; ++b) {
+                final int slot = search.seen.get(legKey[b]);
+                if (slot >= 0) {
+                    sizes[angle] = search.dist[slot] + 2;
+                    counts[angle] = search.count[slot];
+                }
+                ++angle;
+            }
+        }
+
+        return new AngleCycles(sizes, counts);
+    }
+
+    /**
+     * Holds the working storage for breadth first searches, which is reused
+     * between the searches for a single node.
+     */
+    private class Search {
+        final LongIntHashMap seen = new LongIntHashMap(256, -1);
+        int node[] = new int[256];
+        int shift[] = new int[256 * dim];
+        int dist[] = new int[256];
+        long count[] = new long[256];
+        int size = 0;
+
+        private int add(final long key, final int v, final int s[],
+                final int from, final int dv, final long cv) {
+            if (this.size == this.node.length) {
+                final int n = 2 * this.size;
+                this.node = Arrays.copyOf(this.node, n);
+                this.shift = Arrays.copyOf(this.shift, n * dim);
+                this.dist = Arrays.copyOf(this.dist, n);
+                this.count = Arrays.copyOf(this.count, n);
+            }
+            final int slot = this.size++;
+            this.node[slot] = v;
+            System.arraycopy(s, from, this.shift, slot * dim, dim);
+            this.dist[slot] = dv;
+            this.count[slot] = cv;
+            this.seen.put(key, slot);
+            return slot;
+        }
+
+        void run(final long apex, final int start, final int startShift[],
+                final int from, final LongIntHashMap targets, int missing) {
+            final AdjacencyTable adj = PointSymbols.this.adj;
+            final int d = adj.getDimension();
+            final int tmp[] = new int[dim];
+
+            this.seen.clear();
+            this.size = 0;
+            this.seen.put(apex, -2);
+            add(encode(start, startShift, from), start, startShift, from,
+                    0, 1);
+
+            int head = 0;
+            boolean overflow = false;
+            while (head < this.size && missing > 0 && !overflow) {
+                // --- expand one complete level, so counts become final
+                final int level = this.dist[head];
+                while (head < this.size && this.dist[head] == level) {
+                    final int s = head++;
+                    final int v = this.node[s];
+                    final long cv = this.count[s];
+                    final int k1 = adj.first(v) + adj.degree(v);
+                    for (int k = adj.first(v); k < k1; ++k) {
+                        final int w = adj.target(k);
+                        for (int j = 0; j < d; ++j) {
+                            tmp[j] = this.shift[s * dim + j] + adj.shift(k, j);
+                        }
+                        final long key = encode(w, tmp, 0);
+                        if (key < 0) {
+                            overflow = true;
+                            continue;
+                        }
+                        final int t = this.seen.get(key);
+                        if (t == -1) {
+                            if (this.size >= PointSymbols.this.limit) {
+                                overflow = true;
+                                continue;
+                            }
+                            add(key, w, tmp, 0, level + 1, cv);
+                            if (targets.containsKey(key)) {
+                                --missing;
+                            }
+                        } else if (t >= 0 && this.dist[t] == level + 1) {
+                            final long c = this.count[t] + cv;
+                            this.count[t] = c < 0 ? Long.MAX_VALUE : c;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the shortest cycles at all angles for a collection of nodes,
+     * distributing the work over a number of threads.
+     *
+     * @param nodes the nodes to process.
+     * @param nrThreads the number of threads to use.
+     * @return a map from nodes to their cycle statistics, in input order.
+     */
+    public Map<INode, AngleCycles> angleCycles(
+            final Collection<INode> nodes, final int nrThreads) {
+        final List<INode> todo = new ArrayList<INode>(nodes);
+        final Map<INode, AngleCycles> result =
+                new LinkedHashMap<INode, AngleCycles>();
+
+        if (nrThreads <= 1 || todo.size() <= 1) {
+            for (final INode v: todo) {
+                result.put(v, angleCycles(v));
+            }
+            return result;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(nrThreads, todo.size()));
+        try {
+            final List<Future<AngleCycles>> futures =
+                    new ArrayList<Future<AngleCycles>>();
+            for (final INode v: todo) {
+                futures.add(pool.submit(new Callable<AngleCycles>() {
+                    public AngleCycles call() {
+                        return angleCycles(v);
+                    }
+                }));
+            }
+            for (int i = 0; i < todo.size(); ++i) {
+                result.put(todo.get(i), futures.get(i).get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * @param v a node.
+     * @return the Wells point symbol for that node.
+     */
+    public String pointSymbol(final INode v) {
+        return angleCycles(v).pointSymbol();
+    }
+
+    /**
+     * @param v a node.
+     * @return the vertex symbol for that node.
+     */
+    public String vertexSymbol(final INode v) {
+        return angleCycles(v).vertexSymbol();
+    }
+}
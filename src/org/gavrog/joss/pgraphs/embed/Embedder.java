@@ -17,16 +17,20 @@
 package org.gavrog.joss.pgraphs.embed;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 
 import org.gavrog.box.collections.Partition;
+import org.gavrog.box.simple.TaskController;
 import org.gavrog.jane.algorithms.Amoeba;
+import org.gavrog.jane.algorithms.LBFGS;
 import org.gavrog.jane.compounds.LinearAlgebra;
 import org.gavrog.jane.compounds.Matrix;
 import org.gavrog.jane.numbers.FloatingPoint;
@@ -92,7 +96,6 @@ public class Embedder {
 		public final double shift[];
 		public final int type;
 		public final double weight;
-		public double length;
 
 		public Edge(
 				final INode v, final INode w, final Vector s, int type,
@@ -116,8 +119,34 @@ public class Embedder {
 	final private Map<INode, double[][]> node2mapping;
 	final private int dimParSpace;
 	final private Matrix gramSpace;
+	final private double gramSpaceArray[][];
 	final private int gramIndex[][];
-	final private Edge edges[];
+
+	// --- flat data for energy evaluation, indexed by node and edge numbers
+	final private int nodeOffsets[];
+	final private int nodeParameters[];
+	final private int nodeMappingStarts[];
+	final private double nodeMappings[];
+	final private int edgeSources[];
+	final private int edgeTargets[];
+	final private double edgeShifts[];
+	final private int edgeTypes[];
+	final private double edgeWeights[];
+	final private double edgeWeightSum;
+
+	// --- work arrays for energy evaluation
+	final private double rawGram[];
+	final private double gram[];
+	final private boolean clipped[];
+	final private double positions[];
+	final private double edgeVectors[];
+	final private double edgeLengths[];
+	final private double edgeDerivatives[];
+	final private double gramDerivatives[];
+	final private double rawGramDerivatives[];
+	final private double positionDerivatives[];
+	final private double luWork[];
+	final private double inverseWork[];
 
 	// --- represent the current state of the algorithm
 	double p[];
@@ -131,6 +160,7 @@ public class Embedder {
 	private int passes = 3;
 	private boolean optimizePositions = true;
     private boolean maximizeVolume = false;
+    private boolean useGradient = false;
 	private boolean checkPositions = false;
     private Map<INode, Point> initialPlacement;
 
@@ -207,6 +237,7 @@ public class Embedder {
 		// entries
 		final SpaceGroup group = graph.getSpaceGroup();
 		this.gramSpace = group.configurationSpaceForGramMatrix();
+		this.gramSpaceArray = this.gramSpace.asDoubleArray();
 		k = this.gramSpace.numberOfRows();
 
 		// --- set up translating parameter space values into point coordinates
@@ -254,8 +285,75 @@ public class Embedder {
 			edgeList.add(new Edge(a.v, a.w, a.s, ANGLE, orbit.size()));
 		}
 
-		this.edges = new Edge[edgeList.size()];
-		edgeList.toArray(this.edges);
+		// --- compile data for nodes incident to edges into flat arrays
+		final Map<INode, Integer> node2id = new HashMap<INode, Integer>();
+		final List<INode> usedNodes = new ArrayList<INode>();
+		int mappingSize = 0;
+		for (final Edge e: edgeList) {
+			for (final INode v: new INode[] { e.v, e.w }) {
+				if (!node2id.containsKey(v)) {
+					node2id.put(v, usedNodes.size());
+					usedNodes.add(v);
+					mappingSize += this.node2mapping.get(v).length * dim;
+				}
+			}
+		}
+		final int nrNodes = usedNodes.size();
+		this.nodeOffsets = new int[nrNodes];
+		this.nodeParameters = new int[nrNodes];
+		this.nodeMappingStarts = new int[nrNodes];
+		this.nodeMappings = new double[mappingSize];
+		int start = 0;
+		for (final INode v: usedNodes) {
+			final int id = node2id.get(v);
+			final double mapping[][] = this.node2mapping.get(v);
+			this.nodeOffsets[id] = this.node2index.get(v);
+			this.nodeParameters[id] = mapping.length - 1;
+			this.nodeMappingStarts[id] = start;
+			for (int i = 0; i < mapping.length; ++i) {
+				System.arraycopy(mapping[i], 0, this.nodeMappings, start, dim);
+				start += dim;
+			}
+		}
+
+		// --- compile edge data into flat arrays
+		final int nrEdges = edgeList.size();
+		this.edgeSources = new int[nrEdges];
+		this.edgeTargets = new int[nrEdges];
+		this.edgeShifts = new double[nrEdges * dim];
+		this.edgeTypes = new int[nrEdges];
+		this.edgeWeights = new double[nrEdges];
+		double edgeWeightSum = 0.0;
+		for (int i = 0; i < nrEdges; ++i) {
+			final Edge e = edgeList.get(i);
+			this.edgeSources[i] = node2id.get(e.v);
+			this.edgeTargets[i] = node2id.get(e.w);
+			System.arraycopy(e.shift, 0, this.edgeShifts, i * dim, dim);
+			this.edgeTypes[i] = e.type;
+			this.edgeWeights[i] = e.weight;
+			if (e.type == EDGE) {
+				edgeWeightSum += e.weight;
+			}
+		}
+		this.edgeWeightSum = edgeWeightSum;
+		if (edgeWeightSum != getGraph().numberOfEdges()) {
+			System.out.println("edgeWeightSum is " + edgeWeightSum
+					+ ", but should be " + getGraph().numberOfEdges());
+		}
+
+		// --- allocate work arrays
+		this.rawGram = new double[dim * (dim + 1) / 2];
+		this.gram = new double[dim * dim];
+		this.clipped = new boolean[dim * dim];
+		this.positions = new double[nrNodes * dim];
+		this.edgeVectors = new double[nrEdges * dim];
+		this.edgeLengths = new double[nrEdges];
+		this.edgeDerivatives = new double[nrEdges];
+		this.gramDerivatives = new double[dim * dim];
+		this.rawGramDerivatives = new double[dim * (dim + 1) / 2];
+		this.positionDerivatives = new double[nrNodes * dim];
+		this.luWork = new double[dim * dim];
+		this.inverseWork = new double[dim * dim];
 
 		// --- initialize the parameter vector
 		this.p = new double[this.dimParSpace];
@@ -265,6 +363,64 @@ public class Embedder {
 		setGramMatrix(null);
 	}
 
+	/**
+	 * Constructs a copy of the given instance in its current state. The copy
+	 * shares all precomputed data with the original, but can be relaxed
+	 * independently and concurrently.
+	 *
+	 * @param model the instance to copy.
+	 */
+	public Embedder(final Embedder model) {
+		this.graph = model.graph;
+		this.dimGraph = model.dimGraph;
+		this.node2sym = model.node2sym;
+		this.node2images = model.node2images;
+		this.node2index = model.node2index;
+		this.node2mapping = model.node2mapping;
+		this.dimParSpace = model.dimParSpace;
+		this.gramSpace = model.gramSpace;
+		this.gramSpaceArray = model.gramSpaceArray;
+		this.gramIndex = model.gramIndex;
+
+		this.nodeOffsets = model.nodeOffsets;
+		this.nodeParameters = model.nodeParameters;
+		this.nodeMappingStarts = model.nodeMappingStarts;
+		this.nodeMappings = model.nodeMappings;
+		this.edgeSources = model.edgeSources;
+		this.edgeTargets = model.edgeTargets;
+		this.edgeShifts = model.edgeShifts;
+		this.edgeTypes = model.edgeTypes;
+		this.edgeWeights = model.edgeWeights;
+		this.edgeWeightSum = model.edgeWeightSum;
+
+		this.rawGram = new double[model.rawGram.length];
+		this.gram = new double[model.gram.length];
+		this.clipped = new boolean[model.clipped.length];
+		this.positions = new double[model.positions.length];
+		this.edgeVectors = new double[model.edgeVectors.length];
+		this.edgeLengths = new double[model.edgeLengths.length];
+		this.edgeDerivatives = new double[model.edgeDerivatives.length];
+		this.gramDerivatives = new double[model.gramDerivatives.length];
+		this.rawGramDerivatives = new double[model.rawGramDerivatives.length];
+		this.positionDerivatives =
+				new double[model.positionDerivatives.length];
+		this.luWork = new double[model.luWork.length];
+		this.inverseWork = new double[model.inverseWork.length];
+
+		this.p = model.p.clone();
+		this.volumeWeight = model.volumeWeight;
+		this.penaltyFactor = model.penaltyFactor;
+		this._positionsRelaxed = model._positionsRelaxed;
+		this._cellRelaxed = model._cellRelaxed;
+
+		this.passes = model.passes;
+		this.optimizePositions = model.optimizePositions;
+		this.maximizeVolume = model.maximizeVolume;
+		this.useGradient = model.useGradient;
+		this.checkPositions = model.checkPositions;
+		this.initialPlacement = model.initialPlacement;
+	}
+
 	public int degreesOfFreedom() {
 		return dimParSpace - graph.getSpaceGroup().shiftSpace().length;
 	}
@@ -504,83 +660,160 @@ public class Embedder {
 
 	// --- the following methods do the actual optimization
 
-	private double energy(final double point[]) {
-		// --- get some general data
-		final int dim = this.dimGraph;
-		final int n = getGraph().numberOfNodes();
+	/**
+	 * Translates the given parameter values into the adjusted Gram matrix and
+	 * the node positions, storing both in the work arrays.
+	 *
+	 * @param point the parameters for the Gram matrix.
+	 * @param state the parameters for the node positions.
+	 */
+	private void unpack(final double point[], final double state[]) {
+		final int d = this.dimGraph;
+		final double S[][] = this.gramSpaceArray;
+		final double raw[] = this.rawGram;
+		final double G[] = this.gram;
 
-		// --- extract and adjust the Gram matrix
-		final Matrix gram = getGramMatrix(point);
+		// --- extract the data for the Gram matrix
+		for (int i = 0; i < raw.length; ++i) {
+			double s = 0.0;
+			for (int j = 0; j < S.length; ++j) {
+				s += point[j] * S[j][i];
+			}
+			raw[i] = s;
+		}
 
-		// --- make it an easy to read array
-		final double g[] = gramToArray(gram);
+		// --- adjust the Gram matrix like getGramMatrix(double[]) does
+		for (int i = 0; i < d; ++i) {
+			final double x = raw[this.gramIndex[i][i]];
+			G[i * d + i] = x < 0 ? 0.0 : x;
+		}
+		for (int i = 0; i < d; ++i) {
+			for (int j = i + 1; j < d; ++j) {
+				final double t = Math.sqrt(G[i * d + i] * G[j * d + j]);
+				final double x = raw[this.gramIndex[i][j]];
+				this.clipped[i * d + j] = x > t;
+				G[i * d + j] = G[j * d + i] = x > t ? t : x;
+			}
+		}
 
-		// --- use our original coordinates if only cell is relaxed
-		final double p[];
-		if (getRelaxPositions() == false) {
-			p = this.p;
-		} else {
-			p = point;
+		// --- compute the node positions
+		final double map[] = this.nodeMappings;
+		final double pos[] = this.positions;
+		for (int v = 0; v < this.nodeOffsets.length; ++v) {
+			final int offset = this.nodeOffsets[v];
+			final int n = this.nodeParameters[v];
+			final int start = this.nodeMappingStarts[v];
+			for (int i = 0; i < d; ++i) {
+				double x = map[start + n * d + i];
+				for (int j = 0; j < n; ++j) {
+					x += state[offset + j] * map[start + j * d + i];
+				}
+				pos[v * d + i] = x;
+			}
 		}
+	}
 
-		// --- compute variance of squared edge lengths
-		double edgeSum = 0.0;
-		double edgeWeightSum = 0.0;
-		double minEdge = Double.MAX_VALUE;
-
-		for (int k = 0; k < this.edges.length; ++k) {
-			final Edge e = this.edges[k];
-			final double pv[] = getPosition(e.v, p);
-			final double pw[] = getPosition(e.w, p);
-			final double s[] = e.shift;
-			final double diff[] = new double[dim];
-			for (int i = 0; i < dim; ++i) {
-				diff[i] = pw[i] + s[i] - pv[i];
+	/**
+	 * Computes the difference vectors and squared lengths for all edges and
+	 * angles, or just for the edges, from the current work arrays.
+	 */
+	private void computeEdgeVectors(final boolean edgesOnly) {
+		final int d = this.dimGraph;
+		final double G[] = this.gram;
+		final double pos[] = this.positions;
+		final double diffs[] = this.edgeVectors;
+		for (int k = 0; k < this.edgeTypes.length; ++k) {
+			if (edgesOnly && this.edgeTypes[k] != EDGE) {
+				continue;
+			}
+			final int v = this.edgeSources[k] * d;
+			final int w = this.edgeTargets[k] * d;
+			for (int i = 0; i < d; ++i) {
+				diffs[k * d + i] = pos[w + i] + this.edgeShifts[k * d + i]
+						- pos[v + i];
 			}
 			double len = 0.0;
-			for (int i = 0; i < dim; ++i) {
-				len += diff[i] * diff[i] * g[this.gramIndex[i][i]];
-				for (int j = i + 1; j < dim; ++j) {
-					len += 2 * diff[i] * diff[j] * g[this.gramIndex[i][j]];
+			for (int i = 0; i < d; ++i) {
+				final double di = diffs[k * d + i];
+				len += di * di * G[i * d + i];
+				for (int j = i + 1; j < d; ++j) {
+					len += 2 * di * diffs[k * d + j] * G[i * d + j];
 				}
 			}
-			len = Math.sqrt(len);
-			e.length = len;
-			if (e.type == EDGE) {
-				edgeSum += len * e.weight;
-				;
-				edgeWeightSum += e.weight;
-				minEdge = Math.min(len, minEdge);
+			this.edgeLengths[k] = len;
+		}
+	}
+
+	double energy(final double point[]) {
+		return energy(point, null);
+	}
+
+	/**
+	 * Computes the energy for the given parameters and, if requested, its
+	 * gradient with respect to the Gram matrix and, if positions are relaxed,
+	 * the position parameters.
+	 *
+	 * @param point the parameter values to evaluate at.
+	 * @param gradient receives the partial derivatives, unless null.
+	 * @return the energy.
+	 */
+	double energy(final double point[], final double gradient[]) {
+		// --- get some general data
+		final int dim = this.dimGraph;
+		final int n = getGraph().numberOfNodes();
+		final int nrEdges = this.edgeTypes.length;
+		final double w[] = this.edgeWeights;
+		final double lengths[] = this.edgeLengths;
+		final double edgeWeightSum = this.edgeWeightSum;
+
+		// --- use our original coordinates if only cell is relaxed
+		final boolean relaxPositions = getRelaxPositions();
+		unpack(point, relaxPositions ? point : this.p);
+		computeEdgeVectors(false);
+
+		// --- compute the average edge length
+		double edgeSum = 0.0;
+		for (int k = 0; k < nrEdges; ++k) {
+			lengths[k] = Math.sqrt(lengths[k]);
+			if (this.edgeTypes[k] == EDGE) {
+				edgeSum += lengths[k] * w[k];
 			}
 		}
 		final double avg = edgeSum / edgeWeightSum;
-		if (edgeWeightSum != getGraph().numberOfEdges()) {
-			System.out.println("edgeWeightSum is " + edgeWeightSum
-					+ ", but should be " + getGraph().numberOfEdges());
-		}
-		final double scaling = avg > 1e-12 ? 1.01 / avg : 1.01;
+		final boolean scaled = avg > 1e-12;
+		final double scaling = scaled ? 1.01 / avg : 1.01;
 
+		// --- compute variance of squared edge lengths and the penalties,
+		// along with their derivatives w.r.t. the scaled lengths
+		final double dEdL[] = this.edgeDerivatives;
 		double edgeVariance = 0.0;
 		double edgePenalty = 0.0;
 		double anglePenalty = 0.0;
-		for (int k = 0; k < this.edges.length; ++k) {
-			final Edge e = this.edges[k];
-			final double len = e.length * scaling;
-			final double penalty;
+		double dEdc = 0.0;
+		for (int k = 0; k < nrEdges; ++k) {
+			final double len = lengths[k] * scaling;
+			double dE = 0.0;
+			double penalty = 0.0;
 			if (len < 0.5) {
 				final double x = Math.max(len, 1e-12);
-				penalty = Math.exp(Math.tan((0.25 - x) * 2.0 * Math.PI))
-						* e.weight;
-			} else {
-				penalty = 0.0;
+				final double a = (0.25 - x) * 2.0 * Math.PI;
+				penalty = Math.exp(Math.tan(a)) * w[k];
+				if (len > 1e-12) {
+					final double sec = 1.0 / Math.cos(a);
+					dE -= this.penaltyFactor * penalty * sec * sec * 2.0
+							* Math.PI;
+				}
 			}
-			if (e.type == EDGE) {
+			if (this.edgeTypes[k] == EDGE) {
 				final double t = (1 - len * len);
-				edgeVariance += t * t * e.weight;
+				edgeVariance += t * t * w[k];
 				edgePenalty += penalty;
+				dE -= 4 * w[k] * len * t / edgeWeightSum;
 			} else {
 				anglePenalty += penalty;
 			}
+			dEdL[k] = dE;
+			dEdc += lengths[k] * dE;
 		}
 		edgeVariance /= edgeWeightSum;
 		if (edgeVariance < 0) {
@@ -589,53 +822,282 @@ public class Embedder {
 		}
 
 		// --- compute volume per node
-		final Matrix gramScaled = (Matrix) gram.times(scaling * scaling);
-		final double cellVolume = Math.sqrt(((Real) gramScaled.determinant())
-				.doubleValue());
-		final double volumePenalty = Math.exp(1 / Math.max(cellVolume / n,
-				1e-12)) - 1;
+		final double det = determinant(this.gram, dim);
+		final double cellVolume = Math.pow(scaling, dim) * Math.sqrt(det);
+		final double u = Math.max(cellVolume / n, 1e-12);
+		final double volumePenalty = Math.exp(1 / u) - 1;
+
+		// --- compute the total energy
+		final double energy = this.volumeWeight * volumePenalty
+				+ edgeVariance + this.penaltyFactor
+				* (edgePenalty + anglePenalty);
+		if (gradient == null) {
+			return energy;
+		}
+
+		// --- now propagate the derivatives back to the parameters
+		Arrays.fill(gradient, 0.0);
+		final double dEdG[] = this.gramDerivatives;
+		Arrays.fill(dEdG, 0.0);
+		final double dEdPos[] = this.positionDerivatives;
+		Arrays.fill(dEdPos, 0.0);
+
+		if (cellVolume / n > 1e-12) {
+			final double dEdV = -this.volumeWeight * Math.exp(1 / u)
+					/ (u * u * n);
+			dEdc += dEdV * dim * cellVolume / scaling;
+			final double inv[] = inverse(this.gram, dim);
+			for (int i = 0; i < dim; ++i) {
+				for (int j = 0; j < dim; ++j) {
+					dEdG[i * dim + j] += dEdV * cellVolume / 2
+							* inv[j * dim + i];
+				}
+			}
+		}
+
+		final double G[] = this.gram;
+		final double diffs[] = this.edgeVectors;
+		for (int k = 0; k < nrEdges; ++k) {
+			double dEdLen = scaling * dEdL[k];
+			if (this.edgeTypes[k] == EDGE && scaled) {
+				dEdLen -= dEdc * scaling * w[k] / (avg * edgeWeightSum);
+			}
+			if (lengths[k] > 0 && dEdLen != 0) {
+				final double f = dEdLen / (2 * lengths[k]);
+				for (int i = 0; i < dim; ++i) {
+					for (int j = 0; j < dim; ++j) {
+						dEdG[i * dim + j] += f * diffs[k * dim + i]
+								* diffs[k * dim + j];
+					}
+				}
+				if (relaxPositions) {
+					final int v = this.edgeSources[k] * dim;
+					final int t = this.edgeTargets[k] * dim;
+					for (int i = 0; i < dim; ++i) {
+						double s = 0.0;
+						for (int j = 0; j < dim; ++j) {
+							s += G[i * dim + j] * diffs[k * dim + j];
+						}
+						dEdPos[t + i] += 2 * f * s;
+						dEdPos[v + i] -= 2 * f * s;
+					}
+				}
+			}
+		}
+
+		addGramGradient(gradient);
+		if (relaxPositions) {
+			addPositionGradient(gradient);
+		}
+		return energy;
+	}
 
-		// --- compute and return the total energy
-		return this.volumeWeight * volumePenalty + edgeVariance +
-			   this.penaltyFactor * (edgePenalty + anglePenalty);
+	double energyMaxVol(final double point[]) {
+		return energyMaxVol(point, null);
 	}
 
-	private double energyMaxVol(final double point[]) {
+	/**
+	 * Computes the energy used for volume maximization and, if requested, its
+	 * gradient with respect to the Gram matrix parameters.
+	 *
+	 * @param point the parameter values to evaluate at.
+	 * @param gradient receives the partial derivatives, unless null.
+	 * @return the energy.
+	 */
+	double energyMaxVol(final double point[], final double gradient[]) {
 		final int dim = this.dimGraph;
 
-		final Matrix gram = getGramMatrix(point);
-        final double det = ((Real) gram.determinant()).doubleValue();
-        if (det < 1e-12)
-            return 1e12;
+		if (gradient != null) {
+			Arrays.fill(gradient, 0.0);
+		}
 
-		final double g[] = gramToArray(gram);
+		unpack(point, this.p);
+		final double det = determinant(this.gram, dim);
+		if (det < 1e-12)
+			return 1e12;
 
+		computeEdgeVectors(true);
 		double edgeSum = 0.0;
+		for (int k = 0; k < this.edgeTypes.length; ++k) {
+			if (this.edgeTypes[k] == EDGE) {
+				edgeSum += this.edgeLengths[k] * this.edgeWeights[k];
+			}
+		}
+		final double energy = Math.pow(edgeSum, dim) / det;
+		if (gradient == null) {
+			return energy;
+		}
 
-		for (int k = 0; k < this.edges.length; ++k) {
-			final Edge e = this.edges[k];
-			if (e.type == EDGE) {
-                final double pv[] = getPosition(e.v, this.p);
-                final double pw[] = getPosition(e.w, this.p);
-                final double s[] = e.shift;
-                final double diff[] = new double[dim];
-                for (int i = 0; i < dim; ++i) {
-                    diff[i] = pw[i] + s[i] - pv[i];
-                }
+		final double f = dim * Math.pow(edgeSum, dim - 1) / det;
+		final double inv[] = inverse(this.gram, dim);
+		final double dEdG[] = this.gramDerivatives;
+		for (int i = 0; i < dim; ++i) {
+			for (int j = 0; j < dim; ++j) {
+				dEdG[i * dim + j] = -energy * inv[j * dim + i];
+			}
+		}
+		final double diffs[] = this.edgeVectors;
+		for (int k = 0; k < this.edgeTypes.length; ++k) {
+			if (this.edgeTypes[k] == EDGE) {
+				final double c = f * this.edgeWeights[k];
+				for (int i = 0; i < dim; ++i) {
+					for (int j = 0; j < dim; ++j) {
+						dEdG[i * dim + j] += c * diffs[k * dim + i]
+								* diffs[k * dim + j];
+					}
+				}
+			}
+		}
+		addGramGradient(gradient);
+
+		return energy;
+	}
+
+	/**
+	 * Adds the contributions of the derivatives with respect to the adjusted
+	 * Gram matrix entries to the gradient w.r.t. the Gram matrix parameters.
+	 */
+	private void addGramGradient(final double gradient[]) {
+		final int d = this.dimGraph;
+		final double raw[] = this.rawGram;
+		final double G[] = this.gram;
+		final double dEdG[] = this.gramDerivatives;
+		final double dEdRaw[] = this.rawGramDerivatives;
+		Arrays.fill(dEdRaw, 0.0);
 
-                double len = 0.0;
-                for (int i = 0; i < dim; ++i) {
-                    len += diff[i] * diff[i] * g[this.gramIndex[i][i]];
-                    for (int j = i + 1; j < dim; ++j) {
-                        len += 2 * diff[i] * diff[j] * g[this.gramIndex[i][j]];
-                    }
-                }
-				edgeSum += len * e.weight;
+		for (int i = 0; i < d; ++i) {
+			double x = dEdG[i * d + i];
+			for (int j = 0; j < d; ++j) {
+				final int a = Math.min(i, j);
+				final int b = Math.max(i, j);
+				if (i != j && this.clipped[a * d + b] && G[a * d + b] > 0) {
+					x += (dEdG[a * d + b] + dEdG[b * d + a]) * G[j * d + j]
+							/ (2 * G[a * d + b]);
+				}
+			}
+			if (raw[this.gramIndex[i][i]] >= 0) {
+				dEdRaw[this.gramIndex[i][i]] = x;
+			}
+			for (int j = i + 1; j < d; ++j) {
+				if (!this.clipped[i * d + j]) {
+					dEdRaw[this.gramIndex[i][j]] = dEdG[i * d + j]
+							+ dEdG[j * d + i];
+				}
 			}
 		}
 
-        return Math.pow(edgeSum, dim) / det;
-    }
+		final double S[][] = this.gramSpaceArray;
+		for (int j = 0; j < S.length; ++j) {
+			for (int i = 0; i < raw.length; ++i) {
+				gradient[j] += S[j][i] * dEdRaw[i];
+			}
+		}
+	}
+
+	/**
+	 * Adds the derivatives with respect to the node positions to the gradient
+	 * w.r.t. the position parameters.
+	 */
+	private void addPositionGradient(final double gradient[]) {
+		final int d = this.dimGraph;
+		final double map[] = this.nodeMappings;
+		final double dEdPos[] = this.positionDerivatives;
+		for (int v = 0; v < this.nodeOffsets.length; ++v) {
+			final int offset = this.nodeOffsets[v];
+			final int start = this.nodeMappingStarts[v];
+			for (int j = 0; j < this.nodeParameters[v]; ++j) {
+				double s = 0.0;
+				for (int i = 0; i < d; ++i) {
+					s += map[start + j * d + i] * dEdPos[v * d + i];
+				}
+				gradient[offset + j] += s;
+			}
+		}
+	}
+
+	/**
+	 * Computes the determinant of a small square matrix given as a flat
+	 * array, using the LU work array.
+	 */
+	private double determinant(final double A[], final int n) {
+		final double M[] = this.luWork;
+		System.arraycopy(A, 0, M, 0, n * n);
+		double det = 1.0;
+		for (int k = 0; k < n; ++k) {
+			int piv = k;
+			for (int i = k + 1; i < n; ++i) {
+				if (Math.abs(M[i * n + k]) > Math.abs(M[piv * n + k])) {
+					piv = i;
+				}
+			}
+			if (M[piv * n + k] == 0) {
+				return 0.0;
+			}
+			if (piv != k) {
+				for (int j = 0; j < n; ++j) {
+					final double tmp = M[k * n + j];
+					M[k * n + j] = M[piv * n + j];
+					M[piv * n + j] = tmp;
+				}
+				det = -det;
+			}
+			det *= M[k * n + k];
+			for (int i = k + 1; i < n; ++i) {
+				final double f = M[i * n + k] / M[k * n + k];
+				for (int j = k; j < n; ++j) {
+					M[i * n + j] -= f * M[k * n + j];
+				}
+			}
+		}
+		return det;
+	}
+
+	/**
+	 * Computes the inverse of a small square matrix given as a flat array by
+	 * Gauss-Jordan elimination, returning it in the inverse work array.
+	 */
+	private double[] inverse(final double A[], final int n) {
+		final double M[] = this.luWork;
+		final double R[] = this.inverseWork;
+		System.arraycopy(A, 0, M, 0, n * n);
+		Arrays.fill(R, 0.0);
+		for (int i = 0; i < n; ++i) {
+			R[i * n + i] = 1.0;
+		}
+		for (int k = 0; k < n; ++k) {
+			int piv = k;
+			for (int i = k + 1; i < n; ++i) {
+				if (Math.abs(M[i * n + k]) > Math.abs(M[piv * n + k])) {
+					piv = i;
+				}
+			}
+			if (piv != k) {
+				for (int j = 0; j < n; ++j) {
+					double tmp = M[k * n + j];
+					M[k * n + j] = M[piv * n + j];
+					M[piv * n + j] = tmp;
+					tmp = R[k * n + j];
+					R[k * n + j] = R[piv * n + j];
+					R[piv * n + j] = tmp;
+				}
+			}
+			final double f = M[k * n + k];
+			for (int j = 0; j < n; ++j) {
+				M[k * n + j] /= f;
+				R[k * n + j] /= f;
+			}
+			for (int i = 0; i < n; ++i) {
+				final double g = M[i * n + k];
+				if (i != k && g != 0) {
+					for (int j = 0; j < n; ++j) {
+						M[i * n + j] -= g * M[k * n + j];
+						R[i * n + j] -= g * R[k * n + j];
+					}
+				}
+			}
+		}
+		return R;
+	}
 
 	private Map<INode, Operator> nodeSymmetrizations() {
 		final Map<INode, Operator> result = new HashMap<INode, Operator>();
@@ -749,6 +1211,21 @@ public class Embedder {
 		return maximizeVolume;
 	}
 
+	/**
+	 * Selects the optimizer used by {@link #go(int)}: either the
+	 * gradient-based L-BFGS method or the derivative-free downhill simplex
+	 * method.
+	 *
+	 * @param useGradient if true, use analytic gradients and L-BFGS.
+	 */
+	public void setUseGradient(boolean useGradient) {
+		this.useGradient = useGradient;
+	}
+
+	public boolean getUseGradient() {
+		return useGradient;
+	}
+
 	public void setGramMatrix(final Matrix gram) {
 	    final int d = this.graph.getDimension();
 		final Matrix g = (gram == null) ? Matrix.one(d) : gram;
@@ -789,6 +1266,8 @@ public class Embedder {
 			return 0;
 		}
 
+		final TaskController controller = TaskController.getInstance();
+
 		final Amoeba.Function cost = new Amoeba.Function() {
 			public int dim() {
 				if (getRelaxPositions()) {
@@ -799,10 +1278,23 @@ public class Embedder {
 			}
 
 			public double evaluate(final double[] p) {
+				controller.bailOutIfCancelled();
 				return getMaximizeVolume() ? energyMaxVol(p) : energy(p);
 			}
 		};
 
+		final LBFGS.Function gradientCost = new LBFGS.Function() {
+			public int dim() {
+				return cost.dim();
+			}
+
+			public double evaluate(final double[] p, final double[] grad) {
+				controller.bailOutIfCancelled();
+				return getMaximizeVolume() ? energyMaxVol(p, grad)
+						: energy(p, grad);
+			}
+		};
+
 		// --- here's the relaxation procedure
 		double p[] = this.p;
 		final int nrPasses = Math.max(1, this.passes);
@@ -814,7 +1306,11 @@ public class Embedder {
                 this.penaltyFactor = 0;
 
 			this.volumeWeight = Math.pow(10, -pass);
-			p = new Amoeba(cost, 1e-6, steps, 10, 1.0).go(p);
+			if (getUseGradient()) {
+				p = new LBFGS(gradientCost, 1e-10, steps, 8).go(p);
+			} else {
+				p = new Amoeba(cost, 1e-6, steps, 10, 1.0).go(p);
+			}
 			for (int i = 0; i < p.length; ++i) {
 				this.p[i] = p[i];
 			}
@@ -824,6 +1320,19 @@ public class Embedder {
 		return steps;
 	}
 
+	/**
+	 * Randomly displaces all nodes within the subspaces allowed by their
+	 * stabilizers. The unit cell is left unchanged.
+	 *
+	 * @param amount the maximal change in each position parameter.
+	 * @param random the source of random numbers.
+	 */
+	public void perturbPositions(final double amount, final Random random) {
+		for (int i = this.gramSpaceArray.length; i < this.dimParSpace; ++i) {
+			this.p[i] += amount * (2 * random.nextDouble() - 1);
+		}
+	}
+
 	public void reset() {
 		setPositions(this.initialPlacement);
 		setGramMatrix(null);
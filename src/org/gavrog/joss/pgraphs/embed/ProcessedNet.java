@@ -23,7 +23,6 @@ import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -38,8 +37,8 @@ import org.gavrog.jane.numbers.IArithmetic;
 import org.gavrog.jane.numbers.Real;
 import org.gavrog.joss.geometry.CellCorrection;
 import org.gavrog.joss.geometry.CoordinateChange;
-import org.gavrog.joss.geometry.Lattices;
 import org.gavrog.joss.geometry.Operator;
+import org.gavrog.joss.geometry.PeriodicCellList;
 import org.gavrog.joss.geometry.Point;
 import org.gavrog.joss.geometry.SpaceGroupFinder;
 import org.gavrog.joss.geometry.Vector;
@@ -201,10 +200,16 @@ public class ProcessedNet {
 		final INode v0 = cov.nodes().next();
 		final Vector shift = (Vector) pos.get(cov.image(v0)).times(
 				toStd).minus(cov.liftedPosition(v0, pos));
-		final Map<INode, Point> lifted = new HashMap<INode, Point>();
+		final List<INode> coverNodes = new ArrayList<INode>();
+		final List<Point> unshifted = new ArrayList<Point>();
 		for (final INode v: cov.nodes()) {
-			lifted.put(v, (Point) cov.liftedPosition(v, pos).plus(shift)
-			        .times(correction));
+			coverNodes.add(v);
+			unshifted.add((Point) cov.liftedPosition(v, pos).plus(shift));
+		}
+		final Map<INode, Point> lifted = new HashMap<INode, Point>();
+		final List<Point> corrected = correction.applyToPoints(unshifted);
+		for (int i = 0; i < coverNodes.size(); ++i) {
+			lifted.put(coverNodes.get(i), corrected.get(i));
 		}
         
         // --- if there's translational freedom, shift some node to a nice place
@@ -221,8 +226,14 @@ public class ProcessedNet {
 			final Vector s = (Vector) Point.origin(d).minus(p.times(proj));
 			final CoordinateChange corrective_shift = new CoordinateChange(
 					new Operator(s));
-			for (final INode w: lifted.keySet()) {
-				lifted.put(w, (Point) lifted.get(w).times(corrective_shift));
+			final List<INode> keys = new ArrayList<INode>(lifted.keySet());
+			final List<Point> points = new ArrayList<Point>();
+			for (final INode w: keys) {
+				points.add(lifted.get(w));
+			}
+			final List<Point> shifted = corrective_shift.applyToPoints(points);
+			for (int i = 0; i < keys.size(); ++i) {
+				lifted.put(keys.get(i), shifted.get(i));
 			}
 			correction = (CoordinateChange) correction.times(corrective_shift);
 		}
@@ -379,38 +390,11 @@ public class ProcessedNet {
 		double sumAngle = 0.0;
 		int count = 0;
 		
-		for (final INode v: graph.nodes()) {
-		    final Point p = pos.get(v);
-		    final List<IEdge> incidences = graph.allIncidences(v);
-		    final List<Vector> vectors = new ArrayList<Vector>();
-		    for (final IEdge e: incidences) {
-		        final INode w = e.target();
-		        final Point q = (Point) pos.get(w);
-		        vectors.add((Vector) q.plus(graph.getShift(e)).minus(p));
-		    }
-		    final int m = vectors.size();
-		    for (int i = 0; i < m; ++i) {
-		        final Vector s = vectors.get(i);
-		        final double ls =
-		                ((Real) Vector.dot(s, s, gram)).sqrt().doubleValue();
-		        for (int j = i + 1; j < m; ++j) {
-		            final Vector t = vectors.get(j);
-		            final double lt = ((Real) Vector.dot(t, t, gram)).sqrt()
-		                    .doubleValue();
-		            final double dot =
-		                    ((Real) Vector.dot(s, t, gram)).doubleValue();
-                    double angle = 0.0;
-                    if (ls * lt > 1e-8) {
-                        final double arg =
-                            Math.max(-1, Math.min(1, dot / (ls * lt)));
-                        angle = Math.acos(arg) / Math.PI * 180;
-                    }
-		            minAngle = Math.min(minAngle, angle);
-		            maxAngle = Math.max(maxAngle, angle);
-		            sumAngle += angle;
-		            ++count;
-		        }
-		    }
+		for (final double angle: angleSizes(graph, pos, gram)) {
+		    minAngle = Math.min(minAngle, angle);
+		    maxAngle = Math.max(maxAngle, angle);
+		    sumAngle += angle;
+		    ++count;
 		}
 
         if (cgdFormat) {
@@ -749,28 +733,34 @@ public class ProcessedNet {
             final Map<INode, Point> pos,
             final Matrix gram) {
 
-        final List<Double> angles = new ArrayList<Double>();;
-
-		for (final INode v: G.nodes()) {
-		    final Point p = pos.get(v);
-		    final List<IEdge> incidences = G.allIncidences(v);
-		    final List<Vector> vectors = new ArrayList<Vector>();
-		    for (final IEdge e: incidences) {
-		        final INode w = e.target();
-		        final Point q = (Point) pos.get(w);
-		        vectors.add((Vector) q.plus(G.getShift(e)).minus(p));
-		    }
-		    final int m = vectors.size();
-		    for (int i = 0; i < m; ++i) {
-		        final Vector s = vectors.get(i);
-		        final double ls =
-		                ((Real) Vector.dot(s, s, gram)).sqrt().doubleValue();
-		        for (int j = i + 1; j < m; ++j) {
-		            final Vector t = vectors.get(j);
-		            final double lt = ((Real) Vector.dot(t, t, gram)).sqrt()
-		                    .doubleValue();
-		            final double dot =
-		                    ((Real) Vector.dot(s, t, gram)).doubleValue();
+        final int d = G.getDimension();
+        final List<INode> nodes = new ArrayList<INode>();
+        final Map<INode, Integer> index = new HashMap<INode, Integer>();
+        final double p[][] = flatPositions(G, pos, nodes, index);
+        final double g[] = flatGram(gram);
+        final List<Double> angles = new ArrayList<Double>();
+
+        double vectors[] = new double[0];
+        for (int v = 0; v < nodes.size(); ++v) {
+            final List<IEdge> incidences = G.allIncidences(nodes.get(v));
+            final int m = incidences.size();
+            if (vectors.length < m * d) {
+                vectors = new double[m * d];
+            }
+            for (int i = 0; i < m; ++i) {
+                final IEdge e = incidences.get(i);
+                final double q[] = p[index.get(e.target())];
+                final Vector s = G.getShift(e);
+                for (int k = 0; k < d; ++k) {
+                    vectors[i * d + k] = q[k] - p[v][k]
+                            + ((Real) s.get(k)).doubleValue();
+                }
+            }
+            for (int i = 0; i < m; ++i) {
+                final double ls = Math.sqrt(dot(vectors, i, i, g, d));
+                for (int j = i + 1; j < m; ++j) {
+                    final double lt = Math.sqrt(dot(vectors, j, j, g, d));
+                    final double dot = dot(vectors, i, j, g, d);
                     double angle = 0.0;
                     if (ls * lt > 1e-8) {
                         final double arg =
@@ -778,15 +768,17 @@ public class ProcessedNet {
                         angle = Math.acos(arg) / Math.PI * 180;
                     }
                     angles.add(angle);
-		        }
-		    }
-		}
+                }
+            }
+        }
 
         return angles;
     }
 
     /**
-     * Does what it says.
+     * Does what it says. Uses a {@link PeriodicCellList} to look for close
+     * pairs within a cutoff that is increased until a non-bonded pair is
+     * found.
      * 
      * @param G         a periodic graph.
      * @param embedder  an embedding for G.
@@ -798,95 +790,148 @@ public class ProcessedNet {
             final Matrix gram) {
         // --- get some data about the graph and embedding
     	final int dim = G.getDimension();
-        
-        // --- compute a Dirichlet domain for the translation lattice
-        final Vector basis[] = Vector.rowVectors(Matrix.one(G.getDimension()));
-		if (DEBUG) {
-			System.out.println("\t\t\t@@@ Computing dirichlet vectors...");
-		}
-        final Vector dirichlet[] = Lattices.dirichletVectors(basis, gram);
-		if (DEBUG) {
-			System.out.println("\t\t\t@@@ Computing reduced basis...");
-		}
-        final Vector reduced[] = Lattices.reducedLatticeBasis(basis, gram);
-        
-        // --- find vectors that address neighborhood of dirichlet domain
+        final List<INode> nodes = new ArrayList<INode>();
+        final Map<INode, Integer> index = new HashMap<INode, Integer>();
+        final double p[][] = flatPositions(G, pos, nodes, index);
+        final int n = nodes.size();
+        if (n == 0) {
+            return -1.0;
+        }
+
+        // --- collect the bonded neighbors of each node
+        final int bonded[][] = new int[n][];
+        for (int i = 0; i < n; ++i) {
+            final List<IEdge> incidences = G.allIncidences(nodes.get(i));
+            final int m = incidences.size();
+            final int b[] = new int[m * (dim + 1)];
+            for (int k = 0; k < m; ++k) {
+                final IEdge e = incidences.get(k);
+                final Vector s = G.getShift(e);
+                b[k * (dim + 1)] = index.get(e.target());
+                for (int j = 0; j < dim; ++j) {
+                    b[k * (dim + 1) + 1 + j] =
+                        (int) Math.round(((Real) s.get(j)).doubleValue());
+                }
+            }
+            bonded[i] = b;
+        }
+
+        // --- start with a cutoff near the average spacing between nodes
 		if (DEBUG) {
-			System.out.println("\t\t\t@@@ Computing neighborhood vectors...");
+			System.out.println("\t\t\t@@@ Building cell list...");
 		}
-        final Matrix M = Vector.toMatrix(reduced);
-        final List<Vector> cellNeighbors = new ArrayList<Vector>();
-        final int f[] = new int[dim];
-        for (int i = 0; i < dim; ++i) f[i] = -1;
-        while (true) {
-        	final Vector v = new Vector(f);
-        	cellNeighbors.add(new Vector((Matrix) v.getCoordinates().times(M)));
-        	int i = dim-1;
-        	while (i >= 0 && f[i] == 1) --i;
-        	if (i < 0) {
-        		break;
-        	} else {
-        		++f[i++];
-        		while (i < dim) f[i++] = -1;
-        	}
+        final PeriodicCellList cells = new PeriodicCellList(p, gram);
+        final double volume = Math.sqrt(Math.abs(
+                ((Real) gram.determinant()).doubleValue()));
+        double cutoff = Math.pow(volume / n, 1.0 / dim);
+        if (!(cutoff > 0) || Double.isInfinite(cutoff)) {
+            return -1.0;
         }
 
         // --- smallest distance seen so far
-        double minDist = Double.MAX_VALUE;
+        final double minDist[] = new double[] { Double.MAX_VALUE };
 
-        // --- loop over all pairs of points in the repeat unit
+        // --- visit close pairs, skipping bonded ones
 		if (DEBUG) {
-			System.out.println("\t\t\t@@@ Looping over node pairs...");
+			System.out.println("\t\t\t@@@ Looping over close pairs...");
 		}
-        for (final INode v: G.nodes()) {
-            final Point p = pos.get(v);
-            for (final INode w: G.nodes()) {
-                final Point q = pos.get(w);
-                
-                // --- find a closest translate of w
-                final Point d = (Point) q.minus(p).plus(Point.origin(dim));
-                final Vector s =
-                	Lattices.dirichletShifts(d, dirichlet, gram, 1)[0];
-                
-                // --- determine excluded translates and seeds
-                final Set<Vector> excluded = new HashSet<Vector>();
-                if (v.equals(w)) {
-                	excluded.add(Vector.zero(dim));
-                }
-                final Set<Vector> seeds = new HashSet<Vector>();
-                seeds.add(Vector.zero(dim));
-                for (final IEdge e: G.allIncidences(v)) {
-                	final INode u = e.target();
-                	if (u.equals(w)) {
-                		excluded.add(G.getShift(e));
-                		seeds.add(G.getShift(e));
-                	}
+        for (int pass = 0; pass < 64 && minDist[0] == Double.MAX_VALUE;
+                ++pass) {
+            cells.pairsWithin(cutoff, new PeriodicCellList.Visitor() {
+                public void visit(final int i, final int j, final int s[],
+                        final double dist2) {
+                    if (dist2 < minDist[0] && !isBonded(bonded[i], j, s)) {
+                        minDist[0] = dist2;
+                    }
                 }
-                
-                // --- find closest translate that isn't a neighbor of v
-                for (final Vector seed: seeds) {
-					for (final Vector n: cellNeighbors) {
-						final Vector t = (Vector) n.plus(s).plus(seed);
-						if (!excluded.contains(t)) {
-							final Point r = (Point) q.plus(t);
-							final Vector x = (Vector) r.minus(p);
-							final double dist = ((Real) Vector.dot(x, x, gram))
-									.doubleValue();
-							if (dist < minDist) {
-								minDist = dist;
-							}
-						}
-					}
-				}
-            }
+            });
+            cutoff *= 2;
         }
         
         // --- return the result
-        if (minDist == Double.MAX_VALUE) {
+        if (minDist[0] == Double.MAX_VALUE) {
         	return -1.0;
         } else {
-        	return Math.sqrt(minDist);
+        	return Math.sqrt(minDist[0]);
+        }
+    }
+    
+    /**
+     * Checks whether a shifted node is among a list of bonded neighbors, each
+     * given as a node index followed by a shift.
+     */
+    private static boolean isBonded(final int bonded[], final int j,
+            final int s[]) {
+        final int d = s.length;
+        for (int k = 0; k < bonded.length; k += d + 1) {
+            if (bonded[k] == j) {
+                boolean same = true;
+                for (int i = 0; i < d; ++i) {
+                    if (bonded[k + 1 + i] != s[i]) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Converts node positions into arrays of doubles, filling in a list of
+     * nodes and a map from nodes to indices as a side effect.
+     */
+    private static double[][] flatPositions(
+            final PeriodicGraph G,
+            final Map<INode, Point> pos,
+            final List<INode> nodes,
+            final Map<INode, Integer> index) {
+        final int d = G.getDimension();
+        for (final INode v: G.nodes()) {
+            index.put(v, nodes.size());
+            nodes.add(v);
+        }
+        final double result[][] = new double[nodes.size()][d];
+        for (int i = 0; i < nodes.size(); ++i) {
+            final Point p = pos.get(nodes.get(i));
+            for (int k = 0; k < d; ++k) {
+                result[i][k] = ((Real) p.get(k)).doubleValue();
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Converts a Gram matrix into a flat array of doubles.
+     */
+    private static double[] flatGram(final Matrix gram) {
+        final int d = gram.numberOfRows();
+        final double result[] = new double[d * d];
+        for (int i = 0; i < d; ++i) {
+            for (int j = 0; j < d; ++j) {
+                result[i * d + j] = ((Real) gram.get(i, j)).doubleValue();
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the dot product between two of the vectors in a flat array.
+     */
+    private static double dot(final double v[], final int i, final int j,
+            final double g[], final int d) {
+        double sum = 0.0;
+        for (int k = 0; k < d; ++k) {
+            double s = 0.0;
+            for (int m = 0; m < d; ++m) {
+                s += g[k * d + m] * v[j * d + m];
+            }
+            sum += v[i * d + k] * s;
         }
+        return sum;
     }
     
     /**
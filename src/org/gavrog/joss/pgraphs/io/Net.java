@@ -32,6 +32,7 @@ import org.gavrog.box.collections.Pair;
 import org.gavrog.joss.dsyms.basic.DSymbol;
 import org.gavrog.joss.dsyms.generators.InputIterator;
 import org.gavrog.joss.geometry.Point;
+import org.gavrog.joss.geometry.SpaceGroupCatalogue;
 import org.gavrog.joss.pgraphs.basic.IEdge;
 import org.gavrog.joss.pgraphs.basic.INode;
 import org.gavrog.joss.pgraphs.basic.PeriodicGraph;
@@ -149,6 +150,12 @@ public class Net extends PeriodicGraph {
     
     public static Iterator<Net> iterator(final String filePath)
             throws FileNotFoundException {
+        return iterator(filePath, SpaceGroupCatalogue.Preferences.DEFAULT);
+    }
+    
+    public static Iterator<Net> iterator(final String filePath,
+            final SpaceGroupCatalogue.Preferences prefs)
+            throws FileNotFoundException {
         
         final String extension = filePath
                 .substring(filePath.lastIndexOf('.') + 1);
@@ -158,6 +165,7 @@ public class Net extends PeriodicGraph {
 
         if ("cgd".equals(extension) || "pgr".equals(extension)) {
             final NetParser parser = new NetParser(reader);
+            parser.setGroupPreferences(prefs);
             
             return new Iterator<Net>() {
                 public boolean hasNext() {
@@ -209,7 +217,8 @@ public class Net extends PeriodicGraph {
     private static Net extract(final NetParser parser) {
         final GenericParser.Block data = parser.parseDataBlock();
         if (data.getType().toLowerCase().equals("tiling")) {
-            final FaceList fl = new FaceList(data);
+            final FaceList fl = new FaceList(NetParser.parseFaceList(data,
+                    parser.getGroupPreferences()));
             final Tiling til = new Tiling(fl.getSymbol());
             final Map<Integer, Point> pos = fl.getPositions();
             final Tiling.Skeleton skel = til.getSkeleton();
@@ -47,6 +47,7 @@ import org.gavrog.jane.numbers.Real;
 import org.gavrog.jane.numbers.Whole;
 import org.gavrog.joss.geometry.Lattices;
 import org.gavrog.joss.geometry.Operator;
+import org.gavrog.joss.geometry.PeriodicCellList;
 import org.gavrog.joss.geometry.Point;
 import org.gavrog.joss.geometry.SpaceGroup;
 import org.gavrog.joss.geometry.SpaceGroupCatalogue;
@@ -159,6 +160,10 @@ public class NetParser extends GenericParser {
     // The last block that was processed.
     private Block lastBlock;
     
+    // Determines the settings used for ambiguous space group names.
+    private SpaceGroupCatalogue.Preferences groupPreferences =
+        SpaceGroupCatalogue.Preferences.DEFAULT;
+    
     /**
      * Constructs an instance.
      * 
@@ -189,6 +194,23 @@ public class NetParser extends GenericParser {
         this(new BufferedReader(new FileReader(filename)));
     }
     
+    /**
+     * @return the preferences used for ambiguous space group names.
+     */
+    public SpaceGroupCatalogue.Preferences getGroupPreferences() {
+        return this.groupPreferences;
+    }
+    
+    /**
+     * Sets the preferences used for ambiguous space group names.
+     * 
+     * @param prefs the new preferences.
+     */
+    public void setGroupPreferences(
+            final SpaceGroupCatalogue.Preferences prefs) {
+        this.groupPreferences = prefs;
+    }
+    
     /**
      * Sets up a keyword map to be used by {@link GenericParser#parseDataBlock()}.
      * 
@@ -384,9 +406,11 @@ public class NetParser extends GenericParser {
      * Constructs a space group with the given name.
      * 
      * @param name the name of the group (as according to the International Tables).
+     * @param prefs determines the setting used for ambiguous names.
      * @return the group constructed.
      */
-    private static SpaceGroup parseSpaceGroupName(final String name) {
+    private static SpaceGroup parseSpaceGroupName(final String name,
+            final SpaceGroupCatalogue.Preferences prefs) {
         final int dim;
         if (Character.isLowerCase(name.charAt(0))) {
             if (name.charAt(0) == 'o')
@@ -397,7 +421,7 @@ public class NetParser extends GenericParser {
             dim = 3;
         }
         final Collection<Operator> ops =
-                SpaceGroupCatalogue.operators(dim, name);
+                SpaceGroupCatalogue.operators(dim, name, prefs);
         if (ops == null) {
             return null;
         } else {
@@ -455,7 +479,8 @@ public class NetParser extends GenericParser {
                         throw new DataFormatException(msg + block[i].lineNumber);
                     }
                     groupName = (String) row.get(0);
-                    group = parseSpaceGroupName(groupName);
+                    group = parseSpaceGroupName(groupName,
+                            this.groupPreferences);
                     if (group == null) {
                         final String msg = "Space group \"" + groupName
                                 + "\" not recognized at line ";
@@ -675,14 +700,16 @@ public class NetParser extends GenericParser {
                     throw new DataFormatException(msg + lineNr);
                 }
                 groupName = (String) row.get(0);
-                group = parseSpaceGroupName(groupName);
+                group = parseSpaceGroupName(groupName,
+                        this.groupPreferences);
                 if (group == null) {
                     final String msg = "Space group \"" + groupName
                             + "\" not recognized at line ";
                     throw new DataFormatException(msg + lineNr);
                 }
                 dim = group.getDimension();
-                groupName = SpaceGroupCatalogue.listedName(dim, groupName);
+                groupName = SpaceGroupCatalogue.listedName(dim, groupName,
+                        this.groupPreferences);
                 ops.addAll(group.getOperators());
             } else if (key.equals("cell")) {
                 if (seen.contains(key)) {
@@ -789,7 +816,8 @@ public class NetParser extends GenericParser {
         if (group == null) {
             warnings.add("No space group given - assuming P1");
             groupName = "P1";
-            group = parseSpaceGroupName(groupName);
+            group = parseSpaceGroupName(groupName,
+                    this.groupPreferences);
             dim = group.getDimension();
             ops.addAll(group.getOperators());
         }
@@ -1027,7 +1055,7 @@ public class NetParser extends GenericParser {
             System.err.println("Computing Dirichlet vectors...");
         }
         final Vector dirichletVectors[] = Lattices.dirichletVectors(basis,
-                cellGram);
+                cellGram, true);
         if (DEBUG) {
             for (int i = 0; i < dirichletVectors.length; ++i) {
                 System.err.println("  " + dirichletVectors[i]);
@@ -1258,6 +1286,15 @@ public class NetParser extends GenericParser {
             final Map<INode, Point> nodeToPosition,
             final Operator from,
             final double precision) {
+        // --- set up a cell list for looking up nodes by position
+        final List<INode> nodes = new ArrayList<INode>(nodeToPosition.keySet());
+        final double coords[][] = new double[nodes.size()][];
+        for (int i = 0; i < nodes.size(); ++i) {
+            coords[i] = asDoubles(nodeToPosition.get(nodes.get(i)));
+        }
+        final PeriodicCellList cells =
+                new PeriodicCellList(coords, Matrix.one(G.getDimension()));
+
         for (final EdgeDescriptor desc: edgeDescriptors) {
             if (DEBUG) {
                 System.err.println();
@@ -1286,9 +1323,9 @@ public class NetParser extends GenericParser {
                 final Point p = (Point) sourcePos.times(op);
                 final Point q = (Point) targetPos.times(op);
                 final Pair<INode, Vector> pAdr =
-                        lookup(p, nodeToPosition, precision);
+                        lookup(p, nodes, nodeToPosition, cells, precision);
                 final Pair<INode, Vector> qAdr =
-                        lookup(q, nodeToPosition, precision);
+                        lookup(q, nodes, nodeToPosition, cells, precision);
                 if (pAdr == null) {
                     throw new DataFormatException("no point at "
                             + format((Point) p.times(from)));
@@ -1453,7 +1490,8 @@ public class NetParser extends GenericParser {
      * @param block the pre-parsed input.
      * @return the ring list in symbolic form.
      */
-    private static FaceListDescriptor parseFaceList(final Entry[] block) {
+    private static FaceListDescriptor parseFaceList(final Entry[] block,
+            final SpaceGroupCatalogue.Preferences prefs) {
         final Set<String> seen = new HashSet<String>();
         
         String groupName = null;
@@ -1486,14 +1524,15 @@ public class NetParser extends GenericParser {
                     throw new DataFormatException(msg + lineNr);
                 }
                 groupName = (String) row.get(0);
-                group = parseSpaceGroupName(groupName);
+                group = parseSpaceGroupName(groupName, prefs);
                 if (group == null) {
                     final String msg = "Space group \"" + groupName
                             + "\" not recognized at line ";
                     throw new DataFormatException(msg + lineNr);
                 }
                 dim = group.getDimension();
-                groupName = SpaceGroupCatalogue.listedName(dim, groupName);
+                groupName =
+                    SpaceGroupCatalogue.listedName(dim, groupName, prefs);
                 ops.addAll(group.getOperators());
             } else if (key.equals("cell")) {
                 if (seen.contains(key)) {
@@ -1566,7 +1605,7 @@ public class NetParser extends GenericParser {
         if (group == null) {
             warnings.add("No space group given - assuming P1");
             groupName = "P1";
-            group = parseSpaceGroupName(groupName);
+            group = parseSpaceGroupName(groupName, prefs);
             dim = group.getDimension();
             ops.addAll(group.getOperators());
         }
@@ -1793,7 +1832,12 @@ public class NetParser extends GenericParser {
     }
     
     public static FaceListDescriptor parseFaceList(final Block block) {
-    	return parseFaceList(block.getEntries());
+    	return parseFaceList(block, SpaceGroupCatalogue.Preferences.DEFAULT);
+    }
+    
+    public static FaceListDescriptor parseFaceList(final Block block,
+            final SpaceGroupCatalogue.Preferences prefs) {
+        return parseFaceList(block.getEntries(), prefs);
     }
     
     /**
@@ -1897,6 +1941,67 @@ public class NetParser extends GenericParser {
         return null;
     }
 
+    /**
+     * Finds the node and shift associated to a point position, using a cell
+     * list to narrow down the search. The result is the same as for
+     * {@link #lookup(Point, Map, double)} with the keys in the given order.
+     * 
+     * @param pos the position to look up.
+     * @param nodes the nodes in the order they were given to the cell list.
+     * @param nodeToPos maps nodes to positions.
+     * @param cells a cell list containing the node positions.
+     * @param precision how close must points be to considered equal.
+     * 
+     * @return the (node, shift) pair found or else null.
+     */
+    private static Pair<INode, Vector> lookup(
+            final Point pos,
+            final List<INode> nodes,
+            final Map<INode, Point> nodeToPos,
+            final PeriodicCellList cells,
+            final double precision)
+    {
+        final int d = pos.getDimension();
+        final int found[] = new int[] { nodes.size() };
+        cells.pointsNear(asDoubles(pos), precision * Math.sqrt(d),
+                new PeriodicCellList.Visitor() {
+            public void visit(final int i, final int j, final int shift[],
+                    final double dist2) {
+                if (j < found[0]
+                        && distModZ(pos, nodeToPos.get(nodes.get(j)))
+                        <= precision) {
+                    found[0] = j;
+                }
+            }
+        });
+        if (found[0] == nodes.size()) {
+            return null;
+        }
+        final INode v = nodes.get(found[0]);
+        final Vector diff = (Vector) pos.minus(nodeToPos.get(v));
+        final int s[] = new int[d];
+        for (int i = 0; i < d; ++i) {
+            final double x = ((Real) diff.get(i)).doubleValue();
+            s[i] = (int) Math.round(x);
+        }
+        return new Pair<INode, Vector>(v, new Vector(s));
+    }
+
+    /**
+     * Converts the coordinates of a point into doubles.
+     * 
+     * @param p the point.
+     * @return the coordinates as doubles.
+     */
+    private static double[] asDoubles(final Point p) {
+        final int d = p.getDimension();
+        final double result[] = new double[d];
+        for (int i = 0; i < d; ++i) {
+            result[i] = ((Real) p.get(i)).doubleValue();
+        }
+        return result;
+    }
+
     /**
      * Constructs a gram matrix for the edge vectors of a unit cell which is specified by
      * its cell parameters as according to crystallographic conventions.
@@ -18,8 +18,7 @@
 package org.gavrog.joss.tilings;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -30,10 +29,10 @@ import java.util.Set;
 import org.gavrog.box.collections.Iterators;
 import org.gavrog.box.collections.Pair;
 import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.numbers.IArithmetic;
 import org.gavrog.jane.numbers.Real;
+import org.gavrog.jane.numbers.Whole;
 import org.gavrog.joss.dsyms.basic.DSymbol;
-import org.gavrog.joss.dsyms.basic.DelaneySymbol;
-import org.gavrog.joss.dsyms.basic.DynamicDSymbol;
 import org.gavrog.joss.dsyms.basic.IndexList;
 import org.gavrog.joss.dsyms.derived.DSCover;
 import org.gavrog.joss.geometry.CoordinateChange;
@@ -48,104 +47,164 @@ import org.gavrog.joss.pgraphs.io.NetParser.FaceListDescriptor;
 
 /**
  * Implements a periodic face set meant to define a tiling.
+ *
+ * The Delaney symbol is built directly in array form. Faces and edges are
+ * encoded as tuples of integers and looked up in hash-indexed tables, and the
+ * face incidences at each edge are grouped and ordered on primitive arrays,
+ * so that the construction takes time linear in the size of the input.
  */
 public class FaceList {
 	final private static boolean DEBUG = false;
 	
 	/**
-	 * Hashable class for edges in the tiling to be constructed.
+	 * Assigns consecutive numbers to tuples of integers of arbitrary length,
+	 * using open addressing with linear probing.
 	 */
-	private static class Edge implements Comparable<Edge> {
-		final public int source;
-		final public int target;
-		final public Vector shift;
-		
-		public Edge(final int source, final int target, final Vector shift) {
-			if (source < target || (source == target && shift.isNonNegative())) {
-				this.source = source;
-				this.target = target;
-				this.shift = shift;
-			} else {
-				this.source = target;
-				this.target = source;
-				this.shift = (Vector) shift.negative();
-			}
-		}
-		
-		public int hashCode() {
-			return ((source * 37) + target * 127) + shift.hashCode();
-		}
-		
-		public boolean equals(final Object other) {
-			final Edge e = (Edge) other;
-			return source == e.source && target == e.target
-					&& shift.equals(e.shift);
-		}
-		
-        public int compareTo(final Edge other) {
-        	if (this.source != other.source) {
-        		return this.source - other.source;
-        	}
-        	if (this.target != other.target) {
-        		return this.target - other.target;
-        	}
-        	return this.shift.compareTo(other.shift);
-        }
-        
-		public String toString() {
-			return "(" + source + "," + target + "," + shift + ")";
-		}
+	private static class TupleIndex {
+	    private int data[] = new int[64];
+	    private int starts[] = new int[17];
+	    private int size = 0;
+	    private int table[];
+	    private int mask;
+	    
+	    public TupleIndex(final int expected) {
+	        int capacity = 16;
+	        while (capacity < 2 * expected) {
+	            capacity *= 2;
+	        }
+	        this.table = new int[capacity];
+	        this.mask = capacity - 1;
+	    }
+	    
+	    private static int hash(final int tuple[], final int length) {
+	        int h = length;
+	        for (int i = 0; i < length; ++i) {
+	            h = h * 31 + tuple[i];
+	        }
+	        h ^= h >>> 16;
+	        h *= 0x85ebca6b;
+	        h ^= h >>> 13;
+	        return h;
+	    }
+	    
+	    private boolean matches(final int id, final int tuple[],
+	            final int length) {
+	        final int start = this.starts[id];
+	        if (this.starts[id + 1] - start != length) {
+	            return false;
+	        }
+	        for (int i = 0; i < length; ++i) {
+	            if (this.data[start + i] != tuple[i]) {
+	                return false;
+	            }
+	        }
+	        return true;
+	    }
+	    
+	    /**
+	     * Looks up a tuple, adding it if necessary.
+	     * 
+	     * @param tuple holds the tuple entries.
+	     * @param length the length of the tuple.
+	     * @return the number assigned to the tuple.
+	     */
+	    public int index(final int tuple[], final int length) {
+	        int slot = hash(tuple, length) & this.mask;
+	        while (this.table[slot] != 0) {
+	            final int id = this.table[slot] - 1;
+	            if (matches(id, tuple, length)) {
+	                return id;
+	            }
+	            slot = (slot + 1) & this.mask;
+	        }
+	        
+	        final int start = this.starts[this.size];
+	        if (start + length > this.data.length) {
+	            this.data = Arrays.copyOf(this.data,
+	                    Math.max(start + length, 2 * this.data.length));
+	        }
+	        if (this.size + 2 > this.starts.length) {
+	            this.starts = Arrays.copyOf(this.starts, 2 * this.starts.length);
+	        }
+	        System.arraycopy(tuple, 0, this.data, start, length);
+	        this.starts[this.size + 1] = start + length;
+	        this.table[slot] = ++this.size;
+	        
+	        if (2 * this.size > this.table.length) {
+	            rehash();
+	        }
+	        return this.size - 1;
+	    }
+	    
+	    private void rehash() {
+	        this.table = new int[2 * this.table.length];
+	        this.mask = this.table.length - 1;
+	        int tuple[] = new int[16];
+	        for (int id = 0; id < this.size; ++id) {
+	            final int start = this.starts[id];
+	            final int length = this.starts[id + 1] - start;
+	            if (length > tuple.length) {
+	                tuple = new int[length];
+	            }
+	            System.arraycopy(this.data, start, tuple, 0, length);
+	            int slot = hash(tuple, length) & this.mask;
+	            while (this.table[slot] != 0) {
+	                slot = (slot + 1) & this.mask;
+	            }
+	            this.table[slot] = id + 1;
+	        }
+	    }
+	    
+	    /**
+	     * @param id the number of a tuple.
+	     * @param i a position.
+	     * @return the entry at the given position in that tuple.
+	     */
+	    public int get(final int id, final int i) {
+	        return this.data[this.starts[id] + i];
+	    }
+	    
+	    public int size() {
+	        return this.size;
+	    }
 	}
 	
-	private static class Incidence implements Comparable<Incidence> {
-		final public int faceIndex;
-		final public int edgeIndex;
-		final public boolean reverse;
-        final public double angle;
-		
-		public Incidence(
-				final int faceIndex, final int edgeIndex, final boolean rev,
-				final double angle) {
-			this.faceIndex = faceIndex;
-			this.edgeIndex = edgeIndex;
-			this.reverse = rev;
-            this.angle = angle;
-		}
-        
-        public Incidence(
-				final int faceIndex, final int edgeIndex, final boolean rev) {
-            this(faceIndex, edgeIndex, rev, 0.0);
-        }
-        
-        public Incidence(final Incidence source, final double angle) {
-            this(source.faceIndex, source.edgeIndex, source.reverse, angle);
-        }
-
-		public int compareTo(final Incidence other) {
-			if (this.angle < other.angle) {
-				return -1;
-			} else if (this.angle > other.angle) {
-				return 1;
-			}
-			if (this.faceIndex != other.faceIndex) {
-				return this.faceIndex - other.faceIndex;
-			}
-			if (this.edgeIndex != other.edgeIndex) {
-				return this.edgeIndex - other.edgeIndex;
-			}
-			if (!this.reverse && other.reverse) {
-				return -1;
-			} else if (this.reverse && !other.reverse) {
-				return 1;
-			} else {
-				return 0;
-			}
-		}
-        
-        public String toString() {
-        	return "(" + faceIndex + "," + edgeIndex + "," + reverse + ","
-					+ angle + ")";
-        }
+	/**
+	 * The face incidences at all edges, grouped by edge. The incidences at
+	 * the edge with number k are found at positions first[k] to
+	 * first[k+1]-1 of the array order, in the order they were added.
+	 */
+	private static class EdgeIncidences {
+	    final public int first[];
+	    final public int order[];
+	    final public int face[];
+	    final public int position[];
+	    final public boolean reverse[];
+	    
+	    public EdgeIncidences(
+	            final int nrEdges,
+	            final int edge[],
+	            final int face[],
+	            final int position[],
+	            final boolean reverse[],
+	            final int count)
+	    {
+	        this.face = face;
+	        this.position = position;
+	        this.reverse = reverse;
+	        this.first = new int[nrEdges + 1];
+	        for (int k = 0; k < count; ++k) {
+	            ++this.first[edge[k] + 1];
+	        }
+	        for (int e = 0; e < nrEdges; ++e) {
+	            this.first[e + 1] += this.first[e];
+	        }
+	        final int next[] = Arrays.copyOf(this.first, nrEdges);
+	        this.order = new int[count];
+	        for (int k = 0; k < count; ++k) {
+	            this.order[next[edge[k]]++] = k;
+	        }
+	    }
 	}
 	
 	private static class Thing {
@@ -174,8 +233,6 @@ public class FaceList {
 	}
 	
     final private List<Face> faces;
-    final private List<List<Pair<Face, Vector>>> tiles;
-    final private Map<Face, List<Pair<Integer, Vector>>> tilesAtFace;
     final private Map<Integer, Point> indexToPos;
     final private int dim;
     final private DSymbol ds;
@@ -195,48 +252,77 @@ public class FaceList {
             throw new IllegalArgumentException("no data given");
         }
         
+        this.faces = new ArrayList<Face>();
+        final int tileFaces[][];
+        final int tileShifts[][];
+        final int faceTiles[];
+        final int faceTileShifts[];
         if (input.get(0) instanceof List) {
-            this.tiles = new ArrayList<List<Pair<Face, Vector>>>();
-            this.tilesAtFace = new HashMap<Face, List<Pair<Integer, Vector>>>();
+            // --- collect the distinct faces and their incident tiles
+            final TupleIndex faceIndex = new TupleIndex(input.size());
+            int counts[] = new int[16];
+            tileFaces = new int[input.size()][];
+            tileShifts = new int[input.size()][];
+            int buffer[] = new int[16];
             for (int i = 0; i < input.size(); ++i) {
                 @SuppressWarnings("unchecked")
 				final List<Pair<Face, Vector>> tile =
                 		(List<Pair<Face, Vector>>) input.get(i);
-                final List<Pair<Face, Vector>> newTile =
-                		new ArrayList<Pair<Face, Vector>>();
-                for (final Pair<Face, Vector> entry: tile) {
+                tileFaces[i] = new int[tile.size()];
+                tileShifts[i] = new int[3 * tile.size()];
+                for (int m = 0; m < tile.size(); ++m) {
+                    final Pair<Face, Vector> entry = tile.get(m);
                     final Face face = entry.getFirst();
                     final Pair<Face, Vector> normal =
                     		NetParser.normalizedFace(face);
                     final Vector shift =
                     		(Vector) entry.getSecond().plus(normal.getSecond());
-                    if (!this.tilesAtFace.containsKey(face)) {
-                        this.tilesAtFace.put(face,
-                        		new ArrayList<Pair<Integer, Vector>>());
+                    final int length = 1 + 4 * face.size();
+                    if (buffer.length < length) {
+                        buffer = new int[2 * length];
+                    }
+                    encode(face, buffer);
+                    final int f = faceIndex.index(buffer, length);
+                    if (f == this.faces.size()) {
+                        this.faces.add(face);
+                    }
+                    if (f >= counts.length) {
+                        counts = Arrays.copyOf(counts, 2 * counts.length);
+                    }
+                    ++counts[f];
+                    tileFaces[i][m] = f;
+                    for (int j = 0; j < 3; ++j) {
+                        tileShifts[i][3 * m + j] = coordinate(shift, j);
                     }
-                    this.tilesAtFace.get(face).add(
-                    		new Pair<Integer, Vector>(i, shift));
-                    newTile.add(new Pair<Face, Vector>(face, shift));
                 }
-                this.tiles.add(newTile);
             }
+            
             // --- make sure each face is in exactly two tiles
-            for (final List<Pair<Integer, Vector>> tlist:
-            	this.tilesAtFace.values())
-            {
-            	final int n = tlist.size();
+            for (int f = 0; f < this.faces.size(); ++f) {
+            	final int n = counts[f];
             	if (n != 2) {
             		throw new IllegalArgumentException("Face incident to " + n
 							+ " tile" + (n == 1 ? "" : "s") + ".");
             	}
             }
             
-            this.faces = new ArrayList<Face>();
-            this.faces.addAll(this.tilesAtFace.keySet());
+            faceTiles = new int[2 * this.faces.size()];
+            faceTileShifts = new int[6 * this.faces.size()];
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < tileFaces.length; ++i) {
+                for (int m = 0; m < tileFaces[i].length; ++m) {
+                    final int f = tileFaces[i][m];
+                    final int t = 2 * f + counts[f]++;
+                    faceTiles[t] = i;
+                    System.arraycopy(tileShifts[i], 3 * m,
+                            faceTileShifts, 3 * t, 3);
+                }
+            }
         } else {
-            this.tiles = null;
-            this.tilesAtFace = null;
-            this.faces = new ArrayList<Face>();
+            tileFaces = null;
+            tileShifts = null;
+            faceTiles = null;
+            faceTileShifts = null;
             for (final Object x: input)
             	this.faces.add((Face) x);
         }
@@ -252,67 +338,61 @@ public class FaceList {
         
         this.indexToPos = indexToPosition;
         
-        // --- initialize the intermediate symbol
-        final Map<Face, List<Integer>> faceElements =
-        		new HashMap<Face, List<Integer>>();
-        final DynamicDSymbol ds = new DynamicDSymbol(this.dim);
-        for (final Face f: this.faces) {
-            final int n = f.size();
+        // --- lay out the elements: face f owns offset[f] + 1 to offset[f+1]
+        final int nrFaces = this.faces.size();
+        final int offset[] = new int[nrFaces + 1];
+        for (int f = 0; f < nrFaces; ++f) {
+            offset[f + 1] = offset[f] + 4 * this.faces.get(f).size();
+        }
+        final int size = offset[nrFaces];
+        final int op[][] = new int[this.dim + 1][size + 1];
+        final int v[][] = new int[this.dim][size + 1];
+        
+        // --- set the operations within faces
+        for (int f = 0; f < nrFaces; ++f) {
+            final int n = this.faces.get(f).size();
             final int _2n = 2 * n;
-            final List<Integer> elms = ds.grow(4 * n);
-            faceElements.put(f, elms);
+            final int base = offset[f] + 1;
             for (int i = 0; i < 4 * n; i += 2) {
-                ds.redefineOp(0, elms.get(i), elms.get(i + 1));
+                setOp(op, 0, base + i, base + i + 1);
             }
             for (int i = 1; i < _2n; i += 2) {
                 final int i1 = (i + 1) % _2n;
-                ds.redefineOp(1, elms.get(i), elms.get(i1));
-                ds.redefineOp(1, elms.get(i + _2n), elms.get(i1 + _2n));
+                setOp(op, 1, base + i, base + i1);
+                setOp(op, 1, base + i + _2n, base + i1 + _2n);
             }
             for (int i = 0; i < _2n; ++i) {
-                ds.redefineOp(3, elms.get(i), elms.get(i + _2n));
+                setOp(op, 3, base + i, base + i + _2n);
             }
         }
         
-        if (DEBUG) {
-        	System.err.println("Symbol without 2-ops: " + new DSymbol(ds));
-        }
-        
-        if (this.tiles == null) {
-            set2opPlainMode(ds, faceElements);
+        if (tileFaces == null) {
+            set2opPlainMode(op, offset);
         } else {
-        	set2opTileMode(ds, faceElements);
-        }
-        
-        if (DEBUG) {
-        	System.err.println("Symbol with 2-ops: " + new DSymbol(ds));
+        	set2opTileMode(op, offset, tileFaces, tileShifts, faceTiles,
+        	        faceTileShifts);
         }
         
         // --- set all v values to 1
         for (int i = 0; i < dim; ++i) {
-        	for (final int D: ds.elements()) {
-        		if (!ds.definesV(i, i + 1, D)) {
-					ds.redefineV(i, i + 1, D, 1);
-				}
-        	}
+            Arrays.fill(v[i], 1, size + 1, 1);
         }
         
+        // --- do some checks
+        assertCompleteness(op);
+        this.ds = new DSymbol(op, v);
+        
         if (DEBUG) {
-        	System.err.println("Completed symbol: " + new DSymbol(ds));
+        	System.err.println("Completed symbol: " + this.ds);
         }
         
-        // --- do some checks
-        assertCompleteness(ds);
-        if (!ds.isConnected()) {
+        if (!this.ds.isConnected()) {
         	throw new RuntimeException("Built non-connected symbol.");
-        } else if (!ds.isLocallyEuclidean3D()) {
-        	throw new RuntimeException("Built non-manifold symbol.");
-        } else if (!ds.isLocallyEuclidean3D()) {
+        } else if (!this.ds.isLocallyEuclidean3D()) {
         	throw new RuntimeException("Built non-manifold symbol.");
         }
         
-        // --- freeze the symbol, make a tiling object, and extract the cover
-        this.ds = new DSymbol(ds);
+        // --- make a tiling object and extract the cover
         final Tiling tiling = new Tiling(this.ds);
         this.cover = tiling.getCover();
         
@@ -322,12 +402,12 @@ public class FaceList {
 
         final Pair<List<Pair<Vector, Vector>>,
                    Map<Integer, Pair<Vector, Vector>>>
-        result = shiftCorrespondences(faces, tiling, faceElements);
+        result = shiftCorrespondences(faces, tiling, offset);
 
         final List<Pair<Vector, Vector>> translations = result.getFirst();
         final Matrix basis = tilingBasis(translations);
-        final Operator op = Operator.fromLinear(basis);
-        final CoordinateChange cc = new CoordinateChange(op);
+        final Operator opr = Operator.fromLinear(basis);
+        final CoordinateChange cc = new CoordinateChange(opr);
         final Matrix inv = (Matrix) basis.inverse();
 
         if (descriptor.cellGramMatrix == null)
@@ -339,18 +419,18 @@ public class FaceList {
         
         final Map<Integer, Pair<Vector, Vector>> shifts = result.getSecond();
         
-        for (final Face f: this.faces)
+        for (int fi = 0; fi < nrFaces; ++fi)
         {
+            final Face f = this.faces.get(fi);
             final int n = f.size();
-            final List<Integer> chambers = faceElements.get(f);
             for (int i = 0; i < 4 * n; ++i)
             {
                 final int k = (i % (2 * n) + 1) / 2 % n;
-                final int D = chambers.get(i);
+                final int D = offset[fi] + 1 + i;
                 assert(this.cover.image(D) == D);
 
-                final INode v = skel.nodeForChamber(D);
-                if (D == skel.chamberAtNode(v))
+                final INode node = skel.nodeForChamber(D);
+                if (D == skel.chamberAtNode(node))
                 {
                     final Point p0 = indexToPosition.get(f.vertex(k));
                     final Vector u = shifts.get(D).getFirst();
@@ -365,6 +445,50 @@ public class FaceList {
         }
 	}
 	
+    /**
+     * Sets an operation in an array-based symbol, first undefining any
+     * previous neighbors of the two elements.
+     */
+    private static void setOp(final int op[][], final int i, final int D,
+            final int E) {
+        if (op[i][D] != 0) {
+            op[i][op[i][D]] = 0;
+        }
+        if (op[i][E] != 0) {
+            op[i][op[i][E]] = 0;
+        }
+        op[i][D] = E;
+        op[i][E] = D;
+    }
+    
+    /**
+     * @param s a vector with integer coordinates.
+     * @param j a coordinate index.
+     * @return the j-th coordinate of s as an int.
+     */
+    private static int coordinate(final Vector s, final int j) {
+        final IArithmetic x = s.get(j);
+        if (!(x instanceof Whole)) {
+            throw new IllegalArgumentException("shifts must be integral");
+        }
+        return ((Whole) x).intValue();
+    }
+    
+    /**
+     * Writes the size of a face, followed by the vertex and shift coordinates
+     * for each of its corners, into an array.
+     */
+    private static void encode(final Face f, final int target[]) {
+        final int n = f.size();
+        target[0] = n;
+        for (int i = 0; i < n; ++i) {
+            target[4 * i + 1] = f.vertex(i);
+            for (int j = 0; j < 3; ++j) {
+                target[4 * i + 2 + j] = coordinate(f.shift(i), j);
+            }
+        }
+    }
+    
     private Matrix tilingBasis(final List<Pair<Vector, Vector>> correspondences) 
     {
         final int m = correspondences.size();
@@ -400,7 +524,7 @@ public class FaceList {
     /**
      * @param faces
      * @param tiling
-     * @param faceElements
+     * @param offset
      * @return
      */
     private Pair<List<Pair<Vector, Vector>>,
@@ -408,9 +532,9 @@ public class FaceList {
     shiftCorrespondences(
             final List<Face> faces,
             final Tiling tiling,
-            final Map<Face, List<Integer>> faceElements)
+            final int offset[])
     {
-        final Map<Integer, Vector> shifts = chamberShifts(faces, faceElements);
+        final Map<Integer, Vector> shifts = chamberShifts(faces, offset);
 
         final DSCover<Integer> cover = tiling.getCover();
         final Map<Integer, Integer> ori = cover.partialOrientation();
@@ -485,27 +609,28 @@ public class FaceList {
 
     /**
      * @param faces
-     * @param faceElements
+     * @param offset
      * @return
      */
     private Map<Integer, Vector> chamberShifts(
             final List<Face> faces,
-            final Map<Face, List<Integer>> faceElements) {
+            final int offset[]) {
         final Map<Integer, Vector> shifts = new HashMap<Integer, Vector>();
 
-        for (final Face f: faces)
+        for (int fi = 0; fi < faces.size(); ++fi)
         {
+            final Face f = faces.get(fi);
             final int n = f.size();
-            final List<Integer> chambers = faceElements.get(f);
+            final int base = offset[fi] + 1;
 
             for (int i = 0; i < 2 * n; i += 2)
             {
                 final int k = i / 2;
                 final Vector v = f.shift(k);
-                final int D1 = chambers.get(i);
-                final int D2 = chambers.get((i + 2 * n - 1) % (2 * n));
-                final int D3 = chambers.get(i + 2 * n);
-                final int D4 = chambers.get((i + 2 * n - 1) % (2 * n) + 2 * n);
+                final int D1 = base + i;
+                final int D2 = base + (i + 2 * n - 1) % (2 * n);
+                final int D3 = base + i + 2 * n;
+                final int D4 = base + (i + 2 * n - 1) % (2 * n) + 2 * n;
 
                 shifts.put(D1, v);
                 shifts.put(D2, v);
@@ -567,245 +692,326 @@ public class FaceList {
         return normals;
     }
     
-	private static Map<?, List<Incidence>> collectEdges(
-			final List<?> faces,
-			final boolean useShifts)
-	{
-		final Map<Object, List<Incidence>> facesAtEdge =
-				new HashMap<Object, List<Incidence>>();
-		for (int i = 0; i < faces.size(); ++i) {
-            final Face f;
-            final Vector fShift;
-            if (useShifts) {
-                @SuppressWarnings("unchecked")
-				final Pair<Face, Vector> entry =
-                		(Pair<Face, Vector>) faces.get(i);
-                f = entry.getFirst();
-                fShift = entry.getSecond();
-            } else {
-                f = (Face) faces.get(i);
-                fShift = null;
+    /**
+     * Encodes the edge from the j-th to the next corner of a face as the
+     * source and target vertex and the shift between them, reversed if
+     * necessary so that the result does not depend on the direction.
+     * 
+     * @param f the face.
+     * @param j the position of the edge on the face.
+     * @param target the array to write the five entries to.
+     * @param at the position of the first entry.
+     * @return true if the encoded edge runs against the face.
+     */
+    private static boolean encodeEdge(
+            final Face f,
+            final int j,
+            final int target[],
+            final int at)
+    {
+        final int j1 = (j + 1) % f.size();
+        final int v = f.vertex(j);
+        final int w = f.vertex(j1);
+        int sign = 0;
+        for (int i = 0; i < 3; ++i) {
+            final int s = coordinate(f.shift(j1), i) - coordinate(f.shift(j), i);
+            target[at + 2 + i] = s;
+            if (sign == 0) {
+                sign = Integer.signum(s);
             }
-			final int n = f.size();
-			for (int j = 0; j < n; ++j) {
-				final int j1 = (j + 1) % n;
-				final int v = f.vertex(j);
-				final int w = f.vertex(j1);
-				final Vector s = (Vector) f.shift(j1).minus(f.shift(j));
-				final Edge e = new Edge(v, w, s);
-				final boolean rev = (e.source != v || !e.shift.equals(s));
-                final Object key;
-                if (useShifts) {
-                    final Vector vShift = rev ? f.shift(j1) : f.shift(j);
-                    key = new Pair<Edge, Vector>(e,
-                    		(Vector) fShift.plus(vShift));
-                } else {
-                    key = e;
-                }
-				if (!facesAtEdge.containsKey(key)) {
-					facesAtEdge.put(key, new ArrayList<Incidence>());
-				}
-				facesAtEdge.get(key).add(new Incidence(i, j, rev));
-			}
-		}
-		
-		if (DEBUG) {
-			System.err.println("Edge to incident faces mapping:");
-            final List<Object> edges = new ArrayList<Object>();
-            edges.addAll(facesAtEdge.keySet());
-            Collections.sort(edges, new Comparator<Object>() {
-				public int compare(final Object arg0, final Object arg1) {
-					if (useShifts) {
-						@SuppressWarnings("unchecked")
-						final Pair<Edge, Vector> p0 = (Pair<Edge, Vector>) arg0;
-						@SuppressWarnings("unchecked")
-						final Pair<Edge, Vector> p1 = (Pair<Edge, Vector>) arg1;
-						if (p0.getFirst().equals(p1.getFirst()))
-							return p0.getSecond().compareTo(p1.getSecond());
-						else
-							return p0.getFirst().compareTo(p1.getFirst());
-					} else 
-						return ((Edge) arg0).compareTo((Edge) arg1);
-				}});
-			for (final Object e: edges) {
-				final List<Incidence> inc = facesAtEdge.get(e);
-				System.err.println("  " + inc.size() + " at edge " + e + ":");
-				for (int i = 0; i < inc.size(); ++i) {
-					System.err.println("    " + inc.get(i));
-				}
-			}
-		}
-		return facesAtEdge;
-	}
-
-    private void set2opPlainMode(
-    		final DynamicDSymbol ds,
-    		final Map<Face, List<Integer>> faceElms)
+        }
+        final boolean rev = v > w || (v == w && sign < 0);
+        target[at] = rev ? w : v;
+        target[at + 1] = rev ? v : w;
+        if (rev) {
+            for (int i = 0; i < 3; ++i) {
+                target[at + 2 + i] = -target[at + 2 + i];
+            }
+        }
+        return rev;
+    }
+    
+    private static double[] doubleCoordinates(final Point p) {
+        final double result[] = new double[3];
+        for (int i = 0; i < 3; ++i) {
+            result[i] = ((Real) p.get(i)).doubleValue();
+        }
+        return result;
+    }
+    
+    /**
+     * Compares two face incidences at an edge, first by angle, then by face,
+     * then by edge position, then by direction.
+     */
+    private static int compareIncidences(
+            final EdgeIncidences inc,
+            final double angle[],
+            final int k1,
+            final int k2)
+    {
+        if (angle[k1] != angle[k2]) {
+            return angle[k1] < angle[k2] ? -1 : 1;
+        }
+        if (inc.face[k1] != inc.face[k2]) {
+            return inc.face[k1] - inc.face[k2];
+        }
+        if (inc.position[k1] != inc.position[k2]) {
+            return inc.position[k1] - inc.position[k2];
+        }
+        if (inc.reverse[k1] != inc.reverse[k2]) {
+            return inc.reverse[k1] ? 1 : -1;
+        }
+        return 0;
+    }
+    
+    private void set2opPlainMode(final int op[][], final int offset[])
     {
+        final int nrFaces = this.faces.size();
+        
         // --- determine sector normals for each face
-        final Map<Face, Vector[]> normals = new HashMap<Face, Vector[]>();
-        for (final Face f: this.faces) {
-            normals.put(f, sectorNormals(f, this.indexToPos));
+        final double normals[][] = new double[nrFaces][];
+        int count = 0;
+        for (int f = 0; f < nrFaces; ++f) {
+            final Vector nv[] = sectorNormals(faces.get(f), this.indexToPos);
+            normals[f] = new double[3 * nv.length];
+            for (int j = 0; j < nv.length; ++j) {
+                for (int i = 0; i < 3; ++i) {
+                    normals[f][3 * j + i] =
+                            ((Real) nv[j].get(i)).doubleValue();
+                }
+            }
+            count += nv.length;
+        }
+        
+        // --- group face incidences by edge
+        final TupleIndex edgeIndex = new TupleIndex(count / 2);
+        final int edge[] = new int[count];
+        final int face[] = new int[count];
+        final int position[] = new int[count];
+        final boolean reverse[] = new boolean[count];
+        final int key[] = new int[5];
+        int k = 0;
+        for (int f = 0; f < nrFaces; ++f) {
+            for (int j = 0; j < faces.get(f).size(); ++j) {
+                reverse[k] = encodeEdge(faces.get(f), j, key, 0);
+                edge[k] = edgeIndex.index(key, 5);
+                face[k] = f;
+                position[k] = j;
+                ++k;
+            }
+        }
+        final EdgeIncidences inc = new EdgeIncidences(
+                edgeIndex.size(), edge, face, position, reverse, count);
+        
+        final Map<Integer, double[]> pos = new HashMap<Integer, double[]>();
+        for (final Map.Entry<Integer, Point> entry: this.indexToPos.entrySet()) {
+            pos.put(entry.getKey(), doubleCoordinates(entry.getValue()));
         }
         
         // --- set 2 operator according to cyclic orders of faces around edges
-        final Map<?, List<Incidence>> facesAtEdge =
-        		collectEdges(this.faces, false);
-
-        for (final Object obj: facesAtEdge.keySet()) {
-        	final Edge e = (Edge) obj;
-            final Point p = this.indexToPos.get(e.source);
-            final Point q = this.indexToPos.get(e.target);
-            final Vector a = Vector.unit((Vector) q.plus(e.shift).minus(p));
+        final double angle[] = new double[count];
+        final int order[] = inc.order;
+        for (int e = 0; e < edgeIndex.size(); ++e) {
+            final int lo = inc.first[e];
+            final int hi = inc.first[e + 1];
+            final double p[] = pos.get(edgeIndex.get(e, 0));
+            final double q[] = pos.get(edgeIndex.get(e, 1));
+            final double a[] = new double[3];
+            double len = 0.0;
+            for (int i = 0; i < 3; ++i) {
+                a[i] = q[i] + edgeIndex.get(e, 2 + i) - p[i];
+                len += a[i] * a[i];
+            }
+            len = Math.sqrt(len);
+            for (int i = 0; i < 3; ++i) {
+                a[i] /= len;
+            }
             
-            // --- augment all incidences at this edge with their angles
-            final List<Incidence> incidences = facesAtEdge.get(e);
-            Vector n0 = null;
-            for (int i = 0; i < incidences.size(); ++i) {
-                final Incidence inc = incidences.get(i);
-                Vector normal =
-                		(normals.get(faces.get(inc.faceIndex)))[inc.edgeIndex];
-                if (inc.reverse) {
-                    normal = (Vector) normal.negative();
+            // --- compute the angles of all incidences at this edge
+            final double n0[] = new double[3];
+            final double normal[] = new double[3];
+            for (int r = lo; r < hi; ++r) {
+                final int kk = order[r];
+                final double sgn = reverse[kk] ? -1.0 : 1.0;
+                for (int i = 0; i < 3; ++i) {
+                    normal[i] = sgn * normals[face[kk]][3 * position[kk] + i];
                 }
-                double angle;
-                if (i == 0) {
-                    n0 = normal;
-                    angle = 0.0;
+                if (r == lo) {
+                    System.arraycopy(normal, 0, n0, 0, 3);
+                    angle[kk] = 0.0;
                 } else {
-                    double x = ((Real) Vector.dot(n0, normal)).doubleValue();
+                    double x = n0[0] * normal[0] + n0[1] * normal[1]
+                            + n0[2] * normal[2];
                     x = Math.max(Math.min(x, 1.0), -1.0);
-                    angle = Math.acos(x);
-                    if (Vector.volume3D(a, n0, normal).isNegative()) {
-                        angle = 2 * Math.PI - angle;
+                    double phi = Math.acos(x);
+                    final double vol =
+                            a[0] * (n0[1] * normal[2] - n0[2] * normal[1])
+                            + a[1] * (n0[2] * normal[0] - n0[0] * normal[2])
+                            + a[2] * (n0[0] * normal[1] - n0[1] * normal[0]);
+                    if (vol < 0) {
+                        phi = 2 * Math.PI - phi;
                     }
-                }
-                incidences.set(i, new Incidence(inc, angle));
-            }
-            if (DEBUG) {
-                System.err.println("Augmented incidences at edge " + e + ":");
-                for (int i = 0; i < incidences.size(); ++i) {
-                    System.err.println("    " + incidences.get(i));
+                    angle[kk] = phi;
                 }
             }
             
             // --- sort by angle
-            Collections.sort(incidences);
-            
-            // --- top off with a copy of the first incidences
-            final Incidence inc = incidences.get(0);
-            incidences.add(new Incidence(inc, inc.angle + 2 * Math.PI));
-            if (DEBUG) {
-                System.err.println("Sorted incidences at edge " + e + ":");
-                for (int i = 0; i < incidences.size(); ++i) {
-                    System.err.println("    " + incidences.get(i));
+            for (int r = lo + 1; r < hi; ++r) {
+                final int kk = order[r];
+                int s = r;
+                while (s > lo
+                        && compareIncidences(inc, angle, order[s - 1], kk) > 0)
+                {
+                    order[s] = order[s - 1];
+                    --s;
                 }
+                order[s] = kk;
             }
             
             // --- now set all the connections around this edge
-            for (int i = 0; i < incidences.size() - 1; ++i) {
-                final Incidence inc1 = incidences.get(i);
-                final Incidence inc2 = incidences.get(i + 1);
-                if (inc2.angle - inc1.angle < 1e-3) {
+            for (int r = lo; r < hi; ++r) {
+                final int k1 = order[r];
+                final int k2 = r + 1 < hi ? order[r + 1] : order[lo];
+                final double angle2 =
+                        r + 1 < hi ? angle[k2] : angle[k2] + 2 * Math.PI;
+                if (angle2 - angle[k1] < 1e-3) {
                     throw new RuntimeException("tiny dihedral angle");
                 }
-                final List<Integer> elms1 =
-                		faceElms.get(faces.get(inc1.faceIndex));
-				final List<Integer> elms2 =
-						faceElms.get(faces.get(inc2.faceIndex));
+                final int base1 = offset[face[k1]] + 1;
+                final int base2 = offset[face[k2]] + 1;
                 
                 final int A, B, C, D;
-                if (inc1.reverse) {
-                    final int k =
-                    	2 * (inc1.edgeIndex + faces.get(inc1.faceIndex).size());
-                    A = elms1.get(k + 1);
-                    B = elms1.get(k);
+                if (reverse[k1]) {
+                    final int x =
+                        2 * (position[k1] + faces.get(face[k1]).size());
+                    A = base1 + x + 1;
+                    B = base1 + x;
                 } else {
-                    final int k = 2 * inc1.edgeIndex;
-                    A = elms1.get(k);
-                    B = elms1.get(k + 1);
+                    final int x = 2 * position[k1];
+                    A = base1 + x;
+                    B = base1 + x + 1;
                 }
-                if (inc2.reverse) {
-                    final int k = 2 * inc2.edgeIndex;
-                    C = elms2.get(k + 1);
-                    D = elms2.get(k);
+                if (reverse[k2]) {
+                    final int x = 2 * position[k2];
+                    C = base2 + x + 1;
+                    D = base2 + x;
                 } else {
-                    final int k =
-                    	2 * (inc2.edgeIndex + faces.get(inc2.faceIndex).size());
-                    C = elms2.get(k);
-                    D = elms2.get(k + 1);
+                    final int x =
+                        2 * (position[k2] + faces.get(face[k2]).size());
+                    C = base2 + x;
+                    D = base2 + x + 1;
                 }
-                ds.redefineOp(2, A, C);
-                ds.redefineOp(2, B, D);
+                setOp(op, 2, A, C);
+                setOp(op, 2, B, D);
             }
         }
     }
     
     private void set2opTileMode(
-    		final DynamicDSymbol ds,
-    		final Map<Face, List<Integer>> faceElms)
+            final int op[][],
+            final int offset[],
+            final int tileFaces[][],
+            final int tileShifts[][],
+            final int faceTiles[],
+            final int faceTileShifts[])
     {
-        for (int i = 0; i < this.tiles.size(); ++i) {
-			final List<Pair<Face, Vector>> tile = this.tiles.get(i);
-			final Map<?, List<Incidence>> facesAtEdge =
-					collectEdges(tile, true);
-			for (final List<Incidence> flist: facesAtEdge.values()) {
-				if (flist.size() != 2) {
-					final String msg = flist.size() + " faces at an edge";
-					throw new UnsupportedOperationException(msg);
-				}
-				final int D[] = new int[2];
-                final int E[] = new int[2];
-                boolean reverse = false;
-				for (int k = 0; k <= 1; ++k) {
-					final Incidence inc = flist.get(k);
-                    final Pair<Face, Vector> p = tile.get(inc.faceIndex);
-                    final Face face = p.getFirst();
-                    final Vector shift = p.getSecond();
-                    final List<Pair<Integer, Vector>> taf =
-                    		this.tilesAtFace.get(face);
-                    final int t =
-                    		taf.indexOf(new Pair<Integer, Vector>(i, shift));
-                    final int x = 2 * (t * face.size() + inc.edgeIndex);
-                    D[k] = faceElms.get(face).get(x);
-                    E[k] = faceElms.get(face).get(x + 1);
-                    if (inc.reverse) {
-                        reverse = !reverse;
+        int count = 0;
+        for (int i = 0; i < tileFaces.length; ++i) {
+            for (final int f: tileFaces[i]) {
+                count += this.faces.get(f).size();
+            }
+        }
+        
+        // --- group face incidences by tile and edge
+        final TupleIndex edgeIndex = new TupleIndex(count / 2);
+        final int edge[] = new int[count];
+        final int tile[] = new int[count];
+        final int entry[] = new int[count];
+        final int position[] = new int[count];
+        final boolean reverse[] = new boolean[count];
+        final int key[] = new int[9];
+        int k = 0;
+        for (int i = 0; i < tileFaces.length; ++i) {
+            for (int m = 0; m < tileFaces[i].length; ++m) {
+                final Face f = this.faces.get(tileFaces[i][m]);
+                final int n = f.size();
+                for (int j = 0; j < n; ++j) {
+                    final boolean rev = encodeEdge(f, j, key, 1);
+                    final Vector vShift = f.shift(rev ? (j + 1) % n : j);
+                    key[0] = i;
+                    for (int x = 0; x < 3; ++x) {
+                        key[6 + x] = tileShifts[i][3 * m + x]
+                                + coordinate(vShift, x);
                     }
-				}
-                if (reverse) {
-                    ds.redefineOp(2, D[0], E[1]);
-                    ds.redefineOp(2, D[1], E[0]);
-                } else {
-                    ds.redefineOp(2, D[0], D[1]);
-                    ds.redefineOp(2, E[0], E[1]);
+                    edge[k] = edgeIndex.index(key, 9);
+                    tile[k] = i;
+                    entry[k] = m;
+                    position[k] = j;
+                    reverse[k] = rev;
+                    ++k;
                 }
-			}
-		}
+            }
+        }
+        final EdgeIncidences inc = new EdgeIncidences(
+                edgeIndex.size(), edge, entry, position, reverse, count);
+        
+        // --- connect the two faces at each edge of a tile
+        for (int e = 0; e < edgeIndex.size(); ++e) {
+            final int lo = inc.first[e];
+            final int n = inc.first[e + 1] - lo;
+            if (n != 2) {
+                final String msg = n + " faces at an edge";
+                throw new UnsupportedOperationException(msg);
+            }
+            final int D[] = new int[2];
+            final int E[] = new int[2];
+            boolean rev = false;
+            for (int r = 0; r <= 1; ++r) {
+                final int kk = inc.order[lo + r];
+                final int i = tile[kk];
+                final int m = entry[kk];
+                final int f = tileFaces[i][m];
+                int t = 0;
+                while (t < 2 && (faceTiles[2 * f + t] != i
+                        || !sameShift(faceTileShifts, 3 * (2 * f + t),
+                                tileShifts[i], 3 * m)))
+                {
+                    ++t;
+                }
+                final int x = 2 * (t * this.faces.get(f).size() + position[kk]);
+                D[r] = offset[f] + 1 + x;
+                E[r] = offset[f] + 2 + x;
+                if (reverse[kk]) {
+                    rev = !rev;
+                }
+            }
+            if (rev) {
+                setOp(op, 2, D[0], E[1]);
+                setOp(op, 2, D[1], E[0]);
+            } else {
+                setOp(op, 2, D[0], D[1]);
+                setOp(op, 2, E[0], E[1]);
+            }
+        }
+    }
+    
+    private static boolean sameShift(final int a[], final int i, final int b[],
+            final int j) {
+        return a[i] == b[j] && a[i + 1] == b[j + 1] && a[i + 2] == b[j + 2];
     }
     
-    private void assertCompleteness(final DelaneySymbol<Integer> ds)
+    private static void assertCompleteness(final int op[][])
     {
-        final IndexList idcs = new IndexList(ds);
-        for (final int D: ds.elements()) {
-            for (int i = 0; i < idcs.size()-1; ++i) {
-                final int ii = idcs.get(i);
-                if (!ds.definesOp(ii, D)) {
+        for (int D = 1; D < op[0].length; ++D) {
+            for (int i = 0; i < op.length; ++i) {
+                if (op[i][D] == 0) {
                 	throw new AssertionError(
-                			"op(" + ii + ", " + D + ") undefined");
-                }
-                for (int j = i+1; j < idcs.size(); ++j) {
-                    final int jj = idcs.get(j);
-                    if (!ds.definesV(ii, jj, D)) {
-                    	throw new AssertionError(
-                    			"v(" + ii + ", " + jj + ", " + D +
-                    			") undefined");
-                    }
+                			"op(" + i + ", " + D + ") undefined");
                 }
             }
         }
     }
-
+    
     public DSymbol getSymbol() {
         return ds;
     }
@@ -17,6 +17,7 @@
 package org.gavrog.joss.tilings;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -27,10 +28,11 @@ import java.util.Set;
 
 import org.gavrog.box.collections.Cache;
 import org.gavrog.box.collections.CacheMissException;
+import org.gavrog.box.collections.SharedCache;
 import org.gavrog.box.simple.Tag;
-import org.gavrog.jane.compounds.LinearAlgebra;
 import org.gavrog.jane.compounds.Matrix;
 import org.gavrog.jane.fpgroups.FreeWord;
+import org.gavrog.jane.numbers.Whole;
 import org.gavrog.joss.dsyms.basic.DSMorphism;
 import org.gavrog.joss.dsyms.basic.DSPair;
 import org.gavrog.joss.dsyms.basic.DSymbol;
@@ -51,7 +53,9 @@ import org.gavrog.joss.pgraphs.basic.Morphism;
 import org.gavrog.joss.pgraphs.basic.PeriodicGraph;
 
 /**
- * An instance of this class represents a tiling.
+ * An instance of this class represents a tiling. Derived data is computed
+ * lazily while holding the lock of the instance, so that tilings can be shared
+ * between threads.
  */
 public class Tiling {
     // --- the cache keys
@@ -66,6 +70,14 @@ public class Tiling {
     final protected static Tag TILES = new Tag();
 	final protected static Tag SYMMETRIES = new Tag();
 	final protected static Tag COVER_ORIENTATION = new Tag();
+    final protected static Tag CHAMBER_ORBITS = new Tag();
+
+    // --- the maximal number of tilings kept in the shared cache
+    final static int SHARED_CACHE_SIZE = 64;
+
+    // --- tilings by symbol invariant and element numbering
+    final private static SharedCache<List<Integer>, Tiling> sharedTilings =
+            new SharedCache<List<Integer>, Tiling>(SHARED_CACHE_SIZE);
     
     // --- cache for this instance
     final protected Cache<Tag, Object> cache = new Cache<Tag, Object>();
@@ -137,6 +149,41 @@ public class Tiling {
 		}
 	}
 
+    /**
+     * Returns a tiling for the given symbol which may be shared with other
+     * clients. Tilings, together with all the data they have derived so far,
+     * are kept in a process-wide cache keyed by the invariant of the symbol
+     * and the numbering of its elements relative to the canonical form, so
+     * that chamber numbers in the result always refer to the given symbol.
+     * 
+     * @param ds the Delaney symbol for the tiling.
+     * @return a tiling for the symbol.
+     */
+    public static Tiling shared(final DelaneySymbol<Integer> ds) {
+        if (!ds.isComplete() || !ds.isConnected()) {
+            return new Tiling(ds);
+        }
+        final List<Integer> key = new ArrayList<Integer>(ds.invariant());
+        final Map<Integer, Integer> toCanonical = ds.getMapToCanonical();
+        key.add(-1);
+        for (final int D: ds.elements()) {
+            key.add(D);
+            key.add(toCanonical.get(D));
+        }
+        try {
+            return sharedTilings.get(key);
+        } catch (CacheMissException ex) {
+            return sharedTilings.put(key, new Tiling(ds));
+        }
+    }
+
+    /**
+     * @return the process-wide cache used by {@link #shared(DelaneySymbol)}.
+     */
+    public static SharedCache<List<Integer>, Tiling> getSharedCache() {
+        return sharedTilings;
+    }
+
     /**
      * @return the original symbol.
      */
@@ -154,7 +201,7 @@ public class Tiling {
     /**
      * @return a map assigning orientations to cover chambers.
      */
-    public Map<Integer, Integer> getCoverOrientation() {
+    public synchronized Map<Integer, Integer> getCoverOrientation() {
         try {
     	    @SuppressWarnings("unchecked")
             final Map<Integer, Integer> result =
@@ -178,7 +225,7 @@ public class Tiling {
     /**
      * @return the fundamental group of the toroidal or pseudo-toroidal cover.
      */
-    public FundamentalGroup<Integer> getTranslationGroup() {
+    public synchronized FundamentalGroup<Integer> getTranslationGroup() {
         try {
             @SuppressWarnings("unchecked")
             final FundamentalGroup<Integer> result =
@@ -196,13 +243,12 @@ public class Tiling {
     /**
      * @return the generators of the translation group as vectors.
      */
-    private Vector[] getTranslationVectors() {
+    private synchronized Vector[] getTranslationVectors() {
         try {
             return (Vector[]) this.cache.get(TRANSLATION_VECTORS);
         } catch (CacheMissException ex) {
-            final Matrix N = LinearAlgebra.columnNullSpace(
-                    getTranslationGroup().getPresentation().relatorMatrix(),
-                    true);
+            final Matrix N =
+                    getTranslationGroup().getPresentation().relatorNullSpace();
             if (N.numberOfColumns() != getCover().dim()) {
                 final String msg = "could not compute translations";
                 throw new RuntimeException(msg);
@@ -214,42 +260,121 @@ public class Tiling {
     }
     
     /**
-     * @return a mapping of cover-edges to their associated translations
+     * Translations or shifts for all pairs (i, D) of an index and a cover
+     * chamber. Integer coordinates are stored in a flat array, and equal
+     * vectors are represented by a shared {@link Vector} instance.
      */
-    public Map<DSPair<Integer>, Vector> getEdgeTranslations() {
+    private static class ShiftTable {
+        final private int dim;
+        final private int stride;
+        final private long coordinates[];
+        final private Vector vectors[];
+        final private Map<List<Long>, Vector> interned =
+                new HashMap<List<Long>, Vector>();
+        private Map<DSPair<Integer>, Vector> view = null;
+
+        public ShiftTable(final int dim, final int size) {
+            this.dim = dim;
+            this.stride = size + 1;
+            this.coordinates = new long[(dim + 1) * this.stride * dim];
+            this.vectors = new Vector[(dim + 1) * this.stride];
+        }
+
+        public void set(final int i, final int D, final long v[]) {
+            final int k = i * this.stride + D;
+            System.arraycopy(v, 0, this.coordinates, k * this.dim, this.dim);
+            final List<Long> key = new ArrayList<Long>(this.dim);
+            for (final long x: v) {
+                key.add(x);
+            }
+            Vector vec = this.interned.get(key);
+            if (vec == null) {
+                final Whole w[] = new Whole[this.dim];
+                for (int j = 0; j < this.dim; ++j) {
+                    w[j] = new Whole(v[j]);
+                }
+                vec = new Vector(w);
+                this.interned.put(key, vec);
+            }
+            this.vectors[k] = vec;
+        }
+
+        public Vector get(final int i, final int D) {
+            return this.vectors[i * this.stride + D];
+        }
+
+        public long get(final int i, final int D, final int j) {
+            return this.coordinates[(i * this.stride + D) * this.dim + j];
+        }
+
+        public void get(final int i, final int D, final long target[]) {
+            System.arraycopy(this.coordinates, (i * this.stride + D) * this.dim,
+                    target, 0, this.dim);
+        }
+
+        public synchronized Map<DSPair<Integer>, Vector> asMap() {
+            if (this.view == null) {
+                final Map<DSPair<Integer>, Vector> result =
+                        new HashMap<DSPair<Integer>, Vector>();
+                for (int i = 0; i <= this.dim; ++i) {
+                    for (int D = 1; D < this.stride; ++D) {
+                        result.put(new DSPair<Integer>(i, D), get(i, D));
+                    }
+                }
+                this.view = Collections.unmodifiableMap(result);
+            }
+            return this.view;
+        }
+    }
+
+    /**
+     * @return the table of translations associated to cover edges.
+     */
+    private synchronized ShiftTable getEdgeTranslationTable() {
         try {
-            @SuppressWarnings("unchecked")
-            final Map<DSPair<Integer>, Vector> result =
-                    (Map<DSPair<Integer>, Vector>)
-                        this.cache.get(EDGE_TRANSLATIONS);
-            return result;
+            return (ShiftTable) this.cache.get(EDGE_TRANSLATIONS);
         } catch (CacheMissException ex) {
             final int dim = getCover().dim();
             final Vector[] t = getTranslationVectors();
+            final long tc[][] = new long[t.length][dim];
+            for (int k = 0; k < t.length; ++k) {
+                for (int j = 0; j < dim; ++j) {
+                    tc[k][j] = ((Whole) t[k].get(j)).longValue();
+                }
+            }
             final Map<DSPair<Integer>, FreeWord<String>> e2w =
                     getTranslationGroup().getEdgeToWord();
-            final Map<DSPair<Integer>, Vector> e2t =
-                    new HashMap<DSPair<Integer>, Vector>();
-            for (final DSPair<Integer> e: e2w.keySet()) {
-                final FreeWord<String> w = e2w.get(e);
-                Vector s = Vector.zero(dim);
+            final ShiftTable table = new ShiftTable(dim, getCover().size());
+            final long s[] = new long[dim];
+            for (final Map.Entry<DSPair<Integer>, FreeWord<String>> entry:
+                    e2w.entrySet())
+            {
+                final FreeWord<String> w = entry.getValue();
+                Arrays.fill(s, 0);
                 for (int i = 0; i < w.length(); ++i) {
-                    final int k = w.getLetter(i) - 1;
+                    final long v[] = tc[w.getLetter(i) - 1];
                     final int sign = w.getSign(i);
-                    if (sign > 0) {
-                        s = (Vector) s.plus(t[k]);
-                    } else {
-                        s = (Vector) s.minus(t[k]);
+                    for (int j = 0; j < dim; ++j) {
+                        s[j] += sign * v[j];
                     }
                 }
-                e2t.put(e, s);
+                final DSPair<Integer> e = entry.getKey();
+                table.set(e.getIndex(), e.getElement(), s);
             }
-            final Map<DSPair<Integer>, Vector> result =
-                    Collections.unmodifiableMap(e2t);
-            this.cache.put(EDGE_TRANSLATIONS, result);
-            return result;
+            this.cache.put(EDGE_TRANSLATIONS, table);
+            return table;
         }
     }
+
+    /**
+     * The map is built on the first call and then kept with the table. Use
+     * {@link #edgeTranslation(int, int)} for single lookups.
+     * 
+     * @return a mapping of cover-edges to their associated translations
+     */
+    public Map<DSPair<Integer>, Vector> getEdgeTranslations() {
+        return getEdgeTranslationTable().asMap();
+    }
     
     /**
      * Determines the translation associated to an edge in the toroidal or
@@ -260,48 +385,67 @@ public class Tiling {
      * @return the translation vector associated to the edge.
      */
     public Vector edgeTranslation(final int i, final int D) {
-        return getEdgeTranslations().get(new DSPair<Integer>(i, D));
+        return getEdgeTranslationTable().get(i, D);
     }
 
     /**
-     * @return shifts to obtain chamber corner positions from node positions.
+     * Retrieves a single coordinate of the translation associated to an edge
+     * in the toroidal or pseudo-toroidal cover.
+     * 
+     * @param i the index of the edge.
+     * @param D the source element of the edge.
+     * @param k the coordinate index.
+     * @return the k-th coordinate of the translation.
      */
-    public Map<DSPair<Integer>, Vector> getCornerShifts() {
+    public long edgeTranslation(final int i, final int D, final int k) {
+        return getEdgeTranslationTable().get(i, D, k);
+    }
+
+    /**
+     * @return the table of shifts from node positions to corner positions.
+     */
+    private synchronized ShiftTable getCornerShiftTable() {
         try {
-            @SuppressWarnings("unchecked")
-            final Map<DSPair<Integer>, Vector> result =
-                    (Map<DSPair<Integer>, Vector>)
-                        this.cache.get(CORNER_SHIFTS);
-            return result;
+            return (ShiftTable) this.cache.get(CORNER_SHIFTS);
         } catch (CacheMissException ex) {
-            final int dim = getCover().dim();
-            final HashMap<DSPair<Integer>, Vector> c2s =
-                    new HashMap<DSPair<Integer>, Vector>();
+            final DSCover<Integer> cover = getCover();
+            final int dim = cover.dim();
+            final ShiftTable edges = getEdgeTranslationTable();
+            final ShiftTable table = new ShiftTable(dim, cover.size());
+            final long s[] = new long[dim];
             for (int i = 0; i <= dim; ++i) {
-                final IndexList idcs = IndexList.except(getCover(), i);
+                final IndexList idcs = IndexList.except(cover, i);
                 for (final DSPair<Integer> e: 
-                	new Traversal<Integer>(getCover(), idcs,
-                			getCover().elements()))
+                	new Traversal<Integer>(cover, idcs, cover.elements()))
                 {
                     final int k = e.getIndex();
                     final int D = e.getElement();
                     if (k < 0) {
-                        c2s.put(new DSPair<Integer>(i, D), Vector.zero(dim));
+                        Arrays.fill(s, 0);
                     } else {
-                        final int Dk = getCover().op(k, D);
-                        final Vector v = c2s.get(new DSPair<Integer>(i, Dk));
-                        c2s.put(new DSPair<Integer>(i, D),
-                        		(Vector) v.minus(edgeTranslation(k, Dk)));
+                        final int Dk = cover.op(k, D);
+                        table.get(i, Dk, s);
+                        for (int j = 0; j < dim; ++j) {
+                            s[j] -= edges.get(k, Dk, j);
+                        }
                     }
+                    table.set(i, D, s);
                 }
-
             }
-            final Map<DSPair<Integer>, Vector> result =
-                    Collections.unmodifiableMap(c2s);
-            cache.put(CORNER_SHIFTS, result);
-            return result;
+            this.cache.put(CORNER_SHIFTS, table);
+            return table;
         }
     }
+
+    /**
+     * The map is built on the first call and then kept with the table. Use
+     * {@link #cornerShift(int, int)} for single lookups.
+     * 
+     * @return shifts to obtain chamber corner positions from node positions.
+     */
+    public Map<DSPair<Integer>, Vector> getCornerShifts() {
+        return getCornerShiftTable().asMap();
+    }
     
     /**
      * Returns the necessary shift to obtain the position of a chamber corner
@@ -312,86 +456,206 @@ public class Tiling {
      * @return shifts for this corner.
      */
     public Vector cornerShift(final int i, final int D) {
-    	return getCornerShifts().get(new DSPair<Integer>(i, D));
+    	return getCornerShiftTable().get(i, D);
+    }
+
+    /**
+     * Retrieves a single coordinate of the shift for a chamber corner as
+     * returned by {@link #cornerShift(int, int)}.
+     * 
+     * @param i index of the corner.
+     * @param D the chamber the corner belongs to.
+     * @param k the coordinate index.
+     * @return the k-th coordinate of the shift.
+     */
+    public long cornerShift(final int i, final int D, final int k) {
+        return getCornerShiftTable().get(i, D, k);
     }
     
+    /**
+     * Orbit numberings for the chambers of the cover with respect to sets of
+     * indices, computed on a private copy of its operation tables. Orbits are
+     * numbered in the order in which {@link DelaneySymbol#orbitReps(List)}
+     * lists their representatives. A single instance serves both the
+     * skeleton and the dual skeleton. It is only accessed while holding the
+     * lock of its tiling.
+     */
+    private static class ChamberOrbits {
+        final private int size;
+        final private int op[][];
+        final private Map<Integer, int[]> labels =
+                new HashMap<Integer, int[]>();
+
+        public ChamberOrbits(final DSymbol cover) {
+            final int d = cover.dim();
+            this.size = cover.size();
+            this.op = new int[d + 1][this.size + 1];
+            for (int i = 0; i <= d; ++i) {
+                for (int D = 1; D <= this.size; ++D) {
+                    this.op[i][D] = cover.op(i, D);
+                }
+            }
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public int op(final int i, final int D) {
+            return this.op[i][D];
+        }
+
+        /**
+         * Numbers the orbits with respect to all indices except the given
+         * ones.
+         *
+         * @param except the indices to leave out.
+         * @return the orbit numbers by chamber, with the number of orbits at
+         *         position 0.
+         */
+        public int[] labelsExcept(final int... except) {
+            int mask = (1 << this.op.length) - 1;
+            for (final int i: except) {
+                mask &= ~(1 << i);
+            }
+            final int cached[] = this.labels.get(mask);
+            if (cached != null) {
+                return cached;
+            }
+
+            final int n = this.size;
+            final int result[] = new int[n + 1];
+            Arrays.fill(result, -1);
+            final int stack[] = new int[n];
+            int count = 0;
+            for (int D = 1; D <= n; ++D) {
+                if (result[D] >= 0) {
+                    continue;
+                }
+                result[D] = count;
+                int top = 0;
+                stack[top++] = D;
+                while (top > 0) {
+                    final int E = stack[--top];
+                    for (int i = 0; i < this.op.length; ++i) {
+                        if ((mask & (1 << i)) != 0) {
+                            final int F = this.op[i][E];
+                            if (result[F] < 0) {
+                                result[F] = count;
+                                stack[top++] = F;
+                            }
+                        }
+                    }
+                }
+                ++count;
+            }
+            result[0] = count;
+
+            this.labels.put(mask, result);
+            return result;
+        }
+
+        /**
+         * @param labels an orbit numbering as returned by labelsExcept().
+         * @return the first chamber in each orbit.
+         */
+        public static int[] representatives(final int labels[]) {
+            final int result[] = new int[labels[0]];
+            int k = 0;
+            for (int D = 1; D < labels.length; ++D) {
+                if (labels[D] == k) {
+                    result[k++] = D;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return the orbit numberings for the cover chambers.
+     */
+    private synchronized ChamberOrbits getChamberOrbits() {
+        try {
+            return (ChamberOrbits) this.cache.get(CHAMBER_ORBITS);
+        } catch (CacheMissException ex) {
+            return (ChamberOrbits) this.cache.put(CHAMBER_ORBITS,
+                    new ChamberOrbits(getCover()));
+        }
+    }
+
     /**
      * Class to represent a skeleton graph for this tiling.
      */
     public class Skeleton extends PeriodicGraph {
         final private Map<INode, Integer> node2chamber =
         	new HashMap<INode, Integer>();
-		final private Map<Integer, INode> chamber2node =
-			new HashMap<Integer, INode>();
+		final private INode chamber2node[];
         final private Map<IEdge, Integer> edge2chamber =
         	new HashMap<IEdge, Integer>();
-        final private Map<Integer, IEdge> chamber2edge =
-        	new HashMap<Integer, IEdge>();
-        final private IndexList nodeIdcs;
-        final private IndexList halfEdgeIdcs;
+        final private IEdge chamber2edge[];
         final private boolean dual;
         
         /**
-         * Constructs an instance.
+         * Constructs an instance from precomputed orbit data, creating all
+         * nodes and edges in one step.
+         * 
          * @param dual if true, constructs a dual skeleton.
-         * @param dimension
+         * @param nodeOf the node numbers by chamber.
+         * @param edgeReps a representative chamber for each edge.
+         * @param halfEdgeOf the half-edge numbers by chamber.
+         * @param shifts the shift vector coordinates for the edges.
          */
-        private Skeleton(boolean dual) {
+        private Skeleton(
+                final boolean dual,
+                final int nodeOf[],
+                final int edgeReps[],
+                final int halfEdgeOf[],
+                final int shifts[])
+        {
             super(getCover().dim());
-            final DelaneySymbol<Integer> cover = getCover();
-            final int d = cover.dim();
-            if (dual) {
-            	nodeIdcs = IndexList.except(cover, d);
-            	halfEdgeIdcs = IndexList.except(cover, d, d-1);
-            } else {
-            	nodeIdcs = IndexList.except(cover, 0);
-            	halfEdgeIdcs = IndexList.except(cover, 0, 1);
-            }
+            final ChamberOrbits orbits = getChamberOrbits();
+            final int n = orbits.size();
+            final int idx0 = dual ? getCover().dim() : 0;
             this.dual = dual;
-        }
-        
-        /**
-         * Creates a new node associated to a chamber corner.
-         * @param D the chamber the corner belongs to.
-         * @return the newly created node.
-         */
-        private INode newNode(final int D) {
-            final DelaneySymbol<Integer> cover = getCover();
-            final INode v = super.newNode();
-            this.node2chamber.put(v, D);
-            for (final int E: cover.orbit(nodeIdcs, D)) {
-                this.chamber2node.put(E, v);
+
+            // --- create the nodes
+            final INode nodes[] = newNodes(nodeOf[0]);
+            final int nodeReps[] = ChamberOrbits.representatives(nodeOf);
+            for (int k = 0; k < nodes.length; ++k) {
+                this.node2chamber.put(nodes[k], nodeReps[k]);
+            }
+            this.chamber2node = new INode[n + 1];
+            for (int D = 1; D <= n; ++D) {
+                this.chamber2node[D] = nodes[nodeOf[D]];
             }
-            return v;
-        }
 
-        /**
-         * Creates a new edge associated to a chamber ridge.
-         * @param v source node.
-         * @param w target node.
-         * @param s shift vector associated to this edge.
-         * @param D chamber the ridge belongs to.
-         * @return the newly created edge.
-         */
-        private IEdge newEdge(
-                final INode v,
-                final INode w,
-                final Vector s,
-                final int D)
-        {
-            final DSymbol cover = getCover();
-            final IEdge e = super.newEdge(v, w, s, !this.dual);
-            this.edge2chamber.put(e, D);
-            for (final int E: cover.orbit(halfEdgeIdcs, D)) {
-                this.chamber2edge.put(E, e);
+            // --- create the edges
+            final int m = edgeReps.length;
+            final INode sources[] = new INode[m];
+            final INode targets[] = new INode[m];
+            for (int k = 0; k < m; ++k) {
+                final int D = edgeReps[k];
+                sources[k] = nodes[nodeOf[D]];
+                targets[k] = nodes[nodeOf[orbits.op(idx0, D)]];
+            }
+            final IEdge edges[] = newEdges(sources, targets, shifts, !dual);
+
+            // --- map chambers to oriented edges
+            final IEdge halfEdges[] = new IEdge[halfEdgeOf[0]];
+            for (int k = 0; k < m; ++k) {
+                final int D = edgeReps[k];
+                final int Dr = orbits.op(idx0, D);
+                final IEdge e = edges[k];
+                final IEdge er = e.reverse();
+                this.edge2chamber.put(e, D);
+                halfEdges[halfEdgeOf[D]] = e;
+                this.edge2chamber.put(er, Dr);
+                halfEdges[halfEdgeOf[Dr]] = er;
             }
-            final IEdge er = e.reverse();
-            final int Dr = dual ? cover.op(cover.dim(), D) : cover.op(0, D);
-            this.edge2chamber.put(er, Dr);
-            for (final int E: cover.orbit(halfEdgeIdcs, Dr)) {
-                this.chamber2edge.put(E, er);
+            this.chamber2edge = new IEdge[n + 1];
+            for (int D = 1; D <= n; ++D) {
+                this.chamber2edge[D] = halfEdges[halfEdgeOf[D]];
             }
-            return e;
         }
         
         /**
@@ -400,40 +664,44 @@ public class Tiling {
          * @return the space group.
          */
         public Set<Morphism> symmetries() {
-            try {
-                @SuppressWarnings("unchecked")
-                final Set<Morphism> result =
-                        (Set<Morphism>) this.cache.get(SYMMETRIES);
-                return result;
-            } catch (CacheMissException ex) {
-                // --- get the toroidal cover of the base symbol
-                final DSCover<Integer> cover = getCover();
-
-                // --- find a chamber with nonzero volume
-                int D0 = 0;
-                for (final int D: cover.elements()) {
-                    if (!spanningMatrix(D).determinant().isZero()) {
-                        D0 = D;
-                        break;
+            synchronized (Tiling.this) {
+                try {
+                    @SuppressWarnings("unchecked")
+                    final Set<Morphism> result =
+                            (Set<Morphism>) this.cache.get(SYMMETRIES);
+                    return result;
+                } catch (CacheMissException ex) {
+                    // --- get the toroidal cover of the base symbol
+                    final DSCover<Integer> cover = getCover();
+
+                    // --- find a chamber with nonzero volume
+                    int D0 = 0;
+                    for (final int D: cover.elements()) {
+                        if (!spanningMatrix(D).determinant().isZero()) {
+                            D0 = D;
+                            break;
+                        }
+                    }
+                    if (D0 == 0) {
+                        throw new RuntimeException(
+                                "all chambers have zero volume");
                     }
-                }
-                if (D0 == 0) {
-                    throw new RuntimeException("all chambers have zero volume");
-                }
 
-                // --- compute affine maps from start chamber to its images
-                final Set<Morphism> syms = new HashSet<Morphism>();
-                final int E = cover.image(D0);
-                for (final int D: cover.elements()) {
-                    if (cover.image(D) == E) {
-                        syms.add(derivedMorphism(D0, D));
+                    // --- compute affine maps from start chamber to images
+                    final Set<Morphism> syms = new HashSet<Morphism>();
+                    final int E = cover.image(D0);
+                    for (final int D: cover.elements()) {
+                        if (cover.image(D) == E) {
+                            syms.add(derivedMorphism(D0, D));
+                        }
                     }
-                }
 
-                // --- construct the group, cache and return it
-                final Set<Morphism> result = Collections.unmodifiableSet(syms);
-                this.cache.put(SYMMETRIES, result);
-                return result;
+                    // --- construct the group, cache and return it
+                    final Set<Morphism> result =
+                            Collections.unmodifiableSet(syms);
+                    this.cache.put(SYMMETRIES, result);
+                    return result;
+                }
             }
         }
         
@@ -478,7 +746,13 @@ public class Tiling {
          * @return the node associated to the chamber D.
          */
         public INode nodeForChamber(final Object D) {
-            return (INode) this.chamber2node.get(D);
+            if (D instanceof Integer) {
+                final int k = (Integer) D;
+                if (k > 0 && k < this.chamber2node.length) {
+                    return this.chamber2node[k];
+                }
+            }
+            return null;
         }
         
         /**
@@ -503,7 +777,13 @@ public class Tiling {
          * @return the edge associated to the chamber D.
          */
         public IEdge edgeForChamber(final Object D) {
-            return (IEdge) this.chamber2edge.get(D);
+            if (D instanceof Integer) {
+                final int k = (Integer) D;
+                if (k > 0 && k < this.chamber2edge.length) {
+                    return this.chamber2edge[k];
+                }
+            }
+            return null;
         }
         
         // --- we override the following to make skeleta immutable from outside
@@ -535,7 +815,7 @@ public class Tiling {
 	/**
 	 * @return the skeleton graph of the tiling.
 	 */
-	public Skeleton getSkeleton() {
+	public synchronized Skeleton getSkeleton() {
         try {
             return (Skeleton) this.cache.get(SKELETON);
         } catch (CacheMissException ex) {
@@ -546,7 +826,7 @@ public class Tiling {
 	/**
 	 * @return the skeleton graph of the tiling.
 	 */
-	public Skeleton getDualSkeleton() {
+	public synchronized Skeleton getDualSkeleton() {
         try {
             return (Skeleton) this.cache.get(DUAL_SKELETON);
         } catch (CacheMissException ex) {
@@ -556,39 +836,38 @@ public class Tiling {
 
 	/**
 	 * Constructs the skeleton or dual skeleton of the tiling modulo
-	 * translations.
+	 * translations. Nodes and edges are determined by labelling chamber
+	 * orbits on integer arrays, after which the graph is created in one step.
 	 * 
 	 * @param dual if true, the dual skeleton is constructed.
 	 * @return the resulting skeleton graph.
 	 */
 	private Skeleton makeSkeleton(final boolean dual) {
-        final DSymbol cover = getCover();
-        final Skeleton G = new Skeleton(dual);
-        final int d = cover.dim();
+        final int d = getCover().dim();
         final int idx0 = dual ? d : 0;
         final int idx1 = dual ? d-1 : 1;
-        IndexList idcs;
-
-        // --- create nodes of the graph and map Delaney chambers to nodes
-        idcs = IndexList.except(cover, idx0);
-        for (final int D: cover.orbitReps(idcs)) {
-            G.newNode(D);
-        }
-
-        // --- create the edges
-        idcs = IndexList.except(cover, idx1);
-        for (final int D: cover.orbitReps(idcs)) {
-            final int E = cover.op(idx0, D);
-            final INode v = G.nodeForChamber(D);
-            final INode w = G.nodeForChamber(E);
-            final Vector t = edgeTranslation(idx0, D);
-            final Vector sD = cornerShift(idx0, D);
-            final Vector sE = cornerShift(idx0, E);
-            final Vector s = (Vector) t.plus(sE).minus(sD);
-            G.newEdge(v, w, s, D);
+        final ChamberOrbits orbits = getChamberOrbits();
+        final ShiftTable translations = getEdgeTranslationTable();
+        final ShiftTable corners = getCornerShiftTable();
+
+        // --- label the chambers by node
+        final int nodeOf[] = orbits.labelsExcept(idx0);
+
+        // --- label them by half-edge and compute the edge shifts
+        final int reps[] = ChamberOrbits.representatives(
+                orbits.labelsExcept(idx1));
+        final int halfEdgeOf[] = orbits.labelsExcept(idx0, idx1);
+        final int shifts[] = new int[reps.length * d];
+        for (int k = 0; k < reps.length; ++k) {
+            final int D = reps[k];
+            final int E = orbits.op(idx0, D);
+            for (int j = 0; j < d; ++j) {
+                shifts[k * d + j] = (int) (translations.get(idx0, D, j)
+                        + corners.get(idx0, E, j) - corners.get(idx0, D, j));
+            }
         }
-        
-        return G;
+
+        return new Skeleton(dual, nodeOf, reps, halfEdgeOf, shifts);
 	}
 	
     /**
@@ -598,7 +877,8 @@ public class Tiling {
      * 
      * @return a mapping from corners to positions
      */
-    public Map<DSPair<Integer>, Point> getVertexBarycentricPositions() {
+    public synchronized Map<DSPair<Integer>, Point>
+    getVertexBarycentricPositions() {
         try {
             @SuppressWarnings("unchecked")
             final Map<DSPair<Integer>, Point> result =
@@ -877,7 +1157,7 @@ public class Tiling {
      * @return the list of tiles for this tiling.
      */
     @SuppressWarnings("unchecked")
-	public List<Tile> getTiles() {
+	public synchronized List<Tile> getTiles() {
         try {
             return (List<Tile>) this.cache.get(TILES);
         } catch (CacheMissException ex) {
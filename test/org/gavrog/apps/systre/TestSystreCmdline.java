@@ -0,0 +1,78 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.apps.systre;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for class SystreCmdline.
+ */
+public class TestSystreCmdline extends TestCase {
+    private File input;
+
+    public void setUp() throws IOException {
+        this.input = File.createTempFile("tfa", ".cgd");
+        final FileWriter out = new FileWriter(this.input);
+        out.write(""
+                + "CRYSTAL\n"
+                + "NAME tfa\n"
+                + "GROUP I-4m2\n"
+                + "CELL 1.8016 1.8016 3.737 90.0 90.0 90.0\n"
+                + "VERTICES\n"
+                + "  1 3 0.0 0.5 0.3838\n"
+                + "  2 4 0.0 0.0 0.0\n"
+                + "END\n");
+        out.close();
+    }
+
+    public void tearDown() {
+        this.input.delete();
+    }
+
+    public void testCancelMultiStartRelaxation() throws Exception {
+        final SystreCmdline systre = new SystreCmdline();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        systre.setOutStream(new PrintStream(buffer));
+        systre.setRelaxationStarts(4);
+        systre.setNumberOfThreads(4);
+        systre.setRelaxPasses(1000000);
+        systre.setRelaxSteps(100000000);
+
+        final Thread worker = new Thread() {
+            public void run() {
+                systre.processDataFile(input.getPath());
+            }
+        };
+        worker.setDaemon(true);
+        worker.start();
+        Thread.sleep(1500);
+        assertTrue(worker.isAlive());
+
+        final long start = System.currentTimeMillis();
+        systre.cancel();
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(buffer.toString().contains("Execution stopped"));
+    }
+}
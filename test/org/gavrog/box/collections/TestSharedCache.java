@@ -0,0 +1,119 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.box.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for class SharedCache.
+ */
+public class TestSharedCache extends TestCase {
+    public void testGetAndPut() {
+        final SharedCache<String, Integer> cache =
+                new SharedCache<String, Integer>(4);
+        try {
+            cache.get("a");
+            fail("should throw a CacheMissException");
+        } catch (CacheMissException success) {
+        }
+        assertEquals(Integer.valueOf(1), cache.put("a", 1));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        // --- existing values are kept
+        assertEquals(Integer.valueOf(1), cache.put("a", 2));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.remove("a");
+        assertEquals(0, cache.size());
+    }
+
+    public void testStatistics() {
+        final SharedCache<String, Integer> cache =
+                new SharedCache<String, Integer>(4);
+        assertEquals(0.0, cache.getHitRate());
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+        cache.get("a");
+        try {
+            cache.get("b");
+        } catch (CacheMissException ex) {
+        }
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.75, cache.getHitRate());
+        cache.clear();
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    public void testEviction() {
+        final SharedCache<Integer, String> cache =
+                new SharedCache<Integer, String>(3);
+        for (int i = 0; i < 3; ++i) {
+            cache.put(i, "" + i);
+        }
+        cache.get(0);
+        cache.put(3, "3");
+        assertEquals(3, cache.size());
+        assertEquals("0", cache.get(0));
+        assertEquals("3", cache.get(3));
+        try {
+            cache.get(1);
+            fail("should throw a CacheMissException");
+        } catch (CacheMissException success) {
+        }
+    }
+
+    public void testConcurrentAccess() throws InterruptedException {
+        final SharedCache<Integer, Integer> cache =
+                new SharedCache<Integer, Integer>(16);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; ++t) {
+            threads.add(new Thread() {
+                public void run() {
+                    for (int i = 0; i < 1000; ++i) {
+                        final int k = i % 32;
+                        try {
+                            assertEquals(Integer.valueOf(k), cache.get(k));
+                        } catch (CacheMissException ex) {
+                            cache.put(k, k);
+                        }
+                    }
+                }
+            });
+        }
+        for (final Thread t: threads) {
+            t.start();
+        }
+        for (final Thread t: threads) {
+            t.join();
+        }
+        assertEquals(4000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.size() <= 16);
+    }
+
+    public void testBadCapacity() {
+        try {
+            new SharedCache<String, String>(0);
+            fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException success) {
+        }
+    }
+}
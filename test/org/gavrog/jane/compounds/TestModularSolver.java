@@ -0,0 +1,91 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.compounds;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.gavrog.jane.numbers.Fraction;
+
+/**
+ * Unit tests for class ModularSolver.
+ */
+public class TestModularSolver extends TestCase {
+    private int[][] randomMatrix(final int n, final int m, final int size,
+            final long seed) {
+        final Random random = new Random(seed);
+        final int A[][] = new int[n][m];
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < m; ++j) {
+                A[i][j] = random.nextInt(2 * size + 1) - size;
+            }
+        }
+        return A;
+    }
+
+    public void testSolve() {
+        final int A[][] = randomMatrix(20, 20, 9, 1);
+        final int b[][] = randomMatrix(20, 2, 9, 2);
+        final Matrix x = ModularSolver.solve(A, b);
+        assertEquals(new Matrix(b), new Matrix(A).times(x));
+    }
+
+    public void testSolveLargeEntries() {
+        final int A[][] = randomMatrix(8, 8, 1 << 29, 3);
+        final int b[][] = randomMatrix(8, 1, 1 << 29, 4);
+        final Matrix x = ModularSolver.solve(A, b);
+        assertEquals(new Matrix(b), new Matrix(A).times(x));
+    }
+
+    public void testSolveParallel() {
+        final int A[][] = randomMatrix(80, 80, 3, 5);
+        final int b[][] = randomMatrix(80, 3, 3, 6);
+        final int p = 0x7fffffff;
+        assertEquals(ModularSolver.solve(A, b, p, 1),
+                ModularSolver.solve(A, b, p, 4));
+    }
+
+    public void testSolveSingular() {
+        final int A[][] = { { 1, 2 }, { 2, 4 } };
+        final int b[][] = { { 1 }, { 1 } };
+        try {
+            ModularSolver.solve(A, b);
+            fail("should throw an ArithmeticException");
+        } catch (ArithmeticException success) {
+        }
+    }
+
+    public void testSolveIfIntegral() {
+        final Matrix A = new Matrix(randomMatrix(15, 15, 5, 7));
+        final Matrix b = new Matrix(randomMatrix(15, 1, 5, 8));
+        final Matrix x = ModularSolver.solveIfIntegral(A, b);
+        assertNotNull(x);
+        assertEquals(b, A.times(x));
+        assertEquals(x, Matrix.solve(A, b));
+        assertEquals(x.transposed(),
+                LinearAlgebra.solutionInRows(A.transposed(), b.transposed(),
+                        false));
+
+        final Matrix small = new Matrix(new int[][] { { 2, 1 }, { 1, 1 } });
+        assertNull(ModularSolver.solveIfIntegral(small, Matrix.one(2)));
+
+        final Matrix B = A.mutableClone();
+        B.set(0, 0, new Fraction(1, 2));
+        assertNull(ModularSolver.solveIfIntegral(B, b));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.compounds;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for class SparseModularSolver.
+ */
+public class TestSparseModularSolver extends TestCase {
+    /**
+     * Builds a sparse, diagonally dominant matrix resembling the systems that
+     * arise from barycentric placements.
+     */
+    private int[][] randomMatrix(final int n, final long seed) {
+        final Random random = new Random(seed);
+        final int A[][] = new int[n][n];
+        A[0][0] = 1;
+        for (int i = 1; i < n; ++i) {
+            for (int k = 0; k < 3; ++k) {
+                final int j = random.nextInt(n);
+                if (j != i) {
+                    A[i][j] -= 1;
+                    A[i][i] += 1;
+                    A[j][i] -= 1;
+                    A[j][j] += 1;
+                }
+            }
+        }
+        Arrays.fill(A[0], 0);
+        A[0][0] = 1;
+        for (int i = 1; i < n; ++i) {
+            A[i][i] += 1 + random.nextInt(3);
+        }
+        return A;
+    }
+
+    private int[][] randomRightHandSide(final int n, final int m,
+            final long seed) {
+        final Random random = new Random(seed);
+        final int b[][] = new int[n][m];
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < m; ++j) {
+                b[i][j] = random.nextInt(11) - 5;
+            }
+        }
+        return b;
+    }
+
+    public void testMinimumDegreeOrder() {
+        final int A[][] = randomMatrix(50, 1);
+        final int order[] = SparseModularSolver.minimumDegreeOrder(
+                SparseModularSolver.fromDense(A)[0]);
+        final int sorted[] = order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; ++i) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    public void testSolveModular() {
+        final int n = 40;
+        final int p = 0x7fffffff;
+        final int A[][] = randomMatrix(n, 2);
+        final int b[][] = randomRightHandSide(n, 2, 3);
+        final int S[][][] = SparseModularSolver.fromDense(A);
+        final SparseModularSolver solver =
+                new SparseModularSolver(S[0], S[1], p);
+
+        final long B[][] = new long[n][2];
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                B[i][j] = b[i][j];
+            }
+        }
+        final int x[][] = solver.solveModular(B);
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                long s = 0;
+                for (int k = 0; k < n; ++k) {
+                    s = (s + (long) A[i][k] * x[k][j]) % p;
+                }
+                assertEquals(((long) b[i][j] % p + p) % p, (s + p) % p);
+            }
+        }
+    }
+
+    public void testSolveMatchesDense() {
+        final int n = 150;
+        final int A[][] = randomMatrix(n, 4);
+        final int b[][] = randomRightHandSide(n, 3, 5);
+        final int S[][][] = SparseModularSolver.fromDense(A);
+
+        final Matrix expected = ModularSolver.solve(A, b);
+        assertEquals(expected,
+                new SparseModularSolver(S[0], S[1], 2147483629).solve(b));
+        assertEquals(expected, SparseModularSolver.solve(S[0], S[1], b));
+    }
+
+    public void testSolveSmall() {
+        final int A[][] = { { 2, 1, 0 }, { 1, 3, 1 }, { 0, 1, 4 } };
+        final int b[][] = { { 1 }, { 0 }, { 2 } };
+        final int S[][][] = SparseModularSolver.fromDense(A);
+        final Matrix x = SparseModularSolver.solve(S[0], S[1], b);
+        assertEquals(new Matrix(b), new Matrix(A).times(x));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.compounds;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.gavrog.jane.numbers.Whole;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for class SparseSmithForm.
+ */
+public class TestSparseSmithForm extends TestCase {
+    private static SparseSmithForm snf(final int A[][]) {
+        final int rows[][][] = SparseModularSolver.fromDense(A);
+        return new SparseSmithForm(rows[0], rows[1], A[0].length);
+    }
+
+    private static int[][] randomMatrix(final int n, final int m,
+            final int perRow, final int range, final long seed) {
+        final Random random = new Random(seed);
+        final int A[][] = new int[n][m];
+        for (int i = 0; i < n; ++i) {
+            for (int k = 0; k < perRow; ++k) {
+                A[i][random.nextInt(m)] += random.nextInt(2 * range + 1) - range;
+            }
+        }
+        return A;
+    }
+
+    /**
+     * Turns a list of diagonal entries into invariant factors.
+     */
+    private static List<BigInteger> canonical(final List<BigInteger> diag) {
+        final BigInteger d[] = diag.toArray(new BigInteger[0]);
+        for (int i = 0; i < d.length; ++i) {
+            for (int j = i + 1; j < d.length; ++j) {
+                final BigInteger g = d[i].gcd(d[j]);
+                if (g.signum() != 0) {
+                    d[j] = d[i].multiply(d[j]).abs().divide(g);
+                    d[i] = g;
+                }
+            }
+        }
+        Arrays.sort(d);
+        return Arrays.asList(d);
+    }
+
+    private static List<BigInteger> factors(final SparseSmithForm S) {
+        final List<BigInteger> res = new ArrayList<BigInteger>();
+        for (final Whole d: S.getInvariantFactors()) {
+            res.add(d.bigIntegerValue());
+        }
+        return res;
+    }
+
+    private static List<BigInteger> denseFactors(final int A[][]) {
+        final Matrix D = LinearAlgebra.smithNormalForm(new Matrix(A), true)[1];
+        final List<BigInteger> res = new ArrayList<BigInteger>();
+        for (int i = 0; i < Math.min(D.numberOfRows(), D.numberOfColumns());
+                ++i) {
+            final Whole d = (Whole) D.get(i, i);
+            if (!d.isZero()) {
+                res.add(d.bigIntegerValue().abs());
+            }
+        }
+        return canonical(res);
+    }
+
+    private static void checkNullSpace(final int A[][],
+            final SparseSmithForm S) {
+        final int m = A[0].length;
+        final Matrix N = S.getColumnNullSpace();
+        assertEquals(m, N.numberOfRows());
+        assertEquals(m - S.getRank(), N.numberOfColumns());
+        if (N.numberOfColumns() == 0) {
+            return;
+        }
+        assertTrue(((Matrix) new Matrix(A).times(N)).isZero());
+        final Matrix D = LinearAlgebra.smithNormalForm(N, true)[1];
+        for (int i = 0; i < N.numberOfColumns(); ++i) {
+            assertTrue(((Whole) D.get(i, i)).abs().isOne());
+        }
+    }
+
+    public void testDiagonal() {
+        final int A[][] = new int[][] {
+                { 2, 0, 0, 0 },
+                { 0, 2, 0, 0 },
+                { 0, 0, 3, 0 },
+                { 0, 0, 0, 3 } };
+        final SparseSmithForm S = snf(A);
+        assertEquals(4, S.getRank());
+        assertEquals(Arrays.asList(new BigInteger[] {
+                BigInteger.ONE, BigInteger.ONE,
+                BigInteger.valueOf(6), BigInteger.valueOf(6) }), factors(S));
+        checkNullSpace(A, S);
+    }
+
+    public void testLargeDeterminant() {
+        final int A[][] = new int[][] {
+                { 65537, 0, 0 },
+                { 0, 65537, 0 } };
+        final SparseSmithForm S = snf(A);
+        assertEquals(2, S.getRank());
+        assertEquals(Arrays.asList(new BigInteger[] {
+                BigInteger.valueOf(65537), BigInteger.valueOf(65537) }),
+                factors(S));
+        checkNullSpace(A, S);
+    }
+
+    public void testLargeEntries() {
+        final int A[][] = new int[][] {
+                { 1, 1 << 30 },
+                { 1, -(1 << 30) } };
+        final SparseSmithForm S = snf(A);
+        assertEquals(Arrays.asList(new BigInteger[] {
+                BigInteger.ONE, BigInteger.ONE.shiftLeft(31) }), factors(S));
+    }
+
+    public void testZeroMatrix() {
+        final int A[][] = new int[3][4];
+        final SparseSmithForm S = snf(A);
+        assertEquals(0, S.getRank());
+        assertEquals(0, S.getInvariantFactors().length);
+        assertEquals(Matrix.one(4), S.getColumnNullSpace());
+    }
+
+    public void testRandom() {
+        for (int seed = 0; seed < 40; ++seed) {
+            final int n = 5 + seed % 7;
+            final int m = 4 + seed % 5;
+            final int A[][] = randomMatrix(n, m, 1 + seed % 3, 1 + seed % 4,
+                    seed);
+            final SparseSmithForm S = snf(A);
+            assertEquals(new Matrix(A).rank(), S.getRank());
+            assertEquals(denseFactors(A), factors(S));
+            checkNullSpace(A, S);
+        }
+    }
+
+    public void testLargeSparse() {
+        final int A[][] = randomMatrix(300, 250, 3, 1, 17);
+        final SparseSmithForm S = snf(A);
+        assertEquals(new Matrix(A).rank(), S.getRank());
+        checkNullSpace(A, S);
+    }
+}
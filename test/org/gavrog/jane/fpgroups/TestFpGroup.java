@@ -19,6 +19,7 @@ package org.gavrog.jane.fpgroups;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.gavrog.jane.compounds.Matrix;
 import org.gavrog.jane.fpgroups.FiniteAlphabet;
 import org.gavrog.jane.fpgroups.FpGroup;
 import org.gavrog.jane.fpgroups.FreeWord;
@@ -130,4 +131,23 @@ public class TestFpGroup extends TestCase {
                 "(a*b*c)^2*c*b^-1" });
         Assert.assertEquals(new LinkedList(), H.abelianInvariants());
     }
+    
+    public void testAbelianInvariantsCanonical() {
+        final FpGroup H = new FpGroup(A, new String[] {
+                "a^6", "b^4", "c^9",
+                "a*b*a^-1*b^-1", "a*c*a^-1*c^-1", "b*c*b^-1*c^-1" });
+        Assert.assertEquals(makeList(new int[] { 6, 36 }),
+                H.abelianInvariants());
+        final FpGroup K = new FpGroup(A, new String[] { "a^2", "b^2*c^4" });
+        Assert.assertEquals(makeList(new int[] { 0, 2, 2 }),
+                K.abelianInvariants());
+    }
+    
+    public void testRelatorNullSpace() {
+        final FpGroup H = new FpGroup(A, new String[] { "a*b^2*a*c^-1" });
+        final Matrix N = H.relatorNullSpace();
+        Assert.assertEquals(3, N.numberOfRows());
+        Assert.assertEquals(2, N.numberOfColumns());
+        Assert.assertTrue(((Matrix) H.relatorMatrix().times(N)).isZero());
+    }
 }
@@ -126,6 +126,28 @@ public class TestFreeWord extends TestCase {
 	            w1.raisedTo(-5).toString());
 	}
 	
+	public void testSharedSubwords() {
+	    final FreeWord w = FreeWord.parsedWord(A, "a*b*c^-1*b*a^-1*c");
+	    final FreeWord u = w.subword(1, 5);
+	    Assert.assertEquals(FreeWord.parsedWord(A, "b*c^-1*b*a^-1"), u);
+	    Assert.assertEquals(FreeWord.parsedWord(A, "b*c^-1*b*a^-1").hashCode(),
+	            u.hashCode());
+	    Assert.assertEquals(FreeWord.parsedWord(A, "c^-1*b"), u.subword(1, 3));
+	    Assert.assertEquals(FreeWord.parsedWord(A, "b*c^-1"),
+	            u.times(u.subword(2, 4).inverse()));
+	    Assert.assertEquals(FreeWord.parsedWord(A, "(b*c^-1*b*a^-1)^3"),
+	            u.raisedTo(3));
+	    Assert.assertEquals("b*c^-1*b*a^-1", new FreeWord(A, u).toString());
+	    Assert.assertEquals(0, u.compareTo(new FreeWord(u)));
+	    Assert.assertTrue(u.compareTo(w) > 0);
+	}
+	
+	public void testInverseIsCached() {
+	    final FreeWord inv = w1.inverse();
+	    Assert.assertSame(inv, w1.inverse());
+	    Assert.assertSame(w1, inv.inverse());
+	}
+	
 	public void testToString() {
 		Assert.assertEquals("b*c^-1*a^-1*b^-1", w1.toString());
 	}
@@ -0,0 +1,98 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.fpgroups;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the FreeWordBuilder class.
+ */
+public class TestFreeWordBuilder extends TestCase {
+    private FiniteAlphabet<String> A;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        A = new FiniteAlphabet<String>(new String[] { "a", "b", "c" });
+    }
+
+    protected void tearDown() throws Exception {
+        A = null;
+        super.tearDown();
+    }
+
+    private FreeWord<String> word(final String s) {
+        return FreeWord.parsedWord(A, s);
+    }
+
+    public void testAppendLetters() {
+        final FreeWordBuilder<String> b = new FreeWordBuilder<String>(A);
+        b.append(1).append(2).append(-2).append(3).append(-3).append(-1);
+        assertEquals(0, b.length());
+        assertEquals(new FreeWord<String>(A), b.toFreeWord());
+        b.append(2).append(-3);
+        assertEquals(word("b*c^-1"), b.toFreeWord());
+        try {
+            b.append(0);
+            fail("should raise an IllegalArgumentException");
+        } catch (IllegalArgumentException success) {
+        }
+    }
+
+    public void testAppendWords() {
+        final FreeWord<String> u = word("a*b*c");
+        final FreeWord<String> v = word("c^-1*b^-1*c*a");
+        final FreeWordBuilder<String> b = new FreeWordBuilder<String>(u);
+        b.append(v);
+        assertEquals(u.times(v), b.toFreeWord());
+        b.appendInverse(v);
+        assertEquals(u, b.toFreeWord());
+        b.append(v, 0, 2).append(word("a*b*a^-1"), 1, 3);
+        assertEquals(word("a*b*a^-1"), b.toFreeWord());
+        b.clear();
+        for (int i = 0; i < 50; ++i) {
+            b.append(u);
+        }
+        assertEquals(u.raisedTo(50), b.toFreeWord());
+    }
+
+    public void testProductsAgree() {
+        final FreeWord<String> words[] = new FreeWord[] {
+                word("a*b^-1*c"), word("c^-1*b*a^-1"), word("b*b*a"),
+                word("a^-1*b^-1"), word("*"), word("b*a*c^-1*c")
+        };
+        for (final FreeWord<String> x: words) {
+            for (final FreeWord<String> y: words) {
+                final FreeWordBuilder<String> b = new FreeWordBuilder<String>(x);
+                assertEquals(x.times(y), b.append(y).toFreeWord());
+                b.clear();
+                b.append(x).appendInverse(y);
+                assertEquals(x.times(y.inverse()), b.toFreeWord());
+            }
+        }
+    }
+
+    public void testAlphabetMismatch() {
+        final FiniteAlphabet<String> B =
+            new FiniteAlphabet<String>(new String[] { "x", "y" });
+        final FreeWordBuilder<String> b = new FreeWordBuilder<String>(A);
+        try {
+            b.append(FreeWord.parsedWord(B, "x*y"));
+            fail("should raise an IllegalArgumentException");
+        } catch (IllegalArgumentException success) {
+        }
+    }
+}
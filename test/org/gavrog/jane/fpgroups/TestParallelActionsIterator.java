@@ -0,0 +1,105 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.fpgroups;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the ParallelActionsIterator class.
+ */
+public class TestParallelActionsIterator extends TestCase {
+    private FpGroup<String> G;
+    private FpGroup<String> T;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        final FiniteAlphabet<String> A =
+            new FiniteAlphabet<String>(new String[] { "a", "b", "c" });
+        G = new FpGroup<String>(A, new String[] { "[a,b]", "[a,c]", "[b,c]" });
+        T = new FpGroup<String>(A, new String[] { "a^2", "b^2", "c^2",
+                "(a*b)^4", "(a*c)^2", "(b*c)^4" });
+    }
+
+    protected void tearDown() throws Exception {
+        G = null;
+        T = null;
+        super.tearDown();
+    }
+
+    private List<String> tables(
+            final Iterator<GroupAction<String, Integer>> actions) {
+        final List<String> result = new ArrayList<String>();
+        while (actions.hasNext()) {
+            final GroupAction<String, Integer> action = actions.next();
+            final StringBuffer buf = new StringBuffer();
+            for (int x = 1; x <= action.size(); ++x) {
+                for (final FreeWord<String> g: action.getGroup().getGenerators()) {
+                    buf.append(action.apply(x, g));
+                    buf.append(" ");
+                }
+            }
+            result.add(buf.toString());
+        }
+        return result;
+    }
+
+    private void testSameAsSequential(final FpGroup<String> group,
+            final int index, final boolean normalOnly) {
+        final SmallActionsIterator<String> seq =
+            new SmallActionsIterator<String>(group, index, normalOnly);
+        final List<String> expected = tables(seq);
+        for (int n = 1; n <= 3; ++n) {
+            final ParallelActionsIterator<String> par =
+                new ParallelActionsIterator<String>(group, index, normalOnly, n);
+            assertEquals(expected, tables(par));
+            assertEquals(seq.getChoicesSoFar(), par.getChoicesSoFar());
+        }
+    }
+
+    public void testSameAsSequential() {
+        testSameAsSequential(G, 10, false);
+        testSameAsSequential(T, 16, false);
+        testSameAsSequential(T, 8, true);
+    }
+
+    public void testChoiceLimit() {
+        final ParallelActionsIterator<String> iter =
+            new ParallelActionsIterator<String>(G, 10, false, 2);
+        iter.setMaximalNumberOfChoices(1000);
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+            fail("should have thrown an exception");
+        } catch (ChoiceLimitExceededException success) {
+        }
+        assertTrue(iter.getChoicesSoFar() >= 1000);
+    }
+
+    public void testCancel() {
+        final ParallelActionsIterator<String> iter =
+            new ParallelActionsIterator<String>(G, 12, false, 2);
+        assertTrue(iter.hasNext());
+        iter.next();
+        iter.cancel();
+        assertFalse(iter.hasNext());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.jane.fpgroups;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the RewritingSystem class.
+ */
+public class TestRewritingSystem extends TestCase {
+    private FiniteAlphabet<String> A;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        A = new FiniteAlphabet<String>(new String[] { "a", "b", "c" });
+    }
+
+    protected void tearDown() throws Exception {
+        A = null;
+        super.tearDown();
+    }
+
+    private RewritingSystem<String> completed(final String rels[]) {
+        final FpGroup<String> G = new FpGroup<String>(A, rels);
+        final RewritingSystem<String> rws = new RewritingSystem<String>(G);
+        assertTrue(rws.complete());
+        assertTrue(rws.isConfluent());
+        return rws;
+    }
+
+    private FreeWord<String> word(final String s) {
+        return FreeWord.parsedWord(A, s);
+    }
+
+    public void testFiniteGroups() {
+        final String cube[] = new String[] { "a^2", "b^2", "c^2", "(a*b)^4",
+                "(a*c)^2", "(b*c)^3" };
+        assertEquals(48, completed(cube).order());
+        final String ico[] = new String[] { "a^2", "b^3", "(a*b)^5", "c" };
+        assertEquals(60, completed(ico).order());
+        final String s3[] = new String[] { "a^3", "b^2", "a*b*a*b", "c" };
+        final RewritingSystem<String> rws = completed(s3);
+        assertTrue(rws.isFinite());
+        assertEquals(6, rws.order());
+        assertEquals(Arrays.toString(new long[] { 1, 3, 2, 0, 0 }),
+                Arrays.toString(rws.growthSeries(4)));
+    }
+
+    public void testOrderMatchesCosetAction() {
+        final String rels[] = new String[] { "a^2", "b^2", "c^2", "(a*b)^3",
+                "(a*c)^2", "(b*c)^5" };
+        final FpGroup<String> G = new FpGroup<String>(A, rels);
+        assertEquals(new CosetAction<String, String>(G).size(),
+                completed(rels).order());
+    }
+
+    public void testFreeAbelian() {
+        final RewritingSystem<String> rws =
+            completed(new String[] { "[a,b]", "[a,c]", "[b,c]" });
+        assertFalse(rws.isFinite());
+        assertEquals(Arrays.toString(new long[] { 1, 6, 18, 38, 66 }),
+                Arrays.toString(rws.growthSeries(4)));
+        assertTrue(rws.areEqual(word("a*b*c"), word("c*b*a")));
+        assertFalse(rws.areEqual(word("a*b"), word("a*c")));
+        assertEquals(word("a*a*b^-1*c"), rws.normalForm(word("c*b^-1*a*a")));
+        try {
+            rws.order();
+            fail("should raise an IllegalStateException");
+        } catch (IllegalStateException success) {
+        }
+    }
+
+    public void testNormalFormsAreMinimal() {
+        final RewritingSystem<String> rws =
+            completed(new String[] { "a^2", "b^3", "(a*b)^4", "c^2", "[a,c]",
+                    "[b,c]" });
+        assertEquals(48, rws.order());
+        final FreeWord<String> w = word("(a*b^-1*c)^7*b*a");
+        final FreeWord<String> nf = rws.normalForm(w);
+        assertTrue(nf.length() <= w.length());
+        assertEquals(nf, rws.normalForm(nf));
+        assertTrue(rws.areEqual(w, nf));
+    }
+
+    public void testLimits() {
+        final FpGroup<String> G = new FpGroup<String>(A, new String[] {
+                "a^2", "b^3", "(a*b)^7", "c" });
+        final RewritingSystem<String> rws = new RewritingSystem<String>(G);
+        rws.setMaximalNumberOfRules(20);
+        assertFalse(rws.complete());
+        assertFalse(rws.isConfluent());
+        assertTrue(rws.isTrivial(word("a*a")));
+        try {
+            rws.isTrivial(word("a*b"));
+            fail("should raise an IllegalStateException");
+        } catch (IllegalStateException success) {
+        }
+        try {
+            rws.growthSeries(3);
+            fail("should raise an IllegalStateException");
+        } catch (IllegalStateException success) {
+        }
+    }
+}
@@ -72,6 +72,38 @@ public class TestSmallActionsIterator extends TestCase {
         test(T, 4, true, 15);
     }
     
+    public void testSubgroupsOfZ3() {
+        // --- Z^3 has sum(d * sigma(d) : d | k) subgroups of index k
+        int expected = 0;
+        for (int k = 1; k <= 12; ++k) {
+            for (int d = 1; d <= k; ++d) {
+                if (k % d == 0) {
+                    int sigma = 0;
+                    for (int e = 1; e <= d; ++e) {
+                        if (d % e == 0) {
+                            sigma += e;
+                        }
+                    }
+                    expected += d * sigma;
+                }
+            }
+        }
+        test(G, 12, false, expected);
+    }
+    
+    public void testChoiceLimit() {
+        final SmallActionsIterator iter = new SmallActionsIterator(G, 8, false);
+        iter.setMaximalNumberOfChoices(100);
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+            fail("should have thrown an exception");
+        } catch (ChoiceLimitExceededException success) {
+        }
+        assertEquals(100, iter.getChoicesSoFar());
+    }
+    
     public void test(final FpGroup G, final int index, boolean normalOnly,
             final int expected) {
         final Iterator actions = new SmallActionsIterator(G, index, normalOnly);
@@ -89,6 +89,18 @@ public class TestCovers extends TestCase {
         assertTrue(covers.contains(Covers.finiteUniversalCover(ds)));
     }
     
+    public void testAllCoversParallel() {
+        final DSymbol ds = new DSymbol("1:1,1,1:3,5");
+        final List sequential = Iterators.asList(Covers.allCovers(ds));
+        final int saved = Covers.getNumberOfThreads();
+        try {
+            Covers.setNumberOfThreads(3);
+            assertEquals(sequential, Iterators.asList(Covers.allCovers(ds)));
+        } finally {
+            Covers.setNumberOfThreads(saved);
+        }
+    }
+    
     public void testToroidalCover2D_1() {
         testToroidalCover2D(new DSymbol("1:1,1,1:3,6"), 12);
     }
@@ -113,6 +125,17 @@ public class TestCovers extends TestCase {
         testPseudoToroidalCover3D(new DSymbol("3 3:1 2 3,1 3,2 3,1 2 3:6 4,3,4 3"), 72);
     }
     
+    public void testPseudoToroidalCover3DCached() {
+        final DSymbol ds =
+                new DSymbol("3 3:1 2 3,1 3,2 3,1 2 3:6 4,3,4 3");
+        final DSymbol copy = new DSymbol(ds.canonical());
+        testPseudoToroidalCover3D(ds, 72);
+        testPseudoToroidalCover3D(copy, 72);
+        testPseudoToroidalCover3D(ds, 72);
+        assertEquals(Covers.pseudoToroidalCover3D(ds),
+                Covers.pseudoToroidalCover3D(copy));
+    }
+    
     private void testFiniteUniversalCover(final DSymbol ds, final int n) {
         final DSCover cov = Covers.finiteUniversalCover(ds);
         assertEquals(n, cov.size());
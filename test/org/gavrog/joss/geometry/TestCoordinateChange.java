@@ -16,9 +16,15 @@ limitations under the License.
 
 package org.gavrog.joss.geometry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.numbers.Real;
 
 /**
  * Unit tests for {@link org.gavrog.joss.geometry.CoordinateChange}.
@@ -162,4 +168,41 @@ public class TestCoordinateChange extends TestCase {
     	assertEquals(C.one(), C.times(C.inverse()));
     	assertEquals(C.one(), C.inverse().times(C));
     }
+    
+    public void testApplyToPackedPoints() {
+        final CoordinateChange C = new CoordinateChange(new Operator(
+                "1/3*x-y+1/4,x+2/3*y-z,-1/7*x+z-3/5"));
+        final Random random = new Random(40);
+        final double coords[] = new double[3 * 50];
+        for (int i = 0; i < coords.length; ++i) {
+            coords[i] = 10 * random.nextDouble() - 5;
+        }
+        final double points[] = new double[coords.length];
+        final double vectors[] = coords.clone();
+        C.applyToPoints(coords, points);
+        C.applyToVectors(vectors, vectors);
+        for (int i = 0; i < 50; ++i) {
+            final double c[] = Arrays.copyOfRange(coords, 3 * i, 3 * i + 3);
+            final Point p = (Point) new Point(c).times(C);
+            final Vector v = (Vector) new Vector(c).times(C);
+            for (int j = 0; j < 3; ++j) {
+                assertEquals(((Real) p.get(j)).doubleValue(), points[3 * i + j]);
+                assertEquals(((Real) v.get(j)).doubleValue(), vectors[3 * i + j]);
+            }
+        }
+    }
+    
+    public void testApplyToPointList() {
+        final List<Point> points = new ArrayList<Point>();
+        points.add(new Point(new double[] { 0.25, -1.5, 3.125 }));
+        points.add(new Point(new int[] { 1, 2, 3 }));
+        points.add(new Point(new double[] { 1.0 / 3, 0, -0.0 }));
+        final List<Point> result = T.applyToPoints(points);
+        assertEquals(points.size(), result.size());
+        for (int i = 0; i < points.size(); ++i) {
+            final Point expected = (Point) points.get(i).times(T);
+            assertEquals(expected, result.get(i));
+            assertEquals(expected.isExact(), result.get(i).isExact());
+        }
+    }
 }
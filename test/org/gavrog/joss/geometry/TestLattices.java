@@ -16,6 +16,11 @@ limitations under the License.
 
 package org.gavrog.joss.geometry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 import org.gavrog.jane.compounds.Matrix;
@@ -100,4 +105,63 @@ public class TestLattices extends TestCase {
 	    }
 	}
 
+	public void testFastMatchesExact() {
+	    final Random random = new Random(39);
+	    final List<Matrix> forms = new ArrayList<Matrix>();
+	    forms.add(Matrix.one(3));
+	    forms.add(new Matrix(new int[][] { { 4, 1, 3 }, { 1, 5, 2 }, { 3, 2, 6 } }));
+	    forms.add(new Matrix(new int[][] { { 2, -1, 0 }, { -1, 2, 0 }, { 0, 0, 3 } }));
+	    forms.add(new Matrix(new double[][] { { 1.0, 0.0, 0.0 }, { 0.0, 1.0, 0.0 },
+	            { 0.0, 0.0, 1.0 } }));
+	    forms.add(new Matrix(new double[][] { { 1.0, -0.5, 0.0 }, { -0.5, 1.0, 0.0 },
+	            { 0.0, 0.0, 1.7 } }));
+	    for (int i = 0; i < 10; ++i) {
+	        final double a[][] = new double[3][3];
+	        for (int j = 0; j < 3; ++j) {
+	            a[j][j] = 1 + random.nextDouble();
+	        }
+	        a[0][1] = a[1][0] = random.nextDouble() - 0.5;
+	        a[0][2] = a[2][0] = random.nextDouble() - 0.5;
+	        a[1][2] = a[2][1] = random.nextDouble() - 0.5;
+	        forms.add(new Matrix(a));
+	    }
+
+	    for (final Matrix G: forms) {
+	        final Matrix G2 = G.getSubMatrix(0, 0, 2, 2);
+	        for (int i = 0; i < 20; ++i) {
+	            final Vector b[] = randomBasis(random, 3);
+	            assertEquals(Arrays.asList(Lattices.sellingReduced(b, G)),
+	                    Arrays.asList(Lattices.sellingReduced(b, G, true)));
+	            assertEquals(Arrays.asList(Lattices.dirichletVectors(b, G)),
+	                    Arrays.asList(Lattices.dirichletVectors(b, G, true)));
+	            assertEquals(Arrays.asList(Lattices.reducedLatticeBasis(b, G)),
+	                    Arrays.asList(Lattices.reducedLatticeBasis(b, G, true)));
+
+	            final Vector c[] = randomBasis(random, 2);
+	            final Vector c1[] = c.clone();
+	            final Vector c2[] = c.clone();
+	            assertEquals(Arrays.asList(Lattices.gaussReduced(c1, G2)),
+	                    Arrays.asList(Lattices.gaussReduced(c2, G2, true)));
+	            assertEquals(Arrays.asList(c1), Arrays.asList(c2));
+	            assertEquals(Arrays.asList(Lattices.reducedLatticeBasis(c.clone(), G2)),
+	                    Arrays.asList(Lattices.reducedLatticeBasis(c.clone(), G2, true)));
+	        }
+	    }
+	}
+
+	private static Vector[] randomBasis(final Random random, final int d) {
+	    while (true) {
+	        final Vector b[] = new Vector[d];
+	        for (int i = 0; i < d; ++i) {
+	            final int a[] = new int[d];
+	            for (int j = 0; j < d; ++j) {
+	                a[j] = random.nextInt(9) - 4;
+	            }
+	            b[i] = (Vector) new Vector(a).dividedBy(1 + random.nextInt(2));
+	        }
+	        if (Lattices.isBasis(b)) {
+	            return b;
+	        }
+	    }
+	}
 }
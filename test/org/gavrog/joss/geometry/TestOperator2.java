@@ -0,0 +1,65 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the Operator2 class.
+ */
+public class TestOperator2 extends TestCase {
+    final Operator general[] = new Operator[] {
+            new Operator("x,y"),
+            new Operator("-y,x-y+1/3"),
+            new Operator("y+1/4,-x+3/4"),
+            new Operator("1/2*x-1/2*y,1/2*x+1/2*y"),
+            new Operator("-x-5/6,-y+7/4")
+    };
+
+    public void testConversion() {
+        for (final Operator op: general) {
+            final Operator2 A = new Operator2(op);
+            assertEquals(op, A.toOperator());
+            assertEquals(A, new Operator2(A.toOperator()));
+        }
+        assertEquals(Operator2.IDENTITY, new Operator2(general[0]));
+    }
+
+    public void testArithmetic() {
+        for (final Operator a: general) {
+            final Operator2 A = new Operator2(a);
+            assertEquals(a.inverse(), A.inverse().toOperator());
+            assertEquals(a.modZ(), A.modZ().toOperator());
+            assertEquals(a.floorZ(), A.floorZ().toVector());
+            for (final Operator b: general) {
+                final Operator2 B = new Operator2(b);
+                assertEquals(a.times(b), A.times(B).toOperator());
+                assertEquals(Integer.signum(a.compareTo(b)),
+                        Integer.signum(A.compareTo(B)));
+            }
+        }
+    }
+
+    public void testApplyToPoint() {
+        final Point p = new Point(((Vector) new Vector(2, 5).dividedBy(3))
+                .getCoordinates());
+        for (final Operator a: general) {
+            assertEquals(p.times(a),
+                    new Operator2(a).applyToPoint(new Vector2(p)).toPoint());
+        }
+    }
+}
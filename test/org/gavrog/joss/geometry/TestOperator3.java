@@ -0,0 +1,145 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the Operator3 class.
+ */
+public class TestOperator3 extends TestCase {
+    final Operator general[] = new Operator[] {
+            new Operator("x,y,z"),
+            new Operator("-y,x-y,z+1/3"),
+            new Operator("y+1/4,-x+3/4,-z+1/4"),
+            new Operator("1/2*x-1/2*y,1/2*x+1/2*y,z"),
+            new Operator("-1/3*x+2/3*y-1/3*z,-2/3*x+1/3*y+1/3*z,1/3*x+1/3*y+1/3*z"),
+            new Operator("z-1/8,x+5/4,-y-7/8")
+    };
+
+    public void testConversion() {
+        for (final Operator op: general) {
+            final Operator3 A = new Operator3(op);
+            assertEquals(op, A.toOperator());
+            assertEquals(A, new Operator3(A.toOperator()));
+        }
+        assertTrue(new Operator3(general[0]).isOne());
+        assertEquals(Operator3.IDENTITY, new Operator3(general[0]));
+        assertFalse(new Operator3(general[1]).isOne());
+    }
+
+    public void testProducts() {
+        for (final Operator a: general) {
+            for (final Operator b: general) {
+                final Operator3 A = new Operator3(a);
+                final Operator3 B = new Operator3(b);
+                assertEquals(a.times(b), A.times(B).toOperator());
+                assertEquals(new Operator3((Operator) a.times(b)),
+                        A.times(B));
+            }
+        }
+    }
+
+    public void testInverse() {
+        for (final Operator a: general) {
+            final Operator3 A = new Operator3(a);
+            assertEquals(a.inverse(), A.inverse().toOperator());
+            assertTrue(A.times(A.inverse()).isOne());
+        }
+    }
+
+    public void testModZ() {
+        for (final Operator a: general) {
+            final Operator3 A = new Operator3(a);
+            assertEquals(a.modZ(), A.modZ().toOperator());
+            assertEquals(a.floorZ(), A.floorZ().toVector());
+            assertEquals(a.translationalPart(),
+                    A.translationalPart().toVector());
+            assertEquals(a.linearPart(), A.linearPart().toOperator());
+        }
+    }
+
+    public void testCompareTo() {
+        for (final Operator a: general) {
+            for (final Operator b: general) {
+                final int expected = a.compareTo(b);
+                final int found =
+                    new Operator3(a).compareTo(new Operator3(b));
+                assertEquals(Integer.signum(expected), Integer.signum(found));
+            }
+        }
+    }
+
+    public void testApplyToPoint() {
+        final Point p = new Point(((Vector) new Vector(1, 2, 3).dividedBy(7))
+                .getCoordinates());
+        for (final Operator a: general) {
+            assertEquals(p.times(a),
+                    new Operator3(a).applyToPoint(new Vector3(p)).toPoint());
+        }
+    }
+
+    public void testHashCode() {
+        for (final Operator a: general) {
+            final Operator3 A = new Operator3(a);
+            assertEquals(A.hashCode(), new Operator3(a).hashCode());
+        }
+    }
+
+    public void testCatalogue() {
+        final List<String> names = new ArrayList<String>();
+        for (final Iterator<String> iter =
+                SpaceGroupCatalogue.allKnownSettings(3); iter.hasNext();) {
+            names.add(iter.next());
+        }
+        for (int k = 0; k < names.size(); k += 7) {
+            final List<Operator> ops =
+                SpaceGroupCatalogue.operators(3, names.get(k));
+            final Operator a = ops.get(ops.size() / 2);
+            final Operator b = ops.get(ops.size() - 1);
+            assertEquals(((Operator) a.times(b.inverse())).modZ(),
+                    new Operator3(a).times(new Operator3(b).inverse()).modZ()
+                            .toOperator());
+        }
+    }
+
+    public void testLargeEntries() {
+        final Operator big = new Operator("x+1/1000003,y,z");
+        Operator3 A = new Operator3(big);
+        Operator general = big;
+        for (int i = 0; i < 4; ++i) {
+            A = A.times(A);
+            general = (Operator) general.times(general);
+        }
+        assertEquals(general, A.toOperator());
+        final Operator scaled = new Operator("1/70001*x,y+1/3,z");
+        final Operator3 B = new Operator3(scaled);
+        assertEquals(scaled.inverse(), B.inverse().toOperator());
+    }
+
+    public void testBadInput() {
+        try {
+            new Operator3(new Operator("x,y"));
+            fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException success) {
+        }
+    }
+}
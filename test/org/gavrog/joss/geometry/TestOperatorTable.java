@@ -0,0 +1,86 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the OperatorTable class.
+ */
+public class TestOperatorTable extends TestCase {
+    private static Operator3 op(final String s) {
+        return new Operator3(new Operator(s));
+    }
+
+    public void testIntern() {
+        final OperatorTable<Operator3> T = new OperatorTable<Operator3>();
+        final int a = T.intern(op("-y,x-y,z+1/3"));
+        final int b = T.intern(op("y+1/4,-x+3/4,-z+1/4"));
+        assertEquals(0, a);
+        assertEquals(1, b);
+        assertEquals(a, T.intern(op("-y+2,x-y-1,z-2/3")));
+        assertEquals(2, T.size());
+        assertEquals(op("-y,x-y,z+1/3"), T.get(a));
+    }
+
+    public void testProductsAndInverses() {
+        final OperatorTable<Operator3> T = new OperatorTable<Operator3>();
+        final Operator3 A = op("-y,x-y,z+1/3");
+        final Operator3 B = op("y+1/4,-x+3/4,-z+1/4");
+        final int a = T.intern(A);
+        final int b = T.intern(B);
+        final int ab = T.product(a, b);
+        assertEquals(A.times(B).modZ(), T.get(ab));
+        assertEquals(ab, T.product(a, b));
+        assertEquals(A.inverse().modZ(), T.get(T.inverse(a)));
+        assertEquals(a, T.inverse(T.inverse(a)));
+        assertTrue(T.get(T.product(a, T.inverse(a))).isOne());
+    }
+
+    public void testClosure() {
+        final OperatorTable<Operator3> T = new OperatorTable<Operator3>();
+        final int gens[] = new int[] {
+                T.intern(op("-y,x-y,z+1/3")),
+                T.intern(op("-x,-y,z+1/2"))
+        };
+        final int all[] = T.closure(gens);
+        assertEquals(6, all.length);
+        final Set<Operator3> ops = new HashSet<Operator3>();
+        for (final int id: all) {
+            ops.add(T.get(id));
+        }
+        assertEquals(6, ops.size());
+        assertTrue(ops.contains(Operator3.IDENTITY));
+        assertTrue(ops.contains(op("x-y,x,z+1/6")));
+        assertTrue(T.isGroup(all));
+        assertFalse(T.isGroup(gens));
+    }
+
+    public void testDimension2() {
+        final OperatorTable<Operator2> T = new OperatorTable<Operator2>();
+        final int gens[] = new int[] {
+                T.intern(new Operator2(new Operator("-y,x"))),
+                T.intern(new Operator2(new Operator("x+1/2,-y+1/2")))
+        };
+        final int all[] = T.closure(gens);
+        assertEquals(8, all.length);
+        assertTrue(T.isGroup(all));
+    }
+}
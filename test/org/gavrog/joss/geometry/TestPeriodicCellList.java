@@ -0,0 +1,148 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.numbers.Real;
+
+/**
+ * Unit tests for class PeriodicCellList.
+ */
+public class TestPeriodicCellList extends TestCase {
+    final Matrix skewed = new Matrix(new double[][] {
+            { 1.0, 0.9, 0.3 }, { 0.9, 1.0, 0.4 }, { 0.3, 0.4, 1.5 } });
+
+    private double[][] randomPoints(final int n, final int d,
+            final long seed) {
+        final Random random = new Random(seed);
+        final double p[][] = new double[n][d];
+        for (int i = 0; i < n; ++i) {
+            for (int k = 0; k < d; ++k) {
+                p[i][k] = 4 * random.nextDouble() - 2;
+            }
+        }
+        return p;
+    }
+
+    private static String key(final int i, final int j, final int s[]) {
+        String result = i + ":" + j;
+        for (int k = 0; k < s.length; ++k) {
+            result += ":" + s[k];
+        }
+        return result;
+    }
+
+    private static double dist2(final double p[], final double q[],
+            final int s[], final Matrix gram) {
+        final int d = p.length;
+        double sum = 0.0;
+        for (int i = 0; i < d; ++i) {
+            for (int j = 0; j < d; ++j) {
+                final double g = ((Real) gram.get(i, j)).doubleValue();
+                sum += (q[i] + s[i] - p[i]) * g * (q[j] + s[j] - p[j]);
+            }
+        }
+        return sum;
+    }
+
+    private Set<String> bruteForcePairs(final double p[][], final Matrix gram,
+            final double cutoff, final int range) {
+        final Set<String> result = new HashSet<String>();
+        final int s[] = new int[3];
+        for (int i = 0; i < p.length; ++i) {
+            for (int j = 0; j < p.length; ++j) {
+                for (s[0] = -range; s[0] <= range; ++s[0]) {
+                    for (s[1] = -range; s[1] <= range; ++s[1]) {
+                        for (s[2] = -range; s[2] <= range; ++s[2]) {
+                            if (i == j && s[0] == 0 && s[1] == 0 && s[2] == 0) {
+                                continue;
+                            }
+                            if (dist2(p[i], p[j], s, gram) <= cutoff * cutoff) {
+                                result.add(key(i, j, s));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<String> cellListPairs(final double p[][], final Matrix gram,
+            final double cutoff) {
+        final Set<String> result = new HashSet<String>();
+        new PeriodicCellList(p, gram).pairsWithin(cutoff,
+                new PeriodicCellList.Visitor() {
+            public void visit(final int i, final int j, final int s[],
+                    final double d2) {
+                assertTrue(result.add(key(i, j, s)));
+                assertEquals(dist2(p[i], p[j], s, gram), d2, 1e-12);
+            }
+        });
+        return result;
+    }
+
+    public void testPairsWithin() {
+        final double p[][] = randomPoints(60, 3, 1);
+        assertEquals(bruteForcePairs(p, Matrix.one(3), 0.3, 4),
+                cellListPairs(p, Matrix.one(3), 0.3));
+        assertEquals(bruteForcePairs(p, skewed, 0.3, 6),
+                cellListPairs(p, skewed, 0.3));
+    }
+
+    public void testPairsWithinLargeCutoff() {
+        final double p[][] = randomPoints(5, 3, 2);
+        assertEquals(bruteForcePairs(p, skewed, 1.7, 8),
+                cellListPairs(p, skewed, 1.7));
+    }
+
+    public void testPointsNear() {
+        final double p[][] = randomPoints(40, 3, 3);
+        final PeriodicCellList cells = new PeriodicCellList(p, skewed);
+        final double q[] = new double[] { 0.25, -3.5, 7.1 };
+        final Set<String> found = new HashSet<String>();
+        cells.pointsNear(q, 0.5, new PeriodicCellList.Visitor() {
+            public void visit(final int i, final int j, final int s[],
+                    final double d2) {
+                assertEquals(-1, i);
+                found.add(key(i, j, s));
+            }
+        });
+
+        final Set<String> expected = new HashSet<String>();
+        final int s[] = new int[3];
+        for (int j = 0; j < p.length; ++j) {
+            for (s[0] = -6; s[0] <= 6; ++s[0]) {
+                for (s[1] = -12; s[1] <= 2; ++s[1]) {
+                    for (s[2] = 0; s[2] <= 14; ++s[2]) {
+                        if (dist2(q, p[j], s, skewed) <= 0.25) {
+                            expected.add(key(-1, j, s));
+                        }
+                    }
+                }
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, found);
+    }
+}
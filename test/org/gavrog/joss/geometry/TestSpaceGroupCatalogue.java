@@ -40,4 +40,47 @@ public class TestSpaceGroupCatalogue extends TestCase {
         assertNotNull(T);
         assertEquals(new CoordinateChange(Operator.identity(3)), T);
     }
+    
+    public void testPreferences() {
+        final SpaceGroupCatalogue.Preferences first =
+            new SpaceGroupCatalogue.Preferences(false, true);
+        final SpaceGroupCatalogue.Preferences rhombic =
+            new SpaceGroupCatalogue.Preferences(true, false);
+        
+        assertEquals("Fd-3m:2", SpaceGroupCatalogue.listedName(3, "Fd-3m"));
+        assertEquals("Fd-3m:2", SpaceGroupCatalogue.listedName(3, "Fd3m"));
+        assertEquals("Fd-3m:1",
+                SpaceGroupCatalogue.listedName(3, "Fd-3m", first));
+        assertEquals("Fd-3m:2",
+                SpaceGroupCatalogue.listedName(3, "Fd-3m:2", first));
+        assertEquals("Fd-3m:2",
+                SpaceGroupCatalogue.listedName(3, "Fd-3m", rhombic));
+        
+        assertEquals("R3:H", SpaceGroupCatalogue.listedName(3, "R3"));
+        assertEquals("R3:R", SpaceGroupCatalogue.listedName(3, "R3", rhombic));
+        assertEquals("R3:H",
+                SpaceGroupCatalogue.listedName(3, "R3:h", rhombic));
+        assertEquals("R3:H", SpaceGroupCatalogue.listedName(3, "R3", first));
+        
+        assertEquals(new CoordinateChange(Operator.identity(3)),
+                SpaceGroupCatalogue.transform(3, "Fd-3m"));
+        assertFalse(SpaceGroupCatalogue.transform(3, "Fd-3m", first).isOne());
+        assertEquals(SpaceGroupCatalogue.operators(3, "Fd-3m:1"),
+                SpaceGroupCatalogue.operators(3, "Fd-3m", first));
+    }
+    
+    public void testNormalizedName() {
+        assertEquals("Fd-3m", SpaceGroupCatalogue.normalizedName("Fd3m:1"));
+        assertEquals("Ia-3d", SpaceGroupCatalogue.normalizedName("Ia-3d"));
+    }
+    
+    public void testImmutable() {
+        final List<Operator> ops = SpaceGroupCatalogue.operators(3, "P2");
+        try {
+            ops.clear();
+            fail("operator list should not be modifiable");
+        } catch (UnsupportedOperationException ex) {
+        }
+        assertEquals(2, SpaceGroupCatalogue.operators(3, "P2").size());
+    }
 }
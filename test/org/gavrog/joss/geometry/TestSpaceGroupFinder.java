@@ -129,4 +129,46 @@ public class TestSpaceGroupFinder extends TestCase {
         final SpaceGroupFinder finder = new SpaceGroupFinder(G);
         assertEquals("C12/m1", finder.getGroupName());
     }
+
+    public void testConcurrentUse() throws Exception {
+        final List<SpaceGroup> groups = new ArrayList<SpaceGroup>();
+        int count = 0;
+        for (final Iterator<String> iter = SpaceGroupCatalogue
+                .allKnownSettings(3); iter.hasNext();) {
+            final String name = iter.next();
+            if (count++ % 3 == 0) {
+                groups.add(new SpaceGroup(3,
+                        SpaceGroupCatalogue.operators(3, name)));
+            }
+        }
+        final int n = groups.size();
+        final String expected[] = new String[n];
+        for (int i = 0; i < n; ++i) {
+            final SpaceGroupFinder finder = new SpaceGroupFinder(groups.get(i));
+            expected[i] = finder.getExtendedGroupName() + " " + finder.getToStd();
+        }
+
+        final String found[] = new String[n];
+        final Thread threads[] = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = offset; i < n; i += threads.length) {
+                        final SpaceGroupFinder finder =
+                            new SpaceGroupFinder(groups.get(i));
+                        found[i] = finder.getExtendedGroupName() + " "
+                                   + finder.getToStd();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t].join();
+        }
+        for (int i = 0; i < n; ++i) {
+            assertEquals(expected[i], found[i]);
+        }
+    }
 }
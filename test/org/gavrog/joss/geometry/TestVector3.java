@@ -0,0 +1,60 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.geometry;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the Vector3 class.
+ */
+public class TestVector3 extends TestCase {
+    final Vector u = (Vector) new Vector(1, -2, 3).dividedBy(4);
+    final Vector v = (Vector) new Vector(5, 0, -7).dividedBy(6);
+
+    public void testConversion() {
+        assertEquals(u, new Vector3(u).toVector());
+        assertEquals(new Vector3(1, -2, 3, 4), new Vector3(u));
+        assertEquals(new Vector3(2, -4, 6, 8), new Vector3(u));
+        assertEquals(new Vector3(-1, 2, -3, -4), new Vector3(u));
+        assertEquals(-1, new Vector3(u).numerator(1) * 2 / 4);
+        assertEquals(4, new Vector3(u).denominator());
+    }
+
+    public void testArithmetic() {
+        final Vector3 U = new Vector3(u);
+        final Vector3 V = new Vector3(v);
+        assertEquals(u.plus(v), U.plus(V).toVector());
+        assertEquals(u.minus(v), U.minus(V).toVector());
+        assertEquals(u.negative(), U.negative().toVector());
+        assertEquals(u.modZ(), U.modZ().toVector());
+        assertTrue(U.minus(U).isZero());
+        assertFalse(U.isIntegral());
+        assertTrue(U.plus(U).plus(U).plus(U).isIntegral());
+        final Operator op = new Operator("y+1/2,-x+z,1/3*z");
+        assertEquals(u.times(op), U.times(new Operator3(op)).toVector());
+    }
+
+    public void testCompareTo() {
+        final Vector3 U = new Vector3(u);
+        final Vector3 V = new Vector3(v);
+        assertEquals(Integer.signum(u.compareTo(v)),
+                Integer.signum(U.compareTo(V)));
+        assertEquals(Integer.signum(v.compareTo(u)),
+                Integer.signum(V.compareTo(U)));
+        assertEquals(0, U.compareTo(new Vector3(2, -4, 6, 8)));
+    }
+}
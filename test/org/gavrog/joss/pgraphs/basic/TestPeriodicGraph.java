@@ -184,6 +184,40 @@ public class TestPeriodicGraph extends TestCase {
         G.newEdge(v3, v3, new int[] { 1, 2, 3 });
     }
 
+    public void testNewEdgesInBulk() {
+        final PeriodicGraph H = new PeriodicGraph(2);
+        final INode v[] = H.newNodes(2);
+        final IEdge e[] = H.newEdges(
+                new INode[] { v[0], v[0], v[1] },
+                new INode[] { v[1], v[1], v[1] },
+                new int[] { 0, 0, 1, 0, 0, 1 }, true);
+        assertEquals(3, e.length);
+        assertEquals(new Vector(1, 0), H.getShift(e[1]));
+        assertEquals("(1,2,[0,0])(1,2,[1,0])(2,2,[0,-1])", H.toString());
+        try { // duplicates within the batch should be vetoed
+            H.newEdges(new INode[] { v[0], v[1] }, new INode[] { v[1], v[0] },
+                    new int[] { 2, 0, -2, 0 }, true);
+            fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException success) {
+        }
+        try { // duplicates of existing edges should be vetoed
+            H.newEdges(new INode[] { v[1] }, new INode[] { v[1] },
+                    new int[] { 0, -1 }, true);
+            fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException success) {
+        }
+        try { // loops with trivial shift should be vetoed
+            H.newEdges(new INode[] { v[0] }, new INode[] { v[0] },
+                    new int[] { 0, 0 }, true);
+            fail("should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException success) {
+        }
+        assertEquals(3, H.numberOfEdges());
+        H.newEdges(new INode[] { v[0] }, new INode[] { v[0] },
+                new int[] { 0, 0 }, false);
+        assertEquals(4, H.numberOfEdges());
+    }
+
     public void testDelete() {
         G.delete(e3);
         try {
@@ -345,7 +379,41 @@ public class TestPeriodicGraph extends TestCase {
         assertEquals("6^3", hex.pointSymbol(firstNode(hex)));
         assertEquals("6^6", hexd.pointSymbol(firstNode(hexd)));
     }
-    
+
+    public void testVertexSymbol() {
+        PeriodicGraph hex = hexGrid();
+
+        assertEquals("6(2).6(2).6(2).6(2).6(2).6(2)",
+                dia.vertexSymbol(firstNode(dia)));
+        assertEquals("6.6.6", hex.vertexSymbol(firstNode(hex)));
+    }
+
+    public void testAngleCycles() {
+        final List<INode> nodes = Iterators.asList(cds.nodes());
+        final PointSymbols engine = new PointSymbols(cds);
+        final Map<INode, PointSymbols.AngleCycles> all =
+                engine.angleCycles(nodes, 2);
+        for (final INode node: nodes) {
+            final PointSymbols.AngleCycles cycles = all.get(node);
+            final PeriodicGraph.CoverNode v = cds.new CoverNode(node);
+            final List<PeriodicGraph.CoverEdge> edges =
+                    new ArrayList<PeriodicGraph.CoverEdge>();
+            Iterators.addAll(edges, v.incidences());
+            int k = 0;
+            for (int i = 0; i < edges.size(); ++i) {
+                for (int j = i + 1; j < edges.size(); ++j) {
+                    final int n = cds.shortestCycleAtAngle(
+                            edges.get(i).target(), v,
+                            edges.get(j).target()).size();
+                    assertEquals(n, cycles.getSize(k));
+                    assertTrue(cycles.getCount(k) > 0);
+                    ++k;
+                }
+            }
+            assertEquals(cds.pointSymbol(node), cycles.pointSymbol());
+        }
+    }
+
     public void testIsConnected() {
         final PeriodicGraph H = new PeriodicGraph(3);
         final INode v1 = H.newNode();
@@ -508,6 +576,16 @@ public class TestPeriodicGraph extends TestCase {
         assertSame(dia, dia.minimalImage());
     }
     
+    public void testMinimalImageOfSupercell() {
+        final Vector cell[] = new Vector[] {
+                new Vector(3, 0, 0), new Vector(0, 3, 0), new Vector(1, 1, 2) };
+        final PeriodicGraph G = new PeriodicGraph(new Cover(cds, cell));
+        assertEquals(72, G.numberOfNodes());
+        assertEquals(2,
+                Iterators.asList(G.translationalEquivalenceClasses()).size());
+        assertEquals(cds.minimalImage(), G.minimalImage());
+    }
+
     public void testCharacteristicBases() {
         testCharacteristicBases(dia, 48);
         testCharacteristicBases(G, 16);
@@ -544,6 +622,34 @@ public class TestPeriodicGraph extends TestCase {
         }
     }
     
+    public void testCharacteristicBaseIndices() {
+        for (final PeriodicGraph H: new PeriodicGraph[] {
+                dia, G, cds.minimalImage(), doubleHexGrid() }) {
+            final int d = H.getDimension();
+            final AdjacencyTable table = H.adjacencyTable();
+            final int idx[] = H.characteristicBaseIndices();
+            final List<List<IEdge>> bases = H.characteristicBases();
+            assertEquals(d * bases.size(), idx.length);
+            for (int i = 0; i < bases.size(); ++i) {
+                for (int j = 0; j < d; ++j) {
+                    assertEquals(table.getEdge(idx[i * d + j]),
+                            bases.get(i).get(j));
+                }
+            }
+        }
+
+        // --- must agree with the generic search for star-shaped bases
+        final Map<INode, Point> pos = dia.barycentricPlacement();
+        final List<List<IEdge>> expected = new ArrayList<List<IEdge>>();
+        for (final INode v: dia.nodes()) {
+            for (final List<IEdge> b: dia.goodCombinations(
+                    dia.allIncidences(v), pos)) {
+                expected.add(b);
+            }
+        }
+        assertEquals(expected, dia.characteristicBases());
+    }
+
     public void testSymmetries() {
         testSymmetries(dia, 48);
         testSymmetries(G, 16);
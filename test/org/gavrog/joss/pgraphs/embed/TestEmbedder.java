@@ -0,0 +1,207 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.pgraphs.embed;
+
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.numbers.Real;
+import org.gavrog.joss.geometry.Point;
+import org.gavrog.joss.geometry.Vector;
+import org.gavrog.joss.pgraphs.basic.IEdge;
+import org.gavrog.joss.pgraphs.basic.INode;
+import org.gavrog.joss.pgraphs.basic.PeriodicGraph;
+import org.gavrog.joss.pgraphs.io.NetParser;
+
+/**
+ * Unit tests for class Embedder.
+ */
+public class TestEmbedder extends TestCase {
+    private PeriodicGraph srs, ths, tfa;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        srs = NetParser.stringToNet(""
+                + "PERIODIC_GRAPH\n"
+                + "  1 2  0 0 0\n"
+                + "  1 3  0 0 0\n"
+                + "  1 4  0 0 0\n"
+                + "  2 3  1 0 0\n"
+                + "  2 4  0 1 0\n"
+                + "  3 4  0 0 1\n"
+                + "END\n");
+        ths = NetParser.stringToNet(""
+                + "PERIODIC_GRAPH\n"
+                + "  1 2  0 0 0\n"
+                + "  1 3  0 0 0\n"
+                + "  2 4  0 0 0\n"
+                + "  1 3  1 0 0\n"
+                + "  2 4  0 1 0\n"
+                + "  3 4  0 0 1\n"
+                + "END\n");
+        tfa = NetParser.stringToNet(""
+                + "PERIODIC_GRAPH\n"
+                + "  1 2  0 0 0\n"
+                + "  1 3  0 0 0\n"
+                + "  1 3  1 0 0\n"
+                + "  2 3  0 1 0\n"
+                + "  2 3  0 0 1\n"
+                + "END\n");
+    }
+
+    public void tearDown() throws Exception {
+        srs = ths = tfa = null;
+        super.tearDown();
+    }
+
+    private void checkGradient(final Embedder embedder, final boolean maxVol,
+            final long seed) {
+        final Random random = new Random(seed);
+        final double p[] = (double[]) embedder.p.clone();
+        final int n = p.length;
+        for (int i = 0; i < n; ++i) {
+            p[i] += 0.02 * (random.nextDouble() - 0.5);
+        }
+
+        final double grad[] = new double[n];
+        final double val = maxVol ? embedder.energyMaxVol(p, grad)
+                : embedder.energy(p, grad);
+        assertEquals(maxVol ? embedder.energyMaxVol(p) : embedder.energy(p),
+                val, 1e-9 * Math.max(1.0, Math.abs(val)));
+
+        final double h = 1e-6;
+        final double tmp[] = new double[n];
+        for (int i = 0; i < n; ++i) {
+            final double x = p[i];
+            p[i] = x + h;
+            final double fplus = maxVol ? embedder.energyMaxVol(p, tmp)
+                    : embedder.energy(p, tmp);
+            p[i] = x - h;
+            final double fminus = maxVol ? embedder.energyMaxVol(p, tmp)
+                    : embedder.energy(p, tmp);
+            p[i] = x;
+            final double numeric = (fplus - fminus) / (2 * h);
+            assertEquals(numeric, grad[i],
+                    1e-5 * Math.max(1.0, Math.abs(numeric)));
+        }
+    }
+
+    /**
+     * Computes the energy without penalty terms from the public interface,
+     * using all graph edges instead of edge orbits.
+     */
+    private double referenceEnergy(final Embedder embedder) {
+        final PeriodicGraph G = embedder.getGraph();
+        final Map<INode, Point> pos = embedder.getPositions();
+        final Matrix gram = embedder.getGramMatrix();
+        final int d = G.getDimension();
+
+        final int m = G.numberOfEdges();
+        final double lengths[] = new double[m];
+        double sum = 0.0;
+        int k = 0;
+        for (final IEdge e: G.edges()) {
+            final Vector v = (Vector) pos.get(e.target()).plus(G.getShift(e))
+                    .minus(pos.get(e.source()));
+            lengths[k] = Math.sqrt(((Real) Vector.dot(v, v, gram))
+                    .doubleValue());
+            sum += lengths[k++];
+        }
+        final double scaling = 1.01 / (sum / m);
+
+        double variance = 0.0;
+        for (int i = 0; i < m; ++i) {
+            final double len = lengths[i] * scaling;
+            variance += (1 - len * len) * (1 - len * len);
+        }
+        variance /= m;
+
+        final double det = ((Real) gram.determinant()).doubleValue();
+        final double volume = Math.pow(scaling, d) * Math.sqrt(det);
+        return embedder.volumeWeight
+                * (Math.exp(G.numberOfNodes() / volume) - 1) + variance;
+    }
+
+    public void testEnergy() {
+        final PeriodicGraph nets[] = { srs, ths, tfa };
+        for (int k = 0; k < nets.length; ++k) {
+            final Embedder embedder = new Embedder(nets[k], null, false);
+            embedder.volumeWeight = 0.1;
+            embedder.penaltyFactor = 0.0;
+            embedder.setRelaxPositions(true);
+            embedder.go(200);
+            final double expected = referenceEnergy(embedder);
+            assertEquals(expected, embedder.energy(embedder.p), 1e-9);
+        }
+    }
+
+    public void testEnergyGradient() {
+        final PeriodicGraph nets[] = { srs, ths, tfa };
+        for (int k = 0; k < nets.length; ++k) {
+            final Embedder embedder = new Embedder(nets[k], null, false);
+            embedder.volumeWeight = 0.1;
+            embedder.penaltyFactor = 1.0;
+            embedder.setRelaxPositions(true);
+            checkGradient(embedder, false, k);
+        }
+    }
+
+    public void testCellEnergyGradient() {
+        final PeriodicGraph nets[] = { srs, ths, tfa };
+        for (int k = 0; k < nets.length; ++k) {
+            final Embedder embedder = new Embedder(nets[k], null, false);
+            embedder.volumeWeight = 1.0;
+            embedder.penaltyFactor = 0.0;
+            embedder.setRelaxPositions(false);
+            checkGradient(embedder, false, k);
+            checkGradient(embedder, true, k);
+        }
+    }
+
+    public void testGradientRelaxation() {
+        final PeriodicGraph nets[] = { srs, ths, tfa };
+        for (int k = 0; k < nets.length; ++k) {
+            final Embedder simplex = new Embedder(nets[k], null, false);
+            simplex.go(10000);
+            simplex.normalize();
+            final Embedder gradient = new Embedder(nets[k], null, false);
+            gradient.setUseGradient(true);
+            gradient.go(10000);
+            gradient.normalize();
+            assertTrue(gradient.minimalEdgeLength()
+                    >= simplex.minimalEdgeLength() - 1e-3);
+            assertTrue(gradient.maximalEdgeLength()
+                    <= simplex.maximalEdgeLength() + 1e-3);
+        }
+    }
+
+    public void testCopy() {
+        final Embedder original = new Embedder(ths, null, false);
+        final Embedder copy = new Embedder(original);
+        copy.perturbPositions(0.05, new Random(1));
+        assertFalse(copy.getPositions().equals(original.getPositions()));
+
+        final Embedder other = new Embedder(original);
+        original.go(10000);
+        other.go(10000);
+        assertEquals(original.getPositions(), other.getPositions());
+        assertEquals(original.getGramMatrix(), other.getGramMatrix());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.pgraphs.embed;
+
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.gavrog.jane.compounds.Matrix;
+import org.gavrog.jane.numbers.Real;
+import org.gavrog.joss.geometry.Point;
+import org.gavrog.joss.geometry.Vector;
+import org.gavrog.joss.pgraphs.basic.IEdge;
+import org.gavrog.joss.pgraphs.basic.INode;
+import org.gavrog.joss.pgraphs.basic.PeriodicGraph;
+import org.gavrog.joss.pgraphs.io.NetParser;
+
+/**
+ * Unit tests for class ProcessedNet.
+ */
+public class TestProcessedNet extends TestCase {
+    private PeriodicGraph srs, dia, hcb;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        srs = NetParser.stringToNet(""
+                + "PERIODIC_GRAPH\n"
+                + "  1 2  0 0 0\n"
+                + "  1 3  0 0 0\n"
+                + "  1 4  0 0 0\n"
+                + "  2 3  1 0 0\n"
+                + "  2 4  0 1 0\n"
+                + "  3 4  0 0 1\n"
+                + "END\n");
+        dia = NetParser.stringToNet(""
+                + "PERIODIC_GRAPH\n"
+                + "  1 2  0 0 0\n"
+                + "  1 2  1 0 0\n"
+                + "  1 2  0 1 0\n"
+                + "  1 2  0 0 1\n"
+                + "END\n");
+        hcb = NetParser.stringToNet(""
+                + "PERIODIC_GRAPH\n"
+                + "  1 2  0 0\n"
+                + "  1 2  1 0\n"
+                + "  1 2  0 1\n"
+                + "END\n");
+    }
+
+    public void tearDown() throws Exception {
+        srs = dia = hcb = null;
+        super.tearDown();
+    }
+
+    private static double bruteForceDistance(final PeriodicGraph G,
+            final Map<INode, Point> pos, final Matrix gram) {
+        final int d = G.getDimension();
+        double best = Double.MAX_VALUE;
+        for (final INode v: G.nodes()) {
+            for (final INode w: G.nodes()) {
+                final int s[] = new int[d];
+                for (int k = 0; k < d; ++k) {
+                    s[k] = -3;
+                }
+                while (true) {
+                    final Vector shift = new Vector(s);
+                    boolean bonded = v.equals(w) && shift.isZero();
+                    for (final IEdge e: G.allIncidences(v)) {
+                        if (e.target().equals(w)
+                                && G.getShift(e).equals(shift)) {
+                            bonded = true;
+                        }
+                    }
+                    if (!bonded) {
+                        final Vector x = (Vector) pos.get(w).plus(shift)
+                                .minus(pos.get(v));
+                        best = Math.min(best, ((Real) Vector.dot(x, x, gram))
+                                .doubleValue());
+                    }
+                    int k = d - 1;
+                    while (k >= 0 && s[k] == 3) {
+                        s[k--] = -3;
+                    }
+                    if (k < 0) {
+                        break;
+                    }
+                    ++s[k];
+                }
+            }
+        }
+        return Math.sqrt(best);
+    }
+
+    public void testSmallestNonBondedDistance() {
+        final PeriodicGraph nets[] = new PeriodicGraph[] { srs, dia, hcb };
+        for (int k = 0; k < nets.length; ++k) {
+            final Embedder embedder = new Embedder(nets[k], null, false);
+            embedder.go(200);
+            embedder.normalize();
+            final Map<INode, Point> pos = embedder.getPositions();
+            final Matrix gram = embedder.getGramMatrix();
+            assertEquals(bruteForceDistance(nets[k], pos, gram),
+                    ProcessedNet.smallestNonBondedDistance(nets[k], pos, gram),
+                    1e-10);
+        }
+    }
+
+    public void testAngleSizes() {
+        final Embedder embedder = new Embedder(srs, null, false);
+        embedder.go(200);
+        embedder.normalize();
+        final List<Double> angles = ProcessedNet.angleSizes(srs,
+                embedder.getPositions(), embedder.getGramMatrix());
+        assertEquals(12, angles.size());
+        for (final double a: angles) {
+            assertEquals(120.0, a, 1e-6);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+   Copyright 2020 Olaf Delgado-Friedrichs
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.gavrog.joss.tilings;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.gavrog.jane.numbers.Fraction;
+import org.gavrog.jane.numbers.IArithmetic;
+import org.gavrog.joss.dsyms.basic.DSymbol;
+import org.gavrog.joss.geometry.Point;
+import org.gavrog.joss.geometry.Vector;
+import org.gavrog.joss.pgraphs.io.NetParser;
+import org.gavrog.joss.pgraphs.io.NetParser.Face;
+import org.gavrog.joss.pgraphs.io.NetParser.FaceListDescriptor;
+
+/**
+ * Unit tests for class FaceList.
+ */
+public class TestFaceList extends TestCase {
+    private static FaceList fromResource(final String name) {
+        final InputStream in = ClassLoader.getSystemResourceAsStream(
+                "TestResources/RCSR-tilings/" + name);
+        final NetParser parser = new NetParser(new InputStreamReader(in));
+        return new FaceList(NetParser.parseFaceList(parser.parseDataBlock(),
+                parser.getGroupPreferences()));
+    }
+
+    /**
+     * Builds the faces of a k x k x k supercell of the cubic tiling.
+     */
+    private static FaceListDescriptor cubes(final int k) {
+        final Map<Integer, Point> pos = new HashMap<Integer, Point>();
+        for (int x = 0; x < k; ++x) {
+            for (int y = 0; y < k; ++y) {
+                for (int z = 0; z < k; ++z) {
+                    pos.put(index(k, x, y, z), new Point(new IArithmetic[] {
+                            new Fraction(x, k), new Fraction(y, k),
+                            new Fraction(z, k) }));
+                }
+            }
+        }
+        final int unit[][] = { { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0, 1 } };
+        final List<Object> faces = new ArrayList<Object>();
+        for (int x = 0; x < k; ++x) {
+            for (int y = 0; y < k; ++y) {
+                for (int z = 0; z < k; ++z) {
+                    for (int a = 0; a < 3; ++a) {
+                        final int u[] = unit[(a + 1) % 3];
+                        final int w[] = unit[(a + 2) % 3];
+                        final int c[][] = {
+                                { x, y, z },
+                                { x + u[0], y + u[1], z + u[2] },
+                                { x + u[0] + w[0], y + u[1] + w[1],
+                                        z + u[2] + w[2] },
+                                { x + w[0], y + w[1], z + w[2] } };
+                        final int vs[] = new int[4];
+                        final Vector sh[] = new Vector[4];
+                        for (int i = 0; i < 4; ++i) {
+                            vs[i] = index(k, c[i][0] % k, c[i][1] % k,
+                                    c[i][2] % k);
+                            sh[i] = new Vector(c[i][0] / k, c[i][1] / k,
+                                    c[i][2] / k);
+                        }
+                        faces.add(new Face(vs, sh));
+                    }
+                }
+            }
+        }
+        return new FaceListDescriptor(faces, pos, null, null, null);
+    }
+
+    private static int index(final int k, final int x, final int y,
+            final int z) {
+        return 1 + x + k * (y + k * z);
+    }
+
+    public void testTileMode() {
+        final FaceList dia = fromResource("dia-3dt.cgd");
+        assertEquals(96, dia.getSymbol().size());
+        assertEquals(2, dia.getPositions().size());
+        final FaceList srs = fromResource("srs-3dt.cgd");
+        assertEquals(240, srs.getSymbol().size());
+        assertEquals(4, srs.getPositions().size());
+        assertTrue(srs.getSymbol().isLocallyEuclidean3D());
+    }
+
+    public void testPlainMode() {
+        final DSymbol cube = new DSymbol("1 3:1,1,1,1:4,3,4");
+        for (int k = 1; k <= 2; ++k) {
+            final FaceList fl = new FaceList(cubes(k));
+            final DSymbol ds = fl.getSymbol();
+            assertEquals(48 * k * k * k, ds.size());
+            assertEquals(cube.invariant(),
+                    new DSymbol(ds.minimal()).invariant());
+            assertEquals(k * k * k, fl.getPositions().size());
+        }
+    }
+
+    public void testBadInput() {
+        final FaceListDescriptor desc = cubes(1);
+        desc.faceLists.remove(0);
+        try {
+            new FaceList(desc);
+            fail("should throw a RuntimeException");
+        } catch (RuntimeException success) {
+        }
+    }
+}
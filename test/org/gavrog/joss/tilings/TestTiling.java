@@ -24,11 +24,14 @@ import java.util.Set;
 import junit.framework.TestCase;
 
 import org.gavrog.box.collections.Iterators;
+import org.gavrog.jane.numbers.Whole;
+import org.gavrog.joss.dsyms.basic.DSPair;
 import org.gavrog.joss.dsyms.basic.DSymbol;
 import org.gavrog.joss.dsyms.basic.DelaneySymbol;
 import org.gavrog.joss.dsyms.basic.IndexList;
 import org.gavrog.joss.geometry.Point;
 import org.gavrog.joss.geometry.Vector;
+import org.gavrog.joss.pgraphs.basic.IEdge;
 import org.gavrog.joss.pgraphs.basic.PeriodicGraph;
 import org.gavrog.joss.tilings.Tiling.Tile;
 
@@ -67,6 +70,64 @@ public class TestTiling extends TestCase {
         assertFalse(gr2.equals(sk1));
     }
     
+    public void testSkeletonChambers() {
+        testSkeletonChambers(t1);
+        testSkeletonChambers(t2);
+        testSkeletonChambers(t3);
+    }
+
+    public void testSkeletonChambers(final Tiling til) {
+        for (final boolean dual: new boolean[] { false, true }) {
+            final Tiling.Skeleton G =
+                    dual ? til.getDualSkeleton() : til.getSkeleton();
+            final DelaneySymbol<Integer> cover = til.getCover();
+            final int d = cover.dim();
+            final int idx0 = dual ? d : 0;
+            final int idx1 = dual ? d - 1 : 1;
+            int nrNodes = 0;
+            for (final int D: cover.orbitReps(IndexList.except(cover, idx0))) {
+                assertEquals(D, G.chamberAtNode(G.nodeForChamber(D)));
+                ++nrNodes;
+            }
+            int nrEdges = 0;
+            for (final int D: cover.orbitReps(IndexList.except(cover, idx1))) {
+                final IEdge e = G.edgeForChamber(D);
+                final int E = G.chamberAtEdge(e);
+                assertTrue(E == D || E == cover.op(idx0, D));
+                assertEquals(G.nodeForChamber(D), e.source());
+                assertEquals(G.nodeForChamber(cover.op(idx0, D)), e.target());
+                ++nrEdges;
+            }
+            assertEquals(nrNodes, G.numberOfNodes());
+            assertEquals(nrEdges, G.numberOfEdges());
+            for (final int D: cover.elements()) {
+                assertEquals(G.nodeForChamber(D),
+                        G.edgeForChamber(D).source());
+            }
+            assertNull(G.nodeForChamber(0));
+            assertNull(G.edgeForChamber(cover.size() + 1));
+        }
+    }
+
+    public void testShared() {
+        final DSymbol ds = new DSymbol("2 3:2,1 2,1 2,2:6,3 2,6");
+        final Tiling til = Tiling.shared(ds);
+        final long hits = Tiling.getSharedCache().getHits();
+        assertSame(til, Tiling.shared(new DSymbol(ds.toString())));
+        assertEquals(hits + 1, Tiling.getSharedCache().getHits());
+        assertSame(til.getSkeleton(),
+                Tiling.shared(new DSymbol(ds.toString())).getSkeleton());
+
+        // --- a renumbered copy must not share chamber numbers
+        final DSymbol renumbered = new DSymbol(ds.canonical());
+        if (!renumbered.toString().equals(ds.toString())) {
+            final Tiling other = Tiling.shared(renumbered);
+            assertNotSame(til, other);
+            assertSame(renumbered, other.getSymbol());
+        }
+        assertEquals(gr2, Tiling.shared(ds).getSkeleton());
+    }
+
     public void testCornerShifts() {
         testCornerShifts(t1);
         testCornerShifts(t2);
@@ -97,6 +158,36 @@ public class TestTiling extends TestCase {
         }
     }
 
+    public void testTranslationCoordinates() {
+        testTranslationCoordinates(t1);
+        testTranslationCoordinates(t2);
+        testTranslationCoordinates(t3);
+    }
+
+    public void testTranslationCoordinates(final Tiling til) {
+        final DelaneySymbol<Integer> cover = til.getCover();
+        final int dim = cover.dim();
+        assertSame(til.getEdgeTranslations(), til.getEdgeTranslations());
+        assertSame(til.getCornerShifts(), til.getCornerShifts());
+        for (final int D: cover.elements()) {
+            for (int i = 0; i <= dim; ++i) {
+                final Vector t = til.edgeTranslation(i, D);
+                final Vector s = til.cornerShift(i, D);
+                assertSame(t, til.edgeTranslation(i, D));
+                assertEquals(t, til.getEdgeTranslations().get(
+                        new DSPair<Integer>(i, D)));
+                assertEquals(s, til.getCornerShifts().get(
+                        new DSPair<Integer>(i, D)));
+                for (int k = 0; k < dim; ++k) {
+                    assertEquals(new Whole(til.edgeTranslation(i, D, k)),
+                            t.get(k));
+                    assertEquals(new Whole(til.cornerShift(i, D, k)),
+                            s.get(k));
+                }
+            }
+        }
+    }
+
     public void testVertexBarycentricPositions() {
     	testVertexBarycentricPositions(t1);
     	testVertexBarycentricPositions(t2);